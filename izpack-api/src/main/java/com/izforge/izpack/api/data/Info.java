@@ -127,6 +127,16 @@ public class Info implements Serializable
 
     private boolean pack200Compression;
 
+    /**
+     * The no. of threads used to unpack files. If {@code 1}, files are unpacked on the installation thread.
+     */
+    private int unpackThreads = 1;
+
+    /**
+     * Determines if files that are identical to those already installed are skipped.
+     */
+    private boolean deltaUpgrade;
+
     private boolean requirePrivilegedExecution = false;
 
     private boolean requirePrivilegedExecutionUninstaller = false;
@@ -400,6 +410,49 @@ public class Info implements Serializable
         return pack200Compression;
     }
 
+    /**
+     * Sets the no. of threads used to unpack files.
+     *
+     * @param unpackThreads the no. of threads. If {@code 1}, files are unpacked on the installation thread
+     */
+    public void setUnpackThreads(int unpackThreads)
+    {
+        this.unpackThreads = unpackThreads;
+    }
+
+    /**
+     * Returns the no. of threads used to unpack files.
+     *
+     * @return the no. of threads. If {@code 1}, files are unpacked on the installation thread
+     */
+    public int getUnpackThreads()
+    {
+        return unpackThreads;
+    }
+
+    /**
+     * Determines if files that are identical to those already installed are skipped.
+     * <p/>
+     * If set, the compiler stores the content digest of each file, and the installer skips files whose target
+     * already exists with the same content.
+     *
+     * @param deltaUpgrade if {@code true}, skip files that are identical to those already installed
+     */
+    public void setDeltaUpgrade(boolean deltaUpgrade)
+    {
+        this.deltaUpgrade = deltaUpgrade;
+    }
+
+    /**
+     * Determines if files that are identical to those already installed are skipped.
+     *
+     * @return {@code true} if files that are identical to those already installed are skipped
+     */
+    public boolean isDeltaUpgrade()
+    {
+        return deltaUpgrade;
+    }
+
     /**
      * This class represents an author.
      *
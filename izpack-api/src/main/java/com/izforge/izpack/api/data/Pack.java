@@ -126,6 +126,16 @@ public class Pack implements Serializable
      */
     private long fileSize;
 
+    /**
+     * The uncompressed size of the pack's installer jar entry, or {@code -1} if it is unknown.
+     */
+    private long entrySize = -1;
+
+    /**
+     * The CRC-32 of the pack's installer jar entry, or {@code -1} if it is unknown.
+     */
+    private long entryCrc = -1;
+
     /**
      * Determines if the pack should be preselected for installation.
      */
@@ -509,6 +519,49 @@ public class Pack implements Serializable
         return fileSize;
     }
 
+    /**
+     * Sets the uncompressed size of the pack's installer jar entry.
+     *
+     * @param size the entry size, or {@code -1} if it is unknown
+     */
+    public void setEntrySize(long size)
+    {
+        entrySize = size;
+    }
+
+    /**
+     * Returns the uncompressed size of the pack's installer jar entry.
+     * <p/>
+     * Together with the {@link #getEntryCrc() CRC}, this identifies the build of a pack, so that a web-based installer
+     * can determine if a downloaded pack jar belongs to it.
+     *
+     * @return the entry size, or {@code -1} if it is unknown
+     */
+    public long getEntrySize()
+    {
+        return entrySize;
+    }
+
+    /**
+     * Sets the CRC-32 of the pack's installer jar entry.
+     *
+     * @param crc the entry CRC, or {@code -1} if it is unknown
+     */
+    public void setEntryCrc(long crc)
+    {
+        entryCrc = crc;
+    }
+
+    /**
+     * Returns the CRC-32 of the pack's installer jar entry.
+     *
+     * @return the entry CRC, or {@code -1} if it is unknown
+     */
+    public long getEntryCrc()
+    {
+        return entryCrc;
+    }
+
     /**
      * Sets the parent pack name.
      *
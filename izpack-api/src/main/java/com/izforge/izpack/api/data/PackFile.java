@@ -119,6 +119,11 @@ public class PackFile implements Serializable
      */
     private String condition = null;
 
+    /**
+     * The digest of the file content, as a lower case hexadecimal string, or {@code null} if it is not known.
+     */
+    private String digest = null;
+
     /**
      * Constructs and initializes from a source file.
      *
@@ -203,6 +208,36 @@ public class PackFile implements Serializable
         this(src, FileUtil.getRelativeFileName(src, baseDir), target, osList, override, overrideRenameTo, blockable, additionals);
     }
 
+    /**
+     * Constructs and initializes from previously recorded meta-data, without accessing the file system.
+     *
+     * @param relativeSourcePath the path relative to the compiletime's basedirectory. May be {@code null}
+     * @param target             the path to install the file to, using '/' as file separator
+     * @param length             the length of the file in bytes
+     * @param lastModified       the last-modification time of the file
+     * @param isDirectory        determines if the file is a directory
+     * @param osList             OS constraints
+     * @param override           what to do when the file already exists
+     * @param overrideRenameTo   the globmapper expression used to rename the file, if it is overridden
+     * @param blockable          determines if the file might be blocked during installation/uninstallation
+     * @param additionals        additional attributes
+     */
+    public PackFile(String relativeSourcePath, String target, long length, long lastModified, boolean isDirectory,
+                    List<OsModel> osList, OverrideType override, String overrideRenameTo, Blockable blockable,
+                    Map additionals)
+    {
+        this.relativePath = relativeSourcePath;
+        this.targetPath = target;
+        this.length = length;
+        this.mtime = lastModified;
+        this.isDirectory = isDirectory;
+        this.osConstraints = osList;
+        this.override = override;
+        this.overrideRenameTo = overrideRenameTo;
+        this.blockable = blockable;
+        this.additionals = additionals;
+    }
+
     public void setPreviousPackFileRef(String previousPackId, Long offsetInPreviousPack)
     {
         this.previousPackId = previousPackId;
@@ -339,6 +374,28 @@ public class PackFile implements Serializable
         this.pack200Jar = pack200Jar;
     }
 
+    /**
+     * Returns the digest of the file content.
+     * <p/>
+     * This is used to detect files that are unchanged when upgrading an installation.
+     *
+     * @return the digest, as a lower case hexadecimal string, or {@code null} if it is not known
+     */
+    public String getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * Sets the digest of the file content.
+     *
+     * @param digest the digest, as a lower case hexadecimal string. May be {@code null}
+     */
+    public void setDigest(String digest)
+    {
+        this.digest = digest;
+    }
+
     public void setLoosePackInfo(boolean loose)
     {
         if (loose)
@@ -73,6 +73,7 @@ public class XPackFile extends PackFile implements Comparable<XPackFile>
               file.override(), file.overrideRenameTo(), file.blockable(), file.getAdditionals());
         this.position = 0;
         this.setCondition(file.getCondition());
+        this.setDigest(file.getDigest());
     }
 
     /**
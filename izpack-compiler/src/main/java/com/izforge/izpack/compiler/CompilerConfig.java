@@ -99,8 +99,8 @@ import com.izforge.izpack.compiler.listener.CompilerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.packager.IPackager;
 import com.izforge.izpack.compiler.resource.ResourceFinder;
-import com.izforge.izpack.compiler.util.AntPathMatcher;
 import com.izforge.izpack.compiler.util.CompilerClassLoader;
+import com.izforge.izpack.compiler.util.TargetPathIndex;
 import com.izforge.izpack.core.data.DynamicInstallerRequirementValidatorImpl;
 import com.izforge.izpack.core.data.DynamicVariableImpl;
 import com.izforge.izpack.core.variable.ConfigFileValue;
@@ -807,11 +807,14 @@ public class CompilerConfig extends Thread
 
             processOnDeselect(packElement, pack);
 
+            // index the target paths once, to resolve parsable and executable filesets against
+            TargetPathIndex targetPaths = createTargetPathIndex(pack);
+
             List<IXMLElement> parsableChildren = packElement.getChildrenNamed("parsable");
-            processParsableChildren(pack, parsableChildren);
+            processParsableChildren(pack, targetPaths, parsableChildren);
 
             List<IXMLElement> executableChildren = packElement.getChildrenNamed("executable");
-            processExecutableChildren(pack, executableChildren);
+            processExecutableChildren(pack, targetPaths, executableChildren);
 
             // We get the dependencies
             for (IXMLElement dependsNode : packElement.getChildrenNamed("depends"))
@@ -873,6 +876,7 @@ public class CompilerConfig extends Thread
             ds.setIncludes(includes);
             ds.setBasedir(dir);
             ds.setCaseSensitive(true);
+            ds.setThreads(compilerData.getPackThreads());
 
             // loop through all found fils and handle them as normal refpack files
             String[] files;
@@ -933,9 +937,10 @@ public class CompilerConfig extends Thread
         {
             try
             {
+                DirectoryScanner ds = fs.getDirectoryScanner();
                 String[][] includedFilesAndDirs = new String[][]{
-                        fs.getDirectoryScanner().getIncludedDirectories(),
-                        fs.getDirectoryScanner().getIncludedFiles()
+                        ds.getIncludedDirectories(),
+                        ds.getIncludedFiles()
                 };
                 for (String[] filesOrDirs : includedFilesAndDirs)
                 {
@@ -1092,9 +1097,11 @@ public class CompilerConfig extends Thread
                     fs.setFollowSymlinks(Boolean.parseBoolean(boolval));
                 }
 
+                fs.setThreads(compilerData.getPackThreads());
+                DirectoryScanner ds = fs.getDirectoryScanner();
                 LinkedList<String> srcfiles = new LinkedList<String>();
-                Collections.addAll(srcfiles, fs.getDirectoryScanner().getIncludedDirectories());
-                Collections.addAll(srcfiles, fs.getDirectoryScanner().getIncludedFiles());
+                Collections.addAll(srcfiles, ds.getIncludedDirectories());
+                Collections.addAll(srcfiles, ds.getIncludedFiles());
                 for (String filePath : srcfiles)
                 {
                     if (!filePath.isEmpty())
@@ -1125,7 +1132,8 @@ public class CompilerConfig extends Thread
         }
     }
 
-    private void processExecutableChildren(PackInfo pack, List<IXMLElement> childrenNamed) throws CompilerException
+    private void processExecutableChildren(PackInfo pack, TargetPathIndex targetPaths,
+                                           List<IXMLElement> childrenNamed) throws CompilerException
     {
         for (IXMLElement executableNode : childrenNamed)
         {
@@ -1193,7 +1201,7 @@ public class CompilerConfig extends Thread
             for (IXMLElement fileSetElement : executableNode.getChildrenNamed("fileset"))
             {
                 String targetdir = fileSetElement.getAttribute("targetdir", "${INSTALL_PATH}");
-                Set<String> includedFiles = getFilesetIncludedFiles(pack, fileSetElement, targetdir);
+                Set<String> includedFiles = getFilesetIncludedFiles(targetPaths, fileSetElement, targetdir);
                 for (String filePath : includedFiles)
                 {
                     addNewExecutableFile(pack, filePath, condition, osList, executionStage, type, mainClass,
@@ -1225,7 +1233,8 @@ public class CompilerConfig extends Thread
         pack.addExecutable(executable);
     }
 
-    private void processParsableChildren(PackInfo pack, List<IXMLElement> parsableChildren) throws CompilerException
+    private void processParsableChildren(PackInfo pack, TargetPathIndex targetPaths,
+                                         List<IXMLElement> parsableChildren) throws CompilerException
     {
         for (IXMLElement parsableNode : parsableChildren)
         {
@@ -1244,7 +1253,7 @@ public class CompilerConfig extends Thread
             for (IXMLElement fileSetElement : parsableNode.getChildrenNamed("fileset"))
             {
                 String targetdir = fileSetElement.getAttribute("targetdir", "${INSTALL_PATH}");
-                Set<String> includedFiles = getFilesetIncludedFiles(pack, fileSetElement, targetdir);
+                Set<String> includedFiles = getFilesetIncludedFiles(targetPaths, fileSetElement, targetdir);
                 for (String filePath : includedFiles)
                 {
                     ParsableFile parsable = new ParsableFile(filePath, type, encoding, osList);
@@ -1256,7 +1265,18 @@ public class CompilerConfig extends Thread
         }
     }
 
-    private Set<String> getFilesetIncludedFiles(PackInfo info, IXMLElement fileSetElement, String targetDir)
+    private TargetPathIndex createTargetPathIndex(PackInfo pack)
+    {
+        List<String> paths = new ArrayList<String>();
+        for (PackFile packFile : pack.getPackFiles())
+        {
+            paths.add(packFile.getTargetPath());
+        }
+        return new TargetPathIndex(paths);
+    }
+
+    private Set<String> getFilesetIncludedFiles(TargetPathIndex targetPaths, IXMLElement fileSetElement,
+                                                String targetDir)
     throws CompilerException
     {
         boolean casesensitive = xmlCompilerHelper.validateYesNoAttribute(fileSetElement, "casesensitive", YES);
@@ -1324,42 +1344,20 @@ public class CompilerConfig extends Thread
         // local var
 
 
-        HashSet<String> matches = new HashSet<String>();
-        AntPathMatcher matcher = new AntPathMatcher();
-
         if (includes == null || includes.length == 0)
         {
             throw new CompilerException("At least one included file required in a fileset");
         }
 
         logger.fine("Fileset (targetDir=\""+targetDir+"\"");
-        for (String include : includes)
+        String[] targetIncludes = new String[includes.length];
+        for (int i = 0; i < includes.length; ++i)
         {
-            logger.fine("Processing include: \"" + include+"\"");
-            for (PackFile s:info.getPackFiles()) {
-                String targetPath = s.getTargetPath();
-                if (matcher.match(targetDir + "/" + include, targetPath, casesensitive))
-                {
-                    matches.add(targetPath);
-                }
-            }
+            logger.fine("Processing include: \"" + includes[i]+"\"");
+            targetIncludes[i] = targetDir + "/" + includes[i];
         }
 
-        if (excludes != null)
-        {
-            for (int i = 0; i < excludes.length; i++)
-            {
-                for (PackFile s:info.getPackFiles()) {
-                    String targetPath = s.getTargetPath();
-                    if (matcher.match(excludes[i], targetPath, casesensitive))
-                    {
-                        matches.remove(targetPath);
-                    }
-                }
-            }
-        }
-
-        return matches;
+        return targetPaths.getIncluded(targetIncludes, excludes, casesensitive);
     }
 
     private IXMLElement readRefPackData(String refFileName, boolean isselfcontained)
@@ -1952,6 +1950,31 @@ public class CompilerConfig extends Thread
         IXMLElement pack200 = root.getFirstChildNamed("pack200");
         info.setPack200Compression(pack200 != null);
 
+        // Concurrent unpacking
+        IXMLElement unpackThreads = root.getFirstChildNamed("unpackthreads");
+        if (unpackThreads != null)
+        {
+            String content = xmlCompilerHelper.requireContent(unpackThreads);
+            int threads = 0;
+            try
+            {
+                threads = Integer.parseInt(content.trim());
+            }
+            catch (NumberFormatException ignore)
+            {
+                // handled below
+            }
+            if (threads < 1)
+            {
+                assertionHelper.parseError(unpackThreads, "<unpackthreads> requires a positive integer: " + content);
+            }
+            info.setUnpackThreads(threads);
+        }
+
+        // Skip unchanged files on upgrade
+        IXMLElement deltaUpgrade = root.getFirstChildNamed("deltaupgrade");
+        info.setDeltaUpgrade(deltaUpgrade != null);
+
         // Privileged execution
         IXMLElement privileged = root.getFirstChildNamed("run-privileged");
         info.setRequirePrivilegedExecution(privileged != null);
@@ -3052,6 +3075,7 @@ public class CompilerConfig extends Thread
     {
         TargetFileSet fs = new TargetFileSet();
 
+        fs.setThreads(compilerData.getPackThreads());
         fs.setTargetDir(fileSetNode.getAttribute("targetdir", "${INSTALL_PATH}"));
         List<OsModel> osList = OsConstraintHelper.getOsList(fileSetNode); // TODO: unverified
         fs.setOsList(osList);
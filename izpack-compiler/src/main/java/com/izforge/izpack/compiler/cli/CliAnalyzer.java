@@ -19,6 +19,7 @@
 
 package com.izforge.izpack.compiler.cli;
 
+import java.io.File;
 import java.util.List;
 
 import org.apache.commons.cli.CommandLine;
@@ -45,6 +46,8 @@ public class CliAnalyzer {
     private static final String ARG_OUTPUT = "o";
     private static final String ARG_COMPRESSION_FORMAT = "c";
     private static final String ARG_COMPRESSION_LEVEL = "l";
+    private static final String ARG_PACK_THREADS = "t";
+    private static final String ARG_CACHE = "cache";
 
 
     /**
@@ -63,9 +66,13 @@ public class CliAnalyzer {
         options.addOption(ARG_KIND, true, "kind : indicates the kind of installer to generate, default is standard");
         options.addOption(ARG_OUTPUT, true, "out  : indicates the output file name default is the xml file name\n");
         options.addOption(ARG_COMPRESSION_FORMAT, true, "compression : indicates the compression format to be used for packs " +
-                "default is the internal deflate compression\n");
+                "(default, bzip2, lz4, xz or raw). default is the internal deflate compression\n");
         options.addOption(ARG_COMPRESSION_LEVEL, true, "compression-level : indicates the level for the used compression format"
                 + " if supported. Only integer are valid\n");
+        options.addOption(ARG_PACK_THREADS, true, "threads : indicates the number of threads used to scan filesets, and to write and compress packs, "
+                + "default is the number of available processors\n");
+        options.addOption(ARG_CACHE, true, "cache : indicates the directory used to cache packs between compilations, "
+                + "so that unchanged packs aren't compressed again. Packs are not cached by default\n");
         return options;
     }
 
@@ -109,6 +116,10 @@ public class CliAnalyzer {
         System.out.println("-> Kind        : " + result.getKind());
         System.out.println("-> Compression : " + result.getComprFormat());
         System.out.println("-> Compr. level: " + result.getComprLevel());
+        System.out.println("-> Pack threads: " + result.getPackThreads());
+        if (result.getCacheDir() != null) {
+            System.out.println("-> Pack cache  : " + result.getCacheDir());
+        }
         System.out.println("-> IzPack home : " + CompilerData.IZPACK_HOME);
         System.out.println("");
     }
@@ -164,6 +175,12 @@ public class CliAnalyzer {
         if (commandLine.hasOption(ARG_COMPRESSION_LEVEL)) {
             compilerData.setComprLevel(Integer.parseInt(commandLine.getOptionValue(ARG_COMPRESSION_LEVEL).trim()));
         }
+        if (commandLine.hasOption(ARG_PACK_THREADS)) {
+            compilerData.setPackThreads(Integer.parseInt(commandLine.getOptionValue(ARG_PACK_THREADS).trim()));
+        }
+        if (commandLine.hasOption(ARG_CACHE)) {
+            compilerData.setCacheDir(new File(commandLine.getOptionValue(ARG_CACHE).trim()));
+        }
         if (commandLine.hasOption(ARG_IZPACK_HOME)) {
             CompilerData.setIzpackHome(commandLine.getOptionValue(ARG_IZPACK_HOME).trim());
         }
@@ -22,6 +22,12 @@
 
 package com.izforge.izpack.compiler.compressor;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.tools.bzip2.CBZip2OutputStream;
+
 import com.izforge.izpack.merge.MergeManager;
 
 
@@ -50,5 +56,20 @@ public class BZip2PackCompressor extends PackCompressorBase
         encoderClassName = THIS_ENCODER_CLASS_NAME;
     }
 
+    /* (non-Javadoc)
+     * @see com.izforge.izpack.compressor.PackCompressor#getOutputStream(java.io.OutputStream)
+     */
+
+    public OutputStream getOutputStream(OutputStream os) throws IOException
+    {
+        // The decoder expects the stream to start after the "BZ" magic, which the encoder doesn't write.
+        // The level is the block size in 100k units.
+        int level = getCompressionLevel();
+        if (level < 1 || level > 9)
+        {
+            level = 9;
+        }
+        return new CBZip2OutputStream(new BufferedOutputStream(os), level);
+    }
 
 }
@@ -0,0 +1,84 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.compressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.izforge.izpack.core.io.LZ4InputStream;
+import com.izforge.izpack.core.io.LZ4OutputStream;
+
+
+/**
+ * This class implements the PackCompressor for the compression format "lz4".
+ * <p/>
+ * LZ4 trades compression ratio for speed: packs are larger than with deflate, but decode several times faster.
+ * Packs are split into independent blocks, which are compressed on several threads. The compression level,
+ * from 1 to 9, determines how hard the encoder searches for matches; it doesn't affect decoding speed.
+ * <p/>
+ * The decoder is part of izpack-core, so no additional classes need to be merged into the installer.
+ */
+public class LZ4PackCompressor extends PackCompressorBase
+{
+
+    private static final String[] THIS_FORMAT_NAMES = {"lz4"};
+
+    /**
+     * The no. of threads to compress blocks with.
+     */
+    private final int threads;
+
+
+    /**
+     * Constructs an {@code LZ4PackCompressor}.
+     *
+     * @param threads the no. of threads to compress blocks with
+     */
+    public LZ4PackCompressor(int threads)
+    {
+        this.threads = threads;
+        formatNames = THIS_FORMAT_NAMES;
+        decoderMapper = LZ4InputStream.class.getName();
+        encoderClassName = LZ4OutputStream.class.getName();
+    }
+
+    /**
+     * Returns a stream that compresses to the supplied stream.
+     *
+     * @param os the stream to write to
+     * @return a new compressing stream
+     * @throws IOException for any I/O error
+     */
+    public OutputStream getOutputStream(OutputStream os) throws IOException
+    {
+        return new LZ4OutputStream(os, getCompressionLevel(), threads);
+    }
+
+    /**
+     * Determines if the stream returned by {@link #getOutputStream} needs to be buffered.
+     *
+     * @return {@code false}; the stream buffers whole blocks
+     */
+    @Override
+    public boolean needsBufferedOutputStream()
+    {
+        return false;
+    }
+}
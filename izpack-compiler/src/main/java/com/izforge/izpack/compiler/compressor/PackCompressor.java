@@ -22,6 +22,9 @@
 
 package com.izforge.izpack.compiler.compressor;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
  * IzPack will be able to support different compression methods for the
  * packs included in the installation jar file.
@@ -36,18 +39,15 @@ public interface PackCompressor
     /**
      * Returns a newly created output stream which write method
      * writes the given input encoded to the defined output stream.
-     * Attention! This method will be returned a valid output stream
-     * only if it is used in the IzPack compiler, or if this pack compressor
-     * needs no external classes. A call in the
-     * installation should be throw if external classes are used.
-     * The implementation should load the needed classes via reflection
-     * because classes are not present in the installation.
+     * A new stream is requested for each pack, and closed at the end of the
+     * pack; closing it must finish the encoding but may close the given stream.
+     * If useStandardCompression is true, this method is not used.
      *
      * @param os output stream to be used as listener
      * @return a newly created encoding output stream
-     * @throws Exception
+     * @throws IOException if the stream cannot be created
      */
-//    OutputStream getOutputStream(OutputStream os) throws Exception;
+    OutputStream getOutputStream(OutputStream os) throws IOException;
 
     /**
      * Returns all symbolic names which are used for this compressor.
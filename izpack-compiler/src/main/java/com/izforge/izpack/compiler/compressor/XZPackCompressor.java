@@ -0,0 +1,77 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.compressor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import com.izforge.izpack.merge.MergeManager;
+
+
+/**
+ * This class implements the PackCompressor for the compression format "xz".
+ * <p/>
+ * xz trades encoding speed for compression ratio: packs are smaller than with deflate or bzip2, and decode faster
+ * than bzip2. The compression level is the xz preset, from 0 to 9. Higher presets use a larger dictionary, which
+ * the installer must also allocate when decoding.
+ * <p/>
+ * The decoder, from the pure Java XZ library, is merged into the installer.
+ */
+public class XZPackCompressor extends PackCompressorBase
+{
+
+    private static final String[] THIS_FORMAT_NAMES = {"xz"};
+    private static final String THIS_DECODER_MAPPER = "org.tukaani.xz.XZInputStream";
+    private static final String THIS_ENCODER_CLASS_NAME = "org.tukaani.xz.XZOutputStream";
+
+    /**
+     * Constructs an {@code XZPackCompressor}.
+     *
+     * @param mergeManager the merge manager, used to merge the decoder into the installer
+     */
+    public XZPackCompressor(MergeManager mergeManager)
+    {
+        mergeManager.addResourceToMerge("org/tukaani/xz");
+        formatNames = THIS_FORMAT_NAMES;
+        decoderMapper = THIS_DECODER_MAPPER;
+        encoderClassName = THIS_ENCODER_CLASS_NAME;
+    }
+
+    /**
+     * Returns a stream that compresses to the supplied stream.
+     *
+     * @param os the stream to write to
+     * @return a new compressing stream
+     * @throws IOException for any I/O error
+     */
+    public OutputStream getOutputStream(OutputStream os) throws IOException
+    {
+        int level = getCompressionLevel();
+        if (level < LZMA2Options.PRESET_MIN || level > LZMA2Options.PRESET_MAX)
+        {
+            level = LZMA2Options.PRESET_DEFAULT;
+        }
+        return new XZOutputStream(os, new LZMA2Options(level));
+    }
+
+}
@@ -53,6 +53,7 @@ import com.izforge.izpack.merge.MergeManagerImpl;
 import com.izforge.izpack.util.Platform;
 import com.izforge.izpack.util.PlatformModelMatcher;
 import com.izforge.izpack.util.Platforms;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Container for compiler.
@@ -112,6 +113,7 @@ public class CompilerContainer extends AbstractContainer
                                new ComponentParameter(CompilerContainer.class));
         container.addComponent(PlatformModelMatcher.class);
         addComponent(Platforms.class);
+        addComponent(Metrics.class);
 
         new ResolverContainerFiller().fillContainer(this);
         container.addAdapter(new ProviderAdapter(new XmlCompilerHelperProvider()))
@@ -29,6 +29,7 @@ import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.compiler.util.CompilerClassLoader;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.util.DefaultClassNameMapper;
+import com.izforge.izpack.merge.resolve.ClasspathIndex;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 
 /**
@@ -49,6 +50,22 @@ public class ResolverContainerFiller
         container.addComponent(CompilerClassLoader.class);
         container.addComponent(CompilerPathResolver.class);
         container.addComponent(MergeableResolver.class);
+        indexClasspath();
+    }
+
+    /**
+     * Indexes the classpath searched by the resolvers up front, so that resource lookups made while compiling don't
+     * each search it. Jars unchanged since a previous compilation in the same JVM aren't read again.
+     */
+    private void indexClasspath()
+    {
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader loader = getClass().getClassLoader();
+        ClasspathIndex.refresh(contextLoader);
+        if (loader != contextLoader)
+        {
+            ClasspathIndex.refresh(loader);
+        }
     }
 
     private Properties getPanelDependencies()
@@ -23,8 +23,10 @@ import org.picocontainer.injectors.Provider;
 
 import com.izforge.izpack.compiler.compressor.BZip2PackCompressor;
 import com.izforge.izpack.compiler.compressor.DefaultPackCompressor;
+import com.izforge.izpack.compiler.compressor.LZ4PackCompressor;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.compressor.RawPackCompressor;
+import com.izforge.izpack.compiler.compressor.XZPackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.merge.MergeManager;
 
@@ -38,14 +40,28 @@ public class PackCompressorProvider implements Provider
     public PackCompressor provide(CompilerData compilerData, MergeManager mergeManager)
     {
         String format = compilerData.getComprFormat();
+        PackCompressor compressor;
         if (format.equals("bzip2"))
         {
-            return new BZip2PackCompressor(mergeManager);
+            compressor = new BZip2PackCompressor(mergeManager);
+        }
+        else if (format.equals("lz4"))
+        {
+            compressor = new LZ4PackCompressor(compilerData.getPackThreads());
+        }
+        else if (format.equals("xz"))
+        {
+            compressor = new XZPackCompressor(mergeManager);
         }
         else if (format.equals("raw"))
         {
-            return new RawPackCompressor();
+            compressor = new RawPackCompressor();
+        }
+        else
+        {
+            compressor = new DefaultPackCompressor();
         }
-        return new DefaultPackCompressor();
+        compressor.setCompressionLevel(compilerData.getComprLevel());
+        return compressor;
     }
 }
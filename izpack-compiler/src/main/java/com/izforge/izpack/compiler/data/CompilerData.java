@@ -90,6 +90,16 @@ public class CompilerData
      */
     private int comprLevel = -1;
 
+    /**
+     * The no. of threads used to scan filesets, and to write and compress packs
+     */
+    private int packThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The directory used to cache packs between compilations, or {@code null} if packs aren't cached
+     */
+    private File cacheDir;
+
     /**
      * External Information
      */
@@ -228,6 +238,26 @@ public class CompilerData
         this.comprLevel = comprLevel;
     }
 
+    public int getPackThreads()
+    {
+        return packThreads;
+    }
+
+    public void setPackThreads(int packThreads)
+    {
+        this.packThreads = packThreads;
+    }
+
+    public File getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    public void setCacheDir(File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
     public Info getExternalInfo()
     {
         return this.externalInfo;
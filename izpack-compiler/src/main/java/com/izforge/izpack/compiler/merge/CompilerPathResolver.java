@@ -37,6 +37,7 @@ import com.izforge.izpack.installer.automation.PanelAutomationHelper;
 import com.izforge.izpack.installer.console.AbstractConsolePanel;
 import com.izforge.izpack.installer.gui.IzPanel;
 import com.izforge.izpack.installer.util.PanelHelper;
+import com.izforge.izpack.merge.resolve.ClasspathIndex;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.merge.resolve.PathResolver;
 
@@ -119,7 +120,9 @@ public class CompilerPathResolver extends PathResolver
         Enumeration<URL> urls;
         try
         {
-            urls = getClass().getClassLoader().getResources(destination);
+            ClassLoader loader = getClass().getClassLoader();
+            ClasspathIndex index = ClasspathIndex.getIndex(loader);
+            urls = (index != null) ? index.getResources(destination) : loader.getResources(destination);
         }
         catch (IOException exception)
         {
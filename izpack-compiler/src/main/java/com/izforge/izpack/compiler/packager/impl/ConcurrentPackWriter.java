@@ -0,0 +1,646 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.compiler.compressor.PackCompressor;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * A {@link PackWriter} that writes packs to temporary segments on a pool of worker threads.
+ * <p/>
+ * Segments are requested in pack order via {@link #getSegment(int)}, which schedules the following packs so that
+ * workers stay ahead of the thread splicing the segments into the installer jar. A pack containing back references
+ * waits for the packs it refers to; as these are always scheduled before it, this cannot dead-lock.
+ * <p/>
+ * The workers also do the compression, so that it isn't serialized on the splicing thread:
+ * <ul>
+ * <li>packs using the standard compression may be deflated into one region per block, each of which is spliced into
+ * the installer jar as a pre-compressed entry. As the regions are deflated as the installer jar would deflate them,
+ * the result is identical. A region is deflated by a single worker, as it forms a single deflate stream</li>
+ * <li>packs using another compression are encoded by the {@link PackCompressor}. Each pack is encoded by a separate
+ * stream, so the encoded segment is spliced as is</li>
+ * </ul>
+ */
+class ConcurrentPackWriter extends PackWriter
+{
+
+    /**
+     * The worker threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The maximum no. of segments scheduled ahead of the one being requested.
+     */
+    private final int lookAhead;
+
+    /**
+     * The scheduled segments, in pack order.
+     */
+    private final List<Future<Segment>> segments = new ArrayList<Future<Segment>>();
+
+    /**
+     * The block offsets of the segments being written, keyed on pack index.
+     */
+    private final Map<Integer, List<Long>> blocks = new ConcurrentHashMap<Integer, List<Long>>();
+
+    /**
+     * The pack cache. Cached packs aren't written.
+     */
+    private final PackCache cache;
+
+    /**
+     * The pack compressor.
+     */
+    private final PackCompressor compressor;
+
+    /**
+     * Determines if segments using the standard compression are deflated.
+     */
+    private final boolean deflate;
+
+    /**
+     * The deflate compression level.
+     */
+    private final int level;
+
+    /**
+     * The size of the buffers used to deflate segments.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+
+    /**
+     * Constructs a {@code ConcurrentPackWriter}.
+     *
+     * @param packs      the packs
+     * @param layout     the pack layout
+     * @param blocks     if {@code true}, split segments into blocks before back referenced files
+     * @param threads    the no. of worker threads
+     * @param cache      the pack cache
+     * @param compressor the pack compressor. Segments are encoded by it, unless it uses the standard compression
+     * @param deflate    if {@code true}, deflate segments using the standard compression into regions
+     * @param level      the deflate compression level
+     */
+    public ConcurrentPackWriter(List<PackInfo> packs, PackLayout layout, boolean blocks, int threads,
+                                PackCache cache, PackCompressor compressor, boolean deflate, int level)
+    {
+        super(packs, layout, blocks);
+        this.cache = cache;
+        this.compressor = compressor;
+        this.deflate = deflate;
+        this.level = level;
+        executor = Executors.newFixedThreadPool(threads);
+        lookAhead = threads * 2;
+    }
+
+    /**
+     * Returns the segment for a pack, waiting for it to be written if necessary.
+     * <p/>
+     * Segments must be requested in pack order.
+     *
+     * @param index the pack index
+     * @return the pack segment
+     * @throws IOException if the segment could not be written
+     */
+    public Segment getSegment(int index) throws IOException
+    {
+        int last = Math.min(getPacks().size() - 1, index + lookAhead);
+        Future<Segment> future;
+        synchronized (segments)
+        {
+            for (int i = segments.size(); i <= last; ++i)
+            {
+                segments.add(executor.submit(new SegmentWriter(i)));
+            }
+            future = segments.get(index);
+        }
+        return get(future);
+    }
+
+    /**
+     * Stops the worker threads, discarding any segment not yet retrieved.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        try
+        {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (segments)
+        {
+            for (Future<Segment> future : segments)
+            {
+                if (future.isDone() && !future.isCancelled())
+                {
+                    try
+                    {
+                        future.get().delete();
+                    }
+                    catch (Exception ignore)
+                    {
+                        // the segment was never written
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the byte offsets of the files stored in a pack that has been, or is being, written.
+     * <p/>
+     * If the pack is still being written, this blocks until it is complete.
+     *
+     * @param index the pack index
+     * @return the byte offsets of the files stored in the pack, keyed on pack file
+     * @throws IOException if the pack could not be written
+     */
+    @Override
+    protected Map<PackFile, Long> getOffsets(int index) throws IOException
+    {
+        Future<Segment> future;
+        synchronized (segments)
+        {
+            future = segments.get(index);
+        }
+        return get(future).getOffsets();
+    }
+
+    /**
+     * Records the start of a block in the segment being written.
+     *
+     * @param index  the pack index
+     * @param offset the byte offset of the block in the pack stream
+     */
+    @Override
+    protected void startBlock(int index, long offset)
+    {
+        blocks.get(index).add(offset);
+    }
+
+    /**
+     * Waits for a segment to be written.
+     *
+     * @param future the segment future
+     * @return the segment
+     * @throws IOException if the segment could not be written
+     */
+    private Segment get(Future<Segment> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing packs", exception);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to write pack", cause);
+        }
+    }
+
+    /**
+     * A pack written to temporary files, or the offsets of a cached pack.
+     */
+    public static class Segment
+    {
+
+        /**
+         * The temporary file holding the pack stream, or {@code null} if the pack is cached, or it has been deflated
+         * and isn't needed to create a cache entry.
+         */
+        private final File file;
+
+        /**
+         * Determines if the pack stream has been encoded by the pack compressor.
+         */
+        private final boolean encoded;
+
+        /**
+         * The temporary file holding the deflated regions, or {@code null} if the pack hasn't been deflated.
+         */
+        private final File deflated;
+
+        /**
+         * The deflated regions, or {@code null} if the pack hasn't been deflated.
+         */
+        private final List<Region> regions;
+
+        /**
+         * The byte offsets of the files stored in the pack.
+         */
+        private final Map<PackFile, Long> offsets;
+
+        /**
+         * The byte offsets at which blocks start.
+         */
+        private final List<Long> blocks;
+
+        /**
+         * Constructs a {@code Segment}.
+         *
+         * @param file     the temporary file holding the pack stream. May be {@code null}
+         * @param encoded  if {@code true}, the pack stream has been encoded by the pack compressor
+         * @param deflated the temporary file holding the deflated regions. May be {@code null}
+         * @param regions  the deflated regions. May be {@code null}
+         * @param offsets  the byte offsets of the files stored in the pack
+         * @param blocks   the byte offsets at which blocks start
+         */
+        public Segment(File file, boolean encoded, File deflated, List<Region> regions, Map<PackFile, Long> offsets,
+                       List<Long> blocks)
+        {
+            this.file = file;
+            this.encoded = encoded;
+            this.deflated = deflated;
+            this.regions = regions;
+            this.offsets = offsets;
+            this.blocks = blocks;
+        }
+
+        /**
+         * Returns the byte offsets of the files stored in the pack.
+         *
+         * @return the byte offsets, keyed on pack file
+         */
+        public Map<PackFile, Long> getOffsets()
+        {
+            return offsets;
+        }
+
+        /**
+         * Returns the byte offsets at which blocks start.
+         *
+         * @return the block offsets, in increasing order
+         */
+        public List<Long> getBlocks()
+        {
+            return blocks;
+        }
+
+        /**
+         * Determines if the pack stream has been encoded by the pack compressor.
+         *
+         * @return {@code true} if the pack stream is encoded
+         */
+        public boolean isEncoded()
+        {
+            return encoded;
+        }
+
+        /**
+         * Returns the deflated regions of the pack stream. The first starts the pack, the remainder each start a
+         * block.
+         *
+         * @return the deflated regions, in order, or {@code null} if the pack hasn't been deflated
+         */
+        public List<Region> getRegions()
+        {
+            return regions;
+        }
+
+        /**
+         * Opens a stream to the pack stream.
+         *
+         * @return a new stream
+         * @throws IOException for any I/O error, or if the pack stream hasn't been retained
+         */
+        public InputStream open() throws IOException
+        {
+            if (file == null)
+            {
+                throw new IOException("Pack stream not retained");
+            }
+            return new FileInputStream(file);
+        }
+
+        /**
+         * Opens a stream to the deflated regions, concatenated in order.
+         *
+         * @return a new stream
+         * @throws IOException for any I/O error, or if the pack hasn't been deflated
+         */
+        public InputStream openDeflated() throws IOException
+        {
+            if (deflated == null)
+            {
+                throw new IOException("Pack not deflated");
+            }
+            return new FileInputStream(deflated);
+        }
+
+        /**
+         * Deletes the temporary files.
+         */
+        public void delete()
+        {
+            ConcurrentPackWriter.delete(file);
+            ConcurrentPackWriter.delete(deflated);
+        }
+    }
+
+    /**
+     * A region of a pack stream, deflated independently of the other regions.
+     */
+    public static class Region
+    {
+
+        /**
+         * The byte offset of the region in the pack stream.
+         */
+        private final long offset;
+
+        /**
+         * The uncompressed size of the region.
+         */
+        private final long size;
+
+        /**
+         * The CRC-32 of the uncompressed region.
+         */
+        private final long crc;
+
+        /**
+         * The deflated size of the region.
+         */
+        private final long compressedSize;
+
+        /**
+         * Constructs a {@code Region}.
+         *
+         * @param offset         the byte offset of the region in the pack stream
+         * @param size           the uncompressed size of the region
+         * @param crc            the CRC-32 of the uncompressed region
+         * @param compressedSize the deflated size of the region
+         */
+        public Region(long offset, long size, long crc, long compressedSize)
+        {
+            this.offset = offset;
+            this.size = size;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * Returns the byte offset of the region in the pack stream.
+         *
+         * @return the byte offset
+         */
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * Returns the uncompressed size of the region.
+         *
+         * @return the uncompressed size
+         */
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the CRC-32 of the uncompressed region.
+         *
+         * @return the CRC-32
+         */
+        public long getCrc()
+        {
+            return crc;
+        }
+
+        /**
+         * Returns the deflated size of the region.
+         *
+         * @return the deflated size
+         */
+        public long getCompressedSize()
+        {
+            return compressedSize;
+        }
+    }
+
+    /**
+     * Deletes a temporary file.
+     *
+     * @param file the file to delete. May be {@code null}
+     */
+    private static void delete(File file)
+    {
+        if (file != null && file.exists() && !file.delete())
+        {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Writes a pack to temporary files, unless it is cached.
+     */
+    private class SegmentWriter implements Callable<Segment>
+    {
+
+        /**
+         * The pack index.
+         */
+        private final int index;
+
+        /**
+         * Constructs a {@code SegmentWriter}.
+         *
+         * @param index the pack index
+         */
+        public SegmentWriter(int index)
+        {
+            this.index = index;
+        }
+
+        /**
+         * Writes the pack.
+         *
+         * @return the pack segment
+         * @throws IOException for any I/O error
+         */
+        @Override
+        public Segment call() throws IOException
+        {
+            PackCache.Entry entry = cache.get(index);
+            if (entry != null)
+            {
+                return new Segment(null, false, null, null, entry.getOffsets(getPacks().get(index)),
+                                   entry.getBlocks());
+            }
+            boolean encode = !compressor.useStandardCompression();
+            File file = FileUtils.createTempFile("pack-" + index + "-", ".seg");
+            File deflated = null;
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            boolean written = false;
+            List<Long> starts = new ArrayList<Long>();
+            blocks.put(index, starts);
+            try
+            {
+                OutputStream packStream = encode ? compressor.getOutputStream(out) : out;
+                Map<PackFile, Long> offsets = write(index, packStream);
+                packStream.close();
+                out.close();
+
+                List<Region> regions = null;
+                if (deflate && !encode)
+                {
+                    deflated = FileUtils.createTempFile("pack-" + index + "-", ".def");
+                    regions = deflate(file, starts, deflated);
+                    if (!cache.isEnabled())
+                    {
+                        // the pack stream is only needed to create the cache entry
+                        delete(file);
+                        file = null;
+                    }
+                }
+                written = true;
+                return new Segment(file, encode, deflated, regions, offsets, starts);
+            }
+            finally
+            {
+                blocks.remove(index);
+                if (!written)
+                {
+                    FileUtils.close(out);
+                    delete(file);
+                    delete(deflated);
+                }
+            }
+        }
+
+        /**
+         * Deflates a pack stream into one region per block.
+         * <p/>
+         * Each region is deflated without a zlib header, as the installer jar deflates its entries.
+         *
+         * @param file   the file holding the pack stream
+         * @param starts the byte offsets at which blocks start
+         * @param target the file to write the deflated regions to
+         * @return the deflated regions, in order
+         * @throws IOException for any I/O error
+         */
+        private List<Region> deflate(File file, List<Long> starts, File target) throws IOException
+        {
+            List<Long> ends = new ArrayList<Long>(starts);
+            ends.add(file.length());
+            List<Region> regions = new ArrayList<Region>();
+            InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            OutputStream out = null;
+            Deflater deflater = new Deflater(level, true);
+            try
+            {
+                out = new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE);
+                byte[] input = new byte[BUFFER_SIZE];
+                byte[] output = new byte[BUFFER_SIZE];
+                long position = 0;
+                for (long end : ends)
+                {
+                    CRC32 crc = new CRC32();
+                    long compressedSize = 0;
+                    long remaining = end - position;
+                    while (remaining > 0)
+                    {
+                        int read = in.read(input, 0, (int) Math.min(input.length, remaining));
+                        if (read == -1)
+                        {
+                            throw new EOFException("Unexpected end of pack stream " + file);
+                        }
+                        crc.update(input, 0, read);
+                        deflater.setInput(input, 0, read);
+                        while (!deflater.needsInput())
+                        {
+                            int count = deflater.deflate(output);
+                            out.write(output, 0, count);
+                            compressedSize += count;
+                        }
+                        remaining -= read;
+                    }
+                    deflater.finish();
+                    while (!deflater.finished())
+                    {
+                        int count = deflater.deflate(output);
+                        out.write(output, 0, count);
+                        compressedSize += count;
+                    }
+                    deflater.reset();
+                    regions.add(new Region(position, end - position, crc.getValue(), compressedSize));
+                    position = end;
+                }
+                out.close();
+            }
+            finally
+            {
+                deflater.end();
+                FileUtils.close(in);
+                FileUtils.close(out);
+            }
+            return regions;
+        }
+    }
+}
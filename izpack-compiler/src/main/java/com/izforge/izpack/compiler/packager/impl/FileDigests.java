@@ -0,0 +1,226 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.util.FileUtil;
+
+
+/**
+ * Provides the {@link FileUtil#DIGEST_ALGORITHM} digests of source files.
+ * <p/>
+ * Digests are cached on the path, length and modification time of a file, so each file is only read once. If a
+ * cache file is supplied, digests are retained between compilations, so unchanged files aren't read again.
+ */
+class FileDigests
+{
+
+    /**
+     * The cache file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The cache file, or {@code null} if digests are not retained.
+     */
+    private final File file;
+
+    /**
+     * The cached digests, keyed on absolute path.
+     */
+    private final Map<String, Digest> digests = new HashMap<String, Digest>();
+
+    /**
+     * Determines if a digest has been added since the cache was loaded.
+     */
+    private boolean modified;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(FileDigests.class.getName());
+
+
+    /**
+     * Constructs a {@code FileDigests} that doesn't retain digests between compilations.
+     */
+    public FileDigests()
+    {
+        this(null);
+    }
+
+    /**
+     * Constructs a {@code FileDigests}.
+     * <p/>
+     * If the cache file exists, the digests it contains are loaded. A cache file that cannot be read is ignored.
+     *
+     * @param file the cache file. May be {@code null}
+     */
+    public FileDigests(File file)
+    {
+        this.file = file;
+        if (file != null && file.exists())
+        {
+            try
+            {
+                load();
+            }
+            catch (IOException exception)
+            {
+                logger.warning("Ignoring file digest cache " + file + ": " + exception.getMessage());
+                digests.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the digest of a file.
+     *
+     * @param file the file
+     * @return the digest, as a lower case hexadecimal string
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized String getDigest(File file) throws IOException
+    {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Digest digest = digests.get(path);
+        if (digest == null || digest.length != length || digest.lastModified != lastModified)
+        {
+            digest = new Digest(length, lastModified, FileUtil.getFileDigest(file));
+            digests.put(path, digest);
+            modified = true;
+        }
+        return digest.value;
+    }
+
+    /**
+     * Saves the digests to the cache file, if any were added.
+     *
+     * @throws IOException for any I/O error
+     */
+    public synchronized void save() throws IOException
+    {
+        if (file == null || !modified)
+        {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try
+        {
+            out.writeInt(VERSION);
+            out.writeInt(digests.size());
+            for (Map.Entry<String, Digest> entry : digests.entrySet())
+            {
+                Digest digest = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(digest.length);
+                out.writeLong(digest.lastModified);
+                out.writeUTF(digest.value);
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        if ((file.exists() && !file.delete()) || !temp.renameTo(file))
+        {
+            throw new IOException("Failed to replace " + file);
+        }
+        modified = false;
+    }
+
+    /**
+     * Loads the digests from the cache file.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void load() throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            int version = in.readInt();
+            if (version != VERSION)
+            {
+                throw new IOException("Unsupported version: " + version);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i)
+            {
+                String path = in.readUTF();
+                digests.put(path, new Digest(in.readLong(), in.readLong(), in.readUTF()));
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * The digest of a file, along with the file attributes it was calculated for.
+     */
+    private static class Digest
+    {
+
+        /**
+         * The file length.
+         */
+        private final long length;
+
+        /**
+         * The file modification time.
+         */
+        private final long lastModified;
+
+        /**
+         * The digest.
+         */
+        private final String value;
+
+        /**
+         * Constructs a {@code Digest}.
+         *
+         * @param length       the file length
+         * @param lastModified the file modification time
+         * @param value        the digest
+         */
+        public Digest(long length, long lastModified, String value)
+        {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+    }
+}
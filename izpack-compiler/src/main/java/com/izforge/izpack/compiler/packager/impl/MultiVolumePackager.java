@@ -50,6 +50,7 @@ import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.metrics.Metrics;
 
 
 /**
@@ -116,14 +117,15 @@ public class MultiVolumePackager extends PackagerBase
      * @param mergeableResolver the mergeable resolver
      * @param compressor        the pack compressor
      * @param compilerData      the compiler data
+     * @param metrics           the metrics
      */
     public MultiVolumePackager(Properties properties, PackagerListener listener, JarOutputStream installerJar,
                                MergeManager mergeManager, CompilerPathResolver pathResolver,
                                MergeableResolver mergeableResolver, PackCompressor compressor,
-                               CompilerData compilerData)
+                               CompilerData compilerData, Metrics metrics)
     {
         super(properties, listener, installerJar, mergeManager, pathResolver, mergeableResolver, compressor,
-              compilerData);
+              compilerData, metrics);
     }
 
     /**
@@ -194,6 +196,8 @@ public class MultiVolumePackager extends PackagerBase
         logger.fine("First volume size: " + maxFirstVolumeSize);
         logger.fine("Subsequent volume size: " + maxVolumeSize);
 
+        addDigests(packs, new FileDigests());
+
         File volume = new File(getInfo().getInstallerBase() + ".pak").getAbsoluteFile();
         int volumes = writePacks(packs, volume);
 
@@ -0,0 +1,393 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.Pack200;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Writes the <em>packs/pack200-N</em> entries of the installer jar.
+ * <p/>
+ * Jars are packed to temporary files by a pool of worker threads, and copied into the installer jar in entry order,
+ * so the result is the same as if they were packed serially. Workers are kept a bounded no. of entries ahead of the
+ * entry being copied, to limit the temporary space used.
+ * <p/>
+ * If the JVM has no Pack200 engine, each jar is instead re-compressed at maximum deflate. The installer recognises
+ * these entries by their zip signature.
+ */
+class Pack200Writer
+{
+
+    /**
+     * The jars to pack, keyed and ordered on entry identifier.
+     */
+    private final Map<Integer, File> jars;
+
+    /**
+     * The no. of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Determines if the JVM supports Pack200.
+     */
+    private final boolean pack200;
+
+
+    /**
+     * Constructs a {@code Pack200Writer}.
+     *
+     * @param jars    the jars to pack, keyed and ordered on entry identifier
+     * @param threads the no. of worker threads
+     */
+    public Pack200Writer(Map<Integer, File> jars, int threads)
+    {
+        this(jars, threads, isPack200Supported());
+    }
+
+    /**
+     * Constructs a {@code Pack200Writer}.
+     *
+     * @param jars    the jars to pack, keyed and ordered on entry identifier
+     * @param threads the no. of worker threads
+     * @param pack200 if {@code true}, pack the jars using Pack200, otherwise re-compress them
+     */
+    Pack200Writer(Map<Integer, File> jars, int threads, boolean pack200)
+    {
+        this.jars = jars;
+        this.threads = Math.max(1, threads);
+        this.pack200 = pack200;
+    }
+
+    /**
+     * Determines if the jars are packed using Pack200.
+     *
+     * @return {@code true} if the jars are packed using Pack200, {@code false} if they are re-compressed
+     */
+    public boolean isPack200()
+    {
+        return pack200;
+    }
+
+    /**
+     * Writes the entries.
+     *
+     * @param writer the writer of the entries to the installer jar
+     * @throws IOException for any I/O error
+     */
+    public void write(EntryWriter writer) throws IOException
+    {
+        if (jars.isEmpty())
+        {
+            return;
+        }
+        List<Integer> keys = new ArrayList<Integer>(jars.keySet());
+        List<Future<File>> packed = new ArrayList<Future<File>>();
+        int lookAhead = threads * 2;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack Pack200 packer " + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        int next = 0;
+        try
+        {
+            for (int i = 0; i < keys.size(); ++i)
+            {
+                for (; next < keys.size() && next <= i + lookAhead; ++next)
+                {
+                    packed.add(executor.submit(new Packer(jars.get(keys.get(next)))));
+                }
+                File file = get(packed.get(i));
+                InputStream in = new FileInputStream(file);
+                try
+                {
+                    writer.write(keys.get(i), in);
+                }
+                finally
+                {
+                    FileUtils.close(in);
+                    FileUtils.delete(file);
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+            try
+            {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+            for (Future<File> future : packed)
+            {
+                if (future.isDone())
+                {
+                    try
+                    {
+                        FileUtils.delete(future.get());
+                    }
+                    catch (Exception ignore)
+                    {
+                        // the jar failed to pack
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if the JVM supports Pack200. It was removed in Java 14.
+     *
+     * @return {@code true} if the JVM supports Pack200
+     */
+    public static boolean isPack200Supported()
+    {
+        try
+        {
+            Class.forName("java.util.jar.Pack200");
+            return true;
+        }
+        catch (ClassNotFoundException exception)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Waits for a jar to be packed.
+     *
+     * @param future the packed jar
+     * @return the packed jar
+     * @throws IOException if the jar could not be packed
+     */
+    private File get(Future<File> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while packing jars", exception);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to pack jar", cause);
+        }
+    }
+
+    /**
+     * Creates an aggressive Pack200 packer. Packers aren't thread safe, so each jar uses its own.
+     *
+     * @return a new packer
+     */
+    private static Pack200.Packer createAgressivePack200Packer()
+    {
+        Pack200.Packer packer = Pack200.newPacker();
+        Map<String, String> packerProperties = packer.properties();
+        packerProperties.put(Pack200.Packer.EFFORT, "9");
+        packerProperties.put(Pack200.Packer.SEGMENT_LIMIT, "-1");
+        packerProperties.put(Pack200.Packer.KEEP_FILE_ORDER, Pack200.Packer.FALSE);
+        packerProperties.put(Pack200.Packer.DEFLATE_HINT, Pack200.Packer.FALSE);
+        packerProperties.put(Pack200.Packer.MODIFICATION_TIME, Pack200.Packer.LATEST);
+        packerProperties.put(Pack200.Packer.CODE_ATTRIBUTE_PFX + "LineNumberTable", Pack200.Packer.STRIP);
+        packerProperties.put(Pack200.Packer.CODE_ATTRIBUTE_PFX + "LocalVariableTable", Pack200.Packer.STRIP);
+        packerProperties.put(Pack200.Packer.CODE_ATTRIBUTE_PFX + "SourceFile", Pack200.Packer.STRIP);
+        return packer;
+    }
+
+    /**
+     * Writes packed jars to the installer jar.
+     */
+    interface EntryWriter
+    {
+
+        /**
+         * Writes a packed jar.
+         *
+         * @param key the Pack200 entry identifier
+         * @param in  the packed jar
+         * @throws IOException for any I/O error
+         */
+        void write(int key, InputStream in) throws IOException;
+    }
+
+    /**
+     * Packs a jar to a temporary file.
+     */
+    private class Packer implements Callable<File>
+    {
+
+        /**
+         * The jar to pack.
+         */
+        private final File jar;
+
+        /**
+         * Constructs a {@code Packer}.
+         *
+         * @param jar the jar to pack
+         */
+        public Packer(File jar)
+        {
+            this.jar = jar;
+        }
+
+        /**
+         * Packs the jar.
+         *
+         * @return the packed jar
+         * @throws IOException for any I/O error
+         */
+        @Override
+        public File call() throws IOException
+        {
+            File file = FileUtils.createTempFile("pack200-", ".tmp");
+            OutputStream out = null;
+            boolean written = false;
+            try
+            {
+                out = new BufferedOutputStream(new FileOutputStream(file));
+                if (pack200)
+                {
+                    pack(out);
+                }
+                else
+                {
+                    deflate(out);
+                }
+                out.close();
+                written = true;
+                return file;
+            }
+            finally
+            {
+                if (!written)
+                {
+                    FileUtils.close(out);
+                    FileUtils.delete(file);
+                }
+            }
+        }
+
+        /**
+         * Packs the jar using Pack200.
+         *
+         * @param out the stream to write to
+         * @throws IOException for any I/O error
+         */
+        private void pack(OutputStream out) throws IOException
+        {
+            JarFile jarFile = new JarFile(jar);
+            try
+            {
+                createAgressivePack200Packer().pack(jarFile, out);
+            }
+            finally
+            {
+                jarFile.close();
+            }
+        }
+
+        /**
+         * Re-compresses the jar at maximum deflate, preserving its entry order.
+         *
+         * @param out the stream to write to
+         * @throws IOException for any I/O error
+         */
+        private void deflate(OutputStream out) throws IOException
+        {
+            ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(jar)));
+            try
+            {
+                ZipOutputStream zip = new ZipOutputStream(out);
+                zip.setLevel(Deflater.BEST_COMPRESSION);
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null)
+                {
+                    ZipEntry copy = new ZipEntry(entry.getName());
+                    copy.setTime(entry.getTime());
+                    copy.setComment(entry.getComment());
+                    copy.setExtra(entry.getExtra());
+                    zip.putNextEntry(copy);
+                    IOUtils.copy(in, zip);
+                    zip.closeEntry();
+                }
+                zip.finish();
+            }
+            finally
+            {
+                FileUtils.close(in);
+            }
+        }
+    }
+}
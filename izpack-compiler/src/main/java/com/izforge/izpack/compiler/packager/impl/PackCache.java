@@ -0,0 +1,587 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.core.io.ByteCountingOutputStream;
+import com.izforge.izpack.core.io.PackFormat;
+import com.izforge.izpack.core.io.PackOutputStream;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+import com.izforge.izpack.util.FileUtil;
+
+
+/**
+ * An on-disk cache of the pack entries written to installer jars, so that packs that haven't changed since a
+ * previous compilation don't need to be read and compressed again.
+ * <p/>
+ * Each pack is keyed on a digest of everything that determines the bytes written for it: the pack file meta-data,
+ * the content digests of the stored files, where back referenced content is stored, the parsable, executable and
+ * update check definitions, and the compressor settings. A pack containing back references to other packs also
+ * includes the keys of those packs, as the referenced offsets depend on their content.
+ * <p/>
+ * An entry holds the bytes written to the installer jar entry of a pack, followed by the offsets of its stored files
+ * and blocks. If the pack is compressed by the installer jar, this is the uncompressed pack stream, otherwise it is
+ * the output of the pack compressor.
+ * <p/>
+ * Entries not used for {@link #MAX_AGE_DAYS} days are removed.
+ */
+class PackCache
+{
+
+    /**
+     * The cache format version. This must be changed whenever the bytes written for a pack change for the same key.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The no. of days after which unused entries are removed.
+     */
+    private static final int MAX_AGE_DAYS = 30;
+
+    /**
+     * The entry file suffix.
+     */
+    private static final String SUFFIX = ".pack";
+
+    /**
+     * The cache directory, or {@code null} if caching is disabled.
+     */
+    private final File dir;
+
+    /**
+     * The source file digests.
+     */
+    private final FileDigests digests;
+
+    /**
+     * The pack keys, in pack order.
+     */
+    private final List<String> keys = new ArrayList<String>();
+
+    /**
+     * The cached entries, in pack order. Packs that aren't cached have {@code null} entries.
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(PackCache.class.getName());
+
+
+    /**
+     * Constructs a {@code PackCache}.
+     *
+     * @param dir the cache directory. If {@code null}, caching is disabled
+     * @throws IOException if the cache directory cannot be created
+     */
+    public PackCache(File dir) throws IOException
+    {
+        this.dir = dir;
+        if (dir != null)
+        {
+            if (!dir.isDirectory() && !dir.mkdirs())
+            {
+                throw new IOException("Failed to create pack cache directory: " + dir);
+            }
+            digests = new FileDigests(new File(dir, "digests"));
+        }
+        else
+        {
+            digests = new FileDigests();
+        }
+    }
+
+    /**
+     * Determines if caching is enabled.
+     *
+     * @return {@code true} if caching is enabled
+     */
+    public boolean isEnabled()
+    {
+        return dir != null;
+    }
+
+    /**
+     * Returns the source file digests.
+     * <p/>
+     * If caching is enabled, these are retained between compilations.
+     *
+     * @return the source file digests
+     */
+    public FileDigests getDigests()
+    {
+        return digests;
+    }
+
+    /**
+     * Determines the keys of the packs, and looks up their cached entries.
+     *
+     * @param packs    the packs
+     * @param layout   the pack layout
+     * @param settings the compressor settings
+     * @throws IOException for any I/O error
+     */
+    public void load(List<PackInfo> packs, PackLayout layout, String settings) throws IOException
+    {
+        if (!isEnabled())
+        {
+            return;
+        }
+        Map<PackFile, Integer> positions = new HashMap<PackFile, Integer>();
+        for (PackInfo packInfo : packs)
+        {
+            int position = 0;
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                positions.put(packFile, position++);
+            }
+        }
+        for (int i = 0; i < packs.size(); ++i)
+        {
+            String key = getKey(i, packs, layout, settings, positions);
+            keys.add(key);
+            entries.add(read(new File(dir, key + SUFFIX)));
+        }
+    }
+
+    /**
+     * Returns the cached entry of a pack.
+     *
+     * @param index the pack index
+     * @return the cached entry, or {@code null} if the pack isn't cached
+     */
+    public Entry get(int index)
+    {
+        return isEnabled() ? entries.get(index) : null;
+    }
+
+    /**
+     * Creates a writer for the cache entry of a pack.
+     *
+     * @param index the pack index
+     * @return a new writer, or {@code null} if caching is disabled
+     * @throws IOException for any I/O error
+     */
+    public Writer create(int index) throws IOException
+    {
+        return isEnabled() ? new Writer(new File(dir, keys.get(index) + SUFFIX)) : null;
+    }
+
+    /**
+     * Saves the source file digests, and removes entries that haven't been used for {@link #MAX_AGE_DAYS} days.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void save() throws IOException
+    {
+        if (!isEnabled())
+        {
+            return;
+        }
+        digests.save();
+        long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_AGE_DAYS);
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.getName().endsWith(SUFFIX) && file.lastModified() < expiry && !file.delete())
+                {
+                    logger.warning("Failed to remove expired pack cache entry: " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines the key of a pack.
+     *
+     * @param index     the pack index
+     * @param packs     the packs
+     * @param layout    the pack layout
+     * @param settings  the compressor settings
+     * @param positions the positions of pack files within their pack
+     * @return the pack key
+     * @throws IOException for any I/O error
+     */
+    private String getKey(int index, List<PackInfo> packs, PackLayout layout, String settings,
+                          Map<PackFile, Integer> positions) throws IOException
+    {
+        PackInfo packInfo = packs.get(index);
+        MessageDigest digest = FileUtil.createDigest();
+        PackOutputStream out = new PackOutputStream(new DigestOutputStream(new NullOutputStream(), digest));
+        out.writeInt(VERSION);
+        out.writeInt(PackFormat.BINARY);
+        out.writeUTF(settings);
+        out.writeUTF(packInfo.getPack().getName());
+
+        // encode the pack file meta-data as it is written, so that the string table is taken into account
+        out.writeCount(packInfo.getPackFiles().size());
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            out.writePackFile(packFile);
+            PackFile reference = layout.getReference(packFile);
+            if (reference != null)
+            {
+                int source = layout.getPackIndex(reference);
+                out.writeInt(source);
+                out.writeInt(positions.get(reference));
+                out.writeUTF(source != index ? keys.get(source) : "");
+            }
+            else if (layout.isStored(packFile))
+            {
+                out.writeBoolean(layout.isReferenced(packFile));
+                Integer pack200Id = layout.getPack200Id(packFile);
+                if (pack200Id != null)
+                {
+                    out.writeInt(pack200Id);
+                }
+                else
+                {
+                    out.writeUTF(digests.getDigest(packInfo.getFile(packFile)));
+                }
+            }
+        }
+
+        out.writeCount(packInfo.getParsables().size());
+        for (ParsableFile parsableFile : packInfo.getParsables())
+        {
+            out.writeParsableFile(parsableFile);
+        }
+        out.writeCount(packInfo.getExecutables().size());
+        for (ExecutableFile executableFile : packInfo.getExecutables())
+        {
+            out.writeExecutableFile(executableFile);
+        }
+        out.writeCount(packInfo.getUpdateChecks().size());
+        for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+        {
+            out.writeUpdateCheck(updateCheck);
+        }
+        out.flush();
+        return FileUtil.toHex(digest.digest());
+    }
+
+    /**
+     * Reads the offsets of a cached entry, and marks it as used.
+     *
+     * @param file the entry file
+     * @return the entry, or {@code null} if it doesn't exist or cannot be read
+     */
+    private Entry read(File file)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        Entry result = null;
+        try
+        {
+            long length;
+            RandomAccessFile access = new RandomAccessFile(file, "r");
+            try
+            {
+                access.seek(access.length() - 8);
+                length = access.readLong();
+            }
+            finally
+            {
+                access.close();
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                IOUtils.skipFully(in, length);
+                if (in.readInt() != VERSION)
+                {
+                    throw new IOException("Unsupported version");
+                }
+                Map<Integer, Long> offsets = new HashMap<Integer, Long>();
+                for (int i = in.readInt(); i > 0; --i)
+                {
+                    offsets.put(in.readInt(), in.readLong());
+                }
+                List<Long> blocks = new ArrayList<Long>();
+                for (int i = in.readInt(); i > 0; --i)
+                {
+                    blocks.add(in.readLong());
+                }
+                result = new Entry(file, length, offsets, blocks);
+            }
+            finally
+            {
+                in.close();
+            }
+            if (!file.setLastModified(System.currentTimeMillis()))
+            {
+                logger.fine("Failed to update modification time of " + file);
+            }
+        }
+        catch (IOException exception)
+        {
+            logger.warning("Ignoring pack cache entry " + file + ": " + exception.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * A cached pack entry.
+     */
+    public static class Entry
+    {
+
+        /**
+         * The entry file.
+         */
+        private final File file;
+
+        /**
+         * The no. of bytes of the pack entry.
+         */
+        private final long length;
+
+        /**
+         * The byte offsets of the files stored in the pack, keyed on their position in the pack.
+         */
+        private final Map<Integer, Long> offsets;
+
+        /**
+         * The byte offsets at which blocks start.
+         */
+        private final List<Long> blocks;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param file    the entry file
+         * @param length  the no. of bytes of the pack entry
+         * @param offsets the byte offsets of the files stored in the pack, keyed on their position in the pack
+         * @param blocks  the byte offsets at which blocks start
+         */
+        public Entry(File file, long length, Map<Integer, Long> offsets, List<Long> blocks)
+        {
+            this.file = file;
+            this.length = length;
+            this.offsets = offsets;
+            this.blocks = blocks;
+        }
+
+        /**
+         * Returns the no. of bytes of the pack entry.
+         *
+         * @return the no. of bytes
+         */
+        public long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * Returns the byte offsets of the files stored in the pack.
+         *
+         * @param packInfo the pack
+         * @return the byte offsets, keyed on pack file
+         */
+        public Map<PackFile, Long> getOffsets(PackInfo packInfo)
+        {
+            Map<PackFile, Long> result = new HashMap<PackFile, Long>();
+            int position = 0;
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                Long offset = offsets.get(position++);
+                if (offset != null)
+                {
+                    result.put(packFile, offset);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the byte offsets at which blocks start.
+         *
+         * @return the block offsets, in increasing order
+         */
+        public List<Long> getBlocks()
+        {
+            return Collections.unmodifiableList(blocks);
+        }
+
+        /**
+         * Opens a stream to the entry. The stream returns the pack entry, followed by the entry offsets.
+         *
+         * @return a new stream
+         * @throws IOException for any I/O error
+         */
+        public InputStream open() throws IOException
+        {
+            return new FileInputStream(file);
+        }
+    }
+
+    /**
+     * Writes a cache entry.
+     * <p/>
+     * The entry is written to a temporary file, and only replaces any existing entry when {@link #commit committed}.
+     * Closing an uncommitted writer discards the entry.
+     */
+    public static class Writer extends OutputStream
+    {
+
+        /**
+         * The entry file.
+         */
+        private final File file;
+
+        /**
+         * The temporary file.
+         */
+        private final File temp;
+
+        /**
+         * The stream to the temporary file.
+         */
+        private final ByteCountingOutputStream out;
+
+        /**
+         * Determines if the entry has been committed.
+         */
+        private boolean committed;
+
+        /**
+         * Constructs a {@code Writer}.
+         *
+         * @param file the entry file
+         * @throws IOException if the temporary file cannot be created
+         */
+        public Writer(File file) throws IOException
+        {
+            this.file = file;
+            temp = File.createTempFile("pack-", ".tmp", file.getParentFile());
+            out = new ByteCountingOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        /**
+         * Completes the entry, and replaces any existing entry with it.
+         *
+         * @param packInfo the pack
+         * @param offsets  the byte offsets of the files stored in the pack, keyed on pack file
+         * @param blocks   the byte offsets at which blocks start. May be {@code null}
+         * @throws IOException for any I/O error
+         */
+        public void commit(PackInfo packInfo, Map<PackFile, Long> offsets, List<Long> blocks) throws IOException
+        {
+            long length = out.getByteCount();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(VERSION);
+            data.writeInt(offsets.size());
+            int position = 0;
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                Long offset = offsets.get(packFile);
+                if (offset != null)
+                {
+                    data.writeInt(position);
+                    data.writeLong(offset);
+                }
+                ++position;
+            }
+            data.writeInt(blocks != null ? blocks.size() : 0);
+            if (blocks != null)
+            {
+                for (Long block : blocks)
+                {
+                    data.writeLong(block);
+                }
+            }
+            data.writeLong(length);
+            out.close();
+            if ((file.exists() && !file.delete()) || !temp.renameTo(file))
+            {
+                throw new IOException("Failed to replace " + file);
+            }
+            committed = true;
+        }
+
+        /**
+         * Closes the writer, discarding the entry if it hasn't been committed.
+         *
+         * @throws IOException for any I/O error
+         */
+        @Override
+        public void close() throws IOException
+        {
+            if (!committed)
+            {
+                out.close();
+                if (temp.exists() && !temp.delete())
+                {
+                    temp.deleteOnExit();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.PackInfo;
+
+
+/**
+ * Determines where the content of each pack file is stored, before any pack is written.
+ * <p/>
+ * A file is either stored in the pack that contains it, stored as a separate Pack200 entry, or is a back reference to
+ * a file stored in an earlier pack. As this only depends on the pack definitions, packs may subsequently be written
+ * independently of each other. Only the byte offsets of back references need to be resolved as packs are written.
+ * <p/>
+ * Files are matched on content rather than on source path, so identical files from different source directories are
+ * only stored once. To avoid reading every file twice, only files whose length is shared with another source file are
+ * digested.
+ */
+class PackLayout
+{
+
+    /**
+     * The files whose content is stored in the pack that contains them, mapped to the index of that pack.
+     */
+    private final Map<PackFile, Integer> stored = new HashMap<PackFile, Integer>();
+
+    /**
+     * The files storing the content of back referenced files, keyed on the back reference.
+     */
+    private final Map<PackFile, PackFile> references = new HashMap<PackFile, PackFile>();
+
+    /**
+     * The stored files that are the target of at least one back reference.
+     */
+    private final Set<PackFile> referenced = new HashSet<PackFile>();
+
+    /**
+     * The Pack200 entry identifiers, keyed on pack file.
+     */
+    private final Map<PackFile, Integer> pack200Ids = new HashMap<PackFile, Integer>();
+
+    /**
+     * The Pack200 jars, keyed on identifier.
+     */
+    private final Map<Integer, File> pack200Files = new LinkedHashMap<Integer, File>();
+
+    /**
+     * The no. of back references to files with identical content, but a different source path.
+     */
+    private int duplicates;
+
+    /**
+     * The no. of bytes not stored due to back references to files with identical content, but a different source path.
+     */
+    private long duplicateBytes;
+
+    /**
+     * The source file digests.
+     */
+    private final FileDigests digests;
+
+
+    /**
+     * Constructs a {@code PackLayout}.
+     *
+     * @param packs               the packs to lay out
+     * @param pack200             if {@code true}, unsigned jars are stored as Pack200 entries
+     * @param crossPackReferences if {@code true}, back references may refer to files stored in other packs,
+     *                            otherwise they are limited to files stored in the same pack
+     * @throws IOException for any I/O error
+     */
+    public PackLayout(List<PackInfo> packs, boolean pack200, boolean crossPackReferences) throws IOException
+    {
+        this(packs, pack200, crossPackReferences, new FileDigests());
+    }
+
+    /**
+     * Constructs a {@code PackLayout}.
+     *
+     * @param packs               the packs to lay out
+     * @param pack200             if {@code true}, unsigned jars are stored as Pack200 entries
+     * @param crossPackReferences if {@code true}, back references may refer to files stored in other packs,
+     *                            otherwise they are limited to files stored in the same pack
+     * @param digests             the source file digests
+     * @throws IOException for any I/O error
+     */
+    public PackLayout(List<PackInfo> packs, boolean pack200, boolean crossPackReferences, FileDigests digests)
+            throws IOException
+    {
+        this.digests = digests;
+        Set<Long> sharedLengths = getSharedLengths(packs);
+        Map<String, PackFile> storedContent = new HashMap<String, PackFile>();
+        Map<File, String> keys = new HashMap<File, String>();
+        int pack200Counter = 0;
+
+        for (int i = 0; i < packs.size(); ++i)
+        {
+            PackInfo packInfo = packs.get(i);
+            Pack pack = packInfo.getPack();
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                File file = packInfo.getFile(packFile);
+                if (pack.isLoose() || packFile.isDirectory())
+                {
+                    continue;
+                }
+
+                boolean isPack200 = false;
+                if (pack200 && file.getName().toLowerCase().endsWith(".jar") && isNotSignedJar(file))
+                {
+                    packFile.setPack200Jar(true);
+                    isPack200 = true;
+                }
+
+                String key = keys.get(file);
+                if (key == null)
+                {
+                    key = getContentKey(file, isPack200, sharedLengths);
+                    keys.put(file, key);
+                }
+
+                // use a back reference if the content was already stored, and may be referenced from this pack
+                PackFile source = storedContent.get(key);
+                if (source != null && (crossPackReferences || stored.get(source) == i))
+                {
+                    references.put(packFile, source);
+                    referenced.add(source);
+                    if (!file.equals(getFile(packs, source)))
+                    {
+                        ++duplicates;
+                        duplicateBytes += packFile.length();
+                    }
+                }
+                else
+                {
+                    stored.put(packFile, i);
+                    if (isPack200)
+                    {
+                        pack200Ids.put(packFile, pack200Counter);
+                        pack200Files.put(pack200Counter, file);
+                        ++pack200Counter;
+                    }
+                    storedContent.put(key, packFile); // TODO - see IZPACK-799
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if the content of a file is stored in the pack that contains it.
+     *
+     * @param file the pack file
+     * @return {@code true} if the content is stored with the pack file
+     */
+    public boolean isStored(PackFile file)
+    {
+        return stored.containsKey(file);
+    }
+
+    /**
+     * Returns the file storing the content of a back referenced file.
+     *
+     * @param file the pack file
+     * @return the file storing the content, or {@code null} if the file isn't a back reference
+     */
+    public PackFile getReference(PackFile file)
+    {
+        return references.get(file);
+    }
+
+    /**
+     * Determines if a stored file is the target of a back reference.
+     *
+     * @param file the pack file
+     * @return {@code true} if the content of the file is referenced by other files
+     */
+    public boolean isReferenced(PackFile file)
+    {
+        return referenced.contains(file);
+    }
+
+    /**
+     * Returns the index of the pack storing the content of a file.
+     *
+     * @param file a file {@link #isStored stored} in a pack
+     * @return the index of the pack
+     */
+    public int getPackIndex(PackFile file)
+    {
+        return stored.get(file);
+    }
+
+    /**
+     * Returns the Pack200 entry identifier of a file.
+     *
+     * @param file the pack file
+     * @return the Pack200 entry identifier, or {@code null} if the file isn't stored as a Pack200 entry
+     */
+    public Integer getPack200Id(PackFile file)
+    {
+        return pack200Ids.get(file);
+    }
+
+    /**
+     * Returns the jars to store as Pack200 entries.
+     *
+     * @return the jars, keyed and ordered on entry identifier
+     */
+    public Map<Integer, File> getPack200Files()
+    {
+        return pack200Files;
+    }
+
+    /**
+     * Returns the no. of back references to files with identical content, but a different source path.
+     *
+     * @return the no. of duplicate files
+     */
+    public int getDuplicates()
+    {
+        return duplicates;
+    }
+
+    /**
+     * Returns the no. of bytes not stored, due to back references to files with identical content, but a different
+     * source path.
+     *
+     * @return the no. of bytes saved by content de-duplication
+     */
+    public long getDuplicateBytes()
+    {
+        return duplicateBytes;
+    }
+
+    /**
+     * Returns the lengths shared by more than one source file. Only files of these lengths can have duplicate content.
+     *
+     * @param packs the packs
+     * @return the shared lengths
+     */
+    private Set<Long> getSharedLengths(List<PackInfo> packs)
+    {
+        Set<Long> result = new HashSet<Long>();
+        Map<Long, File> lengths = new HashMap<Long, File>();
+        for (PackInfo packInfo : packs)
+        {
+            if (!packInfo.getPack().isLoose())
+            {
+                for (PackFile packFile : packInfo.getPackFiles())
+                {
+                    if (!packFile.isDirectory() && packFile.length() != 0)
+                    {
+                        File file = packInfo.getFile(packFile);
+                        File existing = lengths.put(packFile.length(), file);
+                        if (existing != null && !existing.equals(file))
+                        {
+                            result.add(packFile.length());
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a key identifying the content of a file.
+     * <p/>
+     * Files with a shared length are keyed on their digest, so that identical files share a key. Other files can only
+     * be duplicated by including the same source file again, so are keyed on their path.
+     *
+     * @param file          the file
+     * @param pack200       determines if the file is stored as a Pack200 entry
+     * @param sharedLengths the lengths shared by more than one source file
+     * @return the content key
+     * @throws IOException if the file cannot be read
+     */
+    private String getContentKey(File file, boolean pack200, Set<Long> sharedLengths) throws IOException
+    {
+        String key;
+        if (sharedLengths.contains(file.length()))
+        {
+            key = "sha256:" + digests.getDigest(file);
+        }
+        else
+        {
+            key = "path:" + file.getPath();
+        }
+        // Pack200 entries don't hold the original bytes, so can't be shared with files stored as is
+        return pack200 ? "pack200:" + key : key;
+    }
+
+    /**
+     * Returns the source file of a pack file.
+     *
+     * @param packs    the packs
+     * @param packFile a file {@link #isStored stored} in a pack
+     * @return the source file
+     */
+    private File getFile(List<PackInfo> packs, PackFile packFile)
+    {
+        return packs.get(stored.get(packFile)).getFile(packFile);
+    }
+
+    /**
+     * Determines if a jar is not signed.
+     *
+     * @param file the jar
+     * @return {@code true} if the jar isn't signed
+     * @throws IOException for any I/O error
+     */
+    private boolean isNotSignedJar(File file) throws IOException
+    {
+        JarFile jar = new JarFile(file);
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements())
+        {
+            JarEntry entry = entries.nextElement();
+            if (entry.getName().startsWith("META-INF") && entry.getName().endsWith(".SF"))
+            {
+                jar.close();
+                return false;
+            }
+        }
+        jar.close();
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.core.io.ByteCountingOutputStream;
+import com.izforge.izpack.core.io.PackOutputStream;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+import com.izforge.izpack.util.IoHelper;
+
+
+/**
+ * Writes the files and file meta-data of a pack to a stream, using a {@link PackOutputStream}.
+ * <p/>
+ * Subclasses determine how the offsets of files stored in other packs are obtained, in order to write back references.
+ * <p/>
+ * If blocks are enabled, the stream is split into blocks just before the content of back referenced files, via
+ * {@link #startBlock(int, long)}. Subclasses store each block so that it can be decoded independently, allowing the
+ * installer to seek to a back referenced file without decoding the preceding blocks.
+ */
+abstract class PackWriter
+{
+
+    /**
+     * The minimum no. of bytes between block starts. This limits the no. of blocks when many small files are
+     * referenced, while bounding the no. of bytes the installer needs to skip within a block.
+     */
+    public static final long MIN_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The packs.
+     */
+    private final List<PackInfo> packs;
+
+    /**
+     * The pack layout.
+     */
+    private final PackLayout layout;
+
+    /**
+     * Determines if the stream is split into blocks.
+     */
+    private final boolean blocks;
+
+
+    /**
+     * Constructs a {@code PackWriter}.
+     *
+     * @param packs  the packs
+     * @param layout the pack layout
+     * @param blocks if {@code true}, split the stream into blocks before back referenced files
+     */
+    public PackWriter(List<PackInfo> packs, PackLayout layout, boolean blocks)
+    {
+        this.packs = packs;
+        this.layout = layout;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Writes a pack.
+     * <p/>
+     * The stream is flushed but not closed.
+     *
+     * @param index the index of the pack to write
+     * @param out   the stream to write to
+     * @return the byte offsets of the files stored in the pack, keyed on pack file
+     * @throws IOException for any I/O error
+     */
+    public Map<PackFile, Long> write(int index, OutputStream out) throws IOException
+    {
+        PackInfo packInfo = packs.get(index);
+        updateSize(packInfo);
+
+        Map<PackFile, Long> offsets = new HashMap<PackFile, Long>();
+        ByteCountingOutputStream dos = new ByteCountingOutputStream(out);
+        PackOutputStream packOut = new PackOutputStream(dos);
+        long blockStart = 0;
+
+        // We write the actual pack files
+        packOut.writeCount(packInfo.getPackFiles().size());
+
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            File file = packInfo.getFile(packFile);
+
+            PackFile reference = layout.getReference(packFile);
+            if (reference != null)
+            {
+                int source = layout.getPackIndex(reference);
+                Map<PackFile, Long> stored = (source == index) ? offsets : getOffsets(source);
+                packFile.setPreviousPackFileRef(packs.get(source).getPack().getName(), stored.get(reference));
+            }
+
+            packOut.writePackFile(packFile); // base info
+
+            if (layout.isStored(packFile))
+            {
+                long pos = dos.getByteCount(); // get the position
+                if (blocks && layout.isReferenced(packFile) && pos - blockStart >= MIN_BLOCK_SIZE)
+                {
+                    startBlock(index, pos);
+                    blockStart = pos;
+                }
+
+                Integer pack200Id = layout.getPack200Id(packFile);
+                if (pack200Id != null)
+                {
+                    /*
+                     * Warning!
+                     *
+                     * Pack200 archives must be stored in separated streams, as the Pack200 unpacker
+                     * reads the entire stream...
+                     *
+                     * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
+                     */
+                    packOut.writeInt(pack200Id);
+                }
+                else
+                {
+                    FileInputStream inStream = new FileInputStream(file);
+                    long bytesWritten = IoHelper.copyStream(inStream, packOut);
+                    inStream.close();
+                    if (bytesWritten != packFile.length())
+                    {
+                        throw new IOException("File size mismatch when reading " + file);
+                    }
+                }
+
+                offsets.put(packFile, pos);
+            }
+        }
+
+        // Write out information about parsable files
+        packOut.writeCount(packInfo.getParsables().size());
+
+        for (ParsableFile parsableFile : packInfo.getParsables())
+        {
+            packOut.writeParsableFile(parsableFile);
+        }
+
+        // Write out information about executable files
+        packOut.writeCount(packInfo.getExecutables().size());
+        for (ExecutableFile executableFile : packInfo.getExecutables())
+        {
+            packOut.writeExecutableFile(executableFile);
+        }
+
+        // Write out information about updatecheck files
+        packOut.writeCount(packInfo.getUpdateChecks().size());
+        for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+        {
+            packOut.writeUpdateCheck(updateCheck);
+        }
+
+        packOut.flush();
+        return offsets;
+    }
+
+    /**
+     * Updates the file size of a pack, and its size if the file size is larger.
+     *
+     * @param packInfo the pack
+     */
+    public static void updateSize(PackInfo packInfo)
+    {
+        Pack pack = packInfo.getPack();
+        pack.setFileSize(0);
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            // even if not written, it counts towards pack size
+            pack.addFileSize(packFile.size());
+        }
+
+        if (pack.getFileSize() > pack.getSize())
+        {
+            pack.setSize(pack.getFileSize());
+        }
+    }
+
+    /**
+     * Returns the packs.
+     *
+     * @return the packs
+     */
+    protected List<PackInfo> getPacks()
+    {
+        return packs;
+    }
+
+    /**
+     * Returns the byte offsets of the files stored in a pack that has been, or is being, written.
+     *
+     * @param index the pack index
+     * @return the byte offsets of the files stored in the pack, keyed on pack file
+     * @throws IOException if the pack could not be written
+     */
+    protected abstract Map<PackFile, Long> getOffsets(int index) throws IOException;
+
+    /**
+     * Invoked when a new block starts. All bytes preceding the block have been flushed to the stream.
+     *
+     * @param index  the pack index
+     * @param offset the byte offset of the block in the pack stream
+     * @throws IOException for any I/O error
+     */
+    protected abstract void startBlock(int index, long offset) throws IOException;
+
+}
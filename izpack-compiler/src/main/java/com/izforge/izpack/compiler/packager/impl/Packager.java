@@ -21,36 +21,34 @@
 package com.izforge.izpack.compiler.packager.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.Pack200;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 
 import com.izforge.izpack.api.adaptator.IXMLElement;
-import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.data.Pack;
-import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
-import com.izforge.izpack.core.io.ByteCountingOutputStream;
-import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.core.io.PackFormat;
+import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.data.PackInfo;
-import com.izforge.izpack.data.ParsableFile;
-import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * The packager class. The packager is used by the compiler to put files into an installer, and
@@ -68,6 +66,12 @@ public class Packager extends PackagerBase
      */
     private final OutputStream outputStream;
 
+    /**
+     * The installer jar entry of the pack being written, or {@code null} if there is none, or the pack has been split
+     * into blocks.
+     */
+    private org.apache.tools.zip.ZipEntry packEntry;
+
 
     /**
      * Constructs a <tt>Packager</tt>.
@@ -82,18 +86,23 @@ public class Packager extends PackagerBase
      * @param pathResolver      the path resolver
      * @param mergeableResolver the mergeable resolver
      * @param compilerData      the compiler data
+     * @param metrics           the metrics
      */
     public Packager(Properties properties, PackagerListener listener, JarOutputStream jarOutputStream,
                     PackCompressor compressor, OutputStream outputStream, MergeManager mergeManager,
-                    CompilerPathResolver pathResolver, MergeableResolver mergeableResolver, CompilerData compilerData)
+                    CompilerPathResolver pathResolver, MergeableResolver mergeableResolver, CompilerData compilerData,
+                    Metrics metrics)
     {
         super(properties, listener, jarOutputStream, mergeManager, pathResolver, mergeableResolver, compressor,
-              compilerData);
+              compilerData, metrics);
         this.outputStream = outputStream;
     }
 
     /**
      * Write packs to the installer jar, or each to a separate jar.
+     * <p/>
+     * If more than one thread is configured, packs are written and compressed to temporary segments on worker threads,
+     * and spliced into the installer jar in pack order. The result is the same as if the packs were written serially.
      *
      * @throws IOException for any I/O error
      */
@@ -104,222 +113,567 @@ public class Packager extends PackagerBase
         final int num = packs.size();
         sendMsg("Writing " + num + " Pack" + (num > 1 ? "s" : "") + " into installer");
 
-        // Map to remember pack number and bytes offsets of back references
-        Map<File, Object[]> storedFiles = new HashMap<File, Object[]>();
-
-        // Pack200 files map
-        Map<Integer, File> pack200Map = new HashMap<Integer, File>();
-        int pack200Counter = 0;
-
         // Force UTF-8 encoding in order to have proper ZipEntry names.
         JarOutputStream installerJar = getInstallerJar();
         installerJar.setEncoding("utf-8");
 
+        // Determine back references and Pack200 files up front, so that packs can be written independently.
+        // Web installers download packs separately, so may only refer to files within the same pack
+        PackCache cache = new PackCache(getCompilerData().getCacheDir());
+        PackLayout layout = new PackLayout(packs, getInfo().isPack200Compression(), !packSeparateJars(),
+                                           cache.getDigests());
+        addDigests(packs, cache.getDigests());
+        if (layout.getDuplicates() > 0)
+        {
+            sendMsg("Found " + layout.getDuplicates() + " duplicate file" + (layout.getDuplicates() > 1 ? "s" : "")
+                            + ", saving " + layout.getDuplicateBytes() + " bytes");
+        }
+
+        // Split packs into independently decodable blocks before back referenced files, so that the installer
+        // can seek to them. Only supported when packs are deflated by the installer jar
+        boolean blocks = getCompressor().useStandardCompression() && !packSeparateJars();
+        Map<String, List<Long>> index = new LinkedHashMap<String, List<Long>>();
+
+        // Look up the packs written by previous compilations
+        PackCompressor compressor = getCompressor();
+        cache.load(packs, layout, compressor.getClass().getName() + ";" + getCompilerData().getComprLevel() + ";"
+                + blocks);
+
         // First write the serialized files and file metadata data for each pack
         // while counting bytes.
+        int threads = getCompilerData().getPackThreads();
+        if (threads > 1 && num > 1)
+        {
+            writePacksConcurrently(packs, layout, blocks, index, cache, Math.min(threads, num));
+        }
+        else
+        {
+            writePacksSerially(packs, layout, blocks, index, cache);
+        }
+        if (cache.isEnabled())
+        {
+            int hits = 0;
+            for (int i = 0; i < num; ++i)
+            {
+                if (cache.get(i) != null)
+                {
+                    ++hits;
+                }
+            }
+            sendMsg("Pack cache: " + hits + " hit" + (hits != 1 ? "s" : "") + ", " + (num - hits) + " miss"
+                            + (num - hits != 1 ? "es" : ""));
+            cache.save();
+        }
 
-        int packNumber = 0;
-        IXMLElement root = new XMLElementImpl("packs");
+        // Now that we know sizes, write pack metadata to primary jar.
+        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.info"));
+        ObjectOutputStream out = new ObjectOutputStream(installerJar);
+        out.writeInt(PackFormat.VERSION_MARKER);
+        out.writeInt(PackFormat.BINARY);
+        out.writeInt(packs.size());
 
         for (PackInfo packInfo : packs)
         {
-            Pack pack = packInfo.getPack();
-            pack.setFileSize(0);
-
-            // create a pack specific jar if required
-            // REFACTOR : Repare web installer
-            // REFACTOR : Use a mergeManager for each packages that will be added to the main merger
-
-//            if (packJarsSeparate) {
-            // See installer.Unpacker#getPackAsStream for the counterpart
-//                String name = baseFile.getName() + ".pack-" + pack.id + ".jar";
-//                packStream = IoHelper.getJarOutputStream(name, baseFile.getParentFile());
-//            }
+            out.writeObject(packInfo.getPack());
+        }
+        out.flush();
+        installerJar.closeEntry();
 
-            sendMsg("Writing Pack " + packNumber + ": " + pack.getName(), PackagerListener.MSG_VERBOSE);
+        if (blocks)
+        {
+            writePackIndex(index);
+        }
 
-            // Retrieve the correct output stream
-            org.apache.tools.zip.ZipEntry entry = new org.apache.tools.zip.ZipEntry(
-                    RESOURCES_PATH + "packs/pack-" + pack.getName());
-            installerJar.putNextEntry(entry);
-            installerJar.flush(); // flush before we start counting
+        // Pack200 files
+        writePack200Files(layout.getPack200Files(), threads);
+    }
 
-            ByteCountingOutputStream dos = new ByteCountingOutputStream(outputStream);
-            ObjectOutputStream objOut = new ObjectOutputStream(dos);
+    /**
+     * Writes the Pack200 entries to the installer jar.
+     * <p/>
+     * Jars are packed concurrently if more than one thread is configured. If the JVM doesn't support Pack200, jars are
+     * re-compressed at maximum deflate instead.
+     *
+     * @param jars    the jars to pack, keyed and ordered on entry identifier
+     * @param threads the no. of worker threads
+     * @throws IOException for any I/O error
+     */
+    private void writePack200Files(Map<Integer, File> jars, int threads) throws IOException
+    {
+        if (jars.isEmpty())
+        {
+            return;
+        }
+        Pack200Writer writer = new Pack200Writer(jars, threads);
+        if (!writer.isPack200())
+        {
+            sendMsg("Pack200 is not supported by this JVM, re-compressing " + jars.size() + " jars instead",
+                    PackagerListener.MSG_WARN);
+        }
+        final JarOutputStream installerJar = getInstallerJar();
+        long start = getMetrics().start();
+        writer.write(new Pack200Writer.EntryWriter()
+        {
+            @Override
+            public void write(int key, InputStream in) throws IOException
+            {
+                installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack200-" + key));
+                IOUtils.copy(in, installerJar);
+                installerJar.closeEntry();
+            }
+        });
+        getMetrics().stop("phase.pack200", start);
+    }
 
-            // We write the actual pack files
-            objOut.writeInt(packInfo.getPackFiles().size());
+    /**
+     * Writes each pack directly to the installer jar, on the current thread.
+     *
+     * @param packs  the packs to write
+     * @param layout the pack layout
+     * @param blocks if {@code true}, split packs into blocks before back referenced files
+     * @param index  collects the block offsets of each pack, keyed on pack name
+     * @param cache  the pack cache
+     * @throws IOException for any I/O error
+     */
+    private void writePacksSerially(final List<PackInfo> packs, PackLayout layout, boolean blocks,
+                                    final Map<String, List<Long>> index, PackCache cache) throws IOException
+    {
+        final List<Map<PackFile, Long>> written = new ArrayList<Map<PackFile, Long>>();
+        PackWriter writer = new PackWriter(packs, layout, blocks)
+        {
+            @Override
+            protected Map<PackFile, Long> getOffsets(int index)
+            {
+                return written.get(index);
+            }
 
-            for (PackFile packFile : packInfo.getPackFiles())
+            @Override
+            protected void startBlock(int packIndex, long offset) throws IOException
             {
-                boolean addFile = !pack.isLoose();
-                boolean pack200 = false;
-                File file = packInfo.getFile(packFile);
+                Packager.this.startBlock(packs.get(packIndex), offset, index);
+            }
+        };
 
-                if (file.getName().toLowerCase().endsWith(".jar") && getInfo().isPack200Compression()
-                        && isNotSignedJar(file))
+        for (int i = 0; i < packs.size(); ++i)
+        {
+            PackInfo packInfo = packs.get(i);
+            PackCache.Entry entry = cache.get(i);
+            if (entry != null)
+            {
+                written.add(entry.getOffsets(packInfo));
+                writeCachedPack(i, packInfo, entry, index);
+            }
+            else
+            {
+                PackCache.Writer cacheWriter = cache.create(i);
+                try
                 {
-                    packFile.setPack200Jar(true);
-                    pack200 = true;
+                    OutputStream packStream = startPack(i, packInfo, cacheWriter, false);
+                    Map<PackFile, Long> offsets = writer.write(i, packStream);
+                    written.add(offsets);
+                    endPack(packInfo, packStream);
+                    commit(cacheWriter, packInfo, offsets, index);
                 }
-
-                // use a back reference if file was in previous pack, and in
-                // same jar
-                Object[] info = storedFiles.get(file);
-                if (info != null && !packSeparateJars())
+                finally
                 {
-                    packFile.setPreviousPackFileRef((String) info[0], (Long) info[1]);
-                    addFile = false;
+                    IOUtils.closeQuietly(cacheWriter);
                 }
+            }
+        }
+    }
 
-                objOut.writeObject(packFile); // base info
-
-                if (addFile && !packFile.isDirectory())
+    /**
+     * Writes packs to temporary segments on worker threads, splicing each into the installer jar in pack order.
+     * <p/>
+     * The workers also compress the segments. Those using the standard compression are deflated as the installer jar
+     * would deflate them, provided packs are written to it directly, and are spliced in as pre-compressed entries.
+     *
+     * @param packs   the packs to write
+     * @param layout  the pack layout
+     * @param blocks  if {@code true}, split packs into blocks before back referenced files
+     * @param index   collects the block offsets of each pack, keyed on pack name
+     * @param cache   the pack cache
+     * @param threads the no. of worker threads
+     * @throws IOException for any I/O error
+     */
+    private void writePacksConcurrently(List<PackInfo> packs, PackLayout layout, boolean blocks,
+                                        Map<String, List<Long>> index, PackCache cache, int threads)
+            throws IOException
+    {
+        sendMsg("Writing packs using " + threads + " threads", PackagerListener.MSG_VERBOSE);
+        PackCompressor compressor = getCompressor();
+        JarOutputStream installerJar = getInstallerJar();
+        boolean deflate = compressor.useStandardCompression() && outputStream == installerJar;
+        ConcurrentPackWriter writer = new ConcurrentPackWriter(packs, layout, blocks, threads, cache, compressor,
+                                                               deflate, installerJar.getLevel());
+        try
+        {
+            for (int i = 0; i < packs.size(); ++i)
+            {
+                ConcurrentPackWriter.Segment segment = writer.getSegment(i);
+                PackInfo packInfo = packs.get(i);
+                PackCache.Entry entry = cache.get(i);
+                if (entry != null)
                 {
-                    long pos = dos.getByteCount(); // get the position
-
-                    if (pack200)
+                    writeCachedPack(i, packInfo, entry, index);
+                    continue;
+                }
+                PackCache.Writer cacheWriter = cache.create(i);
+                try
+                {
+                    if (segment.getRegions() != null)
                     {
-                        /*
-                         * Warning!
-                         *
-                         * Pack200 archives must be stored in separated streams, as the Pack200 unpacker
-                         * reads the entire stream...
-                         *
-                         * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
-                         */
-                        pack200Map.put(pack200Counter, file);
-                        objOut.writeInt(pack200Counter);
-                        pack200Counter = pack200Counter + 1;
+                        writeDeflatedPack(i, packInfo, segment, cacheWriter, index);
                     }
                     else
                     {
-                        FileInputStream inStream = new FileInputStream(file);
-                        long bytesWritten = IoHelper.copyStream(inStream, objOut);
-                        inStream.close();
-                        if (bytesWritten != packFile.length())
+                        OutputStream packStream = startPack(i, packInfo, cacheWriter, segment.isEncoded());
+                        InputStream in = segment.open();
+                        try
+                        {
+                            copy(in, -1, segment.getBlocks(), packInfo, packStream, index);
+                        }
+                        finally
                         {
-                            throw new IOException("File size mismatch when reading " + file);
+                            IOUtils.closeQuietly(in);
                         }
+                        packStream.flush();
+                        endPack(packInfo, packStream);
                     }
-
-                    storedFiles.put(file, new Object[]{pack.getName(), pos}); // TODO - see IZPACK-799
+                    commit(cacheWriter, packInfo, segment.getOffsets(), index);
                 }
-
-                // even if not written, it counts towards pack size
-                pack.addFileSize(packFile.size());
-            }
-
-            if (pack.getFileSize() > pack.getSize())
-            {
-                pack.setSize(pack.getFileSize());
-            }
-
-            // Write out information about parsable files
-            objOut.writeInt(packInfo.getParsables().size());
-
-            for (ParsableFile parsableFile : packInfo.getParsables())
-            {
-                objOut.writeObject(parsableFile);
+                finally
+                {
+                    IOUtils.closeQuietly(cacheWriter);
+                }
+                segment.delete();
             }
+        }
+        finally
+        {
+            writer.shutdown();
+        }
+    }
 
-            // Write out information about executable files
-            objOut.writeInt(packInfo.getExecutables().size());
-            for (ExecutableFile executableFile : packInfo.getExecutables())
+    /**
+     * Writes a pack from a segment deflated by a worker thread.
+     * <p/>
+     * Each deflated region is written as a pre-compressed installer jar entry: the first to the pack entry, and the
+     * remainder to the entries of the blocks they start, as {@link #startBlock} names them.
+     *
+     * @param packNumber  the pack number
+     * @param packInfo    the pack
+     * @param segment     the deflated segment
+     * @param cacheWriter the cache entry writer. May be {@code null}
+     * @param index       collects the block offsets of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private void writeDeflatedPack(int packNumber, PackInfo packInfo, ConcurrentPackWriter.Segment segment,
+                                   OutputStream cacheWriter, Map<String, List<Long>> index) throws IOException
+    {
+        Pack pack = packInfo.getPack();
+        sendMsg("Writing Pack " + packNumber + ": " + pack.getName(), PackagerListener.MSG_VERBOSE);
+        InputStream in;
+        if (cacheWriter != null)
+        {
+            // the cache holds the pack stream, as written to the installer jar entries
+            in = segment.open();
+            try
             {
-                objOut.writeObject(executableFile);
+                IoHelper.copyStream(in, cacheWriter);
             }
-
-            // Write out information about updatecheck files
-            objOut.writeInt(packInfo.getUpdateChecks().size());
-            for (UpdateCheck updateCheck : packInfo.getUpdateChecks())
+            finally
             {
-                objOut.writeObject(updateCheck);
+                IOUtils.closeQuietly(in);
             }
+        }
 
-            // Cleanup
-            objOut.flush();
-            if (!getCompressor().useStandardCompression())
+        JarOutputStream installerJar = getInstallerJar();
+        List<ConcurrentPackWriter.Region> regions = segment.getRegions();
+        in = segment.openDeflated();
+        try
+        {
+            for (ConcurrentPackWriter.Region region : regions)
             {
-                outputStream.close();
+                String name = (region.getOffset() == 0) ? getPackEntryName(pack)
+                        : addBlock(pack, region.getOffset(), index);
+                installerJar.writeRawEntry(name, -1, region.getSize(), region.getCrc(), region.getCompressedSize(),
+                                           in);
             }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+        if (regions.size() == 1)
+        {
+            pack.setEntrySize(regions.get(0).getSize());
+            pack.setEntryCrc(regions.get(0).getCrc());
+        }
 
-            installerJar.closeEntry();
+        // close pack specific jar if required
+        if (packSeparateJars())
+        {
+            installerJar.closeAlways();
+        }
+    }
 
-            // close pack specific jar if required
-            if (packSeparateJars())
-            {
-                installerJar.closeAlways();
-            }
+    /**
+     * Writes a pack from its cache entry.
+     * <p/>
+     * The entry holds the bytes of the installer jar entry, so these are written without compressing them again.
+     *
+     * @param packNumber the pack number
+     * @param packInfo   the pack
+     * @param entry      the cache entry
+     * @param index      collects the block offsets of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private void writeCachedPack(int packNumber, PackInfo packInfo, PackCache.Entry entry,
+                                 Map<String, List<Long>> index) throws IOException
+    {
+        sendMsg("Writing Pack " + packNumber + ": " + packInfo.getPack().getName() + " (cached)",
+                PackagerListener.MSG_VERBOSE);
+        putPackEntry(packInfo);
+        InputStream in = entry.open();
+        try
+        {
+            copy(in, entry.getLength(), entry.getBlocks(), packInfo, outputStream, index);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+        outputStream.flush();
+        endPack(packInfo, outputStream);
+        PackWriter.updateSize(packInfo);
+    }
 
-            IXMLElement child = new XMLElementImpl("pack", root);
-            child.setAttribute("name", pack.getName());
-            child.setAttribute("size", Long.toString(pack.getSize()));
-            child.setAttribute("fileSize", Long.toString(pack.getFileSize()));
-            if (pack.getLangPackId() != null)
-            {
-                child.setAttribute("id", pack.getLangPackId());
-            }
-            root.addChild(child);
+    /**
+     * Copies a written pack to the installer jar, starting blocks at the specified offsets.
+     *
+     * @param in       the stream to copy
+     * @param length   the no. of bytes to copy, or {@code -1} to copy to the end of the stream
+     * @param blocks   the byte offsets at which blocks start
+     * @param packInfo the pack
+     * @param out      the stream to copy to
+     * @param index    collects the block offsets of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private void copy(InputStream in, long length, List<Long> blocks, PackInfo packInfo, OutputStream out,
+                      Map<String, List<Long>> index) throws IOException
+    {
+        long position = 0;
+        for (Long block : blocks)
+        {
+            IOUtils.copyLarge(in, out, 0, block - position);
+            startBlock(packInfo, block, index);
+            position = block;
+        }
+        if (length == -1)
+        {
+            IoHelper.copyStream(in, out);
+        }
+        else
+        {
+            IOUtils.copyLarge(in, out, 0, length - position);
+        }
+    }
 
-            packNumber++;
+    /**
+     * Completes the cache entry of a pack.
+     *
+     * @param cacheWriter the cache entry writer. May be {@code null}
+     * @param packInfo    the pack
+     * @param offsets     the byte offsets of the files stored in the pack, keyed on pack file
+     * @param index       the block offsets of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private void commit(PackCache.Writer cacheWriter, PackInfo packInfo, Map<PackFile, Long> offsets,
+                        Map<String, List<Long>> index) throws IOException
+    {
+        if (cacheWriter != null)
+        {
+            cacheWriter.commit(packInfo, offsets, index.get(packInfo.getPack().getName()));
         }
+    }
 
-        // Now that we know sizes, write pack metadata to primary jar.
-        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.info"));
-        ObjectOutputStream out = new ObjectOutputStream(installerJar);
-        out.writeInt(packs.size());
+    /**
+     * Starts the installer jar entry for a pack.
+     * <p/>
+     * If the compressor doesn't use the standard compression, each pack is encoded by a separate stream, so that the
+     * installer can decode packs independently.
+     * <p/>
+     * If a cache writer is supplied, the bytes written to the installer jar entry are also written to it.
+     *
+     * @param packNumber  the pack number
+     * @param packInfo    the pack
+     * @param cacheWriter the cache entry writer. May be {@code null}
+     * @param encoded     if {@code true}, the pack will be written already encoded by the compressor
+     * @return the stream to write the pack to
+     * @throws IOException for any I/O error
+     */
+    private OutputStream startPack(int packNumber, PackInfo packInfo, OutputStream cacheWriter, boolean encoded)
+            throws IOException
+    {
+        sendMsg("Writing Pack " + packNumber + ": " + packInfo.getPack().getName(), PackagerListener.MSG_VERBOSE);
+        putPackEntry(packInfo);
 
-        for (PackInfo packInfo : packs)
+        PackCompressor compressor = getCompressor();
+        boolean encode = !compressor.useStandardCompression() && !encoded;
+        if (!encode && cacheWriter == null)
         {
-            out.writeObject(packInfo.getPack());
+            return outputStream;
         }
-        out.flush();
+        OutputStream out = new CloseShieldOutputStream(outputStream);
+        if (cacheWriter != null)
+        {
+            out = new TeeOutputStream(out, new CloseShieldOutputStream(cacheWriter));
+        }
+        return encode ? compressor.getOutputStream(out) : out;
+    }
+
+    /**
+     * Starts the installer jar entry for a pack.
+     *
+     * @param packInfo the pack
+     * @throws IOException for any I/O error
+     */
+    private void putPackEntry(PackInfo packInfo) throws IOException
+    {
+        Pack pack = packInfo.getPack();
+
+        // create a pack specific jar if required
+        // REFACTOR : Repare web installer
+        // REFACTOR : Use a mergeManager for each packages that will be added to the main merger
+
+//            if (packJarsSeparate) {
+        // See installer.Unpacker#getPackAsStream for the counterpart
+//                String name = baseFile.getName() + ".pack-" + pack.id + ".jar";
+//                packStream = IoHelper.getJarOutputStream(name, baseFile.getParentFile());
+//            }
+
+        // Retrieve the correct output stream
+        packEntry = new org.apache.tools.zip.ZipEntry(getPackEntryName(pack));
+        JarOutputStream installerJar = getInstallerJar();
+        installerJar.putNextEntry(packEntry);
+        installerJar.flush(); // flush before we start counting
+    }
+
+    /**
+     * Ends the current installer jar entry of a pack, and starts the entry for the next block.
+     * <p/>
+     * See installer.AbstractPackResources#getPackStream(String, long) for the counterpart.
+     *
+     * @param packInfo the pack
+     * @param offset   the byte offset of the block in the pack stream
+     * @param index    collects the block offsets of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private void startBlock(PackInfo packInfo, long offset, Map<String, List<Long>> index) throws IOException
+    {
+        String name = addBlock(packInfo.getPack(), offset, index);
+
+        outputStream.flush();
+        JarOutputStream installerJar = getInstallerJar();
         installerJar.closeEntry();
+        packEntry = null; // a blocked pack has no single entry to identify it
+        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(name));
+        installerJar.flush();
+    }
 
-        // Pack200 files
-        Pack200.Packer packer = createAgressivePack200Packer();
-        for (Integer key : pack200Map.keySet())
+    /**
+     * Records the start of a block of a pack in the pack index.
+     *
+     * @param pack   the pack
+     * @param offset the byte offset of the block in the pack stream
+     * @param index  collects the block offsets of each pack, keyed on pack name
+     * @return the installer jar entry name of the block
+     */
+    private String addBlock(Pack pack, long offset, Map<String, List<Long>> index)
+    {
+        String name = pack.getName();
+        List<Long> offsets = index.get(name);
+        if (offsets == null)
         {
-            File file = pack200Map.get(key);
-            installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs/pack200-" + key));
-            JarFile jar = new JarFile(file);
-            packer.pack(jar, installerJar);
-            jar.close();
-            installerJar.closeEntry();
+            offsets = new ArrayList<Long>();
+            index.put(name, offsets);
         }
+        offsets.add(offset);
+        return RESOURCES_PATH + "packs/blocks/pack-" + name + "-" + offset;
     }
 
-    private Pack200.Packer createAgressivePack200Packer()
+    /**
+     * Returns the installer jar entry name of a pack.
+     *
+     * @param pack the pack
+     * @return the entry name
+     */
+    private String getPackEntryName(Pack pack)
     {
-        Pack200.Packer packer = Pack200.newPacker();
-        Map<String, String> packerProperties = packer.properties();
-        packerProperties.put(Pack200.Packer.EFFORT, "9");
-        packerProperties.put(Pack200.Packer.SEGMENT_LIMIT, "-1");
-        packerProperties.put(Pack200.Packer.KEEP_FILE_ORDER, Pack200.Packer.FALSE);
-        packerProperties.put(Pack200.Packer.DEFLATE_HINT, Pack200.Packer.FALSE);
-        packerProperties.put(Pack200.Packer.MODIFICATION_TIME, Pack200.Packer.LATEST);
-        packerProperties.put(Pack200.Packer.CODE_ATTRIBUTE_PFX + "LineNumberTable", Pack200.Packer.STRIP);
-        packerProperties.put(Pack200.Packer.CODE_ATTRIBUTE_PFX + "LocalVariableTable", Pack200.Packer.STRIP);
-        packerProperties.put(Pack200.Packer.CODE_ATTRIBUTE_PFX + "SourceFile", Pack200.Packer.STRIP);
-        return packer;
+        return RESOURCES_PATH + "packs/pack-" + pack.getName();
     }
 
-    private boolean isNotSignedJar(File file) throws IOException
+    /**
+     * Writes the pack index, listing the byte offsets of the blocks of each pack.
+     * <p/>
+     * See installer.PackIndex for the counterpart.
+     *
+     * @param index the block offsets of each pack, keyed on pack name
+     * @throws IOException for any I/O error
+     */
+    private void writePackIndex(Map<String, List<Long>> index) throws IOException
     {
-        JarFile jar = new JarFile(file);
-        Enumeration<JarEntry> entries = jar.entries();
-        while (entries.hasMoreElements())
+        JarOutputStream installerJar = getInstallerJar();
+        installerJar.putNextEntry(new org.apache.tools.zip.ZipEntry(RESOURCES_PATH + "packs.index"));
+        ObjectOutputStream out = new ObjectOutputStream(installerJar);
+        out.writeInt(index.size());
+        for (Map.Entry<String, List<Long>> entry : index.entrySet())
         {
-            JarEntry entry = entries.nextElement();
-            if (entry.getName().startsWith("META-INF") && entry.getName().endsWith(".SF"))
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Long offset : entry.getValue())
             {
-                jar.close();
-                return false;
+                out.writeLong(offset);
             }
         }
-        jar.close();
-        return true;
+        out.flush();
+        installerJar.closeEntry();
+    }
+
+    /**
+     * Ends the installer jar entry for a pack.
+     * <p/>
+     * The size and CRC of the entry are recorded in the pack, so that a web-based installer can verify that a cached
+     * pack jar was built with it. See installer.WebPackDownloader for the counterpart.
+     *
+     * @param packInfo   the pack
+     * @param packStream the stream returned by {@link #startPack}, or the installer jar stream
+     * @throws IOException for any I/O error
+     */
+    private void endPack(PackInfo packInfo, OutputStream packStream) throws IOException
+    {
+        // Cleanup
+        if (packStream != outputStream)
+        {
+            // finish the encoding. The installer jar stream is shielded from the close
+            packStream.close();
+        }
+
+        JarOutputStream installerJar = getInstallerJar();
+        installerJar.closeEntry();
+        if (packEntry != null)
+        {
+            packInfo.getPack().setEntrySize(packEntry.getSize());
+            packInfo.getPack().setEntryCrc(packEntry.getCrc());
+            packEntry = null;
+        }
+
+        // close pack specific jar if required
+        if (packSeparateJars())
+        {
+            installerJar.closeAlways();
+        }
     }
 
     /**
@@ -44,6 +44,7 @@ import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.GUIPrefs;
 import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.InstallerRequirement;
+import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.data.Panel;
 import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
@@ -55,10 +56,12 @@ import com.izforge.izpack.compiler.packager.IPackager;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
 import com.izforge.izpack.data.CustomData;
 import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.ParsableFile;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.FileUtil;
 import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * The packager base class. The packager interface <code>IPackager</code> is used by the compiler to put files into an installer, and
@@ -116,6 +119,11 @@ public abstract class PackagerBase implements IPackager
      */
     private final CompilerData compilerData;
 
+    /**
+     * The metrics.
+     */
+    private final Metrics metrics;
+
     /**
      * Installer requirements.
      */
@@ -194,10 +202,12 @@ public abstract class PackagerBase implements IPackager
      * @param mergeableResolver the mergeable resolver
      * @param compressor        the pack compressor
      * @param compilerData      the compiler data
+     * @param metrics           the metrics
      */
     public PackagerBase(Properties properties, PackagerListener listener, JarOutputStream installerJar,
                         MergeManager mergeManager, CompilerPathResolver pathResolver,
-                        MergeableResolver mergeableResolver, PackCompressor compressor, CompilerData compilerData)
+                        MergeableResolver mergeableResolver, PackCompressor compressor, CompilerData compilerData,
+                        Metrics metrics)
     {
         this.properties = properties;
         this.listener = listener;
@@ -207,6 +217,7 @@ public abstract class PackagerBase implements IPackager
         this.mergeableResolver = mergeableResolver;
         this.compressor = compressor;
         this.compilerData = compilerData;
+        this.metrics = metrics;
     }
 
     @Override
@@ -356,6 +367,7 @@ public abstract class PackagerBase implements IPackager
 
         sendStart();
 
+        long start = metrics.start();
         writeInstaller();
 
         // Finish up. closeAlways is a hack for pack compressions other than
@@ -364,6 +376,8 @@ public abstract class PackagerBase implements IPackager
         // for the next pack. Therefore an own JarOutputStream will be used
         // which close method will be blocked.
         getInstallerJar().closeAlways();
+        metrics.stop("compile", start, new File(compilerData.getOutput()).length());
+        metrics.writeReport();
 
         sendStop();
     }
@@ -386,9 +400,15 @@ public abstract class PackagerBase implements IPackager
     protected void writeInstaller() throws IOException
     {
         // write the installer jar. MUST be first so manifest is not overwritten by an included jar
+        long start = metrics.start();
         writeManifest();
+        metrics.stop("phase.manifest", start);
+
+        start = metrics.start();
         writeSkeletonInstaller();
+        metrics.stop("phase.skeleton", start);
 
+        start = metrics.start();
         writeInstallerObject("info", info);
         writeInstallerObject("vars", properties);
         writeInstallerObject("GUIPrefs", guiPrefs);
@@ -399,12 +419,20 @@ public abstract class PackagerBase implements IPackager
         writeInstallerObject("dynvariables", dynamicVariables);
         writeInstallerObject("dynconditions", dynamicInstallerRequirements);
         writeInstallerObject("installerrequirements", installerRequirements);
+        metrics.stop("phase.installerObjects", start);
 
+        start = metrics.start();
         writeInstallerResources();
+        metrics.stop("phase.resources", start);
+
+        start = metrics.start();
         writeIncludedJars();
+        metrics.stop("phase.includedJars", start);
 
         // Pack File Data may be written to separate jars
+        start = metrics.start();
         writePacks();
+        metrics.stop("phase.packs", start, getPacksSize());
     }
 
     /**
@@ -527,6 +555,40 @@ public abstract class PackagerBase implements IPackager
      */
     protected abstract void writePacks() throws IOException;
 
+    /**
+     * Stores the content digest of each file in the packs, if {@link Info#isDeltaUpgrade()} is set, so that the
+     * installer can skip files that are already installed.
+     * <p/>
+     * Parsable files and Pack200 jars are excluded, as the installed file differs from the source.
+     *
+     * @param packs   the packs
+     * @param digests the source file digests
+     * @throws IOException if a file cannot be read
+     */
+    protected void addDigests(List<PackInfo> packs, FileDigests digests) throws IOException
+    {
+        if (info == null || !info.isDeltaUpgrade())
+        {
+            return;
+        }
+        for (PackInfo packInfo : packs)
+        {
+            Set<String> parsables = new HashSet<String>();
+            for (ParsableFile parsable : packInfo.getParsables())
+            {
+                parsables.add(parsable.getPath());
+            }
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                if (!packFile.isDirectory() && !packFile.isPack200Jar()
+                        && !parsables.contains(packFile.getTargetPath()))
+                {
+                    packFile.setDigest(digests.getDigest(packInfo.getFile(packFile)));
+                }
+            }
+        }
+    }
+
     /**
      * Returns the installer jar stream.
      *
@@ -547,6 +609,41 @@ public abstract class PackagerBase implements IPackager
         return compressor;
     }
 
+    /**
+     * Returns the compiler data.
+     *
+     * @return the compiler data
+     */
+    protected CompilerData getCompilerData()
+    {
+        return compilerData;
+    }
+
+    /**
+     * Returns the total size of the packs.
+     *
+     * @return the total size of the packs, in bytes
+     */
+    private long getPacksSize()
+    {
+        long result = 0;
+        for (PackInfo pack : packsList)
+        {
+            result += pack.getPack().getSize();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the metrics.
+     *
+     * @return the metrics
+     */
+    protected Metrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * Dispatches a message to the listeners.
      *
@@ -23,11 +23,16 @@
 package com.izforge.izpack.compiler.stream;
 
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+
+import com.izforge.izpack.core.io.RawEntryWriter;
 //import java.util.zip.ZipException;
 
 //The declarations for ZipOutputStreams will be done
@@ -46,14 +51,19 @@ import java.util.jar.Manifest;
  * java.util.jar.JarOutputStream. Therefore we create an own class
  * which supports it. Really the hole work will be delegated to the
  * ZipOutputStream from the apache team which solves the problem.
+ * <p/>
+ * Entries that have already been deflated, e.g. those of merged jars, can be
+ * copied without being inflated and deflated again, via {@link #writeRawEntry}.
  *
  * @author Klaus Bartz
  */
-public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
+public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream implements RawEntryWriter
 {
     private static final int JAR_MAGIC = 0xCAFE;
+    private static final int BUFFER_SIZE = 64 * 1024;
     private boolean firstEntry = true;
     private boolean preventClose = false;
+    private int level = Deflater.DEFAULT_COMPRESSION;
 
     /**
      * Creates a new <code>JarOutputStream</code> with no manifest.
@@ -145,6 +155,116 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
         super.putNextEntry(ze);
     }
 
+    /**
+     * Sets the compression level for subsequent deflated entries.
+     *
+     * @param level the compression level, from 0 to 9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IllegalArgumentException if the level is invalid
+     */
+    @Override
+    public void setLevel(int level)
+    {
+        super.setLevel(level);
+        this.level = level;
+    }
+
+    /**
+     * Returns the compression level for deflated entries.
+     * <p/>
+     * Data deflated elsewhere with a {@code Deflater} of this level, without a zlib header, is identical to that this
+     * stream would write, so may be passed to {@link #writeRawEntry}.
+     *
+     * @return the compression level
+     */
+    public int getLevel()
+    {
+        return level;
+    }
+
+    /**
+     * Writes a byte to the current entry.
+     * <p/>
+     * The superclass inherits this from FilterOutputStream, which would write the byte straight to the underlying
+     * stream, bypassing the entry's compression and CRC.
+     *
+     * @param b the byte to write
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * Writes a deflated entry, closing any current entry.
+     * <p/>
+     * The superclass has no support for this, so the entry is written as a deflated entry whose data bypasses the
+     * deflater: while the data is written, the entry reports itself as stored, so that it is written verbatim and
+     * counted towards the compressed size. The size and CRC reported by the entry are fixed, so the values the
+     * superclass derives from the deflater on closing the entry are ignored.
+     * <p/>
+     * This relies on internals of the Ant 1.9.2 {@code ZipOutputStream}, which is why the Ant version is pinned in
+     * the parent pom:
+     * <ul>
+     * <li>the protected {@code def} deflater, which is finished here so that it doesn't append to the entry</li>
+     * <li>{@code write} dispatching on {@link org.apache.tools.zip.ZipEntry#getMethod()}, so that data written while
+     * the entry reports itself as stored bypasses the deflater</li>
+     * <li>{@code closeEntry} taking the compressed size of a deflated entry from the no. of bytes written, rather than
+     * from the deflater</li>
+     * </ul>
+     * An upgrade that changes any of these would corrupt the entry; JarOutputStreamTest verifies the written entries.
+     *
+     * @param name           the entry name
+     * @param time           the entry modification time, or {@code -1} to use the current time
+     * @param size           the uncompressed size of the entry
+     * @param crc            the CRC-32 of the uncompressed entry data
+     * @param compressedSize the size of the deflated data
+     * @param data           the deflated data. Exactly {@code compressedSize} bytes are read
+     * @throws IOException for any I/O error, or if fewer than {@code compressedSize} bytes are available
+     */
+    @Override
+    public void writeRawEntry(String name, long time, long size, long crc, long compressedSize, InputStream data)
+            throws IOException
+    {
+        RawEntry entry = new RawEntry(name, size, crc);
+        if (time != -1)
+        {
+            entry.setTime(time);
+        }
+        putNextEntry(entry);
+
+        entry.setRaw(true);
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = compressedSize;
+            while (remaining > 0)
+            {
+                int read = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1)
+                {
+                    throw new EOFException("Unexpected end of deflated data for " + name);
+                }
+                write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        finally
+        {
+            entry.setRaw(false);
+        }
+
+        // finish the unused deflater, discarding its output, so that closeEntry() doesn't append it to the entry
+        def.finish();
+        byte[] discard = new byte[64];
+        while (!def.finished())
+        {
+            def.deflate(discard);
+        }
+        closeEntry();
+    }
+
     /**
      * @return Returns the preventClose.
      */
@@ -249,4 +369,83 @@ public class JarOutputStream extends org.apache.tools.zip.ZipOutputStream
         b[off + 1] = (byte) (value >> 8);
     }
 
+    /**
+     * A deflated entry whose data is written verbatim.
+     */
+    private static class RawEntry extends org.apache.tools.zip.ZipEntry
+    {
+
+        /**
+         * The uncompressed size.
+         */
+        private final long size;
+
+        /**
+         * The CRC-32 of the uncompressed data.
+         */
+        private final long crc;
+
+        /**
+         * Determines if the deflated data is being written.
+         */
+        private boolean raw;
+
+        /**
+         * Constructs a {@code RawEntry}.
+         *
+         * @param name the entry name
+         * @param size the uncompressed size
+         * @param crc  the CRC-32 of the uncompressed data
+         */
+        public RawEntry(String name, long size, long crc)
+        {
+            super(name);
+            this.size = size;
+            this.crc = crc;
+            setMethod(DEFLATED);
+        }
+
+        /**
+         * Determines if the deflated data is being written.
+         *
+         * @param raw if {@code true}, the entry reports itself as stored, so that data is written verbatim
+         */
+        public void setRaw(boolean raw)
+        {
+            this.raw = raw;
+        }
+
+        /**
+         * Returns the compression method.
+         *
+         * @return {@link #STORED} while the deflated data is being written, otherwise {@link #DEFLATED}
+         */
+        @Override
+        public int getMethod()
+        {
+            return raw ? STORED : super.getMethod();
+        }
+
+        /**
+         * Returns the uncompressed size.
+         *
+         * @return the uncompressed size
+         */
+        @Override
+        public long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Returns the CRC-32 of the uncompressed data.
+         *
+         * @return the CRC
+         */
+        @Override
+        public long getCrc()
+        {
+            return crc;
+        }
+    }
 }
@@ -33,6 +33,16 @@ public class AntPathMatcher {
      * <code>false</code> if it didn't
      */
     public boolean match(String pattern, String path, boolean caseSensitive) {
+        return compile(pattern, caseSensitive).matcher(path).matches();
+    }
+
+    /**
+     * Compiles an Ant-style path pattern to a regular expression, so that it can be matched against many paths.
+     * @param pattern the pattern to compile
+     * @param caseSensitive whether matches should be case-sensitive
+     * @return the compiled pattern
+     */
+    public static Pattern compile(String pattern, boolean caseSensitive) {
 
         pattern = pattern.replaceAll("\\\\", "/");
         pattern = pattern.replaceAll("\\.", "\\\\.");
@@ -51,8 +61,6 @@ public class AntPathMatcher {
         {
             flags |= Pattern.CASE_INSENSITIVE;
         }
-        Pattern p = Pattern.compile(s.toString(), flags);
-
-        return p.matcher(path).matches();
+        return Pattern.compile(s.toString(), flags);
     }
 }
@@ -0,0 +1,282 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+
+/**
+ * An index of target paths, for matching many {@link AntPathMatcher Ant-style} path patterns against them.
+ * <p/>
+ * The paths are sorted, so that each pattern only needs to be matched against the paths starting with its literal
+ * prefix. Patterns are typically rooted at a target directory such as <em>${INSTALL_PATH}/bin</em>, so this avoids
+ * matching most paths of a pack against each pattern.
+ */
+public class TargetPathIndex
+{
+
+    /**
+     * The paths, in sorted order.
+     */
+    private final String[] paths;
+
+    /**
+     * The case-insensitive keys of the paths, in sorted order. Lazily created.
+     */
+    private String[] keys;
+
+    /**
+     * The paths, in the order of {@link #keys}.
+     */
+    private String[] keyPaths;
+
+
+    /**
+     * Constructs a {@code TargetPathIndex}.
+     *
+     * @param paths the paths to index
+     */
+    public TargetPathIndex(Iterable<String> paths)
+    {
+        Set<String> sorted = new TreeSet<String>();
+        for (String path : paths)
+        {
+            sorted.add(path);
+        }
+        this.paths = sorted.toArray(new String[sorted.size()]);
+    }
+
+    /**
+     * Returns the paths matching at least one include pattern, and no exclude pattern.
+     *
+     * @param includes      the include patterns
+     * @param excludes      the exclude patterns. May be {@code null}
+     * @param caseSensitive whether matches should be case-sensitive
+     * @return the matching paths
+     */
+    public Set<String> getIncluded(String[] includes, String[] excludes, boolean caseSensitive)
+    {
+        Set<String> result = new HashSet<String>();
+        for (String include : includes)
+        {
+            result.addAll(match(include, caseSensitive));
+        }
+        if (excludes != null)
+        {
+            for (String exclude : excludes)
+            {
+                if (result.isEmpty())
+                {
+                    break;
+                }
+                Pattern pattern = AntPathMatcher.compile(exclude, caseSensitive);
+                for (Iterator<String> iterator = result.iterator(); iterator.hasNext(); )
+                {
+                    if (pattern.matcher(iterator.next()).matches())
+                    {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the paths matching a pattern.
+     *
+     * @param pattern       the pattern
+     * @param caseSensitive whether matches should be case-sensitive
+     * @return the matching paths
+     */
+    public Set<String> match(String pattern, boolean caseSensitive)
+    {
+        Set<String> result = new HashSet<String>();
+        Pattern compiled = AntPathMatcher.compile(pattern, caseSensitive);
+        String prefix = getLiteralPrefix(compiled.pattern());
+        String[] index;
+        String[] candidates;
+        if (caseSensitive)
+        {
+            index = paths;
+            candidates = paths;
+        }
+        else
+        {
+            createKeys();
+            prefix = toKey(prefix);
+            index = keys;
+            candidates = keyPaths;
+        }
+        for (int i = lowerBound(index, prefix);i < index.length && index[i].startsWith(prefix); ++i)
+        {
+            if (compiled.matcher(candidates[i]).matches())
+            {
+                result.add(candidates[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the first element of a sorted array that is greater than or equal to a value.
+     * <p/>
+     * Unlike {@link Arrays#binarySearch(Object[], Object)}, this returns the first of several equal elements, as
+     * distinct paths may share the same case-insensitive key.
+     *
+     * @param sorted the sorted array
+     * @param value  the value
+     * @return the index of the first element {@code >= value}, or {@code sorted.length} if there is none
+     */
+    private static int lowerBound(String[] sorted, String value)
+    {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(value) < 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the literal prefix of a regular expression, i.e. the characters every match must start with.
+     * <p/>
+     * This only needs to handle the expressions generated by {@link AntPathMatcher#compile}, but errs on the side
+     * of a shorter prefix for anything else.
+     *
+     * @param regex the regular expression
+     * @return the literal prefix. May be empty
+     */
+    static String getLiteralPrefix(String regex)
+    {
+        if (regex.indexOf('|') != -1)
+        {
+            return ""; // alternatives needn't share a prefix
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        while (i < regex.length())
+        {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length())
+            {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q')
+                {
+                    int end = regex.indexOf("\\E", i + 2);
+                    prefix.append(end != -1 ? regex.substring(i + 2, end) : regex.substring(i + 2));
+                    i = (end != -1) ? end + 2 : regex.length();
+                }
+                else if (!Character.isLetterOrDigit(next))
+                {
+                    prefix.append(next);
+                    i += 2;
+                }
+                else
+                {
+                    break; // character class, back reference etc
+                }
+            }
+            else if ("?*+{".indexOf(c) != -1)
+            {
+                // the quantifier applies to the preceding character, which may therefore not be present
+                if (prefix.length() > 0)
+                {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            else if (".[]()^$\\".indexOf(c) != -1)
+            {
+                break;
+            }
+            else
+            {
+                prefix.append(c);
+                ++i;
+            }
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Creates the case-insensitive keys, if they haven't already been created.
+     */
+    private void createKeys()
+    {
+        if (keys == null)
+        {
+            Integer[] order = new Integer[paths.length];
+            final String[] unsorted = new String[paths.length];
+            for (int i = 0; i < paths.length; ++i)
+            {
+                order[i] = i;
+                unsorted[i] = toKey(paths[i]);
+            }
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                public int compare(Integer o1, Integer o2)
+                {
+                    return unsorted[o1].compareTo(unsorted[o2]);
+                }
+            });
+            keys = new String[paths.length];
+            keyPaths = new String[paths.length];
+            for (int i = 0; i < order.length; ++i)
+            {
+                keys[i] = unsorted[order[i]];
+                keyPaths[i] = paths[order[i]];
+            }
+        }
+    }
+
+    /**
+     * Returns the case-insensitive key of a string.
+     * <p/>
+     * Characters are converted individually, so that the key of a prefix is a prefix of the key.
+     *
+     * @param value the string
+     * @return the key
+     */
+    private static String toKey(String value)
+    {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; ++i)
+        {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+}
@@ -48,6 +48,7 @@ import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.OverrideType;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
+import com.izforge.izpack.core.io.PackFormat;
 import com.izforge.izpack.data.PackInfo;
 import com.izforge.izpack.merge.MergeManager;
 
@@ -168,6 +169,11 @@ public abstract class AbstractPackagerTest
 
         ObjectInputStream packStream = new ObjectInputStream(jarEntry);
         int packs = packStream.readInt();
+        if (packs == PackFormat.VERSION_MARKER)
+        {
+            packStream.readInt(); // the pack format
+            packs = packStream.readInt();
+        }
         assertEquals(1, packs);
         Pack pack = (Pack) packStream.readObject();
         assertEquals(expectedSize, pack.getSize());
@@ -33,6 +33,7 @@ import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Tests the {@link MultiVolumePackager}.
@@ -64,7 +65,8 @@ public class MultiVolumePackagerTest extends AbstractPackagerTest
                 baseDir + "/target/test.jar",
                 true);
         MultiVolumePackager packager = new MultiVolumePackager(properties, listener, jar, mergeManager,
-                                                               pathResolver, resolver, compressor, data);
+                                                               pathResolver, resolver, compressor, data,
+                                                               new Metrics());
         packager.setInfo(new Info());
         return packager;
     }
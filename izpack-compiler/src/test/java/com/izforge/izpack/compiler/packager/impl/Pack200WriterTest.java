@@ -0,0 +1,184 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link Pack200Writer}.
+ */
+public class Pack200WriterTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that jars packed concurrently using Pack200 are written in entry order.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testPack200() throws IOException
+    {
+        Map<Integer, byte[]> entries = write(true);
+        for (Map.Entry<Integer, byte[]> entry : entries.entrySet())
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            JarOutputStream jar = new JarOutputStream(bytes);
+            Pack200.newUnpacker().unpack(new ByteArrayInputStream(entry.getValue()), jar);
+            jar.close();
+            checkJar(bytes.toByteArray(), entry.getKey());
+        }
+    }
+
+    /**
+     * Verifies that jars are re-compressed, in entry order, when Pack200 isn't available.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDeflateFallback() throws IOException
+    {
+        Map<Integer, byte[]> entries = write(false);
+        for (Map.Entry<Integer, byte[]> entry : entries.entrySet())
+        {
+            byte[] data = entry.getValue();
+            assertEquals('P', data[0]);
+            assertEquals('K', data[1]);
+            checkJar(data, entry.getKey());
+        }
+    }
+
+    /**
+     * Packs jars using 3 threads.
+     *
+     * @param pack200 if {@code true} use Pack200, otherwise re-compress
+     * @return the written entries, keyed on entry identifier, in the order they were written
+     * @throws IOException for any I/O error
+     */
+    private Map<Integer, byte[]> write(boolean pack200) throws IOException
+    {
+        Map<Integer, File> jars = new LinkedHashMap<Integer, File>();
+        for (int i = 0; i < 10; ++i)
+        {
+            jars.put(i, createJar(i));
+        }
+        final Map<Integer, byte[]> result = new LinkedHashMap<Integer, byte[]>();
+        final List<Integer> order = new ArrayList<Integer>();
+        Pack200Writer writer = new Pack200Writer(jars, 3, pack200);
+        writer.write(new Pack200Writer.EntryWriter()
+        {
+            @Override
+            public void write(int key, InputStream in) throws IOException
+            {
+                order.add(key);
+                result.put(key, IOUtils.toByteArray(in));
+            }
+        });
+        assertEquals(new ArrayList<Integer>(jars.keySet()), order);
+        return result;
+    }
+
+    /**
+     * Creates a jar with a single, compressible entry.
+     *
+     * @param index the jar index
+     * @return the jar
+     * @throws IOException for any I/O error
+     */
+    private File createJar(int index) throws IOException
+    {
+        File file = temporaryFolder.newFile("jar" + index + ".jar");
+        JarOutputStream jar = new JarOutputStream(new FileOutputStream(file));
+        jar.putNextEntry(new ZipEntry("data" + index + ".txt"));
+        jar.write(getContent(index));
+        jar.closeEntry();
+        jar.close();
+        return file;
+    }
+
+    /**
+     * Verifies a jar holds the expected entry.
+     *
+     * @param data  the jar
+     * @param index the jar index
+     * @throws IOException for any I/O error
+     */
+    private void checkJar(byte[] data, int index) throws IOException
+    {
+        ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(data));
+        boolean found = false;
+        ZipEntry entry;
+        while ((entry = in.getNextEntry()) != null)
+        {
+            if (entry.getName().equals("data" + index + ".txt"))
+            {
+                assertArrayEquals(getContent(index), IOUtils.toByteArray(in));
+                found = true;
+            }
+        }
+        in.close();
+        assertTrue(found);
+    }
+
+    /**
+     * Returns the content of a jar entry.
+     *
+     * @param index the jar index
+     * @return the content
+     */
+    private byte[] getContent(int index)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; ++i)
+        {
+            builder.append("line ").append(index).append(' ').append(i).append('\n');
+        }
+        return builder.toString().getBytes();
+    }
+}
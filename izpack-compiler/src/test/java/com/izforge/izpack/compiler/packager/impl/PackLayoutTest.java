@@ -0,0 +1,181 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.PackInfo;
+
+
+/**
+ * Tests the {@link PackLayout}.
+ */
+public class PackLayoutTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that files with identical content are only stored once, regardless of their source path.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDuplicateContent() throws IOException
+    {
+        File a = createFile("a/file.txt", "identical content");
+        File b = createFile("b/file.txt", "identical content");
+        File c = createFile("c/file.txt", "different content");  // same length, different content
+
+        PackInfo pack1 = createPack("pack1");
+        PackFile a1 = addFile(pack1, a, "a1.txt");
+        PackFile c1 = addFile(pack1, c, "c1.txt");
+        PackInfo pack2 = createPack("pack2");
+        PackFile b2 = addFile(pack2, b, "b2.txt");
+        PackFile a2 = addFile(pack2, a, "a2.txt");
+
+        PackLayout layout = new PackLayout(Arrays.asList(pack1, pack2), false, true);
+        assertTrue(layout.isStored(a1));
+        assertTrue(layout.isStored(c1));
+        assertFalse(layout.isStored(b2));
+        assertFalse(layout.isStored(a2));
+        assertNull(layout.getReference(a1));
+        assertNull(layout.getReference(c1));
+        assertSame(a1, layout.getReference(b2));
+        assertSame(a1, layout.getReference(a2));
+        assertEquals(0, layout.getPackIndex(a1));
+
+        // only the reference to a file with a different source path counts as a duplicate
+        assertEquals(1, layout.getDuplicates());
+        assertEquals(b.length(), layout.getDuplicateBytes());
+    }
+
+    /**
+     * Verifies that when cross pack references are disabled, references are limited to files in the same pack.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testNoCrossPackReferences() throws IOException
+    {
+        File a = createFile("a/file.txt", "identical content");
+        File b = createFile("b/file.txt", "identical content");
+
+        PackInfo pack1 = createPack("pack1");
+        PackFile a1 = addFile(pack1, a, "a1.txt");
+        PackInfo pack2 = createPack("pack2");
+        PackFile a2 = addFile(pack2, a, "a2.txt");
+        PackFile b2 = addFile(pack2, b, "b2.txt");
+
+        PackLayout layout = new PackLayout(Arrays.asList(pack1, pack2), false, false);
+        assertTrue(layout.isStored(a1));
+        assertTrue(layout.isStored(a2));
+        assertSame(a2, layout.getReference(b2));
+        assertEquals(1, layout.getPackIndex(a2));
+        assertEquals(1, layout.getDuplicates());
+    }
+
+    /**
+     * Verifies that empty files are always stored.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testEmptyFiles() throws IOException
+    {
+        List<PackFile> files = new ArrayList<PackFile>();
+        PackInfo pack = createPack("pack");
+        files.add(addFile(pack, createFile("a/empty.txt", ""), "a.txt"));
+        files.add(addFile(pack, createFile("b/empty.txt", ""), "b.txt"));
+
+        PackLayout layout = new PackLayout(Arrays.asList(pack), false, true);
+        for (PackFile file : files)
+        {
+            assertTrue(layout.isStored(file));
+        }
+        assertEquals(0, layout.getDuplicates());
+    }
+
+    /**
+     * Creates a pack.
+     *
+     * @param name the pack name
+     * @return a new pack
+     */
+    private PackInfo createPack(String name)
+    {
+        return new PackInfo(name, name, null, true, false, null, true, 0);
+    }
+
+    /**
+     * Adds a file to a pack.
+     *
+     * @param packInfo the pack
+     * @param file     the file to add
+     * @param target   the target path, relative to the installation directory
+     * @return the new pack file
+     * @throws IOException for any I/O error
+     */
+    private PackFile addFile(PackInfo packInfo, File file, String target) throws IOException
+    {
+        packInfo.addFile(file.getParentFile(), file, "$INSTALL_PATH/" + target, null, OverrideType.OVERRIDE_TRUE,
+                         null, Blockable.BLOCKABLE_NONE, null, null);
+        List<PackFile> files = new ArrayList<PackFile>(packInfo.getPackFiles());
+        return files.get(files.size() - 1);
+    }
+
+    /**
+     * Creates a file in the temporary folder.
+     *
+     * @param path    the file path, relative to the temporary folder
+     * @param content the file content
+     * @return the new file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String path, String content) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), path);
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+}
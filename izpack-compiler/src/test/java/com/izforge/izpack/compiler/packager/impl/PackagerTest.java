@@ -19,18 +19,50 @@
 
 package com.izforge.izpack.compiler.packager.impl;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
 import org.mockito.Mockito;
+import org.tukaani.xz.XZInputStream;
 
+import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.compiler.compressor.LZ4PackCompressor;
 import com.izforge.izpack.compiler.compressor.PackCompressor;
+import com.izforge.izpack.compiler.compressor.XZPackCompressor;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.stream.JarOutputStream;
+import com.izforge.izpack.core.io.LZ4InputStream;
+import com.izforge.izpack.data.PackInfo;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Tests the {@link Packager}.
@@ -48,14 +80,594 @@ public class PackagerTest extends AbstractPackagerTest
     @Override
     protected PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager)
     {
-        Properties properties = new Properties();
-        PackagerListener listener = null;
         PackCompressor compressor = Mockito.mock(PackCompressor.class);
+        Mockito.when(compressor.useStandardCompression()).thenReturn(true);
+        return createPackager(jar, mergeManager, 1, compressor);
+    }
+
+    /**
+     * Verifies that writing packs on several threads produces the same packs as writing them on one thread,
+     * including back references to files stored in other packs.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testConcurrentWriteMatchesSerialWrite() throws Exception
+    {
+        File shared = createFile("shared", 20000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 1000 * (i + 1));
+        }
+
+        Map<String, byte[]> serial = writePacks(1, shared, files);
+        Map<String, byte[]> concurrent = writePacks(4, shared, files);
+
+        assertEquals(serial.keySet(), concurrent.keySet());
+        assertEquals(7, serial.size()); // 5 packs + packs.info + packs.index
+        for (Map.Entry<String, byte[]> entry : serial.entrySet())
+        {
+            assertArrayEquals(entry.getKey(), entry.getValue(), concurrent.get(entry.getKey()));
+        }
+
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs deflated on several threads are deflated exactly as the installer jar deflates packs written
+     * on one thread, including packs split into blocks.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testConcurrentDeflateMatchesSerialDeflate() throws Exception
+    {
+        File shared = createFile("shared", 1000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 100000);
+        }
+
+        for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION})
+        {
+            Map<String, byte[]> serial = writeDeflatedPacks(1, level, shared, files);
+            Map<String, byte[]> concurrent = writeDeflatedPacks(4, level, shared, files);
+            assertTrue(serial.containsKey("resources/packs.index")); // Pack0 is split into blocks
+            checkEquals(serial, concurrent);
+        }
+
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs are split into blocks before back referenced files, and that the blocks are listed in the
+     * pack index.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testBlocks() throws Exception
+    {
+        File shared = createFile("shared", 1000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 100000);
+        }
+
+        Map<String, byte[]> serial = writePacks(1, shared, files);
+        Map<String, byte[]> concurrent = writePacks(4, shared, files);
+        assertEquals(serial.keySet(), concurrent.keySet());
+        for (Map.Entry<String, byte[]> entry : serial.entrySet())
+        {
+            assertArrayEquals(entry.getKey(), entry.getValue(), concurrent.get(entry.getKey()));
+        }
+
+        // only the first pack stores a referenced file more than a block past its start. The other packs store
+        // the referenced file straight after back references to the preceding pack
+        ObjectInputStream index = new ObjectInputStream(new ByteArrayInputStream(serial.get("resources/packs.index")));
+        assertEquals(1, index.readInt());
+        assertEquals("Pack0", index.readUTF());
+        assertEquals(1, index.readInt());
+        long offset = index.readLong();
+        assertTrue(offset >= PackWriter.MIN_BLOCK_SIZE);
+
+        // the pack entry holds the pack up to the block, and the block entry the remainder. The installer joins
+        // them to read the pack sequentially
+        byte[] first = serial.get("resources/packs/pack-Pack0");
+        byte[] block = serial.get("resources/packs/blocks/pack-Pack0-" + offset);
+        assertEquals(offset, first.length);
+
+        // a block starts with the content of the referenced file. This is the second file of Pack0, which is
+        // also included in Pack1
+        byte[] content = FileUtils.readFileToByteArray(files[1]);
+        assertArrayEquals(content, Arrays.copyOf(block, content.length));
+
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that the size and CRC of each pack entry are recorded in <em>packs.info</em>, unless the pack has been
+     * split into blocks.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testEntryIdentity() throws Exception
+    {
+        File shared = createFile("shared", 20000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 1000 * (i + 1));
+        }
+
+        for (int threads : new int[]{1, 4})
+        {
+            Map<String, byte[]> entries = writePacks(threads, shared, files);
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(entries.get("resources/packs.info")));
+            in.readInt(); // version marker
+            in.readInt(); // pack format
+            int size = in.readInt();
+            assertEquals(5, size);
+            int identified = 0;
+            for (int i = 0; i < size; ++i)
+            {
+                Pack pack = (Pack) in.readObject();
+                String prefix = "resources/packs/blocks/pack-" + pack.getName() + "-";
+                boolean blocked = false;
+                for (String name : entries.keySet())
+                {
+                    blocked |= name.startsWith(prefix);
+                }
+                if (blocked)
+                {
+                    assertEquals(-1, pack.getEntryCrc());
+                    assertEquals(-1, pack.getEntrySize());
+                }
+                else
+                {
+                    byte[] entry = entries.get("resources/packs/pack-" + pack.getName());
+                    CRC32 crc = new CRC32();
+                    crc.update(entry);
+                    assertEquals(crc.getValue(), pack.getEntryCrc());
+                    assertEquals(entry.length, pack.getEntrySize());
+                    ++identified;
+                }
+            }
+            assertTrue(identified > 0);
+            in.close();
+        }
+
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs written with a compressor that doesn't use the standard compression are encoded
+     * individually, and decode to the same streams as packs written with the standard compression.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCompressedPacks() throws Exception
+    {
+        File shared = createFile("shared", 20000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 1000 * (i + 1));
+        }
+
+        Map<String, byte[]> standard = writePacks(1, shared, files);
+        for (int threads : new int[]{1, 4})
+        {
+            Map<String, byte[]> compressed = writePacks(threads, new LZ4PackCompressor(2), shared, files);
+            assertEquals(6, compressed.size()); // 5 packs + packs.info. There is no index as packs aren't split
+            for (int i = 0; i < 5; ++i)
+            {
+                String name = "resources/packs/pack-Pack" + i;
+                byte[] pack = compressed.get(name);
+                byte[] decoded = IOUtils.toByteArray(new LZ4InputStream(new ByteArrayInputStream(pack)));
+                assertArrayEquals(name, standard.get(name), decoded);
+                assertTrue(pack.length < decoded.length);
+            }
+        }
+
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs written with the xz compressor decode to the same streams as packs written with the
+     * standard compression, and that the decoder is merged into the installer.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testXZPacks() throws Exception
+    {
+        File shared = createFile("shared", 20000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 1000 * (i + 1));
+        }
+
+        Map<String, byte[]> standard = writePacks(1, shared, files);
+        for (int threads : new int[]{1, 4})
+        {
+            MergeManager mergeManager = Mockito.mock(MergeManager.class);
+            PackCompressor compressor = new XZPackCompressor(mergeManager);
+            Mockito.verify(mergeManager).addResourceToMerge("org/tukaani/xz");
+            compressor.setCompressionLevel(threads); // vary the preset
+            Map<String, byte[]> compressed = writePacks(threads, compressor, shared, files);
+            assertEquals(6, compressed.size());
+            for (int i = 0; i < 5; ++i)
+            {
+                String name = "resources/packs/pack-Pack" + i;
+                byte[] pack = compressed.get(name);
+                byte[] decoded = IOUtils.toByteArray(new XZInputStream(new ByteArrayInputStream(pack)));
+                assertArrayEquals(name, standard.get(name), decoded);
+                assertTrue(pack.length < decoded.length);
+            }
+        }
+
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Verifies that packs are reused from the pack cache when they haven't changed, and that installers written
+     * using the cache are identical to those written without it.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCache() throws Exception
+    {
+        PackCompressor standard = Mockito.mock(PackCompressor.class);
+        Mockito.when(standard.useStandardCompression()).thenReturn(true);
+        checkCache(1, standard);
+        checkCache(4, standard);
+        checkCache(1, new LZ4PackCompressor(2));
+        checkCache(4, new LZ4PackCompressor(2));
+    }
+
+    /**
+     * Verifies that packs are reused from the pack cache when they haven't changed.
+     *
+     * @param threads    the no. of threads to write packs with
+     * @param compressor the pack compressor
+     * @throws Exception for any error
+     */
+    private void checkCache(int threads, PackCompressor compressor) throws Exception
+    {
+        File shared = createFile("shared", 20000);
+        File[] files = new File[6];
+        for (int i = 0; i < files.length; ++i)
+        {
+            files[i] = createFile("file" + i, 100000);
+        }
+        File cacheDir = File.createTempFile("cache", "");
+        assertTrue(cacheDir.delete());
+
+        Map<String, byte[]> expected = writePacks(threads, compressor, null, null, shared, files);
+        checkEquals(expected, writeCachedPacks(threads, compressor, cacheDir, shared, files, 0));
+        checkEquals(expected, writeCachedPacks(threads, compressor, cacheDir, shared, files, 5));
+
+        // change the last file, which is only included in the last pack
+        FileUtils.writeStringToFile(files[5], "changed");
+        assertTrue(files[5].setLastModified(files[5].lastModified() + 2000));
+        expected = writePacks(threads, compressor, null, null, shared, files);
+        checkEquals(expected, writeCachedPacks(threads, compressor, cacheDir, shared, files, 4));
+        checkEquals(expected, writeCachedPacks(threads, compressor, cacheDir, shared, files, 5));
+
+        FileUtils.deleteDirectory(cacheDir);
+        assertTrue(shared.delete());
+        for (File file : files)
+        {
+            assertTrue(file.delete());
+        }
+    }
+
+    /**
+     * Writes an installer containing 5 packs using the pack cache, verifying the no. of cache hits.
+     *
+     * @param threads    the no. of threads to write packs with
+     * @param compressor the pack compressor
+     * @param cacheDir   the cache directory
+     * @param shared     the file to include in each pack
+     * @param files      the files to distribute over the packs
+     * @param hits       the expected no. of packs reused from the cache
+     * @return the pack entry contents, keyed on entry name
+     * @throws Exception for any error
+     */
+    private Map<String, byte[]> writeCachedPacks(int threads, PackCompressor compressor, File cacheDir, File shared,
+                                                 File[] files, int hits) throws Exception
+    {
+        PackagerListener listener = Mockito.mock(PackagerListener.class);
+        Map<String, byte[]> result = writePacks(threads, compressor, cacheDir, listener, shared, files);
+        int misses = 5 - hits;
+        Mockito.verify(listener).packagerMsg("Pack cache: " + hits + " hit" + (hits != 1 ? "s" : "") + ", "
+                                                     + misses + " miss" + (misses != 1 ? "es" : ""),
+                                             PackagerListener.MSG_INFO);
+        return result;
+    }
+
+    /**
+     * Verifies that two sets of pack entries are identical.
+     *
+     * @param expected the expected pack entries
+     * @param actual   the actual pack entries
+     */
+    private void checkEquals(Map<String, byte[]> expected, Map<String, byte[]> actual)
+    {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet())
+        {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Writes an installer containing 5 packs, each containing the shared file, and returns the pack entries.
+     *
+     * @param threads the no. of threads to write packs with
+     * @param shared  the file to include in each pack
+     * @param files   the files to distribute over the packs
+     * @return the pack entry contents, keyed on entry name
+     * @throws Exception for any error
+     */
+    private Map<String, byte[]> writePacks(int threads, File shared, File[] files) throws Exception
+    {
+        PackCompressor compressor = Mockito.mock(PackCompressor.class);
+        Mockito.when(compressor.useStandardCompression()).thenReturn(true);
+        return writePacks(threads, compressor, shared, files);
+    }
+
+    /**
+     * Writes an installer containing 5 packs, each containing the shared file, and returns the pack entries.
+     *
+     * @param threads    the no. of threads to write packs with
+     * @param compressor the pack compressor
+     * @param shared     the file to include in each pack
+     * @param files      the files to distribute over the packs
+     * @return the pack entry contents, keyed on entry name
+     * @throws Exception for any error
+     */
+    private Map<String, byte[]> writePacks(int threads, PackCompressor compressor, File shared, File[] files)
+            throws Exception
+    {
+        return writePacks(threads, compressor, null, null, shared, files);
+    }
+
+    /**
+     * Writes an installer containing 5 packs, each containing the shared file, and returns the pack entries.
+     *
+     * @param threads    the no. of threads to write packs with
+     * @param compressor the pack compressor
+     * @param cacheDir   the pack cache directory. May be {@code null}
+     * @param listener   the packager listener. May be {@code null}
+     * @param shared     the file to include in each pack
+     * @param files      the files to distribute over the packs
+     * @return the pack entry contents, keyed on entry name
+     * @throws Exception for any error
+     */
+    private Map<String, byte[]> writePacks(int threads, PackCompressor compressor, File cacheDir,
+                                           PackagerListener listener, File shared, File[] files) throws Exception
+    {
+        File jar = File.createTempFile("installer", ".jar");
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        output.setPreventClose(true);
+        PackagerBase packager = createPackager(output, Mockito.mock(MergeManager.class), threads, compressor,
+                                               cacheDir, listener);
+        addPacks(packager, shared, files);
+        packager.createInstaller();
+
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        JarInputStream input = new JarInputStream(new FileInputStream(jar));
+        JarEntry entry;
+        while ((entry = input.getNextJarEntry()) != null)
+        {
+            if (entry.getName().startsWith("resources/packs"))
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = input.read(buffer)) != -1)
+                {
+                    bytes.write(buffer, 0, read);
+                }
+                result.put(entry.getName(), bytes.toByteArray());
+            }
+        }
+        input.close();
+        assertTrue(jar.delete());
+        return result;
+    }
+
+    /**
+     * Writes an installer containing 5 packs using the standard compression, and returns the pack entries as stored in
+     * the jar.
+     *
+     * @param threads the no. of threads to write packs with
+     * @param level   the deflate compression level
+     * @param shared  the file to include in each pack
+     * @param files   the files to distribute over the packs
+     * @return the CRC-32, sizes and deflated data of each pack entry, keyed on entry name
+     * @throws Exception for any error
+     */
+    private Map<String, byte[]> writeDeflatedPacks(int threads, int level, File shared, File[] files)
+            throws Exception
+    {
+        File jar = File.createTempFile("installer", ".jar");
+        JarOutputStream output = new JarOutputStream(jar); // seekable, so the sizes are written to the local headers
+        output.setLevel(level);
+        output.setPreventClose(true);
+        PackCompressor compressor = Mockito.mock(PackCompressor.class);
+        Mockito.when(compressor.useStandardCompression()).thenReturn(true);
+        PackagerBase packager = createPackager(output, Mockito.mock(MergeManager.class), threads, compressor);
+        addPacks(packager, shared, files);
+        packager.createInstaller();
+
+        // read each local file header and the data following it
+        Map<String, byte[]> result = new TreeMap<String, byte[]>();
+        RandomAccessFile file = new RandomAccessFile(jar, "r");
+        byte[] header = new byte[30];
+        file.readFully(header);
+        while (getInt(header, 0, 4) == 0x04034b50)
+        {
+            byte[] name = new byte[getInt(header, 26, 2)];
+            file.readFully(name);
+            file.skipBytes(getInt(header, 28, 2));
+            byte[] entry = new byte[12 + getInt(header, 18, 4)];
+            System.arraycopy(header, 14, entry, 0, 12); // CRC-32, compressed and uncompressed sizes
+            file.readFully(entry, 12, entry.length - 12);
+            if (new String(name, "UTF-8").startsWith("resources/packs"))
+            {
+                result.put(new String(name, "UTF-8"), entry);
+            }
+            file.readFully(header);
+        }
+        file.close();
+        assertTrue(jar.delete());
+        return result;
+    }
+
+    /**
+     * Reads a little-endian unsigned integer.
+     *
+     * @param buffer the buffer to read
+     * @param offset the offset of the integer
+     * @param length the no. of bytes in the integer
+     * @return the integer
+     */
+    private int getInt(byte[] buffer, int offset, int length)
+    {
+        int result = 0;
+        for (int i = length - 1; i >= 0; --i)
+        {
+            result = (result << 8) | (buffer[offset + i] & 0xff);
+        }
+        return result;
+    }
+
+    /**
+     * Adds 5 packs to a packager, each containing the shared file.
+     *
+     * @param packager the packager
+     * @param shared   the file to include in each pack
+     * @param files    the files to distribute over the packs
+     * @throws IOException for any I/O error
+     */
+    private void addPacks(PackagerBase packager, File shared, File[] files) throws IOException
+    {
+        for (int i = 0; i < 5; ++i)
+        {
+            PackInfo packInfo = new PackInfo("Pack" + i, "Pack" + i, null, true, false, null, true, 0);
+            addFile(packInfo, shared, "shared.txt");
+            addFile(packInfo, files[i], files[i].getName());
+            addFile(packInfo, files[i + 1], "copy/" + files[i + 1].getName());
+            packager.addPack(packInfo);
+        }
+    }
+
+    /**
+     * Adds a file to a pack.
+     *
+     * @param packInfo the pack
+     * @param file     the file to add
+     * @param target   the target path, relative to the installation directory
+     * @throws IOException for any I/O error
+     */
+    private void addFile(PackInfo packInfo, File file, String target) throws IOException
+    {
+        packInfo.addFile(file.getParentFile(), file, "$INSTALL_PATH/" + target, null, OverrideType.OVERRIDE_TRUE,
+                         null, Blockable.BLOCKABLE_NONE, null, null);
+    }
+
+    /**
+     * Creates a temporary file.
+     *
+     * @param prefix the file name prefix
+     * @param size   the approximate file size
+     * @return a new file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String prefix, int size) throws IOException
+    {
+        File file = File.createTempFile(prefix, ".txt");
+        PrintStream stream = new PrintStream(file);
+        for (int i = 0; i < size / 10; ++i)
+        {
+            stream.println(prefix + i);
+        }
+        stream.close();
+        return file;
+    }
+
+    /**
+     * Helper to create a packager that writes to the provided jar.
+     *
+     * @param jar          the jar stream
+     * @param mergeManager the merge manager
+     * @param threads      the no. of threads to write packs with
+     * @param compressor   the pack compressor
+     * @return a new packager
+     */
+    private PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager, int threads,
+                                        PackCompressor compressor)
+    {
+        return createPackager(jar, mergeManager, threads, compressor, null, null);
+    }
+
+    /**
+     * Helper to create a packager that writes to the provided jar.
+     *
+     * @param jar          the jar stream
+     * @param mergeManager the merge manager
+     * @param threads      the no. of threads to write packs with
+     * @param compressor   the pack compressor
+     * @param cacheDir     the pack cache directory. May be {@code null}
+     * @param listener     the packager listener. May be {@code null}
+     * @return a new packager
+     */
+    private PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager, int threads,
+                                        PackCompressor compressor, File cacheDir, PackagerListener listener)
+    {
+        Properties properties = new Properties();
         CompilerPathResolver pathResolver = Mockito.mock(CompilerPathResolver.class);
         MergeableResolver resolver = Mockito.mock(MergeableResolver.class);
         CompilerData data = new CompilerData("", "", "", true);
+        data.setPackThreads(threads);
+        data.setCacheDir(cacheDir);
         Packager packager = new Packager(properties, listener, jar, compressor, jar, mergeManager,
-                                         pathResolver, resolver, data);
+                                         pathResolver, resolver, data, new Metrics());
         packager.setInfo(new Info());
         return packager;
     }
@@ -0,0 +1,263 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.merge.jar.JarMerge;
+
+
+/**
+ * Tests the {@link JarOutputStream}.
+ */
+public class JarOutputStreamTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that raw entries can be read back by both {@link JarFile} and {@link JarInputStream}, whether the
+     * stream writes to a file, or to a stream that cannot seek.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testWriteRawEntry() throws IOException
+    {
+        byte[] first = createContent(100000, 1);
+        byte[] second = createContent(10, 2);
+
+        File seekable = temporaryFolder.newFile("seekable.jar");
+        JarOutputStream out = new JarOutputStream(seekable);
+        writeEntries(out, first, second);
+        out.close();
+        checkEntries(seekable, first, second);
+
+        File streamed = temporaryFolder.newFile("streamed.jar");
+        out = new JarOutputStream(new FileOutputStream(streamed));
+        writeEntries(out, first, second);
+        out.close();
+        checkEntries(streamed, first, second);
+    }
+
+    /**
+     * Verifies that entries merged from a jar are copied without being deflated again, unless they are stored.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testMergeCopiesDeflatedEntries() throws IOException
+    {
+        byte[] data = createContent(50000, 3);
+        byte[] stored = createContent(100, 4);
+
+        // deflate at a level the installer jar doesn't use, so that verbatim copies can be detected by their size
+        File source = temporaryFolder.newFile("source.jar");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(source));
+        zip.setLevel(Deflater.BEST_SPEED);
+        zip.putNextEntry(new ZipEntry("a/data.bin"));
+        zip.write(data);
+        ZipEntry storedEntry = new ZipEntry("a/stored.bin");
+        storedEntry.setMethod(ZipEntry.STORED);
+        storedEntry.setSize(stored.length);
+        storedEntry.setCrc(getCrc(stored));
+        zip.putNextEntry(storedEntry);
+        zip.write(stored);
+        zip.close();
+        long compressedSize = getEntry(source, "a/data.bin").getCompressedSize();
+
+        File target = temporaryFolder.newFile("target.jar");
+        JarOutputStream out = new JarOutputStream(target);
+        JarMerge merge = new JarMerge(source.getPath(), "a", "b", new HashMap<OutputStream, Set<String>>());
+        merge.merge(out);
+        out.close();
+
+        JarFile jar = new JarFile(target);
+        try
+        {
+            ZipEntry entry = jar.getEntry("b/data.bin");
+            assertEquals(compressedSize, entry.getCompressedSize());
+            assertArrayEquals(data, IOUtils.toByteArray(jar.getInputStream(entry)));
+            assertArrayEquals(stored, IOUtils.toByteArray(jar.getInputStream(jar.getEntry("b/stored.bin"))));
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Writes a raw entry, followed by an entry deflated by the stream, and another raw entry.
+     *
+     * @param out    the stream to write to
+     * @param first  the content of the first raw entry
+     * @param second the content of the second raw entry
+     * @throws IOException for any I/O error
+     */
+    private void writeEntries(JarOutputStream out, byte[] first, byte[] second) throws IOException
+    {
+        writeRawEntry(out, "first.bin", first);
+        out.putNextEntry(new org.apache.tools.zip.ZipEntry("plain.txt"));
+        out.write("plain".getBytes("UTF-8"));
+        out.closeEntry();
+        writeRawEntry(out, "second.bin", second);
+    }
+
+    /**
+     * Deflates content, and writes it as a raw entry.
+     *
+     * @param out     the stream to write to
+     * @param name    the entry name
+     * @param content the entry content
+     * @throws IOException for any I/O error
+     */
+    private void writeRawEntry(JarOutputStream out, String name, byte[] content) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream deflater = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED, true));
+        deflater.write(content);
+        deflater.close();
+        byte[] deflated = bytes.toByteArray();
+        out.writeRawEntry(name, 0, content.length, getCrc(content), deflated.length,
+                          new ByteArrayInputStream(deflated));
+    }
+
+    /**
+     * Verifies a jar contains the entries written by {@link #writeEntries}.
+     *
+     * @param file   the jar
+     * @param first  the content of the first raw entry
+     * @param second the content of the second raw entry
+     * @throws IOException for any I/O error
+     */
+    private void checkEntries(File file, byte[] first, byte[] second) throws IOException
+    {
+        JarFile jar = new JarFile(file);
+        try
+        {
+            assertArrayEquals(first, IOUtils.toByteArray(jar.getInputStream(jar.getEntry("first.bin"))));
+            assertArrayEquals("plain".getBytes("UTF-8"),
+                              IOUtils.toByteArray(jar.getInputStream(jar.getEntry("plain.txt"))));
+            assertArrayEquals(second, IOUtils.toByteArray(jar.getInputStream(jar.getEntry("second.bin"))));
+        }
+        finally
+        {
+            jar.close();
+        }
+
+        // read the local headers. JarInputStream verifies the CRC of each entry
+        JarInputStream in = new JarInputStream(new ByteArrayInputStream(org.apache.commons.io.FileUtils
+                                                                                 .readFileToByteArray(file)));
+        assertEquals("first.bin", in.getNextJarEntry().getName());
+        assertArrayEquals(first, IOUtils.toByteArray(in));
+        assertEquals("plain.txt", in.getNextJarEntry().getName());
+        IOUtils.toByteArray(in);
+        JarEntry entry = in.getNextJarEntry();
+        assertNotNull(entry);
+        assertEquals("second.bin", entry.getName());
+        assertArrayEquals(second, IOUtils.toByteArray(in));
+        assertNull(in.getNextJarEntry());
+        in.close();
+    }
+
+    /**
+     * Returns an entry of a jar.
+     *
+     * @param file the jar
+     * @param name the entry name
+     * @return the entry
+     * @throws IOException for any I/O error
+     */
+    private ZipEntry getEntry(File file, String name) throws IOException
+    {
+        JarFile jar = new JarFile(file);
+        try
+        {
+            return jar.getEntry(name);
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Creates compressible content.
+     *
+     * @param size the content size
+     * @param seed the random seed
+     * @return the content
+     */
+    private byte[] createContent(int size, long seed)
+    {
+        Random random = new Random(seed);
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; ++i)
+        {
+            result[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the CRC-32 of content.
+     *
+     * @param content the content
+     * @return the CRC
+     */
+    private long getCrc(byte[] content)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
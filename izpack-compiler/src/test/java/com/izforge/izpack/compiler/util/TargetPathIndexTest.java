@@ -0,0 +1,131 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link TargetPathIndex}.
+ */
+public class TargetPathIndexTest
+{
+
+    /**
+     * The indexed paths.
+     */
+    private static final List<String> PATHS = Arrays.asList(
+            "${INSTALL_PATH}/bin/run.sh", "${INSTALL_PATH}/bin/Run.SH", "${INSTALL_PATH}/bin/stop.sh",
+            "${INSTALL_PATH}/bin/lib/tool.sh", "${INSTALL_PATH}/binaries/x.sh", "${INSTALL_PATH}/conf/app.xml",
+            "${INSTALL_PATH}/conf/sub/log.xml", "${INSTALL_PATH}/BIN/upper.sh", "${OTHER}/bin/run.sh",
+            "${INSTALL_PATH}/test.exe", "${INSTALL_PATH}/tast.exe", "${INSTALL_PATH}/tst.exe");
+
+    /**
+     * Verifies that the index matches the same paths as matching each path individually.
+     */
+    @Test
+    public void testMatchesAntPathMatcher()
+    {
+        String[] patterns = {"${INSTALL_PATH}/bin/*.sh", "${INSTALL_PATH}/bin/**", "${INSTALL_PATH}/**/*.xml",
+                             "${INSTALL_PATH}/**", "**/*.sh", "*/bin/run.sh", "${INSTALL_PATH}/bin/run.sh",
+                             "${INSTALL_PATH}/te?st.exe", "${INSTALL_PATH}/t?st.exe", "${INSTALL_PATH}\\conf\\*.xml",
+                             "${INSTALL_PATH}/BIN/*", "${INSTALL_PATH}/bin*/*.sh", "nothing"};
+        TargetPathIndex index = new TargetPathIndex(PATHS);
+        AntPathMatcher matcher = new AntPathMatcher();
+        for (boolean caseSensitive : new boolean[]{true, false})
+        {
+            for (String pattern : patterns)
+            {
+                Set<String> expected = new HashSet<String>();
+                for (String path : PATHS)
+                {
+                    if (matcher.match(pattern, path, caseSensitive))
+                    {
+                        expected.add(path);
+                    }
+                }
+                assertEquals(pattern, expected, index.match(pattern, caseSensitive));
+            }
+        }
+    }
+
+    /**
+     * Verifies that excludes are applied to the included paths.
+     */
+    @Test
+    public void testGetIncluded()
+    {
+        TargetPathIndex index = new TargetPathIndex(PATHS);
+        Set<String> included = index.getIncluded(new String[]{"${INSTALL_PATH}/bin/**", "${INSTALL_PATH}/conf/*"},
+                                                 new String[]{"**/lib/**", "**/stop.sh"}, true);
+        assertEquals(new HashSet<String>(Arrays.asList("${INSTALL_PATH}/bin/run.sh", "${INSTALL_PATH}/bin/Run.SH",
+                                                       "${INSTALL_PATH}/conf/app.xml")), included);
+
+        included = index.getIncluded(new String[]{"${INSTALL_PATH}/bin/*"}, new String[]{"**/run.sh"}, false);
+        assertEquals(new HashSet<String>(Arrays.asList("${INSTALL_PATH}/bin/stop.sh", "${INSTALL_PATH}/BIN/upper.sh")),
+                     included);
+    }
+
+    /**
+     * Tests the {@link TargetPathIndex#getLiteralPrefix(String)} method.
+     */
+    @Test
+    public void testGetLiteralPrefix()
+    {
+        assertEquals("${INSTALL_PATH}/bin/", prefix("${INSTALL_PATH}/bin/*.sh"));
+        assertEquals("${INSTALL_PATH}/a.b", prefix("${INSTALL_PATH}/a.b"));
+        assertEquals("${INSTALL_PATH}/t", prefix("${INSTALL_PATH}/te?st.exe"));
+        assertEquals("", prefix("**/*.sh"));
+        assertEquals("", TargetPathIndex.getLiteralPrefix("a|b"));
+        assertEquals("ab", TargetPathIndex.getLiteralPrefix("ab(c)?"));
+        assertEquals("a", TargetPathIndex.getLiteralPrefix("a\\d"));
+    }
+
+    /**
+     * Returns the literal prefix of an Ant-style pattern.
+     *
+     * @param pattern the pattern
+     * @return the literal prefix
+     */
+    private String prefix(String pattern)
+    {
+        return TargetPathIndex.getLiteralPrefix(AntPathMatcher.compile(pattern, true).pattern());
+    }
+
+    /**
+     * Verifies that duplicate paths are only returned once.
+     */
+    @Test
+    public void testDuplicates()
+    {
+        List<String> paths = new ArrayList<String>(PATHS);
+        paths.addAll(PATHS);
+        TargetPathIndex index = new TargetPathIndex(paths);
+        assertEquals(PATHS.size(), index.match("**", true).size());
+    }
+}
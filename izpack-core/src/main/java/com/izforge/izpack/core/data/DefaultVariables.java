@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -65,6 +66,10 @@ public class DefaultVariables implements Variables
      */
     private RulesEngine rules;
 
+    /**
+     * The version of the variables, incremented whenever a variable changes value.
+     */
+    private final AtomicLong version = new AtomicLong();
 
     /**
      * The logger.
@@ -111,16 +116,36 @@ public class DefaultVariables implements Variables
     {
         if (value != null)
         {
-            properties.setProperty(name, value);
+            if (!value.equals(properties.setProperty(name, value)))
+            {
+                version.incrementAndGet();
+            }
             logger.fine("Dynamic variable '" + name + "' set to '" + value + "'");
         }
         else
         {
-            properties.remove(name);
+            if (properties.remove(name) != null)
+            {
+                version.incrementAndGet();
+            }
             logger.fine("Dynamic variable '" + name + "' unset");
         }
     }
 
+    /**
+     * Returns the version of the variables.
+     * <p/>
+     * This is incremented each time {@link #set} changes the value of a variable, so that values derived from the
+     * variables may be cached until it changes. Changes made directly to the {@link #getProperties() properties}
+     * are not tracked.
+     *
+     * @return the version
+     */
+    public long getVersion()
+    {
+        return version.get();
+    }
+
     /**
      * Returns the value of the specified variable.
      *
@@ -33,6 +33,7 @@ import com.izforge.izpack.api.data.Value;
 import com.izforge.izpack.api.data.ValueFilter;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.variable.PlainValue;
+import com.izforge.izpack.core.variable.ValueImpl;
 
 public class DynamicVariableImpl implements DynamicVariable
 {
@@ -55,6 +56,16 @@ public class DynamicVariableImpl implements DynamicVariable
     private transient String currentValue;
     private transient boolean checked = false;
 
+    /**
+     * The resolution key of the last resolved value, or {@code null} if the value must always be resolved.
+     */
+    private transient String resolvedKey;
+
+    /**
+     * The last resolved value.
+     */
+    private transient String resolvedValue;
+
     public DynamicVariableImpl() {}
 
     public DynamicVariableImpl(String name, String value) {
@@ -137,7 +148,7 @@ public class DynamicVariableImpl implements DynamicVariable
 
         try
         {
-            newValue = value.resolve(substitutors);
+            newValue = resolve(substitutors);
 
             if (checkonce)
             {
@@ -162,6 +173,32 @@ public class DynamicVariableImpl implements DynamicVariable
         return newValue;
     }
 
+    /**
+     * Resolves the value.
+     * <p/>
+     * If the value supplies a {@link ValueImpl#getResolutionKey resolution key}, and it is the same as that of the
+     * previous resolution, the previously resolved value is returned, so that values read from files, commands
+     * etc. are only re-read when their inputs change.
+     *
+     * @param substitutors the variable substitutors
+     * @return the resolved value. May be {@code null}
+     * @throws Exception if the value cannot be resolved
+     */
+    private String resolve(VariableSubstitutor... substitutors) throws Exception
+    {
+        String key = (value instanceof ValueImpl) ? ((ValueImpl) value).getResolutionKey(substitutors) : null;
+        if (key != null && key.equals(resolvedKey))
+        {
+            logger.fine("Dynamic variable inputs unchanged: " + name + "=" + resolvedValue);
+            return resolvedValue;
+        }
+        // reset, in case resolution fails
+        resolvedKey = null;
+        resolvedValue = value.resolve(substitutors);
+        resolvedKey = key;
+        return resolvedValue;
+    }
+
     /**
      * @return the name
      */
@@ -201,6 +238,7 @@ public class DynamicVariableImpl implements DynamicVariable
         if (value != null)
         {
             this.value = value;
+            resolvedKey = null;
         }
     }
 
@@ -20,9 +20,14 @@ package com.izforge.izpack.core.io;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -32,6 +37,11 @@ import com.izforge.izpack.util.file.FileUtils;
 
 /**
  * An <tt>InputStream</tt> which transparently spans over multiple volumes.
+ * <p/>
+ * When every volume is already present, all volumes are opened up front and read using positional reads. Unless
+ * disabled, they are then read and decompressed ahead of the consumer on a separate thread, with two chunks in flight.
+ * Otherwise, each volume is opened as it is reached on the consumer's thread, using the {@link VolumeLocator} to
+ * prompt for missing media.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  * @author Tim Anderson
@@ -45,10 +55,27 @@ public class FileSpanningInputStream extends InputStream
     private final SpanningInputStream spanningInputStream;
 
     /**
-     * The sip stream.
+     * The zip stream.
      */
     private GZIPInputStream zippedInputStream;
 
+    /**
+     * The stream reading ahead of {@link #zippedInputStream}, or {@code null} if it hasn't been started or read-ahead
+     * is disabled.
+     */
+    private ReadAheadInputStream readAheadStream;
+
+    /**
+     * Determines if the stream should be read ahead. Only enabled if all volumes are present.
+     */
+    private final boolean readAhead;
+
+    /**
+     * The decompressed offsets at which each volume started being read, or {@code null} if the stream isn't read
+     * ahead. Written by the reading thread, and read by the consumer.
+     */
+    private final AtomicLongArray volumeOffsets;
+
     /**
      * The absolute offset into the volumes.
      */
@@ -60,9 +87,24 @@ public class FileSpanningInputStream extends InputStream
      */
     private static final Logger logger = Logger.getLogger(FileSpanningInputStream.class.getName());
 
+    /**
+     * The size of the buffer used to decompress the volumes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     /**
-     * Constructs a <tt>FileSpanningInputStream</tt>.
+     * The size of the chunks that the volumes are read ahead in.
+     */
+    private static final int READ_AHEAD_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The no. of chunks that may be read ahead.
+     */
+    private static final int READ_AHEAD_CHUNKS = 2;
+
+
+    /**
+     * Constructs a <tt>FileSpanningInputStream</tt> that reads ahead.
      *
      * @param volume  the first volume to read
      * @param volumes the no. of volumes
@@ -70,13 +112,44 @@ public class FileSpanningInputStream extends InputStream
      * @throws IOException            for any other I/O exception
      */
     public FileSpanningInputStream(File volume, int volumes) throws IOException
+    {
+        this(volume, volumes, true);
+    }
+
+    /**
+     * Constructs a <tt>FileSpanningInputStream</tt>.
+     *
+     * @param volume    the first volume to read
+     * @param volumes   the no. of volumes
+     * @param readAhead if <tt>true</tt>, read the volumes ahead of the consumer on a separate thread, if they are all
+     *                  present
+     * @throws CorruptVolumeException if the volume magic no. cannot be read
+     * @throws IOException            for any other I/O exception
+     */
+    public FileSpanningInputStream(File volume, int volumes, boolean readAhead) throws IOException
     {
         spanningInputStream = new SpanningInputStream(volume, volumes);
-        zippedInputStream = new GZIPInputStream(spanningInputStream);
+        zippedInputStream = new GZIPInputStream(spanningInputStream, BUFFER_SIZE);
+        this.readAhead = readAhead && spanningInputStream.isPositional();
+        if (this.readAhead)
+        {
+            volumeOffsets = new AtomicLongArray(volumes);
+            for (int i = 1; i < volumes; ++i)
+            {
+                volumeOffsets.set(i, Long.MAX_VALUE);
+            }
+        }
+        else
+        {
+            volumeOffsets = null;
+        }
     }
 
     /**
      * Sets the volume locator.
+     * <p/>
+     * The locator is only used if a volume was missing when the stream was opened, in which case the volumes are read
+     * on the consumer's thread.
      *
      * @param locator the locator. May be <tt>null</tt>
      */
@@ -93,7 +166,7 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public int available() throws IOException
     {
-        return zippedInputStream.available();
+        return getStream().available();
     }
 
     /**
@@ -104,8 +177,16 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public void close() throws IOException
     {
-        zippedInputStream.close();
-        spanningInputStream.close();
+        if (readAheadStream != null)
+        {
+            // the reading thread closes the underlying streams
+            readAheadStream.close();
+        }
+        else
+        {
+            zippedInputStream.close();
+            spanningInputStream.close();
+        }
     }
 
     /**
@@ -116,7 +197,7 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public int read() throws IOException
     {
-        int read = zippedInputStream.read();
+        int read = getStream().read();
         if (read != -1)
         {
             ++filePointer;
@@ -132,10 +213,11 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public int read(byte[] b, int off, int len) throws IOException
     {
+        InputStream stream = getStream();
         int count = -1;
         while (len != 0)
         {
-            int read = zippedInputStream.read(b, off, len);
+            int read = stream.read(b, off, len);
             if (read == -1)
             {
                 break;
@@ -162,12 +244,13 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public long skip(long n) throws IOException
     {
-        long skipped = zippedInputStream.skip(n);
+        InputStream stream = getStream();
+        long skipped = stream.skip(n);
         long count = skipped;
         while (skipped != -1 && skipped < n)
         {
             n -= skipped;
-            skipped = zippedInputStream.skip(n);
+            skipped = stream.skip(n);
             if (skipped != -1)
             {
                 count += skipped;
@@ -182,12 +265,24 @@ public class FileSpanningInputStream extends InputStream
 
     /**
      * Returns the volume being read.
+     * <p/>
+     * When reading ahead, this is the volume that supplied the data last returned to the consumer, rather than the
+     * volume that the reading thread is reading.
      *
      * @return the volume being read
      */
     public File getVolume()
     {
-        return spanningInputStream.getVolume();
+        if (volumeOffsets == null)
+        {
+            return spanningInputStream.getVolume();
+        }
+        int index = volumeOffsets.length() - 1;
+        while (index > 0 && volumeOffsets.get(index) >= filePointer)
+        {
+            --index;
+        }
+        return spanningInputStream.getVolume(index);
     }
 
     /**
@@ -201,14 +296,146 @@ public class FileSpanningInputStream extends InputStream
         return filePointer;
     }
 
+    /**
+     * Returns the stream to read decompressed data from, starting to read ahead on first access if enabled.
+     * <p/>
+     * Reading ahead is deferred until first access, so that no thread is started for streams that are never read.
+     *
+     * @return the stream to read from
+     */
+    private InputStream getStream()
+    {
+        if (!readAhead)
+        {
+            return zippedInputStream;
+        }
+        if (readAheadStream == null)
+        {
+            readAheadStream = new ReadAheadInputStream(new VolumeTrackingInputStream(zippedInputStream),
+                                                       READ_AHEAD_CHUNK_SIZE, READ_AHEAD_CHUNKS,
+                                                       "IzPack volume reader");
+        }
+        return readAheadStream;
+    }
+
+    /**
+     * Records the decompressed offset at which each volume starts being read, so that {@link #getVolume()} can report
+     * the volume holding the data returned to the consumer, rather than the volume the reading thread is on.
+     */
+    private final class VolumeTrackingInputStream extends FilterInputStream
+    {
+
+        /**
+         * The no. of decompressed bytes read.
+         */
+        private long offset;
+
+        /**
+         * The index of the last volume recorded.
+         */
+        private int index;
+
+
+        /**
+         * Constructs a <tt>VolumeTrackingInputStream</tt>.
+         *
+         * @param in the decompressed stream
+         */
+        public VolumeTrackingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        /**
+         * Reads the next byte of data from the input stream.
+         *
+         * @return the next byte of data, or <code>-1</code> if the end of the stream is reached.
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public int read() throws IOException
+        {
+            int read = super.read();
+            update((read != -1) ? 1 : 0);
+            return read;
+        }
+
+        /**
+         * Reads up to <code>len</code> bytes of data from the input stream into an array of bytes.
+         *
+         * @param b   the buffer into which the data is read.
+         * @param off the start offset in array <code>b</code> at which the data is written.
+         * @param len the maximum number of bytes to read.
+         * @return the total number of bytes read into the buffer, or  <code>-1</code> if there is no more data because
+         *         the end of the stream has been reached.
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int read = super.read(b, off, len);
+            update((read != -1) ? read : 0);
+            return read;
+        }
+
+        /**
+         * Skips over and discards <code>n</code> bytes of data from the input stream.
+         *
+         * @param n the number of bytes to be skipped
+         * @return the actual number of bytes skipped
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            update(skipped);
+            return skipped;
+        }
+
+        /**
+         * Records the start offset of any volume opened by the last read.
+         * <p/>
+         * A volume is deemed to start at the beginning of the read that opened it, as the decompressor may have
+         * returned data from either side of the volume boundary.
+         *
+         * @param read the no. of bytes read
+         */
+        private void update(long read)
+        {
+            int current = spanningInputStream.getIndex();
+            while (index < current)
+            {
+                ++index;
+                volumeOffsets.set(index, offset);
+            }
+            offset += read;
+        }
+    }
+
     private static final class SpanningInputStream extends InputStream
     {
 
         /**
-         * The current volume stream.
+         * The current volume stream, or {@code null} if the volumes are read using {@link #channels}.
          */
         private InputStream stream;
 
+        /**
+         * The channels to every volume, if all volumes were present when the stream was opened.
+         */
+        private FileChannel[] channels;
+
+        /**
+         * The position in the current volume channel.
+         */
+        private long position;
+
+        /**
+         * Buffer for single byte reads.
+         */
+        private final byte[] single = new byte[1];
+
         /**
          * The base path to each volume.
          */
@@ -265,6 +492,15 @@ public class FileSpanningInputStream extends InputStream
             {
                 logger.fine("Opened volume=" + volume + ", magic=" + FileSpanningOutputStream.formatMagic(magicNumber));
             }
+
+            channels = openVolumes();
+            if (channels != null)
+            {
+                logger.fine("All " + volumes + " volumes present, using positional reads");
+                FileUtils.close(stream);
+                stream = null;
+                position = FileSpanningOutputStream.MAGIC_NUMBER_LENGTH;
+            }
         }
 
         /**
@@ -295,7 +531,19 @@ public class FileSpanningInputStream extends InputStream
             int count = -1;
             while (len != 0)
             {
-                int read = stream.read(b, off, len);
+                int read;
+                if (channels != null)
+                {
+                    read = channels[index].read(ByteBuffer.wrap(b, off, len), position);
+                    if (read != -1)
+                    {
+                        position += read;
+                    }
+                }
+                else
+                {
+                    read = stream.read(b, off, len);
+                }
                 if (read == -1)
                 {
                     if (!openNextVolume())
@@ -322,6 +570,10 @@ public class FileSpanningInputStream extends InputStream
         @Override
         public int read() throws IOException
         {
+            if (channels != null)
+            {
+                return (read(single, 0, 1) == -1) ? -1 : single[0] & 0xFF;
+            }
             int read = stream.read();
             if (read == -1 && openNextVolume())
             {
@@ -341,6 +593,41 @@ public class FileSpanningInputStream extends InputStream
             return current;
         }
 
+        /**
+         * Returns the volume at the specified index.
+         * <p/>
+         * This is only valid when the volumes are read using positional reads, as the {@link VolumeLocator} is never
+         * used to relocate a volume.
+         *
+         * @param index the volume index
+         * @return the volume
+         */
+        public File getVolume(int index)
+        {
+            return (index == 0) ? new File(basePath) : new File(basePath + "." + index);
+        }
+
+        /**
+         * Returns the index of the volume being read.
+         *
+         * @return the index of the volume being read
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * Determines if the volumes are read using positional reads. This is only the case if all volumes were present
+         * when the stream was opened.
+         *
+         * @return <tt>true</tt> if the volumes are read using positional reads
+         */
+        public boolean isPositional()
+        {
+            return channels != null;
+        }
+
         /**
          * Closes this input stream and releases any system resources associated
          * with the stream.
@@ -350,7 +637,14 @@ public class FileSpanningInputStream extends InputStream
         @Override
         public void close() throws IOException
         {
-            stream.close();
+            if (channels != null)
+            {
+                closeChannels(channels);
+            }
+            else
+            {
+                stream.close();
+            }
         }
 
         /**
@@ -368,6 +662,13 @@ public class FileSpanningInputStream extends InputStream
                 logger.fine("Last volume reached");
                 result = false;
             }
+            else if (channels != null)
+            {
+                ++index;
+                current = new File(basePath + "." + index);
+                position = FileSpanningOutputStream.MAGIC_NUMBER_LENGTH;
+                result = true;
+            }
             else
             {
                 // the next volume name
@@ -416,6 +717,67 @@ public class FileSpanningInputStream extends InputStream
             return result;
         }
 
+        /**
+         * Opens a channel to every volume, if they are all present and have the expected magic number.
+         *
+         * @return the channels, or {@code null} if a volume is missing or cannot be read
+         */
+        private FileChannel[] openVolumes()
+        {
+            FileChannel[] result = new FileChannel[volumes];
+            boolean success = false;
+            try
+            {
+                ByteBuffer magic = ByteBuffer.allocate(FileSpanningOutputStream.MAGIC_NUMBER_LENGTH);
+                for (int i = 0; i < volumes; ++i)
+                {
+                    File volume = (i == 0) ? current : new File(basePath + "." + i);
+                    if (!volume.isFile())
+                    {
+                        logger.fine("Volume " + volume + " not present");
+                        return null;
+                    }
+                    result[i] = new RandomAccessFile(volume, "r").getChannel();
+                    magic.clear();
+                    while (magic.hasRemaining() && result[i].read(magic, magic.position()) != -1)
+                    {
+                        // read the magic number
+                    }
+                    if (magic.hasRemaining() || !Arrays.equals(magicNumber, magic.array()))
+                    {
+                        logger.fine("Volume " + volume + " has an invalid magic number");
+                        return null;
+                    }
+                }
+                success = true;
+            }
+            catch (IOException exception)
+            {
+                logger.log(Level.FINE, "Failed to open volumes", exception);
+            }
+            finally
+            {
+                if (!success)
+                {
+                    closeChannels(result);
+                }
+            }
+            return success ? result : null;
+        }
+
+        /**
+         * Closes volume channels.
+         *
+         * @param channels the channels. Elements may be {@code null}
+         */
+        private void closeChannels(FileChannel[] channels)
+        {
+            for (FileChannel channel : channels)
+            {
+                FileUtils.close(channel);
+            }
+        }
+
         /**
          * Checks if the magic number if the current volume is valid.
          *
@@ -0,0 +1,403 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+
+/**
+ * Compresses and decompresses single blocks using the LZ4 block format.
+ * <p/>
+ * Blocks are independent of each other, i.e. matches never refer to data in a preceding block.
+ * <p/>
+ * The codec is kept here rather than depending on lz4-java, which bundles native libraries and
+ * <tt>sun.misc.Unsafe</tt> variants the installer has no use for. Only the block format is shared with other LZ4
+ * implementations; the stream framing is that of {@link LZ4OutputStream}, so the small pure Java decoder in
+ * izpack-core is all an installer needs.
+ */
+final class LZ4Codec
+{
+
+    /**
+     * The minimum match length.
+     */
+    static final int MIN_MATCH = 4;
+
+    /**
+     * The maximum distance of a match.
+     */
+    static final int MAX_DISTANCE = 0xFFFF;
+
+    /**
+     * The no. of bytes at the end of a block that are always encoded as literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    /**
+     * The no. of bytes at the end of a block in which no match may start.
+     */
+    private static final int MF_LIMIT = 12;
+
+    /**
+     * The no. of bits used to hash 4 byte sequences.
+     */
+    private static final int HASH_LOG = 16;
+
+    /**
+     * Mask to map positions into the match chain.
+     */
+    private static final int CHAIN_MASK = MAX_DISTANCE;
+
+    /**
+     * The maximum compression level.
+     */
+    static final int MAX_LEVEL = 9;
+
+
+    /**
+     * Prevent construction.
+     */
+    private LZ4Codec()
+    {
+    }
+
+    /**
+     * Returns the maximum size of a compressed block.
+     *
+     * @param length the uncompressed length
+     * @return the maximum compressed length
+     */
+    static int maxCompressedLength(int length)
+    {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses a block.
+     * <p/>
+     * Levels {@code <= 1} only look at the most recent occurrence of each 4 byte sequence. Higher levels keep a chain
+     * of previous occurrences, and search up to {@code 2^(level - 1)} of them for the longest match.
+     *
+     * @param src    the data to compress
+     * @param length the no. of bytes to compress
+     * @param dest   the buffer to write to. Must be at least {@link #maxCompressedLength} bytes
+     * @param level  the compression level
+     * @return the compressed length
+     */
+    static int compress(byte[] src, int length, byte[] dest, int level)
+    {
+        int destPos = 0;
+        int anchor = 0;
+        if (length > MF_LIMIT)
+        {
+            // positions are stored + 1, so that 0 indicates an empty slot
+            int[] table = new int[1 << HASH_LOG];
+            int[] chain = (level > 1) ? new int[CHAIN_MASK + 1] : null;
+            int attempts = (level > 1) ? 1 << (Math.min(level, MAX_LEVEL) - 1) : 1;
+            int limit = length - MF_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            int pos = 0;
+            while (pos < limit)
+            {
+                int sequence = readInt(src, pos);
+                int hash = hash(sequence);
+                int bestLength = 0;
+                int bestDistance = 0;
+                int candidate = table[hash] - 1;
+                for (int i = 0; i < attempts && candidate >= 0 && pos - candidate <= MAX_DISTANCE; ++i)
+                {
+                    if (readInt(src, candidate) == sequence)
+                    {
+                        int matchLength = MIN_MATCH + count(src, candidate + MIN_MATCH, pos + MIN_MATCH, matchLimit);
+                        if (matchLength > bestLength)
+                        {
+                            bestLength = matchLength;
+                            bestDistance = pos - candidate;
+                        }
+                    }
+                    if (chain == null)
+                    {
+                        break;
+                    }
+                    int next = chain[candidate & CHAIN_MASK] - 1;
+                    if (next >= candidate)
+                    {
+                        // slot has been reused by a later position
+                        break;
+                    }
+                    candidate = next;
+                }
+                insert(table, chain, hash, pos);
+                if (bestLength < MIN_MATCH)
+                {
+                    ++pos;
+                    continue;
+                }
+                destPos = writeSequence(src, anchor, pos - anchor, bestDistance, bestLength, dest, destPos);
+                int end = pos + bestLength;
+                if (chain != null)
+                {
+                    for (int i = pos + 1; i < end && i < limit; ++i)
+                    {
+                        insert(table, chain, hash(readInt(src, i)), i);
+                    }
+                }
+                pos = end;
+                anchor = pos;
+            }
+        }
+        return writeLastLiterals(src, anchor, length - anchor, dest, destPos);
+    }
+
+    /**
+     * Decompresses a block.
+     *
+     * @param src          the compressed data
+     * @param length       the compressed length
+     * @param dest         the buffer to decompress to
+     * @param destLength   the expected decompressed length
+     * @throws IOException if the block is corrupt
+     */
+    static void decompress(byte[] src, int length, byte[] dest, int destLength) throws IOException
+    {
+        int srcPos = 0;
+        int destPos = 0;
+        try
+        {
+            while (true)
+            {
+                int token = src[srcPos++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 0xF)
+                {
+                    int b;
+                    do
+                    {
+                        b = src[srcPos++] & 0xFF;
+                        literals += b;
+                    }
+                    while (b == 0xFF);
+                }
+                if (srcPos + literals > length || destPos + literals > destLength)
+                {
+                    throw new StreamCorruptedException("Invalid literal length: " + literals);
+                }
+                System.arraycopy(src, srcPos, dest, destPos, literals);
+                srcPos += literals;
+                destPos += literals;
+                if (srcPos == length)
+                {
+                    break;
+                }
+
+                int distance = (src[srcPos] & 0xFF) | ((src[srcPos + 1] & 0xFF) << 8);
+                srcPos += 2;
+                int matchLength = token & 0xF;
+                if (matchLength == 0xF)
+                {
+                    int b;
+                    do
+                    {
+                        b = src[srcPos++] & 0xFF;
+                        matchLength += b;
+                    }
+                    while (b == 0xFF);
+                }
+                matchLength += MIN_MATCH;
+                if (distance == 0 || distance > destPos || destPos + matchLength > destLength)
+                {
+                    throw new StreamCorruptedException("Invalid match at offset " + destPos);
+                }
+                int from = destPos - distance;
+                if (distance >= matchLength)
+                {
+                    System.arraycopy(dest, from, dest, destPos, matchLength);
+                    destPos += matchLength;
+                }
+                else
+                {
+                    // overlapping match
+                    for (int i = 0; i < matchLength; ++i)
+                    {
+                        dest[destPos++] = dest[from++];
+                    }
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException exception)
+        {
+            throw new StreamCorruptedException("Truncated block");
+        }
+        if (destPos != destLength)
+        {
+            throw new StreamCorruptedException("Expected " + destLength + " bytes but decompressed " + destPos);
+        }
+    }
+
+    /**
+     * Records the position of a 4 byte sequence.
+     *
+     * @param table the hash table
+     * @param chain the match chain. May be {@code null}
+     * @param hash  the hash of the sequence
+     * @param pos   the position of the sequence
+     */
+    private static void insert(int[] table, int[] chain, int hash, int pos)
+    {
+        if (chain != null)
+        {
+            chain[pos & CHAIN_MASK] = table[hash];
+        }
+        table[hash] = pos + 1;
+    }
+
+    /**
+     * Writes a sequence of literals followed by a match.
+     *
+     * @param src         the source data
+     * @param anchor      the position of the first literal
+     * @param literals    the no. of literals
+     * @param distance    the match distance
+     * @param matchLength the match length
+     * @param dest        the buffer to write to
+     * @param destPos     the position to write at
+     * @return the new position
+     */
+    private static int writeSequence(byte[] src, int anchor, int literals, int distance, int matchLength, byte[] dest,
+                                     int destPos)
+    {
+        int tokenPos = destPos++;
+        int token;
+        if (literals >= 0xF)
+        {
+            token = 0xF0;
+            destPos = writeLength(literals - 0xF, dest, destPos);
+        }
+        else
+        {
+            token = literals << 4;
+        }
+        System.arraycopy(src, anchor, dest, destPos, literals);
+        destPos += literals;
+        dest[destPos++] = (byte) distance;
+        dest[destPos++] = (byte) (distance >>> 8);
+        int remaining = matchLength - MIN_MATCH;
+        if (remaining >= 0xF)
+        {
+            token |= 0xF;
+            destPos = writeLength(remaining - 0xF, dest, destPos);
+        }
+        else
+        {
+            token |= remaining;
+        }
+        dest[tokenPos] = (byte) token;
+        return destPos;
+    }
+
+    /**
+     * Writes the final sequence of a block, which consists of literals only.
+     *
+     * @param src      the source data
+     * @param anchor   the position of the first literal
+     * @param literals the no. of literals
+     * @param dest     the buffer to write to
+     * @param destPos  the position to write at
+     * @return the new position
+     */
+    private static int writeLastLiterals(byte[] src, int anchor, int literals, byte[] dest, int destPos)
+    {
+        if (literals >= 0xF)
+        {
+            dest[destPos++] = (byte) 0xF0;
+            destPos = writeLength(literals - 0xF, dest, destPos);
+        }
+        else
+        {
+            dest[destPos++] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, anchor, dest, destPos, literals);
+        return destPos + literals;
+    }
+
+    /**
+     * Writes the remainder of a length that doesn't fit in a token.
+     *
+     * @param length  the remaining length
+     * @param dest    the buffer to write to
+     * @param destPos the position to write at
+     * @return the new position
+     */
+    private static int writeLength(int length, byte[] dest, int destPos)
+    {
+        while (length >= 0xFF)
+        {
+            dest[destPos++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dest[destPos++] = (byte) length;
+        return destPos;
+    }
+
+    /**
+     * Counts the no. of matching bytes.
+     *
+     * @param src   the data
+     * @param match the position of the earlier occurrence
+     * @param pos   the current position
+     * @param limit the position at which to stop matching
+     * @return the no. of matching bytes
+     */
+    private static int count(byte[] src, int match, int pos, int limit)
+    {
+        int start = pos;
+        while (pos < limit && src[match] == src[pos])
+        {
+            ++match;
+            ++pos;
+        }
+        return pos - start;
+    }
+
+    /**
+     * Reads a little-endian int.
+     *
+     * @param src the data
+     * @param pos the position to read at
+     * @return the int
+     */
+    private static int readInt(byte[] src, int pos)
+    {
+        return (src[pos] & 0xFF) | ((src[pos + 1] & 0xFF) << 8) | ((src[pos + 2] & 0xFF) << 16)
+                | ((src[pos + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Hashes a 4 byte sequence.
+     *
+     * @param sequence the sequence
+     * @return the hash
+     */
+    private static int hash(int sequence)
+    {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+
+
+/**
+ * An input stream that decompresses data written by {@link LZ4OutputStream}.
+ * <p/>
+ * This has an {@code (InputStream)} constructor, so that it can be used as a pack decoder by the installer.
+ */
+public class LZ4InputStream extends FilterInputStream
+{
+
+    /**
+     * The stream to read blocks from.
+     */
+    private final DataInputStream dataIn;
+
+    /**
+     * The decompressed block.
+     */
+    private byte[] buffer = new byte[0];
+
+    /**
+     * The compressed block.
+     */
+    private byte[] compressed = new byte[0];
+
+    /**
+     * The position in the decompressed block.
+     */
+    private int pos;
+
+    /**
+     * The length of the decompressed block.
+     */
+    private int limit;
+
+    /**
+     * Determines if the end of stream marker has been read.
+     */
+    private boolean eof;
+
+
+    /**
+     * Constructs an {@code LZ4InputStream}.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read, or was not written by {@link LZ4OutputStream}
+     */
+    public LZ4InputStream(InputStream in) throws IOException
+    {
+        super(in);
+        dataIn = new DataInputStream(in);
+        int magic = dataIn.readInt();
+        if (magic != LZ4OutputStream.MAGIC)
+        {
+            throw new StreamCorruptedException("Invalid LZ4 stream header: " + Integer.toHexString(magic));
+        }
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @return the byte, or {@code -1} if the end of the stream has been reached
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (pos == limit && !readBlock())
+        {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * Reads bytes.
+     *
+     * @param b   the buffer to read into
+     * @param off the offset to start at
+     * @param len the maximum no. of bytes to read
+     * @return the no. of bytes read, or {@code -1} if the end of the stream has been reached
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (pos == limit && !readBlock())
+        {
+            return -1;
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Skips bytes.
+     *
+     * @param n the no. of bytes to skip
+     * @return the no. of bytes skipped
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0 || (pos == limit && !readBlock()))
+        {
+            return 0;
+        }
+        int skipped = (int) Math.min(n, limit - pos);
+        pos += skipped;
+        return skipped;
+    }
+
+    /**
+     * Returns the no. of bytes that can be read without blocking.
+     *
+     * @return the no. of bytes remaining in the current block
+     */
+    @Override
+    public int available()
+    {
+        return limit - pos;
+    }
+
+    /**
+     * Mark/reset is not supported.
+     *
+     * @return {@code false}
+     */
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Reads and decompresses the next block.
+     *
+     * @return {@code true} if a block was read, {@code false} if the end of the stream has been reached
+     * @throws IOException for any I/O error
+     */
+    private boolean readBlock() throws IOException
+    {
+        while (!eof)
+        {
+            int header;
+            try
+            {
+                header = dataIn.readInt();
+            }
+            catch (EOFException exception)
+            {
+                throw new EOFException("Unexpected end of LZ4 stream");
+            }
+            if (header == 0)
+            {
+                eof = true;
+                break;
+            }
+            int length = dataIn.readInt();
+            if (length < 0)
+            {
+                throw new StreamCorruptedException("Invalid LZ4 block length: " + length);
+            }
+            if (buffer.length < length)
+            {
+                buffer = new byte[length];
+            }
+            if ((header & LZ4OutputStream.STORED) != 0)
+            {
+                if ((header & ~LZ4OutputStream.STORED) != length)
+                {
+                    throw new StreamCorruptedException("Invalid stored LZ4 block length: " + length);
+                }
+                dataIn.readFully(buffer, 0, length);
+            }
+            else
+            {
+                if (compressed.length < header)
+                {
+                    compressed = new byte[header];
+                }
+                dataIn.readFully(compressed, 0, header);
+                LZ4Codec.decompress(compressed, header, buffer, length);
+            }
+            pos = 0;
+            limit = length;
+            if (length != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * An output stream that compresses data using the LZ4 block format.
+ * <p/>
+ * Data is split into independent blocks, each preceded by a header giving its compressed and uncompressed length.
+ * As blocks don't refer to each other, they may be compressed on several threads. Blocks are always written in
+ * order, so the output is the same regardless of the no. of threads.
+ * <p/>
+ * The framing is specific to IzPack, and is not compatible with the LZ4 frame format.
+ * See {@link LZ4InputStream} for the counterpart.
+ */
+public class LZ4OutputStream extends FilterOutputStream
+{
+
+    /**
+     * The stream magic number.
+     */
+    static final int MAGIC = 0x495A4C34;
+
+    /**
+     * Flag set in the compressed length of a block, to indicate that it is stored uncompressed.
+     */
+    static final int STORED = 0x80000000;
+
+    /**
+     * The default block size.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * The compression level.
+     */
+    private final int level;
+
+    /**
+     * The stream to write blocks to.
+     */
+    private final DataOutputStream dataOut;
+
+    /**
+     * The executor to compress blocks with, or {@code null} if blocks are compressed on the calling thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Blocks being compressed, in the order they must be written.
+     */
+    private final LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+
+    /**
+     * The maximum no. of blocks being compressed at once.
+     */
+    private final int maxPending;
+
+    /**
+     * The block size.
+     */
+    private final int blockSize;
+
+    /**
+     * The current block.
+     */
+    private byte[] buffer;
+
+    /**
+     * The no. of bytes in the current block.
+     */
+    private int count;
+
+    /**
+     * Determines if the stream has been finished.
+     */
+    private boolean finished;
+
+
+    /**
+     * Constructs an {@code LZ4OutputStream} that compresses at the fastest level, on the calling thread.
+     *
+     * @param out the stream to write to
+     * @throws IOException for any I/O error
+     */
+    public LZ4OutputStream(OutputStream out) throws IOException
+    {
+        this(out, 1, 1);
+    }
+
+    /**
+     * Constructs an {@code LZ4OutputStream}.
+     *
+     * @param out     the stream to write to
+     * @param level   the compression level, from {@code 1} (fastest) to {@code 9} (smallest). Values outside this
+     *                range are clamped
+     * @param threads the no. of threads to compress blocks with
+     * @throws IOException for any I/O error
+     */
+    public LZ4OutputStream(OutputStream out, int level, int threads) throws IOException
+    {
+        this(out, level, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs an {@code LZ4OutputStream}.
+     *
+     * @param out       the stream to write to
+     * @param level     the compression level, from {@code 1} (fastest) to {@code 9} (smallest). Values outside this
+     *                  range are clamped
+     * @param threads   the no. of threads to compress blocks with
+     * @param blockSize the block size
+     * @throws IOException for any I/O error
+     */
+    public LZ4OutputStream(OutputStream out, int level, int threads, int blockSize) throws IOException
+    {
+        super(out);
+        if (blockSize <= 0)
+        {
+            throw new IllegalArgumentException("Argument 'blockSize' must be > 0");
+        }
+        this.level = Math.max(1, Math.min(level, LZ4Codec.MAX_LEVEL));
+        this.blockSize = blockSize;
+        dataOut = new DataOutputStream(out);
+        executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+        maxPending = threads * 2;
+        buffer = new byte[blockSize];
+        dataOut.writeInt(MAGIC);
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param b the byte to write
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void write(int b) throws IOException
+    {
+        if (count == blockSize)
+        {
+            writeBlock();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * Writes bytes.
+     *
+     * @param b   the bytes to write
+     * @param off the offset to start from
+     * @param len the no. of bytes to write
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        while (len > 0)
+        {
+            if (count == blockSize)
+            {
+                writeBlock();
+            }
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Flushes the stream.
+     * <p/>
+     * This ends the current block, so frequent flushing reduces the compression ratio.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        writeBlock();
+        while (!pending.isEmpty())
+        {
+            writeNext();
+        }
+        dataOut.flush();
+    }
+
+    /**
+     * Writes any remaining data and the end of stream marker, without closing the underlying stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void finish() throws IOException
+    {
+        if (!finished)
+        {
+            try
+            {
+                flush();
+                dataOut.writeInt(0);
+                dataOut.flush();
+            }
+            finally
+            {
+                finished = true;
+                if (executor != null)
+                {
+                    executor.shutdownNow();
+                }
+            }
+        }
+    }
+
+    /**
+     * Finishes and closes the stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Compresses the current block, if it is not empty.
+     * <p/>
+     * If an executor is being used, this blocks while the maximum no. of blocks are being compressed.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void writeBlock() throws IOException
+    {
+        if (finished)
+        {
+            throw new IOException("Stream finished");
+        }
+        if (count != 0)
+        {
+            final byte[] data = buffer;
+            final int length = count;
+            if (executor != null)
+            {
+                if (pending.size() >= maxPending)
+                {
+                    writeNext();
+                }
+                pending.add(executor.submit(new Callable<Block>()
+                {
+                    @Override
+                    public Block call()
+                    {
+                        return compress(data, length);
+                    }
+                }));
+                buffer = new byte[blockSize];
+            }
+            else
+            {
+                write(compress(data, length));
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Waits for the oldest pending block to be compressed, and writes it.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void writeNext() throws IOException
+    {
+        Future<Block> future = pending.removeFirst();
+        try
+        {
+            write(future.get());
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted compressing block");
+        }
+        catch (ExecutionException exception)
+        {
+            throw new IOException("Failed to compress block", exception.getCause());
+        }
+    }
+
+    /**
+     * Writes a compressed block.
+     *
+     * @param block the block
+     * @throws IOException for any I/O error
+     */
+    private void write(Block block) throws IOException
+    {
+        if (block.compressedLength < 0)
+        {
+            dataOut.writeInt(block.length | STORED);
+            dataOut.writeInt(block.length);
+            dataOut.write(block.data, 0, block.length);
+        }
+        else
+        {
+            dataOut.writeInt(block.compressedLength);
+            dataOut.writeInt(block.length);
+            dataOut.write(block.data, 0, block.compressedLength);
+        }
+    }
+
+    /**
+     * Compresses a block. Blocks that don't compress are stored.
+     *
+     * @param data   the data to compress
+     * @param length the no. of bytes to compress
+     * @return the block
+     */
+    private Block compress(byte[] data, int length)
+    {
+        byte[] compressed = new byte[LZ4Codec.maxCompressedLength(length)];
+        int compressedLength = LZ4Codec.compress(data, length, compressed, level);
+        return (compressedLength < length) ? new Block(compressed, length, compressedLength)
+                                           : new Block(data, length, -1);
+    }
+
+    /**
+     * A compressed block.
+     */
+    private static class Block
+    {
+
+        /**
+         * The compressed data, or the original data if the block is stored.
+         */
+        private final byte[] data;
+
+        /**
+         * The uncompressed length.
+         */
+        private final int length;
+
+        /**
+         * The compressed length, or {@code -1} if the block is stored.
+         */
+        private final int compressedLength;
+
+        /**
+         * Constructs a {@code Block}.
+         *
+         * @param data             the compressed or original data
+         * @param length           the uncompressed length
+         * @param compressedLength the compressed length, or {@code -1} if the block is stored
+         */
+        public Block(byte[] data, int length, int compressedLength)
+        {
+            this.data = data;
+            this.length = length;
+            this.compressedLength = compressedLength;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+
+/**
+ * Pack stream format versions.
+ * <p/>
+ * The version is recorded at the start of the <em>packs.info</em> resource as {@link #VERSION_MARKER}, followed by the
+ * version. Installers compiled before the version was recorded start <em>packs.info</em> with the pack count, which is
+ * never negative, and use the {@link #SERIALIZED} format.
+ */
+public final class PackFormat
+{
+
+    /**
+     * Marks the presence of a version at the start of <em>packs.info</em>.
+     */
+    public static final int VERSION_MARKER = -1;
+
+    /**
+     * Pack streams are written using {@code ObjectOutputStream}.
+     */
+    public static final int SERIALIZED = 1;
+
+    /**
+     * Pack streams are written using {@link PackOutputStream}.
+     */
+    public static final int BINARY = 2;
+
+
+    /**
+     * Prevent construction.
+     */
+    private PackFormat()
+    {
+    }
+}
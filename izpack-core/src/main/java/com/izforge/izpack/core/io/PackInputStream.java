@@ -0,0 +1,352 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+
+
+/**
+ * Reads pack streams in the {@link PackFormat#BINARY} format.
+ * <p/>
+ * File content is read directly from this stream. Reading individual bytes of meta-data is frequent, so the
+ * underlying stream should be buffered.
+ * <p/>
+ * See {@link PackOutputStream} for the counterpart.
+ */
+public class PackInputStream extends DataInputStream
+{
+
+    /**
+     * The string table.
+     */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Buffer used to decode strings.
+     */
+    private byte[] buffer = new byte[256];
+
+
+    /**
+     * Constructs a {@code PackInputStream}.
+     *
+     * @param in the stream to read from
+     */
+    public PackInputStream(InputStream in)
+    {
+        super(in);
+    }
+
+    /**
+     * Reads a count.
+     *
+     * @return the count
+     * @throws IOException for any I/O error
+     */
+    public int readCount() throws IOException
+    {
+        return readVarInt();
+    }
+
+    /**
+     * Reads the meta-data of a pack file.
+     *
+     * @return the pack file
+     * @throws IOException for any I/O error
+     */
+    public PackFile readPackFile() throws IOException
+    {
+        int flags = readUnsignedByte();
+        String target = readPath();
+        String relativePath = readPath();
+        long length = readVarLong();
+        long lastModified = readVarLong() - 1;
+        String override = readString();
+        String overrideRenameTo = readString();
+        String blockable = readString();
+        List<OsModel> osList = readOsConstraints();
+        String condition = readString();
+        String previousPackId = null;
+        long offset = -1;
+        if ((flags & PackOutputStream.BACK_REFERENCE) != 0)
+        {
+            previousPackId = readString();
+            offset = readVarLong();
+        }
+        Map additionals = null;
+        if ((flags & PackOutputStream.ADDITIONALS) != 0)
+        {
+            additionals = readAdditionals();
+        }
+        String digest = null;
+        if ((flags & PackOutputStream.DIGEST) != 0)
+        {
+            digest = readString();
+        }
+        PackFile result = new PackFile(relativePath, target, length, lastModified,
+                                       (flags & PackOutputStream.DIRECTORY) != 0, osList,
+                                       override != null ? OverrideType.valueOf(override) : null, overrideRenameTo,
+                                       blockable != null ? Blockable.valueOf(blockable) : null, additionals);
+        result.setCondition(condition);
+        result.setPack200Jar((flags & PackOutputStream.PACK200) != 0);
+        if (previousPackId != null)
+        {
+            result.setPreviousPackFileRef(previousPackId, offset);
+        }
+        result.setDigest(digest);
+        return result;
+    }
+
+    /**
+     * Reads a parsable file.
+     *
+     * @return the parsable file
+     * @throws IOException for any I/O error
+     */
+    public ParsableFile readParsableFile() throws IOException
+    {
+        String path = readPath();
+        String type = readString();
+        String encoding = readString();
+        List<OsModel> osList = readOsConstraints();
+        ParsableFile result = new ParsableFile(path, type != null ? SubstitutionType.valueOf(type) : null, encoding,
+                                               osList);
+        result.setCondition(readString());
+        return result;
+    }
+
+    /**
+     * Reads an executable file.
+     *
+     * @return the executable file
+     * @throws IOException for any I/O error
+     */
+    public ExecutableFile readExecutableFile() throws IOException
+    {
+        ExecutableFile result = new ExecutableFile();
+        result.path = readPath();
+        result.executionStage = readVarInt();
+        result.mainClass = readString();
+        result.type = readVarInt();
+        result.onFailure = readVarInt();
+        result.argList = readStrings();
+        result.osList = readOsConstraints();
+        result.keepFile = readBoolean();
+        result.setCondition(readString());
+        return result;
+    }
+
+    /**
+     * Reads an update check.
+     *
+     * @return the update check
+     * @throws IOException for any I/O error
+     */
+    public UpdateCheck readUpdateCheck() throws IOException
+    {
+        ArrayList<String> includes = readStrings();
+        ArrayList<String> excludes = readStrings();
+        boolean caseSensitive = readBoolean();
+        return new UpdateCheck(includes, excludes, caseSensitive ? "yes" : "no");
+    }
+
+    /**
+     * Reads an unsigned variable length integer that must fit in an {@code int}.
+     *
+     * @return the value
+     * @throws IOException for any I/O error
+     */
+    private int readVarInt() throws IOException
+    {
+        long value = readVarLong();
+        if (value > Integer.MAX_VALUE)
+        {
+            throw new StreamCorruptedException("Invalid integer: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads an unsigned variable length integer.
+     *
+     * @return the value
+     * @throws IOException for any I/O error
+     */
+    private long readVarLong() throws IOException
+    {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new StreamCorruptedException("Invalid variable length integer");
+    }
+
+    /**
+     * Reads a path.
+     *
+     * @return the path. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private String readPath() throws IOException
+    {
+        String dir = readString();
+        return (dir != null) ? dir + readString() : null;
+    }
+
+    /**
+     * Reads a list of strings.
+     *
+     * @return the list. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private ArrayList<String> readStrings() throws IOException
+    {
+        ArrayList<String> result = null;
+        int size = readVarInt();
+        if (size != 0)
+        {
+            result = new ArrayList<String>(size - 1);
+            for (int i = 1; i < size; ++i)
+            {
+                result.add(readString());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a list of OS constraints.
+     *
+     * @return the list. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private List<OsModel> readOsConstraints() throws IOException
+    {
+        List<OsModel> result = null;
+        int size = readVarInt();
+        if (size != 0)
+        {
+            result = new ArrayList<OsModel>(size - 1);
+            for (int i = 1; i < size; ++i)
+            {
+                result.add(new OsModel(readString(), readString(), readString(), readString(), readString()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a string.
+     *
+     * @return the string. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private String readString() throws IOException
+    {
+        String result;
+        int tag = readVarInt();
+        switch (tag)
+        {
+            case PackOutputStream.NULL:
+                result = null;
+                break;
+            case PackOutputStream.NEW:
+                result = readUTF8();
+                strings.add(result);
+                break;
+            case PackOutputStream.LITERAL:
+                result = readUTF8();
+                break;
+            default:
+                int index = tag - PackOutputStream.REFERENCE;
+                if (index >= strings.size())
+                {
+                    throw new StreamCorruptedException("Invalid string reference: " + index);
+                }
+                result = strings.get(index);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a UTF-8 string, preceded by its length in bytes.
+     *
+     * @return the string
+     * @throws IOException for any I/O error
+     */
+    private String readUTF8() throws IOException
+    {
+        int length = readVarInt();
+        if (length > buffer.length)
+        {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        readFully(buffer, 0, length);
+        return new String(buffer, 0, length, PackOutputStream.UTF8);
+    }
+
+    /**
+     * Reads serialized additional attributes.
+     *
+     * @return the additional attributes
+     * @throws IOException for any I/O error
+     */
+    private Map readAdditionals() throws IOException
+    {
+        byte[] bytes = new byte[readVarInt()];
+        readFully(bytes);
+        ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try
+        {
+            return (Map) objIn.readObject();
+        }
+        catch (ClassNotFoundException exception)
+        {
+            throw new IOException("Failed to read additional attributes", exception);
+        }
+        finally
+        {
+            objIn.close();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+
+
+/**
+ * Writes pack streams in the {@link PackFormat#BINARY} format.
+ * <p/>
+ * A pack stream consists of:
+ * <ul>
+ * <li>the file count</li>
+ * <li>for each file, its meta-data, followed by its content if it is stored in the pack</li>
+ * <li>the parsable files, executable files and update checks, each preceded by their count</li>
+ * </ul>
+ * Counts and lengths are written as variable length integers. Strings are interned: the first occurrence of a string
+ * is written in UTF-8, and subsequent occurrences refer to it by index. Paths are split into their parent directory,
+ * which is interned, and their name, which is not, so that the directories shared by files are only written once.
+ * <p/>
+ * No framing is added to file content, so the byte offset of a file's content may be used to read it without
+ * decoding the meta-data that precedes it.
+ * <p/>
+ * Each record is encoded to a buffer before being written, so the underlying stream receives a single write per
+ * record.
+ * <p/>
+ * See {@link PackInputStream} for the counterpart.
+ */
+public class PackOutputStream extends DataOutputStream
+{
+
+    /**
+     * Indicates a {@code null} string.
+     */
+    static final int NULL = 0;
+
+    /**
+     * Indicates a new string, added to the string table.
+     */
+    static final int NEW = 1;
+
+    /**
+     * Indicates a string that isn't added to the string table.
+     */
+    static final int LITERAL = 2;
+
+    /**
+     * The first string table reference. Strings are referred to by their table index + {@code REFERENCE}.
+     */
+    static final int REFERENCE = 3;
+
+    /**
+     * Pack file flag, indicating the file is a directory.
+     */
+    static final int DIRECTORY = 1;
+
+    /**
+     * Pack file flag, indicating the file is a jar stored using Pack200.
+     */
+    static final int PACK200 = 2;
+
+    /**
+     * Pack file flag, indicating the file content is stored in another pack, or earlier in the same pack.
+     */
+    static final int BACK_REFERENCE = 4;
+
+    /**
+     * Pack file flag, indicating the file has additional attributes.
+     */
+    static final int ADDITIONALS = 8;
+
+    /**
+     * Pack file flag, indicating the file has a content digest.
+     */
+    static final int DIGEST = 16;
+
+    /**
+     * The string encoding.
+     */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The string table, mapping strings to their index.
+     */
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * The buffer that records are encoded into.
+     */
+    private final Buffer buffer = new Buffer();
+
+    /**
+     * The stream used to encode records.
+     */
+    private final DataOutputStream record = new DataOutputStream(buffer);
+
+
+    /**
+     * Constructs a {@code PackOutputStream}.
+     *
+     * @param out the stream to write to
+     */
+    public PackOutputStream(OutputStream out)
+    {
+        super(out);
+    }
+
+    /**
+     * Writes a count.
+     *
+     * @param count the count
+     * @throws IOException for any I/O error
+     */
+    public void writeCount(int count) throws IOException
+    {
+        buffer.reset();
+        writeVarLong(count);
+        flushRecord();
+    }
+
+    /**
+     * Writes the meta-data of a pack file.
+     *
+     * @param file the pack file
+     * @throws IOException for any I/O error
+     */
+    public void writePackFile(PackFile file) throws IOException
+    {
+        buffer.reset();
+        int flags = 0;
+        if (file.isDirectory())
+        {
+            flags |= DIRECTORY;
+        }
+        if (file.isPack200Jar())
+        {
+            flags |= PACK200;
+        }
+        if (file.isBackReference())
+        {
+            flags |= BACK_REFERENCE;
+        }
+        if (file.getAdditionals() != null)
+        {
+            flags |= ADDITIONALS;
+        }
+        if (file.getDigest() != null)
+        {
+            flags |= DIGEST;
+        }
+        record.writeByte(flags);
+        writePath(file.getTargetPath());
+        writePath(file.getRelativeSourcePath());
+        writeVarLong(file.length());
+        writeVarLong(file.lastModified() + 1); // -1 indicates an unknown modification time
+        writeString(file.override() != null ? file.override().name() : null);
+        writeString(file.overrideRenameTo());
+        writeString(file.blockable() != null ? file.blockable().name() : null);
+        writeOsConstraints(file.osConstraints());
+        writeString(file.getCondition());
+        if (file.isBackReference())
+        {
+            writeString(file.previousPackId);
+            writeVarLong(file.offsetInPreviousPack);
+        }
+        if (file.getAdditionals() != null)
+        {
+            // additional attributes may hold arbitrary values, so are serialized
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream objOut = new ObjectOutputStream(bytes);
+            objOut.writeObject(file.getAdditionals());
+            objOut.close();
+            writeVarLong(bytes.size());
+            bytes.writeTo(record);
+        }
+        if (file.getDigest() != null)
+        {
+            // digests are unique to a file, so aren't interned
+            writeLiteral(file.getDigest());
+        }
+        flushRecord();
+    }
+
+    /**
+     * Writes a parsable file.
+     *
+     * @param file the parsable file
+     * @throws IOException for any I/O error
+     */
+    public void writeParsableFile(ParsableFile file) throws IOException
+    {
+        buffer.reset();
+        writePath(file.getPath());
+        writeString(file.getType() != null ? file.getType().name() : null);
+        writeString(file.getEncoding());
+        writeOsConstraints(file.getOsConstraints());
+        writeString(file.getCondition());
+        flushRecord();
+    }
+
+    /**
+     * Writes an executable file.
+     *
+     * @param file the executable file
+     * @throws IOException for any I/O error
+     */
+    public void writeExecutableFile(ExecutableFile file) throws IOException
+    {
+        buffer.reset();
+        writePath(file.path);
+        writeVarLong(file.executionStage);
+        writeString(file.mainClass);
+        writeVarLong(file.type);
+        writeVarLong(file.onFailure);
+        writeStrings(file.argList);
+        writeOsConstraints(file.osList);
+        record.writeBoolean(file.keepFile);
+        writeString(file.getCondition());
+        flushRecord();
+    }
+
+    /**
+     * Writes an update check.
+     *
+     * @param check the update check
+     * @throws IOException for any I/O error
+     */
+    public void writeUpdateCheck(UpdateCheck check) throws IOException
+    {
+        buffer.reset();
+        writeStrings(check.includesList);
+        writeStrings(check.excludesList);
+        record.writeBoolean(check.isCaseSensitive());
+        flushRecord();
+    }
+
+    /**
+     * Writes the encoded record to the underlying stream.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void flushRecord() throws IOException
+    {
+        write(buffer.getBytes(), 0, buffer.size());
+    }
+
+    /**
+     * Writes an unsigned variable length integer, 7 bits at a time, least significant bits first.
+     *
+     * @param value the value to write. Must not be negative
+     * @throws IOException for any I/O error
+     */
+    private void writeVarLong(long value) throws IOException
+    {
+        if (value < 0)
+        {
+            throw new IOException("Cannot write negative value: " + value);
+        }
+        while ((value & ~0x7FL) != 0)
+        {
+            record.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        record.writeByte((int) value);
+    }
+
+    /**
+     * Writes a path. The parent directory is interned, the name is not.
+     *
+     * @param path the path. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writePath(String path) throws IOException
+    {
+        if (path == null)
+        {
+            writeVarLong(NULL);
+        }
+        else
+        {
+            int index = path.lastIndexOf('/');
+            writeString(index != -1 ? path.substring(0, index + 1) : "");
+            writeLiteral(index != -1 ? path.substring(index + 1) : path);
+        }
+    }
+
+    /**
+     * Writes a list of strings.
+     *
+     * @param list the list. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writeStrings(List<String> list) throws IOException
+    {
+        if (list == null)
+        {
+            writeVarLong(0);
+        }
+        else
+        {
+            writeVarLong(list.size() + 1);
+            for (String value : list)
+            {
+                writeString(value);
+            }
+        }
+    }
+
+    /**
+     * Writes a list of OS constraints.
+     *
+     * @param list the list. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writeOsConstraints(List<OsModel> list) throws IOException
+    {
+        if (list == null)
+        {
+            writeVarLong(0);
+        }
+        else
+        {
+            writeVarLong(list.size() + 1);
+            for (OsModel model : list)
+            {
+                writeString(model.getArch());
+                writeString(model.getFamily());
+                writeString(model.getJre());
+                writeString(model.getName());
+                writeString(model.getVersion());
+            }
+        }
+    }
+
+    /**
+     * Writes an interned string.
+     *
+     * @param value the string. May be {@code null}
+     * @throws IOException for any I/O error
+     */
+    private void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeVarLong(NULL);
+        }
+        else
+        {
+            Integer index = strings.get(value);
+            if (index != null)
+            {
+                writeVarLong(index + REFERENCE);
+            }
+            else
+            {
+                strings.put(value, strings.size());
+                writeVarLong(NEW);
+                writeUTF8(value);
+            }
+        }
+    }
+
+    /**
+     * Writes a string that isn't interned.
+     *
+     * @param value the string
+     * @throws IOException for any I/O error
+     */
+    private void writeLiteral(String value) throws IOException
+    {
+        writeVarLong(LITERAL);
+        writeUTF8(value);
+    }
+
+    /**
+     * Writes a string in UTF-8, preceded by its length in bytes.
+     *
+     * @param value the string
+     * @throws IOException for any I/O error
+     */
+    private void writeUTF8(String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarLong(bytes.length);
+        record.write(bytes);
+    }
+
+    /**
+     * A byte array output stream that exposes its buffer, to avoid copying it.
+     */
+    private static class Buffer extends ByteArrayOutputStream
+    {
+
+        /**
+         * Returns the buffer.
+         *
+         * @return the buffer. Only the first {@link #size()} bytes are valid
+         */
+        public byte[] getBytes()
+        {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+
+/**
+ * An append-only list of paths, held in a compact prefix-compressed form.
+ * <p/>
+ * Each path is stored as the no. of characters it shares with the previous path, followed by the remaining
+ * characters in UTF-8. Every {@link #RESTART_INTERVAL} paths are stored in full, so that any path can be decoded
+ * without decoding those before it. Paths are decoded on demand, so large installations don't need to hold every
+ * path as a string.
+ * <p/>
+ * The list is serialized in the same form by {@link #write} and {@link #read}.
+ */
+public class PathList extends AbstractList<String> implements RandomAccess
+{
+
+    /**
+     * The magic number identifying a serialized list. This starts with a zero byte, so it can't be mistaken for
+     * a text file.
+     */
+    public static final int MAGIC = 0x00495A50;
+
+    /**
+     * The no. of paths between paths that are stored in full.
+     */
+    static final int RESTART_INTERVAL = 16;
+
+    /**
+     * The encoded paths.
+     */
+    private byte[] data = new byte[1024];
+
+    /**
+     * The no. of bytes of {@link #data} in use.
+     */
+    private int length;
+
+    /**
+     * The offsets of the paths stored in full.
+     */
+    private int[] restarts = new int[16];
+
+    /**
+     * The no. of paths.
+     */
+    private int size;
+
+    /**
+     * The last path added.
+     */
+    private String last = "";
+
+
+    /**
+     * Appends a path.
+     *
+     * @param path the path
+     * @return {@code true}
+     */
+    @Override
+    public boolean add(String path)
+    {
+        int shared = 0;
+        if (size % RESTART_INTERVAL == 0)
+        {
+            if (size / RESTART_INTERVAL == restarts.length)
+            {
+                restarts = Arrays.copyOf(restarts, restarts.length * 2);
+            }
+            restarts[size / RESTART_INTERVAL] = length;
+        }
+        else
+        {
+            int max = Math.min(path.length(), last.length());
+            while (shared < max && path.charAt(shared) == last.charAt(shared))
+            {
+                ++shared;
+            }
+            if (shared > 0 && shared < path.length() && Character.isHighSurrogate(path.charAt(shared - 1)))
+            {
+                --shared; // don't split surrogate pairs
+            }
+        }
+        byte[] suffix = getBytes(path.substring(shared));
+        ensureCapacity(length + 10 + suffix.length);
+        writeVarInt(shared);
+        writeVarInt(suffix.length);
+        System.arraycopy(suffix, 0, data, length, suffix.length);
+        length += suffix.length;
+        last = path;
+        ++size;
+        ++modCount;
+        return true;
+    }
+
+    /**
+     * Returns the path at the specified position.
+     *
+     * @param index the index of the path
+     * @return the path
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    @Override
+    public String get(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Decoder decoder = new Decoder(index - index % RESTART_INTERVAL);
+        String result = decoder.next();
+        for (int i = index % RESTART_INTERVAL; i > 0; --i)
+        {
+            result = decoder.next();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the no. of paths.
+     *
+     * @return the no. of paths
+     */
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns an iterator over the paths, in the order they were added.
+     * <p/>
+     * This decodes each path once, and is cheaper than accessing paths by index.
+     *
+     * @return an iterator over the paths
+     */
+    @Override
+    public Iterator<String> iterator()
+    {
+        final Decoder decoder = new Decoder(0);
+        final int end = size;
+        final int expectedModCount = modCount;
+        return new Iterator<String>()
+        {
+            private int index;
+
+            @Override
+            public boolean hasNext()
+            {
+                return index < end;
+            }
+
+            @Override
+            public String next()
+            {
+                if (index >= end)
+                {
+                    throw new NoSuchElementException();
+                }
+                if (modCount != expectedModCount)
+                {
+                    throw new ConcurrentModificationException();
+                }
+                ++index;
+                return decoder.next();
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Writes the list to a stream.
+     *
+     * @param out the stream to write to. This is not closed
+     * @throws IOException for any I/O error
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        DataOutputStream stream = new DataOutputStream(out);
+        stream.writeInt(MAGIC);
+        stream.writeInt(size);
+        stream.writeInt(length);
+        stream.write(data, 0, length);
+        stream.flush();
+    }
+
+    /**
+     * Reads a list written by {@link #write}.
+     *
+     * @param in the stream to read from. This is not closed
+     * @return the list
+     * @throws IOException if the stream doesn't contain a list, or an I/O error occurs
+     */
+    public static PathList read(InputStream in) throws IOException
+    {
+        DataInputStream stream = new DataInputStream(in);
+        if (stream.readInt() != MAGIC)
+        {
+            throw new IOException("Invalid path list");
+        }
+        int size = stream.readInt();
+        int length = stream.readInt();
+        if (size < 0 || length < 0)
+        {
+            throw new IOException("Invalid path list");
+        }
+        PathList result = new PathList();
+        result.data = new byte[length];
+        stream.readFully(result.data);
+        result.length = length;
+        result.restarts = new int[size / RESTART_INTERVAL + 1];
+
+        // locate the restart points, and the last path so that more may be appended
+        int offset = 0;
+        for (int i = 0; i < size; ++i)
+        {
+            if (i % RESTART_INTERVAL == 0)
+            {
+                result.restarts[i / RESTART_INTERVAL] = offset;
+            }
+            if (offset >= length)
+            {
+                throw new IOException("Invalid path list");
+            }
+            offset = result.skip(offset);
+        }
+        if (offset != length)
+        {
+            throw new IOException("Invalid path list");
+        }
+        result.size = size;
+        result.last = (size > 0) ? result.get(size - 1) : "";
+        return result;
+    }
+
+    /**
+     * Skips over an encoded path.
+     *
+     * @param offset the offset of the path
+     * @return the offset of the next path
+     */
+    private int skip(int offset)
+    {
+        int[] value = new int[2];
+        offset = readVarInt(offset, value);
+        offset = readVarInt(offset, value);
+        return offset + value[0];
+    }
+
+    /**
+     * Ensures the data can hold the specified no. of bytes.
+     *
+     * @param capacity the required capacity
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > data.length)
+        {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+
+    /**
+     * Appends a variable length integer to the data.
+     *
+     * @param value the value. Must be non-negative
+     */
+    private void writeVarInt(int value)
+    {
+        while (value >= 0x80)
+        {
+            data[length++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    /**
+     * Reads a variable length integer from the data.
+     *
+     * @param offset the offset to read from
+     * @param value  the value is returned in the first element
+     * @return the offset following the value
+     */
+    private int readVarInt(int offset, int[] value)
+    {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = data[offset++];
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while (b < 0);
+        value[0] = result;
+        return offset;
+    }
+
+    /**
+     * Returns the UTF-8 encoding of a string.
+     *
+     * @param value the string
+     * @return the encoded string
+     */
+    private static byte[] getBytes(String value)
+    {
+        try
+        {
+            return value.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Decodes paths sequentially, starting at a restart point.
+     */
+    private class Decoder
+    {
+
+        /**
+         * The offset of the next path.
+         */
+        private int offset;
+
+        /**
+         * The last path decoded.
+         */
+        private final StringBuilder path = new StringBuilder();
+
+        /**
+         * Holds values read by {@link #readVarInt}.
+         */
+        private final int[] value = new int[1];
+
+
+        /**
+         * Constructs a {@code Decoder}.
+         *
+         * @param index the index of the first path to decode. Must be a multiple of {@link #RESTART_INTERVAL}
+         */
+        public Decoder(int index)
+        {
+            offset = restarts[index / RESTART_INTERVAL];
+        }
+
+        /**
+         * Decodes the next path.
+         *
+         * @return the path
+         */
+        public String next()
+        {
+            offset = readVarInt(offset, value);
+            int shared = value[0];
+            offset = readVarInt(offset, value);
+            int count = value[0];
+            path.setLength(shared);
+            try
+            {
+                path.append(new String(data, offset, count, "UTF-8"));
+            }
+            catch (UnsupportedEncodingException exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+            offset += count;
+            return path.toString();
+        }
+    }
+}
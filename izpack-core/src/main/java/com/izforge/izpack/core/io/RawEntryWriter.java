@@ -0,0 +1,47 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * A zip stream that can write entries whose data has already been deflated, without inflating and deflating it again.
+ */
+public interface RawEntryWriter
+{
+
+    /**
+     * Writes a deflated entry, closing any current entry.
+     * <p/>
+     * The entry is complete when this returns.
+     *
+     * @param name           the entry name
+     * @param time           the entry modification time, or {@code -1} to use the current time
+     * @param size           the uncompressed size of the entry
+     * @param crc            the CRC-32 of the uncompressed entry data
+     * @param compressedSize the size of the deflated data
+     * @param data           the deflated data. Exactly {@code compressedSize} bytes are read
+     * @throws IOException for any I/O error, or if fewer than {@code compressedSize} bytes are available
+     */
+    void writeRawEntry(String name, long time, long size, long crc, long compressedSize, InputStream data)
+            throws IOException;
+}
@@ -0,0 +1,318 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * An input stream that reads ahead of its consumer on a separate thread.
+ * <p/>
+ * Up to a fixed no. of chunks are read ahead, so that decoding the underlying stream (e.g. inflating a compressed
+ * stream) overlaps with processing the data read from this stream. Exceptions thrown by the underlying stream are
+ * rethrown once the data preceding them has been read.
+ * <p/>
+ * Chunks are recycled once consumed, so a stream that reads ahead two chunks acts as a double buffer.
+ * <p/>
+ * The underlying stream is closed by the reading thread, when it reaches the end of the stream, fails, or this
+ * stream is closed.
+ */
+public class ReadAheadInputStream extends InputStream
+{
+
+    /**
+     * Marks the end of the stream.
+     */
+    private static final byte[] EOF = new byte[0];
+
+    /**
+     * The underlying stream.
+     */
+    private final InputStream in;
+
+    /**
+     * The chunks read ahead.
+     */
+    private final BlockingQueue<byte[]> chunks;
+
+    /**
+     * Consumed chunks, available for reuse by the reading thread.
+     */
+    private final BlockingQueue<byte[]> free;
+
+    /**
+     * The chunk size.
+     */
+    private final int chunkSize;
+
+    /**
+     * The thread reading the underlying stream.
+     */
+    private final Thread reader;
+
+    /**
+     * The exception thrown by the underlying stream, if any.
+     */
+    private volatile IOException exception;
+
+    /**
+     * Determines if the stream has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The current chunk.
+     */
+    private byte[] chunk;
+
+    /**
+     * The position in the current chunk.
+     */
+    private int position;
+
+
+    /**
+     * Constructs a {@code ReadAheadInputStream}, and starts reading the underlying stream.
+     *
+     * @param in        the underlying stream
+     * @param chunkSize the size of each chunk read ahead
+     * @param maxChunks the maximum no. of chunks to read ahead
+     * @param name      the name of the reading thread
+     */
+    public ReadAheadInputStream(InputStream in, int chunkSize, int maxChunks, String name)
+    {
+        this.in = in;
+        this.chunkSize = chunkSize;
+        chunks = new ArrayBlockingQueue<byte[]>(maxChunks);
+        free = new ArrayBlockingQueue<byte[]>(maxChunks + 1);
+        reader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                readAhead();
+            }
+        }, name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Reads the next byte of data.
+     *
+     * @return the next byte of data, or {@code -1} if the end of the stream is reached
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public int read() throws IOException
+    {
+        return next() ? chunk[position++] & 0xFF : -1;
+    }
+
+    /**
+     * Reads up to {@code length} bytes of data into an array.
+     *
+     * @param buffer the buffer to read into
+     * @param offset the offset in the buffer to start writing at
+     * @param length the maximum no. of bytes to read
+     * @return the no. of bytes read, or {@code -1} if the end of the stream is reached
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+        {
+            return 0;
+        }
+        if (!next())
+        {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Skips over bytes, without copying them.
+     *
+     * @param n the no. of bytes to skip
+     * @return the no. of bytes skipped
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        if (n <= 0 || !next())
+        {
+            return 0;
+        }
+        int count = (int) Math.min(n, chunk.length - position);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Returns the no. of bytes that can be read without blocking.
+     *
+     * @return the no. of bytes remaining in the current chunk
+     */
+    @Override
+    public int available()
+    {
+        return (chunk != null) ? chunk.length - position : 0;
+    }
+
+    /**
+     * Closes the stream, stopping the reading thread.
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            reader.interrupt();
+            chunks.clear();
+            free.clear();
+        }
+    }
+
+    /**
+     * Makes the next chunk current, if the current chunk has been consumed.
+     *
+     * @return {@code true} if there is data to read, {@code false} if the end of the stream is reached
+     * @throws IOException if the underlying stream failed, or the stream is closed
+     */
+    private boolean next() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream closed");
+        }
+        if (chunk != EOF && (chunk == null || position == chunk.length))
+        {
+            try
+            {
+                if (chunk != null && chunk.length == chunkSize)
+                {
+                    free.offer(chunk);
+                }
+                chunk = chunks.take();
+                position = 0;
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading ahead");
+            }
+        }
+        if (chunk == EOF)
+        {
+            if (exception != null)
+            {
+                throw exception;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the underlying stream into chunks, until the end of the stream is reached or this stream is closed.
+     */
+    private void readAhead()
+    {
+        try
+        {
+            boolean eof = false;
+            while (!eof && !closed)
+            {
+                byte[] buffer = free.poll();
+                if (buffer == null)
+                {
+                    buffer = new byte[chunkSize];
+                }
+                int length = 0;
+                int read = 0;
+                while (length < chunkSize && (read = in.read(buffer, length, chunkSize - length)) != -1)
+                {
+                    length += read;
+                }
+                eof = (read == -1);
+                if (length != 0)
+                {
+                    chunks.put(length == chunkSize ? buffer : Arrays.copyOf(buffer, length));
+                }
+            }
+            chunks.put(EOF);
+        }
+        catch (InterruptedException ignore)
+        {
+            // closed
+        }
+        catch (IOException e)
+        {
+            exception = e;
+            end();
+        }
+        catch (RuntimeException e)
+        {
+            exception = new IOException(e);
+            end();
+        }
+        finally
+        {
+            try
+            {
+                in.close();
+            }
+            catch (IOException ignore)
+            {
+                // do nothing
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the stream after a failure.
+     */
+    private void end()
+    {
+        try
+        {
+            if (!closed)
+            {
+                chunks.put(EOF);
+            }
+        }
+        catch (InterruptedException ignore)
+        {
+            // closed
+        }
+    }
+}
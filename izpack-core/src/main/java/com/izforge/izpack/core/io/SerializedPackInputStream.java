@@ -0,0 +1,133 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+
+
+/**
+ * Reads pack streams in the {@link PackFormat#SERIALIZED} format.
+ * <p/>
+ * File content and Pack200 keys are written as block data, so are read through the {@code ObjectInputStream}.
+ */
+public class SerializedPackInputStream extends PackInputStream
+{
+
+    /**
+     * The stream to read from.
+     */
+    private final ObjectInputStream in;
+
+
+    /**
+     * Constructs a {@code SerializedPackInputStream}.
+     *
+     * @param in the stream to read from
+     */
+    public SerializedPackInputStream(ObjectInputStream in)
+    {
+        super(in);
+        this.in = in;
+    }
+
+    /**
+     * Reads a count.
+     *
+     * @return the count
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public int readCount() throws IOException
+    {
+        return in.readInt();
+    }
+
+    /**
+     * Reads the meta-data of a pack file.
+     *
+     * @return the pack file
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public PackFile readPackFile() throws IOException
+    {
+        return (PackFile) readObject();
+    }
+
+    /**
+     * Reads a parsable file.
+     *
+     * @return the parsable file
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public ParsableFile readParsableFile() throws IOException
+    {
+        return (ParsableFile) readObject();
+    }
+
+    /**
+     * Reads an executable file.
+     *
+     * @return the executable file
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public ExecutableFile readExecutableFile() throws IOException
+    {
+        return (ExecutableFile) readObject();
+    }
+
+    /**
+     * Reads an update check.
+     *
+     * @return the update check
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public UpdateCheck readUpdateCheck() throws IOException
+    {
+        return (UpdateCheck) readObject();
+    }
+
+    /**
+     * Reads an object.
+     *
+     * @return the object
+     * @throws IOException for any I/O error, or if the object's class cannot be found
+     */
+    private Object readObject() throws IOException
+    {
+        try
+        {
+            return in.readObject();
+        }
+        catch (ClassNotFoundException exception)
+        {
+            throw new IOException("Failed to read object", exception);
+        }
+    }
+}
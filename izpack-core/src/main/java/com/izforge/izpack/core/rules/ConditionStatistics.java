@@ -0,0 +1,139 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.rules;
+
+
+/**
+ * Evaluation statistics for a condition, collected by {@link RulesEngineImpl} when statistics are enabled.
+ */
+public class ConditionStatistics
+{
+
+    /**
+     * The condition identifier or expression.
+     */
+    private final String id;
+
+    /**
+     * The no. of evaluations.
+     */
+    private long evaluations;
+
+    /**
+     * The no. of evaluations satisfied from the cache.
+     */
+    private long cacheHits;
+
+    /**
+     * The total evaluation time, in nanoseconds.
+     */
+    private long time;
+
+
+    /**
+     * Constructs a {@code ConditionStatistics}.
+     *
+     * @param id the condition identifier or expression
+     */
+    public ConditionStatistics(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * Constructs a {@code ConditionStatistics} from another.
+     *
+     * @param other the statistics to copy
+     */
+    public ConditionStatistics(ConditionStatistics other)
+    {
+        this.id = other.id;
+        this.evaluations = other.evaluations;
+        this.cacheHits = other.cacheHits;
+        this.time = other.time;
+    }
+
+    /**
+     * Returns the condition identifier or expression.
+     *
+     * @return the condition identifier or expression
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Returns the no. of times the condition was evaluated.
+     *
+     * @return the no. of evaluations, including those satisfied from the cache
+     */
+    public long getEvaluations()
+    {
+        return evaluations;
+    }
+
+    /**
+     * Returns the no. of evaluations satisfied from the cache.
+     *
+     * @return the no. of cache hits
+     */
+    public long getCacheHits()
+    {
+        return cacheHits;
+    }
+
+    /**
+     * Returns the total time spent evaluating the condition.
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getTime()
+    {
+        return time;
+    }
+
+    /**
+     * Records an evaluation.
+     *
+     * @param cacheHit if {@code true}, the result came from the cache
+     * @param time     the evaluation time, in nanoseconds
+     */
+    void record(boolean cacheHit, long time)
+    {
+        ++evaluations;
+        if (cacheHit)
+        {
+            ++cacheHits;
+        }
+        this.time += time;
+    }
+
+    /**
+     * Returns a string representation of the statistics.
+     *
+     * @return a string representation of the statistics
+     */
+    @Override
+    public String toString()
+    {
+        return id + ": evaluations=" + evaluations + ", cacheHits=" + cacheHits + ", time=" + (time / 1000) + "us";
+    }
+}
@@ -34,6 +34,7 @@ import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.rules.ConditionReference;
 import com.izforge.izpack.api.rules.ConditionWithMultipleOperands;
 import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.core.data.DefaultVariables;
 import com.izforge.izpack.core.rules.logic.AndCondition;
 import com.izforge.izpack.core.rules.logic.NotCondition;
 import com.izforge.izpack.core.rules.logic.OrCondition;
@@ -46,6 +47,7 @@ import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 
@@ -71,6 +73,22 @@ public class RulesEngineImpl implements RulesEngine
 
     private final ConditionContainer container;
 
+    /**
+     * Conditions parsed from expressions, keyed on expression.
+     */
+    private final Map<String, Condition> expressions = new ConcurrentHashMap<String, Condition>();
+
+    /**
+     * The cached results of conditions that only depend on variables.
+     */
+    private final Map<Condition, Result> results = new ConcurrentHashMap<Condition, Result>();
+
+    /**
+     * Evaluation statistics, keyed on condition identifier or expression. If {@code null}, statistics aren't
+     * collected.
+     */
+    private Map<String, ConditionStatistics> statistics;
+
     private static final Logger logger = Logger.getLogger(RulesEngineImpl.class.getName());
 
     /**
@@ -127,6 +145,7 @@ public class RulesEngineImpl implements RulesEngine
                 resolveBuiltinConditions(condition);
             }
         }
+        clearCache();
     }
 
     /**
@@ -196,6 +215,7 @@ public class RulesEngineImpl implements RulesEngine
         {
             refCondition.resolveReference();
         }
+        clearCache();
     }
 
     /**
@@ -231,6 +251,7 @@ public class RulesEngineImpl implements RulesEngine
                     }
                 }
             }
+            clearCache();
 
             List<IXMLElement> panelconditionels = conditionsSpec
                     .getChildrenNamed("panelcondition");
@@ -279,13 +300,21 @@ public class RulesEngineImpl implements RulesEngine
         Condition result = conditionsMap.get(id);
         if (result == null)
         {
-            if (id.startsWith("@"))
-            {
-                result = parseComplexCondition(id.substring(1));
-            }
-            else
+            result = expressions.get(id);
+            if (result == null)
             {
-                result = getConditionByExpr(new StringBuffer(id));
+                if (id.startsWith("@"))
+                {
+                    result = parseComplexCondition(id.substring(1));
+                }
+                else
+                {
+                    result = getConditionByExpr(new StringBuffer(id));
+                }
+                if (result != null)
+                {
+                    expressions.put(id, result);
+                }
             }
         }
         return result;
@@ -297,7 +326,11 @@ public class RulesEngineImpl implements RulesEngine
         Condition cond = getCondition(id);
         if (cond != null)
         {
-            return isConditionTrue(cond, installData);
+            if (installData != null)
+            {
+                cond.setInstallData(installData);
+            }
+            return isConditionTrue(id, cond);
         }
         logger.warning("Condition " + id + " not found");
         return false;
@@ -323,7 +356,7 @@ public class RulesEngineImpl implements RulesEngine
         Condition cond = getCondition(id);
         if (cond != null)
         {
-            return isConditionTrue(cond);
+            return isConditionTrue(id, cond);
         }
         logger.warning("Condition " + id + " not found");
         return false;
@@ -331,16 +364,199 @@ public class RulesEngineImpl implements RulesEngine
 
     @Override
     public boolean isConditionTrue(Condition cond)
+    {
+        return isConditionTrue(cond.getId(), cond);
+    }
+
+    /**
+     * Enables or disables the collection of condition evaluation statistics.
+     * <p/>
+     * Disabling statistics discards any collected.
+     *
+     * @param enabled if {@code true}, collect statistics
+     */
+    public synchronized void setStatisticsEnabled(boolean enabled)
+    {
+        if (!enabled)
+        {
+            statistics = null;
+        }
+        else if (statistics == null)
+        {
+            statistics = new LinkedHashMap<String, ConditionStatistics>();
+        }
+    }
+
+    /**
+     * Returns the condition evaluation statistics.
+     *
+     * @return a copy of the statistics, in the order the conditions were first evaluated. Empty if statistics
+     *         aren't being collected
+     */
+    public synchronized List<ConditionStatistics> getStatistics()
+    {
+        List<ConditionStatistics> result = new ArrayList<ConditionStatistics>();
+        if (statistics != null)
+        {
+            for (ConditionStatistics stats : statistics.values())
+            {
+                result.add(new ConditionStatistics(stats));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines if a condition is true.
+     * <p/>
+     * The results of conditions that only depend on variables are cached until the variables change.
+     *
+     * @param id   the condition identifier or expression, for logging and statistics
+     * @param cond the condition
+     * @return the condition result
+     */
+    private boolean isConditionTrue(String id, Condition cond)
     {
         if (cond.getInstallData() == null)
         {
             cond.setInstallData(this.installData);
         }
-        boolean value = cond.isTrue();
-        logger.fine("Condition " + cond.getId() + ": " + Boolean.toString(value));
+        boolean collect = statistics != null;
+        long start = collect ? System.nanoTime() : 0;
+        boolean cached = false;
+        boolean value;
+
+        Result result = null;
+        InstallData data = cond.getInstallData();
+        Variables variables = (data != null) ? data.getVariables() : null;
+        if (variables instanceof DefaultVariables)
+        {
+            result = results.get(cond);
+            if (result == null || result.installData != data)
+            {
+                Boolean cacheable = isVariableCondition(cond, data, new HashSet<Condition>());
+                result = new Result(data, cacheable != null && cacheable);
+                if (cacheable != null)
+                {
+                    // only cache the outcome once all references are resolved
+                    results.put(cond, result);
+                }
+            }
+        }
+        if (result != null && result.cacheable)
+        {
+            // read the version before evaluating, so that changes made during evaluation invalidate the result
+            long version = ((DefaultVariables) variables).getVersion();
+            synchronized (result)
+            {
+                cached = result.variables == variables && result.version == version;
+                value = result.value;
+            }
+            if (!cached)
+            {
+                value = cond.isTrue();
+                synchronized (result)
+                {
+                    result.variables = variables;
+                    result.version = version;
+                    result.value = value;
+                }
+            }
+        }
+        else
+        {
+            value = cond.isTrue();
+        }
+
+        if (collect)
+        {
+            record(id, cached, System.nanoTime() - start);
+        }
+        logger.fine("Condition " + id + ": " + Boolean.toString(value));
         return value;
     }
 
+    /**
+     * Records the evaluation of a condition.
+     *
+     * @param id       the condition identifier or expression
+     * @param cacheHit if {@code true}, the result came from the cache
+     * @param time     the evaluation time, in nanoseconds
+     */
+    private synchronized void record(String id, boolean cacheHit, long time)
+    {
+        if (statistics != null)
+        {
+            ConditionStatistics stats = statistics.get(id);
+            if (stats == null)
+            {
+                stats = new ConditionStatistics(id);
+                statistics.put(id, stats);
+            }
+            stats.record(cacheHit, time);
+        }
+    }
+
+    /**
+     * Determines if the result of a condition only depends on variables, and may therefore be cached until they
+     * change.
+     * <p/>
+     * Only the built-in variable, comparison and logical conditions qualify; conditions that examine the file
+     * system, pack selection, user or Java fields may change independently of the variables.
+     *
+     * @param condition   the condition
+     * @param installData the installation data the top-level condition is evaluated with
+     * @param visited     the conditions visited so far, to detect cycles
+     * @return {@code true} if the condition only depends on variables, {@code false} if it doesn't, or {@code null}
+     *         if it contains an unresolved reference
+     */
+    private Boolean isVariableCondition(Condition condition, InstallData installData, Set<Condition> visited)
+    {
+        if (!visited.add(condition))
+        {
+            return false;
+        }
+        Class<?> type = condition.getClass();
+        if (type == StaticCondition.class)
+        {
+            return true;
+        }
+        if (type == VariableCondition.class || type == CompareNumericsCondition.class
+                || type == CompareVersionsCondition.class)
+        {
+            // the result is cached against the variables of the top-level condition
+            return condition.getInstallData() == installData;
+        }
+        Boolean result = false;
+        if (type == AndCondition.class || type == OrCondition.class || type == XorCondition.class)
+        {
+            result = true;
+            for (Condition operand : ((ConditionWithMultipleOperands) condition).getOperands())
+            {
+                Boolean variable = isVariableCondition(operand, installData, visited);
+                if (variable == null || !variable)
+                {
+                    return variable;
+                }
+            }
+        }
+        else if (type == NotCondition.class || type == RefCondition.class)
+        {
+            Condition referenced = ((ConditionReference) condition).getReferencedCondition();
+            result = (referenced != null) ? isVariableCondition(referenced, installData, visited) : null;
+        }
+        return result;
+    }
+
+    /**
+     * Clears cached expressions and results, when conditions are added or resolved.
+     */
+    private void clearCache()
+    {
+        expressions.clear();
+        results.clear();
+    }
+
     /**
      * Can a panel be shown?
      *
@@ -357,8 +573,9 @@ public class RulesEngineImpl implements RulesEngine
             logger.fine("Panel " + panelId + " unconditionally activated");
             return true;
         }
-        Condition condition = getCondition(this.panelConditions.get(panelId));
-        boolean b = condition.isTrue();
+        String conditionId = this.panelConditions.get(panelId);
+        Condition condition = getCondition(conditionId);
+        boolean b = isConditionTrue(conditionId, condition);
         logger.fine("Panel " + panelId + ": activation depends on condition "
                             + condition.getId() + " -> " + b);
         return b;
@@ -403,8 +620,9 @@ public class RulesEngineImpl implements RulesEngine
             logger.fine("Package " + packid + " unconditionally installable");
             return true;
         }
-        Condition condition = getCondition(this.packConditions.get(packid));
-        boolean b = condition.isTrue();
+        String conditionId = this.packConditions.get(packid);
+        Condition condition = getCondition(conditionId);
+        boolean b = isConditionTrue(conditionId, condition);
         logger.fine("Package " + packid + ": installation depends on condition "
                 + condition.getId() + " -> " + b);
         return b;
@@ -738,7 +956,7 @@ public class RulesEngineImpl implements RulesEngine
             String operand2Id = expression.toString();
             Condition operand2 = getConditionByExpr(expression);
             if (operand2 != null){
-                ((ConditionWithMultipleOperands) result).addOperands(operand1, operand2);
+                addOperands((ConditionWithMultipleOperands) result, operand1, operand2);
             } else {
                 // the second operand doesn't exist
                 logger.warning(String.format(warningMsg, conditionId, operand2Id));
@@ -777,11 +995,39 @@ public class RulesEngineImpl implements RulesEngine
             return null;
         }
 
-        ((ConditionWithMultipleOperands) result).addOperands(operand1, operand2);
+        addOperands((ConditionWithMultipleOperands) result, operand1, operand2);
 
         return result;
     }
 
+    /**
+     * Adds operands to a condition parsed from an expression.
+     * <p/>
+     * Operands that were themselves parsed from the expression and are of the same <em>and</em> or <em>or</em> type
+     * are flattened into the condition, so that <em>a+b+c</em> evaluates as a single conjunction rather than as
+     * nested ones. Named conditions are never flattened, as they are shared.
+     *
+     * @param condition the condition
+     * @param operands  the operands to add
+     */
+    private void addOperands(ConditionWithMultipleOperands condition, Condition... operands)
+    {
+        Class<?> type = condition.getClass();
+        for (Condition operand : operands)
+        {
+            if (operand.getClass() == type && (type == AndCondition.class || type == OrCondition.class)
+                    && conditionsMap.get(operand.getId()) != operand)
+            {
+                List<Condition> nested = ((ConditionWithMultipleOperands) operand).getOperands();
+                condition.addOperands(nested.toArray(new Condition[nested.size()]));
+            }
+            else
+            {
+                condition.addOperands(operand);
+            }
+        }
+    }
+
     /**
      * A helper method that attempts to instantiate the correct class according to TYPE_CLASS_NAMES
      * @param condType The type of condition (should match either a fully qualified class, or one of the keys in TYPE_CLASS_NAMES
@@ -916,4 +1162,42 @@ public class RulesEngineImpl implements RulesEngine
         }
 
     }
+
+    /**
+     * The cached result of a condition.
+     */
+    private static class Result
+    {
+
+        /**
+         * The installation data that the condition was evaluated with.
+         */
+        private final InstallData installData;
+
+        /**
+         * Determines if the condition only depends on variables, and so may be cached.
+         */
+        private final boolean cacheable;
+
+        /**
+         * The variables that the condition was last evaluated against.
+         */
+        private Variables variables;
+
+        /**
+         * The version of the variables when the condition was last evaluated.
+         */
+        private long version;
+
+        /**
+         * The last result of the condition.
+         */
+        private boolean value;
+
+        public Result(InstallData installData, boolean cacheable)
+        {
+            this.installData = installData;
+            this.cacheable = cacheable;
+        }
+    }
 }
@@ -28,6 +28,7 @@ import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.util.IoHelper;
 
 import java.io.*;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -116,6 +117,42 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         typeNameToConstantMap.put("ant", TYPE_ANT);
     }
 
+    /**
+     * The variable syntax of each substitution type.
+     */
+    private static final Map<SubstitutionType, Syntax> SYNTAXES = new EnumMap<SubstitutionType, Syntax>(
+            SubstitutionType.class);
+
+    static
+    {
+        for (SubstitutionType type : SubstitutionType.values())
+        {
+            switch (type)
+            {
+                case TYPE_SHELL:
+                    SYNTAXES.put(type, new Syntax('%', '\0'));
+                    break;
+
+                case TYPE_AT:
+                    SYNTAXES.put(type, new Syntax('@', '\0'));
+                    break;
+
+                case TYPE_ANT:
+                    SYNTAXES.put(type, new Syntax('@', '@'));
+                    break;
+
+                default:
+                    SYNTAXES.put(type, new Syntax('$', '\0'));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The size of the buffer used to read data, in characters.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
     public abstract Value getValue(String name);
 
     /**
@@ -297,39 +334,26 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         }
 
         // determine character which starts (and ends) a variable
-        char variable_start = '$';
-        char variable_end = '\0';
-        switch (type)
-        {
-            case TYPE_SHELL:
-                variable_start = '%';
-                break;
+        Syntax syntax = SYNTAXES.get(type);
+        char variable_start = syntax.start;
+        char variable_end = syntax.end;
 
-            case TYPE_AT:
-                variable_start = '@';
-                break;
-
-            case TYPE_ANT:
-                variable_start = '@';
-                variable_end = '@';
-                break;
-
-            default:
-                break;
-        }
+        // the escaped values of the variables found so far, keyed on reference
+        Map<String, String> values = new HashMap<String, String>();
 
+        CharSource source = new CharSource(reader);
         int subs = 0;
 
         // Copy data and substitute variables
-        int c = reader.read();
+        int c = source.read();
 
         while (true)
         {
-            // Find the next potential variable reference or EOF
-            while (c != -1 && c != variable_start)
+            // Find the next potential variable reference or EOF, copying the text up to it in bulk
+            if (c != -1 && c != variable_start)
             {
                 writer.write(c);
-                c = reader.read();
+                c = source.copyTo(variable_start, writer);
             }
             if (c == -1)
             {
@@ -338,11 +362,11 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
 
             // Check if braces used or start char escaped
             boolean braces = false;
-            c = reader.read();
+            c = source.read();
             if (c == '{')
             {
                 braces = true;
-                c = reader.read();
+                c = source.read();
             }
             else if (bracesRequired)
             {
@@ -356,13 +380,13 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
             }
 
             // Read the variable name
-            StringBuffer nameBuffer = new StringBuffer();
+            StringBuilder nameBuffer = new StringBuilder();
             while (c != -1 && (braces && c != '}') || (c >= 'a' && c <= 'z')
                     || (c >= 'A' && c <= 'Z') || (braces && ((c == '[') || (c == ']')))
                     || (((c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-') && nameBuffer.length() > 0))
             {
                 nameBuffer.append((char) c);
-                c = reader.read();
+                c = source.read();
             }
             String name = nameBuffer.toString();
 
@@ -373,33 +397,19 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
                     (!braces || variable_end == '\0' || variable_end == c)
             ) && name.length() > 0)
             {
-                // check for environment variables
-                if (braces && name.startsWith("ENV[")
-                        && (name.lastIndexOf(']') == name.length() - 1))
-                {
-                    varvalue = IoHelper.getenv(name.substring(4, name.length() - 1));
-                    if (varvalue == null)
-                    {
-                        varvalue = "";
-                    }
-                }
-                else if (braces && name.startsWith("SYSTEM[")
-                        && (name.lastIndexOf(']') == name.length() - 1))
-                {
-                    varvalue = System.getProperty(name.substring(7, name.length() - 1));
-                }
-                // TODO: Compatibility mode - to be removed in future
-                else if (braces && name.startsWith("SYSTEM_") && name.length() > 7)
+                String key = braces ? "{" + name : name;
+                if (values.containsKey(key))
                 {
-                    varvalue = System.getProperty(name.substring(7).replace('_', '.'));
+                    varvalue = values.get(key);
                 }
                 else
                 {
-                    Value val = getValue(name);
-                    if (val != null)
+                    varvalue = resolve(name, braces);
+                    if (varvalue != null)
                     {
-                        varvalue = val.resolve();
+                        varvalue = escapeSpecialChars(varvalue, type);
                     }
+                    values.put(key, varvalue);
                 }
 
                 subs++;
@@ -408,10 +418,10 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
             // Substitute the variable...
             if (varvalue != null)
             {
-                writer.write(escapeSpecialChars(varvalue, type));
+                writer.write(varvalue);
                 if (braces || variable_end != '\0')
                 {
-                    c = reader.read();
+                    c = source.read();
                 }
             }
             // ...or ignore it
@@ -427,6 +437,48 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
         }
     }
 
+    /**
+     * Returns the value of a variable reference.
+     *
+     * @param name   the variable name
+     * @param braces determines if the name was enclosed in braces
+     * @return the unescaped value, or {@code null} if the variable is undefined
+     * @throws Exception if the value cannot be resolved
+     */
+    private String resolve(String name, boolean braces) throws Exception
+    {
+        String varvalue = null;
+        // check for environment variables
+        if (braces && name.startsWith("ENV[")
+                && (name.lastIndexOf(']') == name.length() - 1))
+        {
+            varvalue = IoHelper.getenv(name.substring(4, name.length() - 1));
+            if (varvalue == null)
+            {
+                varvalue = "";
+            }
+        }
+        else if (braces && name.startsWith("SYSTEM[")
+                && (name.lastIndexOf(']') == name.length() - 1))
+        {
+            varvalue = System.getProperty(name.substring(7, name.length() - 1));
+        }
+        // TODO: Compatibility mode - to be removed in future
+        else if (braces && name.startsWith("SYSTEM_") && name.length() > 7)
+        {
+            varvalue = System.getProperty(name.substring(7).replace('_', '.'));
+        }
+        else
+        {
+            Value val = getValue(name);
+            if (val != null)
+            {
+                varvalue = val.resolve();
+            }
+        }
+        return varvalue;
+    }
+
     /**
      * Returns the internal constant for the specified file type.
      *
@@ -583,4 +635,143 @@ public abstract class VariableSubstitutorBase implements VariableSubstitutor
                 throw new Error("Unknown file type constant " + type);
         }
     }
+
+    /**
+     * The characters which start and end a variable reference.
+     */
+    private static class Syntax
+    {
+
+        /**
+         * The character which starts a variable.
+         */
+        private final char start;
+
+        /**
+         * The character which ends a variable, or {@code '\0'} if variables have no end character.
+         */
+        private final char end;
+
+        /**
+         * Constructs a {@code Syntax}.
+         *
+         * @param start the character which starts a variable
+         * @param end   the character which ends a variable, or {@code '\0'} if there is none
+         */
+        public Syntax(char start, char end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Reads characters from a reader into a buffer, so that text between variable references can be copied in bulk,
+     * rather than a character at a time.
+     */
+    private static class CharSource
+    {
+
+        /**
+         * The reader.
+         */
+        private final Reader reader;
+
+        /**
+         * The buffer.
+         */
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        /**
+         * The position of the next character to return in the buffer.
+         */
+        private int position;
+
+        /**
+         * The no. of characters in the buffer.
+         */
+        private int limit;
+
+        /**
+         * Constructs a {@code CharSource}.
+         *
+         * @param reader the reader
+         */
+        public CharSource(Reader reader)
+        {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads the next character.
+         *
+         * @return the next character, or {@code -1} if the end of the data has been reached
+         * @throws IOException for any I/O error
+         */
+        public int read() throws IOException
+        {
+            if (position == limit && !fill())
+            {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        /**
+         * Copies characters to a writer, up to and excluding a stop character.
+         * <p/>
+         * The stop character is consumed but not written.
+         *
+         * @param stop   the stop character
+         * @param writer the writer
+         * @return the stop character, or {@code -1} if the end of the data was reached before it was found
+         * @throws IOException for any I/O error
+         */
+        public int copyTo(char stop, Writer writer) throws IOException
+        {
+            while (true)
+            {
+                for (int i = position; i < limit; ++i)
+                {
+                    if (buffer[i] == stop)
+                    {
+                        if (i > position)
+                        {
+                            writer.write(buffer, position, i - position);
+                        }
+                        position = i + 1;
+                        return stop;
+                    }
+                }
+                if (limit > position)
+                {
+                    writer.write(buffer, position, limit - position);
+                }
+                position = limit;
+                if (!fill())
+                {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Refills the buffer.
+         *
+         * @return {@code true} if characters were read, {@code false} if the end of the data has been reached
+         * @throws IOException for any I/O error
+         */
+        private boolean fill() throws IOException
+        {
+            int read;
+            do
+            {
+                read = reader.read(buffer);
+            }
+            while (read == 0);
+            position = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
+    }
 }
@@ -122,6 +122,21 @@ public abstract class ConfigFileValue extends ValueImpl implements Serializable
         }
     }
 
+    /**
+     * Returns a key identifying the inputs the value is resolved from, given the file the configuration is read
+     * from.
+     *
+     * @param path         the path of the file, after variable substitution
+     * @param entry        the entry in the file, after variable substitution. May be {@code null}
+     * @param substitutors the variable substitutors
+     * @return the key
+     */
+    protected String getResolutionKey(String path, String entry, VariableSubstitutor... substitutors)
+    {
+        return createKey(path, getFileState(path), entry, type, substitute(section, substitutors),
+                         substitute(key, substitutors), escape);
+    }
+
     protected String resolve(InputStream in) throws Exception
     {
         Config config;
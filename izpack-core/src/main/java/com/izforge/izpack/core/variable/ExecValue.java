@@ -97,6 +97,19 @@ public class ExecValue extends ValueImpl implements Serializable
         }
     }
 
+    @Override
+    public String getResolutionKey(VariableSubstitutor... substitutors)
+    {
+        Object[] parts = new Object[cmd.length + 2];
+        parts[0] = substitute(dir, substitutors);
+        parts[1] = useStdErr;
+        for (int i = 0; i < cmd.length; i++)
+        {
+            parts[i + 2] = substitute(cmd[i], substitutors);
+        }
+        return createKey(parts);
+    }
+
     @Override
     public String resolve()
     {
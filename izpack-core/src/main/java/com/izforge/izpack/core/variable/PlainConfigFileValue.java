@@ -61,6 +61,12 @@ public class PlainConfigFileValue extends ConfigFileValue implements Serializabl
         }
     }
 
+    @Override
+    public String getResolutionKey(VariableSubstitutor... substitutors)
+    {
+        return getResolutionKey(substitute(location, substitutors), null, substitutors);
+    }
+
     @Override
     public String resolve() throws Exception
     {
@@ -139,6 +139,13 @@ public class RegistryValue extends ValueImpl implements Serializable
         return null;
     }
 
+    @Override
+    public String getResolutionKey(VariableSubstitutor... substitutors)
+    {
+        return createKey(substitute(root, substitutors), substitute(key, substitutors),
+                         substitute(value, substitutors));
+    }
+
     @Override
     public String resolve(VariableSubstitutor... substitutors) throws Exception
     {
@@ -21,6 +21,8 @@
 
 package com.izforge.izpack.core.variable;
 
+import java.io.File;
+
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.data.Value;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
@@ -38,6 +40,23 @@ public abstract class ValueImpl implements Value
     @Override
     public abstract String resolve(VariableSubstitutor... substitutors) throws Exception;
 
+    /**
+     * Returns a key identifying the inputs the value is resolved from, after variable substitution.
+     * <p/>
+     * Resolving the value again with the same key is expected to produce the same result, so that values that are
+     * expensive to resolve, such as those read from files or produced by commands, need only be resolved when their
+     * inputs change.
+     * <p/>
+     * This implementation returns {@code null}.
+     *
+     * @param substitutors the variable substitutors
+     * @return the key, or {@code null} if the value must always be resolved
+     */
+    public String getResolutionKey(VariableSubstitutor... substitutors)
+    {
+        return null;
+    }
+
     @Override
     public InstallData getInstallData()
     {
@@ -49,4 +68,52 @@ public abstract class ValueImpl implements Value
     {
         this.installData = installData;
     }
+
+    /**
+     * Substitutes variables in a string.
+     *
+     * @param value        the string. May be {@code null}
+     * @param substitutors the variable substitutors
+     * @return the string with variables substituted
+     */
+    protected static String substitute(String value, VariableSubstitutor... substitutors)
+    {
+        for (VariableSubstitutor substitutor : substitutors)
+        {
+            value = substitutor.substitute(value);
+        }
+        return value;
+    }
+
+    /**
+     * Creates a resolution key from its parts.
+     *
+     * @param parts the parts of the key. May contain {@code null}s
+     * @return the key
+     */
+    protected static String createKey(Object... parts)
+    {
+        StringBuilder result = new StringBuilder();
+        for (Object part : parts)
+        {
+            result.append(part).append('\0');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the state of a file, for inclusion in a resolution key.
+     *
+     * @param path the file path. May be {@code null}
+     * @return the file's length and last modification time
+     */
+    protected static String getFileState(String path)
+    {
+        if (path == null)
+        {
+            return null;
+        }
+        File file = new File(path);
+        return file.length() + ":" + file.lastModified();
+    }
 }
@@ -74,6 +74,13 @@ public class ZipEntryConfigFileValue extends ConfigFileValue
         }
     }
 
+    @Override
+    public String getResolutionKey(VariableSubstitutor... substitutors)
+    {
+        return getResolutionKey(substitute(filename, substitutors), substitute(entryname, substitutors),
+                                substitutors);
+    }
+
     @Override
     public String resolve() throws Exception
     {
@@ -20,9 +20,9 @@
 package com.izforge.izpack.merge;
 
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import com.izforge.izpack.api.merge.Mergeable;
 
@@ -34,14 +34,22 @@ import com.izforge.izpack.api.merge.Mergeable;
  */
 public abstract class AbstractMerge implements Mergeable
 {
-    protected Map<OutputStream, List<String>> mergeContent;
+    protected Map<OutputStream, Set<String>> mergeContent;
 
-    protected List<String> getMergeList(OutputStream outputStream)
+    /**
+     * Returns the names of the entries already merged into a stream.
+     *
+     * @param outputStream the stream
+     * @return the merged entry names
+     */
+    protected Set<String> getMergeList(OutputStream outputStream)
     {
-        if (!mergeContent.containsKey(outputStream))
+        Set<String> result = mergeContent.get(outputStream);
+        if (result == null)
         {
-            mergeContent.put(outputStream, new ArrayList<String>());
+            result = new HashSet<String>();
+            mergeContent.put(outputStream, result);
         }
-        return mergeContent.get(outputStream);
+        return result;
     }
 }
@@ -29,8 +29,10 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,6 +40,7 @@ import org.apache.tools.zip.ZipOutputStream;
 
 import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.exception.MergeException;
+import com.izforge.izpack.core.io.RawEntryWriter;
 import com.izforge.izpack.merge.AbstractMerge;
 import com.izforge.izpack.util.FileUtil;
 import com.izforge.izpack.util.IoHelper;
@@ -49,11 +52,28 @@ import com.izforge.izpack.util.IoHelper;
  */
 public class JarMerge extends AbstractMerge
 {
+    /**
+     * Matches signature files.
+     */
+    private static final Pattern SIGNATURE = Pattern.compile("/META-INF/.*\\.(SF|DSA|RSA)|/META-INF/SIG-.*");
+
+    /**
+     * Matches repeated path separators in destination names.
+     */
+    private static final Pattern DOUBLE_SLASH = Pattern.compile("//");
+
+    private static final Logger logger = Logger.getLogger(JarMerge.class.getName());
+
     private String jarPath;
 
     private String regexp;
     private String destination;
 
+    /**
+     * The compiled {@link #regexp}.
+     */
+    private final Pattern pattern;
+
 
     /**
      * Create a new JarMerge with a destination
@@ -62,7 +82,7 @@ public class JarMerge extends AbstractMerge
      * @param jarPath      Path to the jar to merge
      * @param mergeContent map linking outputstream to their content to avoir duplication
      */
-    public JarMerge(URL resource, String jarPath, Map<OutputStream, List<String>> mergeContent)
+    public JarMerge(URL resource, String jarPath, Map<OutputStream, Set<String>> mergeContent)
     {
         this.jarPath = jarPath;
         this.mergeContent = mergeContent;
@@ -82,6 +102,7 @@ public class JarMerge extends AbstractMerge
             builder.append("/*(.*)");
         }
         regexp = builder.toString();
+        pattern = Pattern.compile(regexp);
     }
 
     /**
@@ -93,7 +114,7 @@ public class JarMerge extends AbstractMerge
      * @param mergeContent  map linking outputstream to their content to avoir duplication
      */
     public JarMerge(String jarPath, String pathInsideJar, String destination,
-                    Map<OutputStream, List<String>> mergeContent)
+                    Map<OutputStream, Set<String>> mergeContent)
     {
         this.jarPath = jarPath;
         this.destination = destination;
@@ -108,6 +129,7 @@ public class JarMerge extends AbstractMerge
             builder.append("/*(.*)");
         }
         regexp = builder.toString();
+        pattern = Pattern.compile(regexp);
     }
 
 
@@ -161,14 +183,21 @@ public class JarMerge extends AbstractMerge
     public ArrayList<String> getFileNameInJar() throws IOException
     {
         JarFile jarFile = new JarFile(jarPath);
-        ArrayList<String> arrayList = new ArrayList<String>();
-        Enumeration<JarEntry> jarEntries = jarFile.entries();
-        while (jarEntries.hasMoreElements())
+        try
         {
-            JarEntry jarEntry = jarEntries.nextElement();
-            arrayList.add(jarEntry.getName());
+            ArrayList<String> arrayList = new ArrayList<String>();
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements())
+            {
+                JarEntry jarEntry = jarEntries.nextElement();
+                arrayList.add(jarEntry.getName());
+            }
+            return arrayList;
+        }
+        finally
+        {
+            jarFile.close();
         }
-        return arrayList;
     }
 
 
@@ -182,15 +211,26 @@ public class JarMerge extends AbstractMerge
         mergeImpl(outJar);
     }
 
+    /**
+     * Merges the matching entries of the jar into a stream.
+     * <p/>
+     * If the stream supports it, deflated entries are copied verbatim, without being inflated and deflated again.
+     *
+     * @param outputStream the stream to merge to
+     */
     private void mergeImpl(OutputStream outputStream)
     {
-        Pattern pattern = Pattern.compile(regexp);
-        List<String> mergeList = getMergeList(outputStream);
+        Set<String> mergeList = getMergeList(outputStream);
         JarFile jarFile = null;
+        RawJarFile rawJarFile = null;
         JarEntry jarEntry;
         try
         {
             jarFile = new JarFile(jarPath);
+            if (outputStream instanceof RawEntryWriter)
+            {
+                rawJarFile = openRaw();
+            }
             Enumeration<JarEntry> jarFileEntries = jarFile.entries();
 
             while (jarFileEntries.hasMoreElements())
@@ -206,11 +246,10 @@ public class JarMerge extends AbstractMerge
                 Matcher matcher = pattern.matcher(jarEntry.getName());
                 if (matcher.matches() && !isSignature(jarEntry.getName()))
                 {
-                    if (mergeList.contains(jarEntry.getName()))
+                    if (!mergeList.add(jarEntry.getName()))
                     {
                         continue;
                     }
-                    mergeList.add(jarEntry.getName());
 
                     String matchFile = matcher.group(1);
                     StringBuilder dest = new StringBuilder(destination);
@@ -223,17 +262,30 @@ public class JarMerge extends AbstractMerge
                         dest.append(matchFile);
                     }
 
+                    String name = DOUBLE_SLASH.matcher(dest).replaceAll("/");
+                    RawJarFile.Entry rawEntry = (rawJarFile != null) ? rawJarFile.getEntry(jarEntry.getName()) : null;
+                    if (rawEntry != null && rawEntry.getCrc() == jarEntry.getCrc()
+                            && rawEntry.getSize() == jarEntry.getSize())
+                    {
+                        InputStream rawStream = rawJarFile.getRawInputStream(rawEntry);
+                        ((RawEntryWriter) outputStream).writeRawEntry(name, jarEntry.getTime(), rawEntry.getSize(),
+                                                                      rawEntry.getCrc(),
+                                                                      rawEntry.getCompressedSize(), rawStream);
+                        rawStream.close();
+                        continue;
+                    }
                     InputStream inputStream = jarFile.getInputStream(jarEntry);
                     if (outputStream instanceof ZipOutputStream)
                     {
-                        IoHelper.copyStreamToJar(inputStream, (ZipOutputStream) outputStream, dest.toString().replaceAll("//", "/"),
+                        IoHelper.copyStreamToJar(inputStream, (ZipOutputStream) outputStream, name,
                                 jarEntry.getTime());
                     }
                     else if (outputStream instanceof java.util.zip.ZipOutputStream)
                     {
-                        IoHelper.copyStreamToJar(inputStream, (java.util.zip.ZipOutputStream) outputStream, dest.toString().replaceAll("//", "/"),
+                        IoHelper.copyStreamToJar(inputStream, (java.util.zip.ZipOutputStream) outputStream, name,
                                 jarEntry.getTime());
                     }
+                    inputStream.close();
                 }
             }
         }
@@ -242,6 +294,17 @@ public class JarMerge extends AbstractMerge
             throw new IzPackException(e);
         }
         finally {
+            if (rawJarFile != null)
+            {
+                try
+                {
+                    rawJarFile.close();
+                }
+                catch (IOException e)
+                {
+                    // Ignore
+                }
+            }
             if (jarFile != null)
             {
                 try
@@ -289,6 +352,24 @@ public class JarMerge extends AbstractMerge
         return jarPath != null ? jarPath.hashCode() : 0;
     }
 
+    /**
+     * Opens the jar to copy deflated entries verbatim.
+     *
+     * @return the jar, or {@code null} if it cannot be read that way, in which case all entries are inflated
+     */
+    private RawJarFile openRaw()
+    {
+        try
+        {
+            return new RawJarFile(jarPath);
+        }
+        catch (IOException e)
+        {
+            logger.fine("Cannot copy deflated entries of " + jarPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Determines if a zip entry corresponds to a signature file.
      * See <a href="http://docs.oracle.com/javase/7/docs/technotes/guides/jar/jar.html#Signed_JAR_File">Signed JAR File</a>
@@ -300,7 +381,7 @@ public class JarMerge extends AbstractMerge
      */
     private boolean isSignature(String name)
     {
-        return name.matches("/META-INF/.*\\.(SF|DSA|RSA)") || name.matches("/META-INF/SIG-.*");
+        return SIGNATURE.matcher(name).matches();
     }
 
     /**
@@ -0,0 +1,409 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.jar;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+
+/**
+ * Provides access to the deflated data of the entries of a jar, as stored in the file.
+ * <p/>
+ * The central directory is read to locate the local header of each entry. Entries that cannot be copied verbatim,
+ * i.e. stored, encrypted or Zip64 entries, are not indexed, and must be read via {@link java.util.jar.JarFile}
+ * instead.
+ */
+class RawJarFile
+{
+
+    /**
+     * The end of central directory record signature.
+     */
+    private static final int EOCD_SIG = 0x06054b50;
+
+    /**
+     * The central file header signature.
+     */
+    private static final int CFH_SIG = 0x02014b50;
+
+    /**
+     * The local file header signature.
+     */
+    private static final int LFH_SIG = 0x04034b50;
+
+    /**
+     * The size of the end of central directory record, excluding the comment.
+     */
+    private static final int EOCD_SIZE = 22;
+
+    /**
+     * The size of the central file header, excluding variable length fields.
+     */
+    private static final int CFH_SIZE = 46;
+
+    /**
+     * The size of the local file header, excluding variable length fields.
+     */
+    private static final int LFH_SIZE = 30;
+
+    /**
+     * The value of 32-bit fields that are stored in the Zip64 extra field.
+     */
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /**
+     * The encryption flag.
+     */
+    private static final int ENCRYPTED = 1;
+
+    /**
+     * The file.
+     */
+    private final RandomAccessFile file;
+
+    /**
+     * The deflated entries, keyed on name.
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+
+    /**
+     * Constructs a {@code RawJarFile}.
+     *
+     * @param path the jar path
+     * @throws IOException if the jar cannot be read
+     */
+    public RawJarFile(String path) throws IOException
+    {
+        file = new RandomAccessFile(new File(path), "r");
+        try
+        {
+            readCentralDirectory();
+        }
+        catch (IOException exception)
+        {
+            file.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns a deflated entry.
+     *
+     * @param name the entry name
+     * @return the entry, or {@code null} if there is no such entry, or it cannot be copied verbatim
+     */
+    public Entry getEntry(String name)
+    {
+        return entries.get(name);
+    }
+
+    /**
+     * Returns a stream to the deflated data of an entry.
+     * <p/>
+     * The stream reads from the underlying file, so only one may be in use at a time.
+     *
+     * @param entry the entry
+     * @return a stream to the deflated data
+     * @throws IOException if the entry's local header is invalid
+     */
+    public InputStream getRawInputStream(Entry entry) throws IOException
+    {
+        byte[] header = new byte[LFH_SIZE];
+        file.seek(entry.offset);
+        file.readFully(header);
+        if (getInt(header, 0) != LFH_SIG)
+        {
+            throw new IOException("Invalid local file header for " + entry.name);
+        }
+        long start = entry.offset + LFH_SIZE + getShort(header, 26) + getShort(header, 28);
+        return new RegionInputStream(start, entry.compressedSize);
+    }
+
+    /**
+     * Closes the jar.
+     *
+     * @throws IOException for any I/O error
+     */
+    public void close() throws IOException
+    {
+        file.close();
+    }
+
+    /**
+     * Reads the central directory.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void readCentralDirectory() throws IOException
+    {
+        long eocd = findEndOfCentralDirectory();
+        if (eocd == -1)
+        {
+            throw new IOException("End of central directory not found");
+        }
+        byte[] record = new byte[EOCD_SIZE];
+        file.seek(eocd);
+        file.readFully(record);
+        int count = getShort(record, 10);
+        long size = getInt(record, 12);
+        long offset = getInt(record, 16);
+        if (count == 0xFFFF || size == ZIP64_MAGIC || offset == ZIP64_MAGIC)
+        {
+            return; // Zip64 archive
+        }
+
+        // data may precede the archive, e.g. for self-extracting archives
+        long base = eocd - size - offset;
+        byte[] directory = new byte[(int) size];
+        file.seek(base + offset);
+        file.readFully(directory);
+
+        Set<String> names = new HashSet<String>();
+        Set<String> duplicates = new HashSet<String>();
+        int pos = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            if (pos + CFH_SIZE > directory.length || getInt(directory, pos) != CFH_SIG)
+            {
+                throw new IOException("Invalid central directory");
+            }
+            int flags = getShort(directory, pos + 8);
+            int method = getShort(directory, pos + 10);
+            long crc = getInt(directory, pos + 16);
+            long compressedSize = getInt(directory, pos + 20);
+            long uncompressedSize = getInt(directory, pos + 24);
+            int nameLength = getShort(directory, pos + 28);
+            int extraLength = getShort(directory, pos + 30);
+            int commentLength = getShort(directory, pos + 32);
+            long localOffset = getInt(directory, pos + 42);
+            String name = new String(directory, pos + CFH_SIZE, nameLength, "UTF-8");
+            pos += CFH_SIZE + nameLength + extraLength + commentLength;
+
+            if (method == ZipEntry.DEFLATED && (flags & ENCRYPTED) == 0 && compressedSize != ZIP64_MAGIC
+                    && uncompressedSize != ZIP64_MAGIC && localOffset != ZIP64_MAGIC)
+            {
+                entries.put(name, new Entry(name, crc, compressedSize, uncompressedSize, base + localOffset));
+            }
+            if (!names.add(name))
+            {
+                duplicates.add(name);
+            }
+        }
+
+        // duplicate entries are ambiguous, so leave them to the JarFile
+        entries.keySet().removeAll(duplicates);
+    }
+
+    /**
+     * Locates the end of central directory record.
+     *
+     * @return the offset of the record, or {@code -1} if it is not found
+     * @throws IOException for any I/O error
+     */
+    private long findEndOfCentralDirectory() throws IOException
+    {
+        long length = file.length();
+        if (length < EOCD_SIZE)
+        {
+            return -1;
+        }
+        // the record is followed by a comment of up to 65535 bytes
+        int tail = (int) Math.min(length, EOCD_SIZE + 0xFFFF);
+        byte[] buffer = new byte[tail];
+        file.seek(length - tail);
+        file.readFully(buffer);
+        for (int pos = tail - EOCD_SIZE; pos >= 0; --pos)
+        {
+            if (getInt(buffer, pos) == EOCD_SIG)
+            {
+                return length - tail + pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns an unsigned 16-bit little-endian value.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the value
+     * @return the value
+     */
+    private static int getShort(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8);
+    }
+
+    /**
+     * Returns an unsigned 32-bit little-endian value.
+     *
+     * @param buffer the buffer
+     * @param offset the offset of the value
+     * @return the value
+     */
+    private static long getInt(byte[] buffer, int offset)
+    {
+        return getShort(buffer, offset) | ((long) getShort(buffer, offset + 2) << 16);
+    }
+
+    /**
+     * A deflated entry.
+     */
+    public static class Entry
+    {
+
+        /**
+         * The entry name.
+         */
+        private final String name;
+
+        /**
+         * The CRC-32 of the uncompressed data.
+         */
+        private final long crc;
+
+        /**
+         * The size of the deflated data.
+         */
+        private final long compressedSize;
+
+        /**
+         * The uncompressed size.
+         */
+        private final long size;
+
+        /**
+         * The offset of the local file header.
+         */
+        private final long offset;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param name           the entry name
+         * @param crc            the CRC-32 of the uncompressed data
+         * @param compressedSize the size of the deflated data
+         * @param size           the uncompressed size
+         * @param offset         the offset of the local file header
+         */
+        Entry(String name, long crc, long compressedSize, long size, long offset)
+        {
+            this.name = name;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns the CRC-32 of the uncompressed data.
+         *
+         * @return the CRC
+         */
+        public long getCrc()
+        {
+            return crc;
+        }
+
+        /**
+         * Returns the size of the deflated data.
+         *
+         * @return the compressed size
+         */
+        public long getCompressedSize()
+        {
+            return compressedSize;
+        }
+
+        /**
+         * Returns the uncompressed size.
+         *
+         * @return the uncompressed size
+         */
+        public long getSize()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * Reads a region of the file.
+     */
+    private class RegionInputStream extends InputStream
+    {
+
+        /**
+         * The file position.
+         */
+        private long position;
+
+        /**
+         * The no. of bytes remaining.
+         */
+        private long remaining;
+
+        /**
+         * Constructs a {@code RegionInputStream}.
+         *
+         * @param start  the start of the region
+         * @param length the length of the region
+         */
+        public RegionInputStream(long start, long length)
+        {
+            position = start;
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            file.seek(position);
+            int read = file.read(b, off, count);
+            if (read == -1)
+            {
+                throw new EOFException("Unexpected end of file");
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,821 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.resolve;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+/**
+ * An index of the jars and directories of a {@code URLClassLoader}, used to answer resource queries without asking
+ * the class loader to search its classpath each time.
+ * <p/>
+ * The entry names of each jar are read once, in parallel, when the index is built. Lookups then return the same
+ * URLs, in the same order, as {@code URLClassLoader.findResources()} and {@code getResources()}, including jars
+ * referenced via the <em>Class-Path</em> manifest attribute. Directories are checked on each lookup, so they may
+ * change after the index is built.
+ * <p/>
+ * Indexes are shared per class loader. A class loader whose classpath isn't solely made up of local files, or that
+ * overrides how resources are located, isn't indexed; {@link #getIndex(ClassLoader)} returns {@code null} for these,
+ * and callers should fall back to the class loader.
+ */
+public class ClasspathIndex
+{
+
+    /**
+     * The class loader URLs, in external form. Used to detect when the classpath changes.
+     */
+    private final List<String> urls;
+
+    /**
+     * The classpath roots, in search order.
+     */
+    private final List<Root> roots;
+
+    /**
+     * The index of the parent class loader, or {@code null} if the parent isn't indexed.
+     */
+    private final ClasspathIndex parent;
+
+    /**
+     * The parent class loader, if it isn't indexed. If {@code null}, the parent is the bootstrap class loader.
+     */
+    private final ClassLoader parentLoader;
+
+    /**
+     * The indexes, keyed on class loader.
+     */
+    private static final Map<ClassLoader, ClasspathIndex> indexes = new WeakHashMap<ClassLoader, ClasspathIndex>();
+
+    /**
+     * Determines if a class loader type can be indexed, keyed on class loader type.
+     */
+    private static final Map<Class<?>, Boolean> indexable = new WeakHashMap<Class<?>, Boolean>();
+
+    /**
+     * Locates resources from the bootstrap class loader.
+     */
+    private static final ClassLoader BOOTSTRAP = new URLClassLoader(new URL[0], null);
+
+    /**
+     * Characters in resource names that are encoded when forming URLs, in addition to control characters.
+     */
+    private static final String ENCODED = "=;?# <>%\"{}|\\^[]`";
+
+    /**
+     * Hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(ClasspathIndex.class.getName());
+
+
+    /**
+     * Constructs a {@code ClasspathIndex}.
+     *
+     * @param urls         the class loader URLs, in external form
+     * @param roots        the classpath roots, in search order
+     * @param parent       the index of the parent class loader. May be {@code null}
+     * @param parentLoader the parent class loader, if it isn't indexed. May be {@code null}
+     */
+    private ClasspathIndex(List<String> urls, List<Root> roots, ClasspathIndex parent, ClassLoader parentLoader)
+    {
+        this.urls = urls;
+        this.roots = roots;
+        this.parent = parent;
+        this.parentLoader = parentLoader;
+    }
+
+    /**
+     * Returns the index for a class loader, building it if required.
+     * <p/>
+     * The index is rebuilt if the class loader URLs have changed since it was built.
+     *
+     * @param loader the class loader. May be {@code null}
+     * @return the index, or {@code null} if the class loader cannot be indexed
+     */
+    public static ClasspathIndex getIndex(ClassLoader loader)
+    {
+        if (!isIndexable(loader))
+        {
+            return null;
+        }
+        URLClassLoader urlLoader = (URLClassLoader) loader;
+        ClasspathIndex index;
+        synchronized (indexes)
+        {
+            index = indexes.get(loader);
+        }
+        if (index == null || !index.urls.equals(getURLs(urlLoader)))
+        {
+            index = build(urlLoader, index);
+        }
+        return index;
+    }
+
+    /**
+     * Rebuilds the index for a class loader.
+     * <p/>
+     * Jars that haven't changed since the index was last built aren't read again.
+     *
+     * @param loader the class loader. May be {@code null}
+     * @return the index, or {@code null} if the class loader cannot be indexed
+     */
+    public static ClasspathIndex refresh(ClassLoader loader)
+    {
+        if (!isIndexable(loader))
+        {
+            return null;
+        }
+        ClasspathIndex previous;
+        synchronized (indexes)
+        {
+            previous = indexes.get(loader);
+        }
+        return build((URLClassLoader) loader, previous);
+    }
+
+    /**
+     * Finds the resources with the specified name on the class loader's own classpath, excluding its parents.
+     * <p/>
+     * This is equivalent to {@code URLClassLoader.findResources(name)}.
+     *
+     * @param name the resource name
+     * @return the resource URLs, in classpath order
+     */
+    public List<URL> findResources(String name)
+    {
+        List<URL> result = new ArrayList<URL>();
+        String path = encodePath(name);
+        for (Root root : roots)
+        {
+            URL url = root.find(name, path);
+            if (url != null)
+            {
+                result.add(url);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the resources with the specified name, searching the parent class loaders first.
+     * <p/>
+     * This is equivalent to {@code ClassLoader.getResources(name)}.
+     *
+     * @param name the resource name
+     * @return the resource URLs
+     * @throws IOException if a parent class loader that isn't indexed fails to locate the resources
+     */
+    public Enumeration<URL> getResources(String name) throws IOException
+    {
+        List<URL> result = new ArrayList<URL>();
+        if (parent != null)
+        {
+            result.addAll(Collections.list(parent.getResources(name)));
+        }
+        else
+        {
+            ClassLoader loader = (parentLoader != null) ? parentLoader : BOOTSTRAP;
+            result.addAll(Collections.list(loader.getResources(name)));
+        }
+        result.addAll(findResources(name));
+        return Collections.enumeration(result);
+    }
+
+    /**
+     * Determines if a class loader can be indexed.
+     * <p/>
+     * The class loader must be a {@code URLClassLoader} that doesn't override how resources are located.
+     *
+     * @param loader the class loader. May be {@code null}
+     * @return {@code true} if the class loader can be indexed
+     */
+    private static boolean isIndexable(ClassLoader loader)
+    {
+        if (!(loader instanceof URLClassLoader))
+        {
+            return false;
+        }
+        Class<?> type = loader.getClass();
+        synchronized (indexable)
+        {
+            Boolean result = indexable.get(type);
+            if (result == null)
+            {
+                try
+                {
+                    result = type.getMethod("findResources", String.class).getDeclaringClass() == URLClassLoader.class
+                            && type.getMethod("getResources", String.class).getDeclaringClass() == ClassLoader.class;
+                }
+                catch (NoSuchMethodException exception)
+                {
+                    result = false;
+                }
+                indexable.put(type, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Builds the index for a class loader, and registers it.
+     *
+     * @param loader   the class loader
+     * @param previous the previous index. May be {@code null}
+     * @return the index, or {@code null} if the class loader cannot be indexed
+     */
+    private static ClasspathIndex build(URLClassLoader loader, ClasspathIndex previous)
+    {
+        ClassLoader parentLoader = loader.getParent();
+        ClasspathIndex parent = null;
+        if (parentLoader != null && isIndexable(parentLoader))
+        {
+            parent = getIndex(parentLoader);
+            if (parent != null)
+            {
+                parentLoader = null;
+            }
+        }
+        List<String> urls = getURLs(loader);
+        List<Root> roots = getRoots(loader.getURLs(), previous != null ? previous.roots : null);
+        ClasspathIndex index = null;
+        if (roots != null)
+        {
+            index = new ClasspathIndex(urls, roots, parent, parentLoader);
+        }
+        else
+        {
+            logger.fine("Cannot index classpath: " + urls);
+        }
+        synchronized (indexes)
+        {
+            if (index != null)
+            {
+                indexes.put(loader, index);
+            }
+            else
+            {
+                indexes.remove(loader);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the URLs of a class loader, in external form.
+     *
+     * @param loader the class loader
+     * @return the URLs
+     */
+    private static List<String> getURLs(URLClassLoader loader)
+    {
+        List<String> result = new ArrayList<String>();
+        for (URL url : loader.getURLs())
+        {
+            result.add(url.toExternalForm());
+        }
+        return result;
+    }
+
+    /**
+     * Reads the classpath roots of a class loader, in search order.
+     * <p/>
+     * Jars are read in parallel. As per {@code URLClassLoader}, the jars referenced by a jar's <em>Class-Path</em>
+     * attribute are searched immediately after it, and each URL is only searched once.
+     *
+     * @param urls     the class loader URLs
+     * @param previous the roots of the previous index. May be {@code null}
+     * @return the roots, or {@code null} if the classpath cannot be indexed
+     */
+    private static List<Root> getRoots(URL[] urls, List<Root> previous)
+    {
+        for (URL url : urls)
+        {
+            if (!"file".equals(url.getProtocol()))
+            {
+                return null;
+            }
+        }
+        Map<String, JarRoot> jars = new HashMap<String, JarRoot>();
+        if (previous != null)
+        {
+            for (Root root : previous)
+            {
+                if (root instanceof JarRoot && !((JarRoot) root).isModified())
+                {
+                    jars.put(root.getKey(), (JarRoot) root);
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                                                new ThreadFactory()
+                                                                {
+                                                                    private int count;
+
+                                                                    @Override
+                                                                    public Thread newThread(Runnable runnable)
+                                                                    {
+                                                                        Thread thread = new Thread(
+                                                                                runnable,
+                                                                                "IzPack classpath index " + (++count));
+                                                                        thread.setDaemon(true);
+                                                                        return thread;
+                                                                    }
+                                                                });
+        try
+        {
+            Map<String, Future<Root>> pending = new HashMap<String, Future<Root>>();
+            for (URL url : urls)
+            {
+                submit(executor, url, jars, pending);
+            }
+            List<Root> result = new ArrayList<Root>();
+            Set<String> visited = new HashSet<String>();
+            LinkedList<URL> stack = new LinkedList<URL>(Arrays.asList(urls));
+            while (!stack.isEmpty())
+            {
+                URL url = stack.removeFirst();
+                String key = url.toExternalForm();
+                if (!visited.add(key))
+                {
+                    continue;
+                }
+                Root root = get(submit(executor, url, jars, pending));
+                if (root != null)
+                {
+                    result.add(root);
+                    List<URL> classPath = root.getClassPath();
+                    for (URL entry : classPath)
+                    {
+                        if (!"file".equals(entry.getProtocol()))
+                        {
+                            return null;
+                        }
+                        submit(executor, entry, jars, pending);
+                    }
+                    stack.addAll(0, classPath);
+                }
+            }
+            return result;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Submits a URL to be read, if it hasn't been already.
+     *
+     * @param executor the executor
+     * @param url      the URL
+     * @param jars     unchanged jars from the previous index, keyed on URL
+     * @param pending  the submitted URLs
+     * @return the root
+     */
+    private static Future<Root> submit(ExecutorService executor, final URL url, final Map<String, JarRoot> jars,
+                                       Map<String, Future<Root>> pending)
+    {
+        String key = url.toExternalForm();
+        Future<Root> result = pending.get(key);
+        if (result == null)
+        {
+            result = executor.submit(new Callable<Root>()
+            {
+                @Override
+                public Root call() throws Exception
+                {
+                    return read(url, jars);
+                }
+            });
+            pending.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for a root to be read.
+     *
+     * @param future the root
+     * @return the root, or {@code null} if it cannot be read
+     */
+    private static Root get(Future<Root> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while indexing classpath", exception);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Failed to index classpath", cause);
+        }
+    }
+
+    /**
+     * Reads a classpath root.
+     * <p/>
+     * As per {@code URLClassLoader}, URLs ending in '/' are directories, and all others are jars. Jars that cannot be
+     * read are ignored.
+     *
+     * @param url  the root URL
+     * @param jars unchanged jars from the previous index, keyed on URL
+     * @return the root, or {@code null} if it cannot be read
+     * @throws IOException if a directory cannot be resolved
+     */
+    private static Root read(URL url, Map<String, JarRoot> jars) throws IOException
+    {
+        if (url.getFile().endsWith("/"))
+        {
+            return new DirectoryRoot(url);
+        }
+        JarRoot root = jars.get(url.toExternalForm());
+        if (root == null)
+        {
+            try
+            {
+                root = new JarRoot(url);
+            }
+            catch (IOException exception)
+            {
+                logger.fine("Ignoring classpath entry " + url + ": " + exception.getMessage());
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Returns the file of a <em>file:</em> URL.
+     *
+     * @param url the URL
+     * @return the corresponding file
+     */
+    private static File toFile(URL url)
+    {
+        try
+        {
+            return new File(url.toURI());
+        }
+        catch (URISyntaxException exception)
+        {
+            return new File(url.getPath());
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return new File(url.getPath());
+        }
+    }
+
+    /**
+     * Encodes a resource name for use in a URL, as per {@code URLClassLoader}.
+     *
+     * @param name the resource name
+     * @return the encoded name
+     */
+    private static String encodePath(String name)
+    {
+        StringBuilder result = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); )
+        {
+            int codePoint = name.codePointAt(i);
+            int count = Character.charCount(codePoint);
+            if (codePoint >= 0x20 && codePoint < 0x7F && ENCODED.indexOf(codePoint) == -1)
+            {
+                result.append((char) codePoint);
+            }
+            else
+            {
+                try
+                {
+                    for (byte b : name.substring(i, i + count).getBytes("UTF-8"))
+                    {
+                        result.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                    }
+                }
+                catch (UnsupportedEncodingException exception)
+                {
+                    throw new IllegalStateException(exception);
+                }
+            }
+            i += count;
+        }
+        return result.toString();
+    }
+
+    /**
+     * A classpath root.
+     */
+    private static abstract class Root
+    {
+
+        /**
+         * The root URL.
+         */
+        private final URL url;
+
+        /**
+         * Constructs a {@code Root}.
+         *
+         * @param url the root URL
+         */
+        public Root(URL url)
+        {
+            this.url = url;
+        }
+
+        /**
+         * Returns the key of the root.
+         *
+         * @return the root URL, in external form
+         */
+        public String getKey()
+        {
+            return url.toExternalForm();
+        }
+
+        /**
+         * Returns the URLs referenced by the root's <em>Class-Path</em> attribute.
+         *
+         * @return the referenced URLs
+         */
+        public List<URL> getClassPath()
+        {
+            return Collections.emptyList();
+        }
+
+        /**
+         * Finds a resource.
+         *
+         * @param name the resource name
+         * @param path the encoded resource name
+         * @return the resource URL, or {@code null} if the root doesn't contain the resource
+         */
+        public abstract URL find(String name, String path);
+
+        /**
+         * Returns the root URL.
+         *
+         * @return the root URL
+         */
+        protected URL getURL()
+        {
+            return url;
+        }
+    }
+
+    /**
+     * A jar on the classpath.
+     */
+    private static class JarRoot extends Root
+    {
+
+        /**
+         * The jar file.
+         */
+        private final File file;
+
+        /**
+         * The jar file modification time, when it was read.
+         */
+        private final long lastModified;
+
+        /**
+         * The jar file length, when it was read.
+         */
+        private final long length;
+
+        /**
+         * The entry names.
+         */
+        private final Set<String> entries = new HashSet<String>();
+
+        /**
+         * The URLs referenced by the <em>Class-Path</em> attribute.
+         */
+        private final List<URL> classPath = new ArrayList<URL>();
+
+        /**
+         * The base URL of the jar entries.
+         */
+        private final URL base;
+
+        /**
+         * Constructs a {@code JarRoot}, reading the jar's entries.
+         *
+         * @param url the jar URL
+         * @throws IOException if the jar cannot be read
+         */
+        public JarRoot(URL url) throws IOException
+        {
+            super(url);
+            file = toFile(url);
+            lastModified = file.lastModified();
+            length = file.length();
+            base = new URL("jar", "", -1, url.toExternalForm() + "!/");
+            JarFile jar = new JarFile(file, false);
+            try
+            {
+                Enumeration<? extends ZipEntry> iterator = jar.entries();
+                while (iterator.hasMoreElements())
+                {
+                    entries.add(iterator.nextElement().getName());
+                }
+                Manifest manifest = jar.getManifest();
+                if (manifest != null)
+                {
+                    String value = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+                    if (value != null)
+                    {
+                        StringTokenizer tokens = new StringTokenizer(value);
+                        while (tokens.hasMoreTokens())
+                        {
+                            String path = tokens.nextToken();
+                            int index = path.indexOf(':');
+                            if (index == -1 || "file".equalsIgnoreCase(path.substring(0, index)))
+                            {
+                                classPath.add(new URL(url, path));
+                            }
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                jar.close();
+            }
+        }
+
+        /**
+         * Determines if the jar has changed since it was read.
+         *
+         * @return {@code true} if the jar has changed
+         */
+        public boolean isModified()
+        {
+            return file.lastModified() != lastModified || file.length() != length;
+        }
+
+        /**
+         * Returns the URLs referenced by the jar's <em>Class-Path</em> attribute.
+         *
+         * @return the referenced URLs
+         */
+        @Override
+        public List<URL> getClassPath()
+        {
+            return classPath;
+        }
+
+        /**
+         * Finds a resource.
+         * <p/>
+         * As per {@code JarFile.getJarEntry()}, a name not ending in '/' also matches a directory entry.
+         *
+         * @param name the resource name
+         * @param path the encoded resource name
+         * @return the resource URL, or {@code null} if the jar doesn't contain the resource
+         */
+        @Override
+        public URL find(String name, String path)
+        {
+            if (entries.contains(name) || (!name.endsWith("/") && entries.contains(name + "/")))
+            {
+                try
+                {
+                    return new URL(base, path);
+                }
+                catch (MalformedURLException exception)
+                {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A directory on the classpath.
+     */
+    private static class DirectoryRoot extends Root
+    {
+
+        /**
+         * The canonical directory.
+         */
+        private final File dir;
+
+        /**
+         * The normalized root URL path, used to reject names that resolve outside the directory.
+         */
+        private final String normalizedBase;
+
+        /**
+         * Constructs a {@code DirectoryRoot}.
+         *
+         * @param url the directory URL
+         * @throws IOException if the directory cannot be resolved
+         */
+        public DirectoryRoot(URL url) throws IOException
+        {
+            super(url);
+            dir = toFile(url).getCanonicalFile();
+            normalizedBase = new URL(url, ".").getFile();
+        }
+
+        /**
+         * Finds a resource.
+         *
+         * @param name the resource name
+         * @param path the encoded resource name
+         * @return the resource URL, or {@code null} if the directory doesn't contain the resource
+         */
+        @Override
+        public URL find(String name, String path)
+        {
+            try
+            {
+                URL url = new URL(getURL(), path);
+                if (!url.getFile().startsWith(normalizedBase))
+                {
+                    return null;
+                }
+                File file = new File(dir, name.replace('/', File.separatorChar));
+                if (name.contains(".."))
+                {
+                    file = file.getCanonicalFile();
+                    if (!file.getPath().startsWith(dir.getPath()))
+                    {
+                        return null;
+                    }
+                }
+                return file.exists() ? url : null;
+            }
+            catch (IOException exception)
+            {
+                return null;
+            }
+        }
+    }
+}
@@ -22,8 +22,8 @@ package com.izforge.izpack.merge.resolve;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.izforge.izpack.api.merge.Mergeable;
 import com.izforge.izpack.merge.file.FileMerge;
@@ -36,7 +36,7 @@ import com.izforge.izpack.merge.jar.JarMerge;
  */
 public class MergeableResolver
 {
-    private Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
+    private Map<OutputStream, Set<String>> mergeContent = new HashMap<OutputStream, Set<String>>();
 
     public MergeableResolver()
     {
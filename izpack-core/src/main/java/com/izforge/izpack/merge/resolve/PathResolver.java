@@ -139,7 +139,12 @@ public class PathResolver
             result.add(path);
         }
         ClassLoader loader = Thread.currentThread().getContextClassLoader();
-        if (loader instanceof URLClassLoader)
+        ClasspathIndex index = ClasspathIndex.getIndex(loader);
+        if (index != null)
+        {
+            result.addAll(index.findResources(resourcePath));
+        }
+        else if (loader instanceof URLClassLoader)
         {
             try
             {
@@ -29,7 +29,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipFile;
 
@@ -46,6 +48,12 @@ public class ResolveUtils
     public static final String CLASSNAME_PREFIX = "com.izforge.izpack.panels";
     public static final String BASE_CLASSNAME_PATH = CLASSNAME_PREFIX.replaceAll("\\.", "/") + "/";
 
+    /**
+     * Cached {@link #isJar(File)} results, keyed on file path. Each value holds the file modification time and
+     * length, and 1 if the file is a jar, otherwise 0.
+     */
+    private static final Map<String, long[]> jars = Collections.synchronizedMap(new HashMap<String, long[]>());
+
     /**
      * Extract file name from url and test jar file
      *
@@ -67,7 +75,41 @@ public class ResolveUtils
         return isJar(classFile);
     }
 
+    /**
+     * Determines if a file is a jar.
+     * <p/>
+     * Results are cached, keyed on the file path, and are recomputed if the file's modification time or length
+     * changes.
+     *
+     * @param classFile the file to test
+     * @return true if the file is a jar
+     */
     public static boolean isJar(File classFile)
+    {
+        if (classFile.isDirectory())
+        {
+            return false;
+        }
+        String key = classFile.getAbsolutePath();
+        long lastModified = classFile.lastModified();
+        long length = classFile.length();
+        long[] cached = jars.get(key);
+        if (cached != null && cached[0] == lastModified && cached[1] == length)
+        {
+            return cached[2] != 0;
+        }
+        boolean result = isZip(classFile);
+        jars.put(key, new long[]{lastModified, length, result ? 1 : 0});
+        return result;
+    }
+
+    /**
+     * Determines if a file is a zip file, by opening it.
+     *
+     * @param classFile the file to test
+     * @return true if the file is a zip file
+     */
+    private static boolean isZip(File classFile)
     {
         ZipFile zipFile = null;
         try
@@ -173,7 +215,8 @@ public class ResolveUtils
         Set<URL> result = new HashSet<URL>();
         try
         {
-            Enumeration<URL> urls = loader.getResources(packageName);
+            ClasspathIndex index = ClasspathIndex.getIndex(loader);
+            Enumeration<URL> urls = (index != null) ? index.getResources(packageName) : loader.getResources(packageName);
             while (urls.hasMoreElements())
             {
                 URL url = urls.nextElement();
@@ -4,19 +4,28 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Properties;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.ValueFilter;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.core.variable.ConfigFileValue;
+import com.izforge.izpack.core.variable.PlainConfigFileValue;
 import com.izforge.izpack.core.variable.PlainValue;
 import com.izforge.izpack.core.variable.filters.LocationFilter;
 
 public class DynamicVariableImplTest
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
 
     @Test
     public void testSimple()
@@ -40,4 +49,74 @@ public class DynamicVariableImplTest
         }
     }
 
+    /**
+     * Verifies that a value read from a file is only re-read when the variables it refers to, or the file, change.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testResolvedOnInputChange() throws Exception
+    {
+        File file1 = folder.newFile("test1.properties");
+        File file2 = folder.newFile("test2.properties");
+        write(file1, "key=one", 1000000000000L);
+        write(file2, "key=two", 1000000000000L);
+
+        Properties props = new Properties();
+        props.setProperty("CONFIG", file1.getPath());
+        VariableSubstitutor subst = new VariableSubstitutorImpl(props);
+        CountingConfigFileValue value = new CountingConfigFileValue("${CONFIG}");
+        DynamicVariable dynvar = new DynamicVariableImpl();
+        dynvar.setName("var");
+        dynvar.setValue(value);
+
+        assertEquals("one", dynvar.evaluate(subst));
+        assertEquals("one", dynvar.evaluate(subst));
+        assertEquals(1, value.resolved);
+
+        // change the file, retaining its length
+        write(file1, "key=ONE", 1000000002000L);
+        assertEquals("ONE", dynvar.evaluate(subst));
+        assertEquals(2, value.resolved);
+
+        // change the variable the file path refers to
+        props.setProperty("CONFIG", file2.getPath());
+        assertEquals("two", dynvar.evaluate(subst));
+        assertEquals("two", dynvar.evaluate(subst));
+        assertEquals(3, value.resolved);
+    }
+
+    /**
+     * Writes a file.
+     *
+     * @param file         the file
+     * @param content      the file content
+     * @param lastModified the modification time of the file
+     * @throws IOException for any I/O error
+     */
+    private void write(File file, String content, long lastModified) throws IOException
+    {
+        FileUtils.writeStringToFile(file, content);
+        file.setLastModified(lastModified);
+    }
+
+    /**
+     * A configuration file value that counts resolutions.
+     */
+    private static class CountingConfigFileValue extends PlainConfigFileValue
+    {
+        private int resolved;
+
+        public CountingConfigFileValue(String location)
+        {
+            super(location, ConfigFileValue.CONFIGFILE_TYPE_OPTIONS, null, "key", false);
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors) throws Exception
+        {
+            ++resolved;
+            return super.resolve(substitutors);
+        }
+    }
 }
@@ -28,6 +28,9 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 import org.junit.Ignore;
@@ -161,6 +164,85 @@ public class FileSpanningStreamTest
         spanningInputStream.close();
     }
 
+    /**
+     * Verifies that the volumes can be read with and without read-ahead, and when a volume is only located once it
+     * is reached.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testReadModes() throws IOException
+    {
+        final File volume = new File(temporaryFolder.getRoot(), "volume");
+        FileSpanningOutputStream spanningOutputStream = new FileSpanningOutputStream(volume, 1024);
+        byte[] written = new byte[100000];
+        new Random().nextBytes(written);
+        spanningOutputStream.write(written);
+        spanningOutputStream.close();
+        int volumes = spanningOutputStream.getVolumes();
+        assertTrue(volumes > 2);
+
+        // all volumes present
+        checkRead(new FileSpanningInputStream(volume, volumes, true), written);
+        checkRead(new FileSpanningInputStream(volume, volumes, false), written);
+
+        // move the last volume, so that it must be located
+        final File last = new File(volume.getPath() + "." + (volumes - 1));
+        final File moved = new File(temporaryFolder.newFolder("media2"), last.getName());
+        assertTrue(last.renameTo(moved));
+        final List<String> located = new ArrayList<String>();
+        VolumeLocator locator = new VolumeLocator()
+        {
+            @Override
+            public File getVolume(String path, boolean corrupt) throws IOException
+            {
+                located.add(path);
+                return moved;
+            }
+        };
+        FileSpanningInputStream stream = new FileSpanningInputStream(volume, volumes, true);
+        stream.setLocator(locator);
+        checkRead(stream, written);
+        assertEquals(Arrays.asList(last.getAbsolutePath()), located);
+    }
+
+    /**
+     * Verifies that when reading ahead, {@link FileSpanningInputStream#getVolume()} returns the volume holding the data
+     * returned to the consumer, rather than the volume being read by the reading thread.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testGetVolumeWithReadAhead() throws IOException
+    {
+        File volume = new File(temporaryFolder.getRoot(), "volume");
+        // volumes must be larger than the decompressor's buffer, for the volume to be determined accurately
+        FileSpanningOutputStream spanningOutputStream = new FileSpanningOutputStream(volume, 256 * 1024);
+        byte[] written = new byte[1024 * 1024];
+        new Random().nextBytes(written);
+        spanningOutputStream.write(written);
+        spanningOutputStream.close();
+        int volumes = spanningOutputStream.getVolumes();
+        assertTrue(volumes > 2);
+        File last = new File(volume.getAbsolutePath() + "." + (volumes - 1));
+
+        FileSpanningInputStream stream = new FileSpanningInputStream(volume, volumes, true);
+        byte[] read = new byte[written.length];
+        assertEquals(10, stream.read(read, 0, 10));
+        assertEquals(volume.getAbsoluteFile(), stream.getVolume());
+
+        // read up to the middle of the stream. The data read so far must be behind the last volume
+        int offset = 10;
+        assertEquals(written.length / 2 - offset, stream.read(read, offset, written.length / 2 - offset));
+        assertTrue(!last.equals(stream.getVolume()));
+
+        offset = written.length / 2;
+        assertEquals(written.length - offset, stream.read(read, offset, written.length - offset));
+        assertEquals(last, stream.getVolume());
+        stream.close();
+        assertArrayEquals(written, read);
+    }
+
     /**
      * Writes 10GB of random data and verifies it can be read back in.
      *
@@ -207,6 +289,23 @@ public class FileSpanningStreamTest
         spanningInputStream.close();
     }
 
+    /**
+     * Reads a stream in full, and verifies its content.
+     *
+     * @param stream   the stream to read
+     * @param expected the expected content
+     * @throws IOException for any I/O error
+     */
+    private void checkRead(FileSpanningInputStream stream, byte[] expected) throws IOException
+    {
+        byte[] read = new byte[expected.length];
+        assertEquals(expected.length, stream.read(read));
+        assertEquals(expected.length, stream.getFilePointer());
+        assertEquals(-1, stream.read());
+        stream.close();
+        assertArrayEquals(expected, read);
+    }
+
     /**
      * Checks the existence of volumes and their expected size.
      *
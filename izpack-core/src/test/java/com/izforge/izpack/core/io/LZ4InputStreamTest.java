@@ -0,0 +1,258 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link LZ4InputStream} and {@link LZ4OutputStream} classes.
+ */
+public class LZ4InputStreamTest
+{
+
+    /**
+     * Verifies that compressible data round trips at each compression level, and that higher levels don't compress
+     * worse than the fastest level.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testLevels() throws IOException
+    {
+        byte[] data = createText(200000);
+        int fastest = 0;
+        for (int level = 1; level <= 9; ++level)
+        {
+            byte[] compressed = compress(data, level, 1, LZ4OutputStream.DEFAULT_BLOCK_SIZE);
+            assertArrayEquals(data, decompress(compressed));
+            if (level == 1)
+            {
+                fastest = compressed.length;
+                assertTrue(fastest < data.length / 2);
+            }
+            else
+            {
+                assertTrue(compressed.length <= fastest);
+            }
+        }
+    }
+
+    /**
+     * Verifies that compressing blocks on several threads produces the same stream as compressing them on one.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testThreads() throws IOException
+    {
+        byte[] data = createText(1000000);
+        byte[] serial = compress(data, 4, 1, 16 * 1024);
+        byte[] concurrent = compress(data, 4, 4, 16 * 1024);
+        assertArrayEquals(serial, concurrent);
+        assertArrayEquals(data, decompress(concurrent));
+    }
+
+    /**
+     * Verifies that empty, short, incompressible and run-length data round trip.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testEdgeCases() throws IOException
+    {
+        checkRoundTrip(new byte[0]);
+        checkRoundTrip(new byte[]{1, 2, 3});
+        checkRoundTrip(new byte[13]);
+
+        // incompressible data is stored
+        byte[] random = new byte[100000];
+        new Random(42).nextBytes(random);
+        byte[] compressed = compress(random, 1, 1, LZ4OutputStream.DEFAULT_BLOCK_SIZE);
+        assertArrayEquals(random, decompress(compressed));
+        assertEquals(random.length + 16, compressed.length); // magic, block header, end marker
+
+        // overlapping matches, and lengths that need several extension bytes
+        byte[] runs = new byte[70000];
+        for (int i = 0; i < runs.length; ++i)
+        {
+            runs[i] = (byte) ((i / 3000) % 3);
+        }
+        checkRoundTrip(runs);
+    }
+
+    /**
+     * Verifies that data written a byte at a time and read a byte at a time round trips.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSingleBytes() throws IOException
+    {
+        byte[] data = createText(5000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LZ4OutputStream out = new LZ4OutputStream(bytes, 1, 1, 1024);
+        for (byte b : data)
+        {
+            out.write(b);
+        }
+        out.close();
+
+        InputStream in = new LZ4InputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (byte b : data)
+        {
+            assertEquals(b & 0xFF, in.read());
+        }
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    /**
+     * Verifies that streams not written by {@link LZ4OutputStream}, and corrupt or truncated streams, are rejected.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCorrupt() throws IOException
+    {
+        try
+        {
+            new LZ4InputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}));
+            fail("Expected StreamCorruptedException");
+        }
+        catch (StreamCorruptedException expected)
+        {
+            // expected
+        }
+
+        byte[] compressed = compress(createText(10000), 1, 1, LZ4OutputStream.DEFAULT_BLOCK_SIZE);
+        byte[] corrupt = compressed.clone();
+        corrupt[12] = (byte) 0xFF; // first token
+        corrupt[13] = (byte) 0xFF;
+        checkRejected(corrupt);
+
+        byte[] truncated = new byte[compressed.length - 4];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        checkRejected(truncated);
+    }
+
+    /**
+     * Verifies that data round trips.
+     *
+     * @param data the data
+     * @throws IOException for any I/O error
+     */
+    private void checkRoundTrip(byte[] data) throws IOException
+    {
+        for (int level = 1; level <= 9; level += 8)
+        {
+            assertArrayEquals(data, decompress(compress(data, level, 1, LZ4OutputStream.DEFAULT_BLOCK_SIZE)));
+        }
+    }
+
+    /**
+     * Verifies that a stream cannot be decompressed.
+     *
+     * @param compressed the compressed stream
+     */
+    private void checkRejected(byte[] compressed)
+    {
+        try
+        {
+            decompress(compressed);
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Compresses data.
+     *
+     * @param data      the data to compress
+     * @param level     the compression level
+     * @param threads   the no. of threads to compress with
+     * @param blockSize the block size
+     * @return the compressed data
+     * @throws IOException for any I/O error
+     */
+    private byte[] compress(byte[] data, int level, int threads, int blockSize) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LZ4OutputStream out = new LZ4OutputStream(bytes, level, threads, blockSize);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses data.
+     *
+     * @param compressed the compressed data
+     * @return the decompressed data
+     * @throws IOException for any I/O error
+     */
+    private byte[] decompress(byte[] compressed) throws IOException
+    {
+        InputStream in = new LZ4InputStream(new ByteArrayInputStream(compressed));
+        try
+        {
+            return IOUtils.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates compressible text.
+     *
+     * @param size the size of the text
+     * @return the text
+     */
+    private byte[] createText(int size)
+    {
+        Random random = new Random(size);
+        String[] words = {"install", "pack", "file", "izpack", "panel", "variable", "condition", "the", "of"};
+        StringBuilder builder = new StringBuilder(size + 20);
+        while (builder.length() < size)
+        {
+            builder.append(words[random.nextInt(words.length)]).append(random.nextInt(100)).append(' ');
+        }
+        builder.setLength(size);
+        return builder.toString().getBytes();
+    }
+}
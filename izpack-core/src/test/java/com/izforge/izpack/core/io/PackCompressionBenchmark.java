@@ -0,0 +1,299 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.bzip2.CBZip2InputStream;
+import org.apache.tools.bzip2.CBZip2OutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+
+/**
+ * Compares the compressed size, encode time and decode time of the pack compression formats: deflate, bzip2, xz,
+ * and lz4 at different levels and thread counts.
+ * <p/>
+ * This is not run as part of the build. Run it via its {@link #main} method, optionally passing a file to use as the
+ * pack stream. By default, a 32MB stream of text and binary data is generated.
+ */
+public class PackCompressionBenchmark
+{
+
+    /**
+     * The no. of warm-up iterations.
+     */
+    private static final int WARMUP = 2;
+
+    /**
+     * The no. of measured iterations.
+     */
+    private static final int ITERATIONS = 3;
+
+
+    /**
+     * A compression format.
+     */
+    private static abstract class Format
+    {
+
+        /**
+         * The format name.
+         */
+        private final String name;
+
+        /**
+         * Constructs a {@code Format}.
+         *
+         * @param name the format name
+         */
+        public Format(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Returns a stream that compresses to the supplied stream.
+         *
+         * @param out the stream to write to
+         * @return the compressing stream
+         * @throws IOException for any I/O error
+         */
+        public abstract OutputStream encode(OutputStream out) throws IOException;
+
+        /**
+         * Returns a stream that decompresses the supplied stream.
+         *
+         * @param in the stream to read
+         * @return the decompressing stream
+         * @throws IOException for any I/O error
+         */
+        public abstract InputStream decode(InputStream in) throws IOException;
+    }
+
+    /**
+     * Main line.
+     *
+     * @param args [pack file]
+     * @throws IOException for any I/O error
+     */
+    public static void main(String[] args) throws IOException
+    {
+        byte[] data = (args.length > 0) ? FileUtils.readFileToByteArray(new File(args[0])) : createData(32 << 20);
+        final int processors = Runtime.getRuntime().availableProcessors();
+        List<Format> formats = new ArrayList<Format>(Arrays.asList(
+                new Format("deflate -9")
+                {
+                    public OutputStream encode(OutputStream out)
+                    {
+                        return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION, true), 65536);
+                    }
+
+                    public InputStream decode(InputStream in)
+                    {
+                        return new InflaterInputStream(in, new Inflater(true), 65536);
+                    }
+                },
+                new Format("bzip2 -9")
+                {
+                    public OutputStream encode(OutputStream out) throws IOException
+                    {
+                        return new CBZip2OutputStream(out, 9);
+                    }
+
+                    public InputStream decode(InputStream in) throws IOException
+                    {
+                        return new CBZip2InputStream(new BufferedInputStream(in));
+                    }
+                },
+                new Format("xz -6")
+                {
+                    public OutputStream encode(OutputStream out) throws IOException
+                    {
+                        return new XZOutputStream(out, new LZMA2Options(LZMA2Options.PRESET_DEFAULT));
+                    }
+
+                    public InputStream decode(InputStream in) throws IOException
+                    {
+                        return new XZInputStream(new BufferedInputStream(in));
+                    }
+                }));
+        for (int level : new int[]{1, 9})
+        {
+            formats.add(createLZ4(level, 1));
+            if (processors > 1)
+            {
+                formats.add(createLZ4(level, processors));
+            }
+        }
+
+        System.out.println("Input: " + data.length + " bytes, " + processors + " processors");
+        System.out.printf("%-16s %12s %7s %10s %10s%n", "Format", "Size", "Ratio", "Encode ms", "Decode ms");
+        for (Format format : formats)
+        {
+            byte[] compressed = null;
+            for (int i = 0; i < WARMUP; ++i)
+            {
+                compressed = encode(format, data);
+                decode(format, compressed, data.length);
+            }
+            long encode = 0;
+            long decode = 0;
+            for (int i = 0; i < ITERATIONS; ++i)
+            {
+                long start = System.nanoTime();
+                compressed = encode(format, data);
+                encode += System.nanoTime() - start;
+                start = System.nanoTime();
+                decode(format, compressed, data.length);
+                decode += System.nanoTime() - start;
+            }
+            System.out.printf("%-16s %12d %6.1f%% %10d %10d%n", format.name, compressed.length,
+                              100.0 * compressed.length / data.length, encode / ITERATIONS / 1000000,
+                              decode / ITERATIONS / 1000000);
+        }
+    }
+
+    /**
+     * Creates an lz4 format.
+     *
+     * @param level   the compression level
+     * @param threads the no. of threads to encode with
+     * @return a new format
+     */
+    private static Format createLZ4(final int level, final int threads)
+    {
+        return new Format("lz4 -" + level + " x" + threads)
+        {
+            public OutputStream encode(OutputStream out) throws IOException
+            {
+                return new LZ4OutputStream(out, level, threads);
+            }
+
+            public InputStream decode(InputStream in) throws IOException
+            {
+                return new LZ4InputStream(in);
+            }
+        };
+    }
+
+    /**
+     * Compresses data.
+     *
+     * @param format the compression format
+     * @param data   the data to compress
+     * @return the compressed data
+     * @throws IOException for any I/O error
+     */
+    private static byte[] encode(Format format, byte[] data) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        OutputStream out = format.encode(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses data, as the installer does.
+     *
+     * @param format     the compression format
+     * @param compressed the compressed data
+     * @param length     the expected length
+     * @throws IOException for any I/O error
+     */
+    private static void decode(Format format, byte[] compressed, int length) throws IOException
+    {
+        InputStream in = format.decode(new ByteArrayInputStream(compressed));
+        byte[] buffer = new byte[65536];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            total += read;
+        }
+        in.close();
+        if (total != length)
+        {
+            throw new IOException("Expected " + length + " bytes but decoded " + total);
+        }
+    }
+
+    /**
+     * Generates a pack stream-like mix of text and binary data.
+     *
+     * @param size the size of the data
+     * @return the data
+     */
+    private static byte[] createData(int size)
+    {
+        Random random = new Random(size);
+        String[] words = {"public", "class", "void", "return", "import", "com.izforge.izpack", "String", "int",
+                          "<property name=", "value=", "/>", "\n", "    ", "if", "else", "for", "new"};
+        byte[] result = new byte[size];
+        int pos = 0;
+        while (pos < size)
+        {
+            if (random.nextInt(4) == 0)
+            {
+                // binary section, partly repetitive
+                int length = Math.min(size - pos, 512 + random.nextInt(4096));
+                for (int i = 0; i < length; ++i)
+                {
+                    result[pos + i] = (byte) ((i % 64 < 16) ? random.nextInt(256) : i % 16);
+                }
+                pos += length;
+            }
+            else
+            {
+                int length = Math.min(size - pos, 1024 + random.nextInt(8192));
+                int end = pos + length;
+                while (pos < end)
+                {
+                    byte[] word = words[random.nextInt(words.length)].getBytes();
+                    int n = Math.min(word.length, end - pos);
+                    System.arraycopy(word, 0, result, pos, n);
+                    pos += n;
+                    if (pos < end)
+                    {
+                        result[pos++] = ' ';
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
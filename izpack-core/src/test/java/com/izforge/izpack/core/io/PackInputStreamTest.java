@@ -0,0 +1,211 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.data.ParsableFile;
+import com.izforge.izpack.data.UpdateCheck;
+
+
+/**
+ * Tests the {@link PackInputStream}, {@link PackOutputStream} and {@link SerializedPackInputStream} classes.
+ */
+public class PackInputStreamTest
+{
+
+    /**
+     * Verifies that pack files written by {@link PackOutputStream} are read back by {@link PackInputStream}, along
+     * with the content following them.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testPackFiles() throws IOException
+    {
+        Map<String, String> additionals = new HashMap<String, String>();
+        additionals.put("key", "value");
+        List<OsModel> os = Arrays.asList(new OsModel("x86", "unix", null, "Linux", null));
+
+        PackFile file1 = new PackFile("src/a.txt", "$INSTALL_PATH/lib/a.txt", 3, 1000, false, os,
+                                      OverrideType.OVERRIDE_UPDATE, "*.bak", Blockable.BLOCKABLE_AUTO, additionals);
+        file1.setCondition("cond");
+        file1.setDigest("039058c6f2c0cb492c533b0a4d14ef77cc0f78abccced5287d84a1a2011cfb81");
+        PackFile file2 = new PackFile(null, "$INSTALL_PATH/lib/b.jar", 4, -1, false, null, OverrideType.OVERRIDE_TRUE,
+                                      null, Blockable.BLOCKABLE_NONE, null);
+        file2.setPack200Jar(true);
+        file2.setPreviousPackFileRef("other", 123456789L);
+        PackFile dir = new PackFile(null, "$INSTALL_PATH/lib", 0, 2000, true, null, null, null, null, null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackOutputStream out = new PackOutputStream(bytes);
+        out.writeCount(3);
+        out.writePackFile(file1);
+        out.write(new byte[]{1, 2, 3});
+        out.writePackFile(file2);
+        out.writeInt(42);
+        out.writePackFile(dir);
+        out.close();
+
+        PackInputStream in = new PackInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(3, in.readCount());
+
+        PackFile read1 = in.readPackFile();
+        checkEquals(file1, read1);
+        assertEquals("value", read1.getAdditionals().get("key"));
+        assertEquals(1, read1.osConstraints().size());
+        assertEquals("Linux", read1.osConstraints().get(0).getName());
+        byte[] content = new byte[3];
+        in.readFully(content);
+        assertArrayEquals(new byte[]{1, 2, 3}, content);
+
+        PackFile read2 = in.readPackFile();
+        checkEquals(file2, read2);
+        assertTrue(read2.isBackReference());
+        assertEquals(42, in.readInt());
+
+        checkEquals(dir, in.readPackFile());
+        assertEquals(-1, in.read());
+    }
+
+    /**
+     * Verifies that parsable files, executable files and update checks are read back by {@link PackInputStream}.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testMetaData() throws IOException
+    {
+        ParsableFile parsable = new ParsableFile("$INSTALL_PATH/conf/app.properties", SubstitutionType.TYPE_JAVA,
+                                                 "UTF-8", null);
+        parsable.setCondition("cond");
+        ExecutableFile executable = new ExecutableFile("$INSTALL_PATH/bin/run.jar", ExecutableFile.JAR, "Main",
+                                                       ExecutableFile.POSTINSTALL, ExecutableFile.WARN,
+                                                       new ArrayList<String>(Arrays.asList("-v", "x")),
+                                                       Collections.<OsModel>emptyList(), true);
+        UpdateCheck check = new UpdateCheck(new ArrayList<String>(Arrays.asList("lib/*")), null, "no");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackOutputStream out = new PackOutputStream(bytes);
+        out.writeParsableFile(parsable);
+        out.writeExecutableFile(executable);
+        out.writeUpdateCheck(check);
+        out.close();
+
+        PackInputStream in = new PackInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ParsableFile readParsable = in.readParsableFile();
+        assertEquals(parsable.getPath(), readParsable.getPath());
+        assertEquals(parsable.getType(), readParsable.getType());
+        assertEquals(parsable.getEncoding(), readParsable.getEncoding());
+        assertNull(readParsable.getOsConstraints());
+        assertEquals("cond", readParsable.getCondition());
+
+        ExecutableFile readExecutable = in.readExecutableFile();
+        assertEquals(executable.path, readExecutable.path);
+        assertEquals(executable.type, readExecutable.type);
+        assertEquals(executable.mainClass, readExecutable.mainClass);
+        assertEquals(executable.executionStage, readExecutable.executionStage);
+        assertEquals(executable.onFailure, readExecutable.onFailure);
+        assertEquals(executable.argList, readExecutable.argList);
+        assertTrue(readExecutable.osList.isEmpty());
+        assertTrue(readExecutable.keepFile);
+        assertNull(readExecutable.getCondition());
+
+        UpdateCheck readCheck = in.readUpdateCheck();
+        assertEquals(check.includesList, readCheck.includesList);
+        assertNull(readCheck.excludesList);
+        assertFalse(readCheck.isCaseSensitive());
+    }
+
+    /**
+     * Verifies that {@link SerializedPackInputStream} reads streams written using {@code ObjectOutputStream}.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSerialized() throws IOException
+    {
+        PackFile file = new PackFile(null, "$INSTALL_PATH/a.txt", 2, 1000, false, null, OverrideType.OVERRIDE_TRUE,
+                                     null, Blockable.BLOCKABLE_NONE, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeInt(1);
+        out.writeObject(file);
+        out.write(new byte[]{1, 2});
+        out.writeInt(0);
+        out.close();
+
+        PackInputStream in = new SerializedPackInputStream(
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(1, in.readCount());
+        checkEquals(file, in.readPackFile());
+        byte[] content = new byte[2];
+        in.readFully(content);
+        assertArrayEquals(new byte[]{1, 2}, content);
+        assertEquals(0, in.readCount());
+    }
+
+    /**
+     * Verifies two pack files are equal.
+     *
+     * @param expected the expected pack file
+     * @param actual   the actual pack file
+     */
+    private void checkEquals(PackFile expected, PackFile actual)
+    {
+        assertEquals(expected.getTargetPath(), actual.getTargetPath());
+        assertEquals(expected.getRelativeSourcePath(), actual.getRelativeSourcePath());
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.lastModified(), actual.lastModified());
+        assertEquals(expected.isDirectory(), actual.isDirectory());
+        assertEquals(expected.override(), actual.override());
+        assertEquals(expected.overrideRenameTo(), actual.overrideRenameTo());
+        assertEquals(expected.blockable(), actual.blockable());
+        assertEquals(expected.getCondition(), actual.getCondition());
+        assertEquals(expected.isPack200Jar(), actual.isPack200Jar());
+        assertEquals(expected.getDigest(), actual.getDigest());
+        assertEquals(expected.previousPackId, actual.previousPackId);
+        assertEquals(expected.offsetInPreviousPack, actual.offsetInPreviousPack);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+
+
+/**
+ * Compares the size and decode time of the {@link PackFormat#SERIALIZED} and {@link PackFormat#BINARY} pack stream
+ * formats, for a pack of many small files.
+ * <p/>
+ * This is not run as part of the build. Run it via its {@link #main} method, optionally passing the no. of files and
+ * the size of each file.
+ */
+public class PackStreamBenchmark
+{
+
+    /**
+     * The no. of warm-up iterations.
+     */
+    private static final int WARMUP = 5;
+
+    /**
+     * The no. of measured iterations.
+     */
+    private static final int ITERATIONS = 10;
+
+
+    /**
+     * Main line.
+     *
+     * @param args [file count] [file size]
+     * @throws IOException for any I/O error
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+
+        List<PackFile> files = createFiles(count, size);
+        byte[] content = new byte[size];
+        byte[] serialized = writeSerialized(files, content);
+        byte[] binary = writeBinary(files, content);
+
+        System.out.println(count + " files of " + size + " bytes");
+        System.out.println("Serialized stream: " + serialized.length + " bytes");
+        System.out.println("Binary stream:     " + binary.length + " bytes");
+
+        for (int i = 0; i < WARMUP; ++i)
+        {
+            read(serialized, PackFormat.SERIALIZED, content);
+            read(binary, PackFormat.BINARY, content);
+        }
+        long serialTime = 0;
+        long binaryTime = 0;
+        for (int i = 0; i < ITERATIONS; ++i)
+        {
+            serialTime += read(serialized, PackFormat.SERIALIZED, content);
+            binaryTime += read(binary, PackFormat.BINARY, content);
+        }
+        System.out.println("Serialized decode: " + serialTime / ITERATIONS / 1000000 + " ms");
+        System.out.println("Binary decode:     " + binaryTime / ITERATIONS / 1000000 + " ms");
+        System.out.printf("Speedup:           %.2fx%n", (double) serialTime / binaryTime);
+    }
+
+    /**
+     * Creates pack files, spread over a directory tree.
+     *
+     * @param count the no. of files
+     * @param size  the size of each file
+     * @return the pack files
+     */
+    private static List<PackFile> createFiles(int count, int size)
+    {
+        List<PackFile> result = new ArrayList<PackFile>();
+        for (int i = 0; i < count; ++i)
+        {
+            String path = "lib/module" + (i / 1000) + "/package" + (i / 50) + "/File" + i + ".class";
+            result.add(new PackFile("src/" + path, "$INSTALL_PATH/" + path, size, 1356998400000L + i, false, null,
+                                    OverrideType.OVERRIDE_UPDATE, null, Blockable.BLOCKABLE_NONE, null));
+        }
+        return result;
+    }
+
+    /**
+     * Writes a pack stream in the serialized format.
+     *
+     * @param files   the pack files
+     * @param content the content of each file
+     * @return the pack stream
+     * @throws IOException for any I/O error
+     */
+    private static byte[] writeSerialized(List<PackFile> files, byte[] content) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeInt(files.size());
+        for (PackFile file : files)
+        {
+            out.writeObject(file);
+            out.write(content);
+        }
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a pack stream in the binary format.
+     *
+     * @param files   the pack files
+     * @param content the content of each file
+     * @return the pack stream
+     * @throws IOException for any I/O error
+     */
+    private static byte[] writeBinary(List<PackFile> files, byte[] content) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PackOutputStream out = new PackOutputStream(bytes);
+        out.writeCount(files.size());
+        for (PackFile file : files)
+        {
+            out.writePackFile(file);
+            out.write(content);
+        }
+        out.writeCount(0);
+        out.writeCount(0);
+        out.writeCount(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a pack stream, as the installer does.
+     *
+     * @param stream  the pack stream
+     * @param format  the pack stream format
+     * @param content buffer to read the content of each file into
+     * @return the elapsed time, in nanoseconds
+     * @throws IOException for any I/O error
+     */
+    private static long read(byte[] stream, int format, byte[] content) throws IOException
+    {
+        long start = System.nanoTime();
+        ByteArrayInputStream bytes = new ByteArrayInputStream(stream);
+        PackInputStream in = (format == PackFormat.SERIALIZED)
+                ? new SerializedPackInputStream(new ObjectInputStream(bytes))
+                : new PackInputStream(new BufferedInputStream(bytes));
+        int count = in.readCount();
+        for (int i = 0; i < count; ++i)
+        {
+            PackFile file = in.readPackFile();
+            in.readFully(content, 0, (int) file.length());
+        }
+        in.close();
+        return System.nanoTime() - start;
+    }
+}
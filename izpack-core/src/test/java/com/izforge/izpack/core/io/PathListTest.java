@@ -0,0 +1,165 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link PathList} class.
+ */
+public class PathListTest
+{
+
+    /**
+     * Verifies that paths can be accessed by index and by iteration, across restart points.
+     */
+    @Test
+    public void testAddAndGet()
+    {
+        List<String> expected = createPaths(1000);
+        PathList list = new PathList();
+        for (String path : expected)
+        {
+            list.add(path);
+        }
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); ++i)
+        {
+            assertEquals(expected.get(i), list.get(i));
+        }
+        assertEquals(expected, new ArrayList<String>(list));
+    }
+
+    /**
+     * Verifies that paths sharing a prefix are stored compactly.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCompression() throws IOException
+    {
+        List<String> paths = createPaths(1000);
+        int chars = 0;
+        PathList list = new PathList();
+        for (String path : paths)
+        {
+            list.add(path);
+            chars += path.length();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        list.write(out);
+        assertTrue("Expected " + out.size() + " < " + chars / 4, out.size() < chars / 4);
+    }
+
+    /**
+     * Verifies that a list can be written and read back, and appended to.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testReadWrite() throws IOException
+    {
+        List<String> expected = createPaths(100);
+        expected.add("/opt/\u00e9t\u00e9/\uD834\uDD1E");
+        expected.add("/opt/\u00e9t\u00e9/\uD834\uDD1F");
+        expected.add("");
+        PathList list = new PathList();
+        for (String path : expected)
+        {
+            list.add(path);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        list.write(out);
+
+        PathList read = PathList.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(expected, read);
+
+        read.add("/opt/myapp/last");
+        expected.add("/opt/myapp/last");
+        assertEquals(expected, read);
+    }
+
+    /**
+     * Verifies that a stream that doesn't contain a list is rejected.
+     */
+    @Test
+    public void testReadInvalid()
+    {
+        try
+        {
+            PathList.read(new ByteArrayInputStream("/opt/myapp\n".getBytes()));
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Verifies that iterators detect paths being added.
+     */
+    @Test
+    public void testConcurrentModification()
+    {
+        PathList list = new PathList();
+        list.add("a");
+        Iterator<String> iterator = list.iterator();
+        list.add("b");
+        try
+        {
+            iterator.next();
+            fail("Expected ConcurrentModificationException");
+        }
+        catch (ConcurrentModificationException expected)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Creates paths typical of an installation.
+     *
+     * @param count the no. of paths
+     * @return the paths
+     */
+    private List<String> createPaths(int count)
+    {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < count; ++i)
+        {
+            result.add("/opt/myapplication-5.0.0/lib/module" + (i / 50) + "/component-" + i + ".jar");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link ReadAheadInputStream} class.
+ */
+public class ReadAheadInputStreamTest
+{
+
+    /**
+     * Verifies that the stream returns the content of the underlying stream, regardless of chunk boundaries.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testRead() throws IOException
+    {
+        byte[] data = createData(10000);
+        ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 333, 2, "test");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data[0] & 0xFF, in.read());
+        out.write(data[0]);
+        IOUtils.copy(in, out);
+        assertEquals(-1, in.read());
+        in.close();
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    /**
+     * Verifies that an exception thrown by the underlying stream is rethrown once the preceding data has been read.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testException() throws IOException
+    {
+        byte[] data = createData(100);
+        InputStream failing = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                throw new IOException("failed");
+            }
+        };
+        ReadAheadInputStream in = new ReadAheadInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(data), failing), 10, 2, "test");
+        byte[] buffer = new byte[data.length];
+        int length = 0;
+        while (length < buffer.length)
+        {
+            length += in.read(buffer, length, buffer.length - length);
+        }
+        try
+        {
+            in.read();
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            assertEquals("failed", expected.getMessage());
+        }
+        in.close();
+        assertArrayEquals(data, buffer);
+    }
+
+    /**
+     * Verifies that bytes can be skipped across chunk boundaries.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSkip() throws IOException
+    {
+        byte[] data = createData(10000);
+        ReadAheadInputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 333, 2, "test");
+        long skipped = 0;
+        while (skipped < 5000)
+        {
+            skipped += in.skip(5000 - skipped);
+        }
+        assertEquals(data[5000] & 0xFF, in.read());
+        assertEquals(4999, IOUtils.toByteArray(in).length);
+        assertEquals(0, in.skip(10));
+        in.close();
+    }
+
+    /**
+     * Creates test data.
+     *
+     * @param length the data length
+     * @return the data
+     */
+    private byte[] createData(int length)
+    {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; ++i)
+        {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+}
@@ -520,6 +520,75 @@ public class RulesEngineImplTest
         assertTrue(rules.getCondition("user1") instanceof UserCondition);
     }
 
+    /**
+     * Verifies that the results of conditions that only depend on variables are cached until a variable changes,
+     * and that other conditions are always evaluated.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCachedResults() throws Exception
+    {
+        InstallData installData = new AutomatedInstallData(new DefaultVariables(), Platforms.UNIX);
+        RulesEngineImpl rules = (RulesEngineImpl) createRulesEngine(installData);
+        IXMLParser parser = new XMLParser();
+        rules.analyzeXml(parser.parse(getClass().getResourceAsStream("conditions.xml")));
+        rules.resolveConditions();
+        rules.setStatisticsEnabled(true);
+
+        installData.setVariable("setup.type", "standard");
+        assertTrue(rules.isConditionTrue("or1"));
+        assertTrue(rules.isConditionTrue("or1"));
+        assertTrue(rules.isConditionTrue("variable1+!variable2"));
+        assertTrue(rules.isConditionTrue("variable1+!variable2"));
+        assertFalse(rules.isConditionTrue("exists1"));
+        assertFalse(rules.isConditionTrue("exists1"));
+
+        // setting a variable to the same value doesn't invalidate results
+        installData.setVariable("setup.type", "standard");
+        assertTrue(rules.isConditionTrue("or1"));
+
+        installData.setVariable("setup.type", "expert");
+        assertTrue(rules.isConditionTrue("or1"));
+        assertFalse(rules.isConditionTrue("variable1+!variable2"));
+        assertFalse(rules.isConditionTrue("variable1+!variable2"));
+
+        List<ConditionStatistics> statistics = rules.getStatistics();
+        assertEquals(3, statistics.size());
+        checkStatistics(statistics.get(0), "or1", 4, 2);
+        checkStatistics(statistics.get(1), "variable1+!variable2", 4, 2);
+        checkStatistics(statistics.get(2), "exists1", 2, 0);
+
+        rules.setStatisticsEnabled(false);
+        assertTrue(rules.getStatistics().isEmpty());
+    }
+
+    /**
+     * Verifies that expressions are only parsed once, and that nested conjunctions and disjunctions are flattened.
+     */
+    @Test
+    public void testParsedExpressions()
+    {
+        InstallData installData = new AutomatedInstallData(new DefaultVariables(), Platforms.UNIX);
+        RulesEngine rules = createRulesEngine(installData);
+        IXMLParser parser = new XMLParser();
+        rules.analyzeXml(parser.parse(getClass().getResourceAsStream("conditions.xml")));
+
+        Condition and = rules.getCondition("variable1+variable2+java1");
+        assertTrue(and instanceof AndCondition);
+        assertEquals(3, ((AndCondition) and).getOperands().size());
+        assertTrue(and == rules.getCondition("variable1+variable2+java1"));
+
+        Condition or = rules.getCondition("@variable1 || variable2 || or1");
+        assertTrue(or instanceof OrCondition);
+        assertEquals(3, ((OrCondition) or).getOperands().size());
+        assertTrue(or == rules.getCondition("@variable1 || variable2 || or1"));
+
+        // named conditions aren't flattened
+        Condition nested = rules.getCondition("@or1 || variable1");
+        assertEquals(2, ((OrCondition) nested).getOperands().size());
+    }
+
     /**
      * Verifies that the pre-defined platform conditions:
      * <ul>
@@ -665,6 +734,21 @@ public class RulesEngineImplTest
         assertTrue(rules.isConditionTrue("compareversions1"));  // compareversions1 = 1 < 2
     }
 
+    /**
+     * Verifies condition statistics match those expected.
+     *
+     * @param statistics  the statistics
+     * @param id          the expected condition identifier
+     * @param evaluations the expected no. of evaluations
+     * @param cacheHits   the expected no. of cache hits
+     */
+    private void checkStatistics(ConditionStatistics statistics, String id, int evaluations, int cacheHits)
+    {
+        assertEquals(id, statistics.getId());
+        assertEquals(evaluations, statistics.getEvaluations());
+        assertEquals(cacheHits, statistics.getCacheHits());
+    }
+
     /**
      * Verifies that the specified conditions evaluate {@code true} for the specified platform.
      * <p/>
@@ -0,0 +1,301 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.substitutor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.izforge.izpack.api.data.Value;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+
+
+/**
+ * Compares the throughput of {@link VariableSubstitutorBase} with the previous implementation, which read and wrote
+ * a character at a time, when parsing large XML and properties files as the installer does.
+ * <p/>
+ * This is not run as part of the build. Run it via its {@link #main} method, optionally passing the no. of lines
+ * per file.
+ */
+public class VariableSubstitutorBenchmark
+{
+
+    /**
+     * The no. of warm-up iterations.
+     */
+    private static final int WARMUP = 5;
+
+    /**
+     * The no. of measured iterations.
+     */
+    private static final int ITERATIONS = 10;
+
+
+    /**
+     * Main line.
+     *
+     * @param args [line count]
+     * @throws Exception for any error
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int lines = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+
+        Properties properties = new Properties();
+        properties.put("INSTALL_PATH", "/opt/app & co");
+        properties.put("APP_NAME", "<Application>");
+        properties.put("APP_VER", "5.0.0");
+        VariableSubstitutorImpl current = new VariableSubstitutorImpl(properties);
+        CharacterSubstitutor previous = new CharacterSubstitutor(current);
+
+        StringBuilder xml = new StringBuilder("<config>\n");
+        StringBuilder props = new StringBuilder();
+        for (int i = 0; i < lines; ++i)
+        {
+            xml.append("  <entry key=\"entry").append(i).append("\" path=\"${INSTALL_PATH}/lib/entry")
+                    .append(i).append(".jar\">some descriptive text for the entry</entry>\n");
+            props.append("app.entry").append(i).append("=$APP_NAME $APP_VER in ${INSTALL_PATH}, costs $5\n");
+        }
+        xml.append("</config>\n");
+
+        run("XML", xml.toString().getBytes("UTF-8"), SubstitutionType.TYPE_XML, current, previous);
+        run("Properties", props.toString().getBytes("ISO-8859-1"), SubstitutionType.TYPE_JAVA_PROPERTIES,
+            current, previous);
+    }
+
+    /**
+     * Benchmarks the substitution of a file.
+     *
+     * @param name     the file description
+     * @param content  the file content
+     * @param type     the substitution type
+     * @param current  the current substitutor
+     * @param previous the previous substitutor
+     * @throws Exception for any error
+     */
+    private static void run(String name, byte[] content, SubstitutionType type, VariableSubstitutorBase current,
+                            VariableSubstitutorBase previous) throws Exception
+    {
+        ByteArrayOutputStream currentOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream previousOut = new ByteArrayOutputStream();
+        substitute(current, content, type, currentOut);
+        substitute(previous, content, type, previousOut);
+        if (!Arrays.equals(currentOut.toByteArray(), previousOut.toByteArray()))
+        {
+            throw new IllegalStateException(name + ": substitutors produced different output");
+        }
+
+        for (int i = 0; i < WARMUP; ++i)
+        {
+            substitute(current, content, type, new ByteArrayOutputStream(content.length));
+            substitute(previous, content, type, new ByteArrayOutputStream(content.length));
+        }
+        long currentTime = 0;
+        long previousTime = 0;
+        for (int i = 0; i < ITERATIONS; ++i)
+        {
+            currentTime += substitute(current, content, type, new ByteArrayOutputStream(content.length));
+            previousTime += substitute(previous, content, type, new ByteArrayOutputStream(content.length));
+        }
+        double megabytes = content.length / (1024.0 * 1024.0);
+        System.out.printf("%s: %.1f MB%n", name, megabytes);
+        System.out.printf("  Previous: %.1f MB/s%n", megabytes * ITERATIONS / (previousTime / 1E9));
+        System.out.printf("  Current:  %.1f MB/s%n", megabytes * ITERATIONS / (currentTime / 1E9));
+        System.out.printf("  Speedup:  %.2fx%n", (double) previousTime / currentTime);
+    }
+
+    /**
+     * Substitutes variables in a file, as the installer does.
+     *
+     * @param substitutor the substitutor
+     * @param content     the file content
+     * @param type        the substitution type
+     * @param out         the stream to write to
+     * @return the elapsed time, in nanoseconds
+     * @throws Exception for any error
+     */
+    private static long substitute(VariableSubstitutorBase substitutor, byte[] content, SubstitutionType type,
+                                   OutputStream out) throws Exception
+    {
+        long start = System.nanoTime();
+        if (substitutor instanceof CharacterSubstitutor)
+        {
+            // the installer previously buffered the streams, as the substitutor processed a character at a time
+            BufferedOutputStream buffered = new BufferedOutputStream(out, 5120);
+            substitutor.substitute(new BufferedInputStream(new ByteArrayInputStream(content), 5120), buffered,
+                                   type, null);
+            buffered.flush();
+        }
+        else
+        {
+            substitutor.substitute(new ByteArrayInputStream(content), out, type, null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The previous substitution algorithm, which read and wrote a character at a time, and looked up each variable
+     * reference.
+     * <p/>
+     * Environment and system property references are not supported.
+     */
+    private static class CharacterSubstitutor extends VariableSubstitutorBase
+    {
+
+        /**
+         * The substitutor to look up values with.
+         */
+        private final VariableSubstitutorBase values;
+
+        /**
+         * Constructs a {@code CharacterSubstitutor}.
+         *
+         * @param values the substitutor to look up values with
+         */
+        public CharacterSubstitutor(VariableSubstitutorBase values)
+        {
+            this.values = values;
+        }
+
+        @Override
+        public Value getValue(String name)
+        {
+            return values.getValue(name);
+        }
+
+        @Override
+        public int substitute(InputStream in, OutputStream out, SubstitutionType type, String encoding)
+                throws Exception
+        {
+            if (encoding == null)
+            {
+                encoding = (type == SubstitutionType.TYPE_JAVA_PROPERTIES) ? "ISO-8859-1" : "UTF-8";
+            }
+            OutputStreamWriter writer = new OutputStreamWriter(out, encoding);
+            int subs = substitute(new InputStreamReader(in, encoding), writer, type);
+            writer.flush();
+            return subs;
+        }
+
+        @Override
+        public int substitute(Reader reader, Writer writer, SubstitutionType type) throws Exception
+        {
+            char variable_start = '$';
+            char variable_end = '\0';
+            switch (type)
+            {
+                case TYPE_SHELL:
+                    variable_start = '%';
+                    break;
+                case TYPE_AT:
+                    variable_start = '@';
+                    break;
+                case TYPE_ANT:
+                    variable_start = '@';
+                    variable_end = '@';
+                    break;
+                default:
+                    break;
+            }
+
+            int subs = 0;
+            int c = reader.read();
+            while (true)
+            {
+                while (c != -1 && c != variable_start)
+                {
+                    writer.write(c);
+                    c = reader.read();
+                }
+                if (c == -1)
+                {
+                    return subs;
+                }
+
+                boolean braces = false;
+                c = reader.read();
+                if (c == '{')
+                {
+                    braces = true;
+                    c = reader.read();
+                }
+                else if (bracesRequired)
+                {
+                    writer.write(variable_start);
+                    continue;
+                }
+                else if (c == -1)
+                {
+                    writer.write(variable_start);
+                    return subs;
+                }
+
+                StringBuffer nameBuffer = new StringBuffer();
+                while (c != -1 && (braces && c != '}') || (c >= 'a' && c <= 'z')
+                        || (c >= 'A' && c <= 'Z') || (braces && ((c == '[') || (c == ']')))
+                        || (((c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-') && nameBuffer.length() > 0))
+                {
+                    nameBuffer.append((char) c);
+                    c = reader.read();
+                }
+                String name = nameBuffer.toString();
+
+                String varvalue = null;
+                if (((!braces || c == '}') && (!braces || variable_end == '\0' || variable_end == c))
+                        && name.length() > 0)
+                {
+                    Value val = getValue(name);
+                    if (val != null)
+                    {
+                        varvalue = val.resolve();
+                    }
+                    subs++;
+                }
+
+                if (varvalue != null)
+                {
+                    writer.write(escapeSpecialChars(varvalue, type));
+                    if (braces || variable_end != '\0')
+                    {
+                        c = reader.read();
+                    }
+                }
+                else
+                {
+                    writer.write(variable_start);
+                    if (braces)
+                    {
+                        writer.write('{');
+                    }
+                    writer.write(name);
+                }
+            }
+        }
+    }
+}
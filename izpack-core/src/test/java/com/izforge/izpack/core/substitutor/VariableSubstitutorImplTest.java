@@ -89,6 +89,37 @@ public class VariableSubstitutorImplTest
                 Is.is("onetwo"));
     }
 
+    @Test
+    public void shouldEscapeXmlType() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.put("MY_XML", "<a & 'b'>");
+        VariableSubstitutor substitutor = new VariableSubstitutorImpl(properties);
+        assertThat(substitutor.substitute("${MY_XML}=$MY_XML", SubstitutionType.TYPE_XML),
+                   Is.is("&lt;a &amp; &apos;b&apos;&gt;=&lt;a &amp; &apos;b&apos;&gt;"));
+    }
+
+    /**
+     * Verifies that variables are substituted in text that spans several reads of the underlying reader.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void shouldSubstituteLargeText() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; ++i)
+        {
+            text.append("line ").append(i).append(" ${MY_PROP} $MY_PROP2 $ ${undefined} $").append('\n');
+            expected.append("line ").append(i).append(" one two $ ${undefined} $").append('\n');
+        }
+        text.append("$MY_PROP");
+        expected.append("one");
+        assertThat(variableSubstitutor.substitute(text.toString(), SubstitutionType.TYPE_PLAIN),
+                   Is.is(expected.toString()));
+    }
+
     @Test
     public void testSystemPropertiesSubstition() throws Exception
     {
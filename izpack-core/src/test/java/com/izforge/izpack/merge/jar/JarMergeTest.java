@@ -21,6 +21,7 @@ package com.izforge.izpack.merge.jar;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -31,6 +32,8 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
 
@@ -187,7 +190,7 @@ public class JarMergeTest
         // now merge to a mocked JarOutputStream
         URL url = jar.toURI().toURL();
         String jarPath = ResolveUtils.processUrlToJarPath(url);
-        JarMerge merge = new JarMerge(url, jarPath, new HashMap<OutputStream, List<String>>());
+        JarMerge merge = new JarMerge(url, jarPath, new HashMap<OutputStream, Set<String>>());
         JarOutputStream output = Mockito.mock(JarOutputStream.class);
         merge.merge(output);
 
@@ -200,4 +203,32 @@ public class JarMergeTest
         assertEquals("META-INF/ok2", allValues.get(1).getName());
     }
 
+    /**
+     * Verifies that entries already merged into a stream are not merged again, but are merged into other streams.
+     */
+    @Test
+    public void testExcludeDuplicates() throws IOException
+    {
+        File jar = File.createTempFile("duptest", ".jar");
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        stream.putNextEntry(new ZipEntry("a/one.txt"));
+        stream.closeEntry();
+        stream.putNextEntry(new ZipEntry("a/two.txt"));
+        stream.closeEntry();
+        stream.close();
+
+        URL url = jar.toURI().toURL();
+        String jarPath = ResolveUtils.processUrlToJarPath(url);
+        Map<OutputStream, Set<String>> mergeContent = new HashMap<OutputStream, Set<String>>();
+        JarOutputStream output1 = Mockito.mock(JarOutputStream.class);
+        JarOutputStream output2 = Mockito.mock(JarOutputStream.class);
+        new JarMerge(url, jarPath, mergeContent).merge(output1);
+        new JarMerge(url, jarPath, mergeContent).merge(output1);
+        new JarMerge(url, jarPath, mergeContent).merge(output2);
+
+        Mockito.verify(output1, Mockito.times(2)).putNextEntry(Mockito.any(ZipEntry.class));
+        Mockito.verify(output2, Mockito.times(2)).putNextEntry(Mockito.any(ZipEntry.class));
+        assertTrue(jar.delete());
+    }
+
 }
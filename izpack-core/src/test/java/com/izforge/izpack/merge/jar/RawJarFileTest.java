@@ -0,0 +1,163 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.jar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link RawJarFile}.
+ */
+public class RawJarFileTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that the deflated data of entries can be read, including when data precedes the archive, and that
+     * stored entries are excluded.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testRawEntries() throws IOException
+    {
+        byte[] deflated = "deflated deflated deflated deflated".getBytes("UTF-8");
+        byte[] stored = "stored".getBytes("UTF-8");
+        byte[] zip = createZip(deflated, stored);
+
+        File plain = temporaryFolder.newFile("plain.jar");
+        FileUtils.writeByteArrayToFile(plain, zip);
+        checkEntries(plain, deflated);
+
+        // data preceding the archive shifts all offsets
+        ByteArrayOutputStream prefixed = new ByteArrayOutputStream();
+        prefixed.write(new byte[1000]);
+        prefixed.write(zip);
+        File file = temporaryFolder.newFile("prefixed.jar");
+        FileUtils.writeByteArrayToFile(file, prefixed.toByteArray());
+        checkEntries(file, deflated);
+    }
+
+    /**
+     * Verifies that a file that isn't a zip is rejected.
+     *
+     * @throws IOException expected
+     */
+    @Test(expected = IOException.class)
+    public void testNotZip() throws IOException
+    {
+        File file = temporaryFolder.newFile("invalid.jar");
+        FileUtils.writeByteArrayToFile(file, new byte[100]);
+        new RawJarFile(file.getPath());
+    }
+
+    /**
+     * Verifies the entries of a zip created by {@link #createZip}.
+     *
+     * @param file     the zip
+     * @param deflated the content of the deflated entry
+     * @throws IOException for any I/O error
+     */
+    private void checkEntries(File file, byte[] deflated) throws IOException
+    {
+        RawJarFile jar = new RawJarFile(file.getPath());
+        try
+        {
+            assertNull(jar.getEntry("stored.txt"));
+            assertNull(jar.getEntry("missing.txt"));
+            RawJarFile.Entry entry = jar.getEntry("dir/deflated.txt");
+            assertNotNull(entry);
+            assertEquals(deflated.length, entry.getSize());
+            assertEquals(getCrc(deflated), entry.getCrc());
+
+            byte[] raw = IOUtils.toByteArray(jar.getRawInputStream(entry));
+            assertEquals(entry.getCompressedSize(), raw.length);
+            InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(raw), new Inflater(true));
+            assertArrayEquals(deflated, IOUtils.toByteArray(in));
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Creates a zip containing a deflated and a stored entry.
+     *
+     * @param deflated the content of the deflated entry
+     * @param stored   the content of the stored entry
+     * @return the zip
+     * @throws IOException for any I/O error
+     */
+    private byte[] createZip(byte[] deflated, byte[] stored) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.setComment("comment");
+        ZipEntry entry = new ZipEntry("stored.txt");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(stored.length);
+        entry.setCrc(getCrc(stored));
+        zip.putNextEntry(entry);
+        zip.write(stored);
+        zip.putNextEntry(new ZipEntry("dir/deflated.txt"));
+        zip.write(deflated);
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the CRC-32 of content.
+     *
+     * @param content the content
+     * @return the CRC
+     */
+    private long getCrc(byte[] content)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
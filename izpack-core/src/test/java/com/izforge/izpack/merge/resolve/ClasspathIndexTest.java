@@ -0,0 +1,191 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.resolve;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link ClasspathIndex}.
+ */
+public class ClasspathIndexTest
+{
+
+    /**
+     * Resource names to look up.
+     */
+    private static final String[] NAMES = {"a", "a/", "a/b", "a/b/", "a/b/c.txt", "x", "x/y.txt", "d", "d/e.txt",
+            "d/with space.txt", "d/../d/e.txt", "../e.txt", "lib.txt", "missing", "META-INF/MANIFEST.MF", ""};
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that the index returns the same resources as the class loader, for jars, directories, and jars
+     * referenced by a <em>Class-Path</em> attribute.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testFindResources() throws IOException
+    {
+        URLClassLoader parent = new URLClassLoader(new URL[]{createJar("parent.jar", null, "a/b/c.txt")}, null);
+        URLClassLoader loader = new URLClassLoader(createClasspath(), parent);
+
+        ClasspathIndex index = ClasspathIndex.getIndex(loader);
+        assertNotNull(index);
+        for (String name : NAMES)
+        {
+            assertEquals(name, Collections.list(loader.findResources(name)), index.findResources(name));
+            assertEquals(name, Collections.list(loader.getResources(name)), Collections.list(index.getResources(name)));
+        }
+        assertSame(index, ClasspathIndex.getIndex(loader));
+    }
+
+    /**
+     * Verifies that changed jars are re-read when the index is refreshed, and that directories are searched on each
+     * lookup.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testRefresh() throws IOException
+    {
+        URL[] classpath = createClasspath();
+        URLClassLoader loader = new URLClassLoader(classpath, null);
+        ClasspathIndex index = ClasspathIndex.getIndex(loader);
+        assertNotNull(index);
+        assertEquals(0, index.findResources("new.txt").size());
+
+        File jar = new File(classpath[0].getFile());
+        jar.delete();
+        createJar("first.jar", null, "a/b/c.txt", "new.txt");
+        jar.setLastModified(jar.lastModified() + 2000);
+        FileUtils.writeStringToFile(new File(temporaryFolder.getRoot(), "dir/d/new.txt"), "new");
+
+        assertEquals(0, index.findResources("new.txt").size());
+        assertEquals(1, index.findResources("d/new.txt").size());
+
+        ClasspathIndex refreshed = ClasspathIndex.refresh(loader);
+        assertNotSame(index, refreshed);
+        assertSame(refreshed, ClasspathIndex.getIndex(loader));
+        assertEquals(Collections.list(new URLClassLoader(classpath, null).findResources("new.txt")),
+                     refreshed.findResources("new.txt"));
+        assertEquals(1, refreshed.findResources("new.txt").size());
+    }
+
+    /**
+     * Verifies that class loaders that cannot be indexed are rejected.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testNotIndexed() throws IOException
+    {
+        assertNull(ClasspathIndex.getIndex(null));
+        assertNull(ClasspathIndex.getIndex(new URLClassLoader(new URL[]{new URL("http://localhost/test.jar")})));
+        URLClassLoader custom = new URLClassLoader(new URL[0])
+        {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException
+            {
+                return super.getResources(name);
+            }
+        };
+        assertNull(ClasspathIndex.getIndex(custom));
+    }
+
+    /**
+     * Creates a classpath of two jars and a directory. The first jar references a third via its <em>Class-Path</em>
+     * attribute.
+     *
+     * @return the classpath
+     * @throws IOException for any I/O error
+     */
+    private URL[] createClasspath() throws IOException
+    {
+        File dir = temporaryFolder.newFolder("dir");
+        FileUtils.writeStringToFile(new File(dir, "d/e.txt"), "e");
+        FileUtils.writeStringToFile(new File(dir, "d/with space.txt"), "space");
+        FileUtils.writeStringToFile(new File(dir, "a/b/c.txt"), "c");
+        createJar("lib/lib.jar", null, "lib.txt", "a/b/c.txt");
+        URL first = createJar("first.jar", "lib/lib.jar", "a/", "a/b/", "a/b/c.txt");
+        URL second = createJar("second.jar", null, "x/y.txt", "d/e.txt");
+        return new URL[]{first, dir.toURI().toURL(), second};
+    }
+
+    /**
+     * Creates a jar.
+     *
+     * @param name      the jar name, relative to the temporary folder
+     * @param classPath the <em>Class-Path</em> attribute. May be {@code null}
+     * @param entries   the entry names. Names ending in '/' are directories
+     * @return the jar URL
+     * @throws IOException for any I/O error
+     */
+    private URL createJar(String name, String classPath, String... entries) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), name);
+        file.getParentFile().mkdirs();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null)
+        {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        }
+        JarOutputStream jar = new JarOutputStream(new FileOutputStream(file), manifest);
+        for (String entry : entries)
+        {
+            jar.putNextEntry(new ZipEntry(entry));
+            if (!entry.endsWith("/"))
+            {
+                jar.write(entry.getBytes());
+            }
+            jar.closeEntry();
+        }
+        jar.close();
+        return file.toURI().toURL();
+    }
+}
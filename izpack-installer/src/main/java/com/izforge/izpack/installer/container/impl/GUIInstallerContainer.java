@@ -27,6 +27,8 @@ import com.izforge.izpack.installer.language.LanguageDialog;
 import com.izforge.izpack.installer.multiunpacker.MultiVolumeUnpackerHelper;
 import com.izforge.izpack.installer.unpacker.GUIPackResources;
 import com.izforge.izpack.installer.unpacker.IUnpacker;
+import com.izforge.izpack.installer.web.GUIWebConnector;
+import com.izforge.izpack.installer.web.WebPackDownloader;
 
 /**
  * GUI Installer container.
@@ -78,6 +80,8 @@ public class GUIInstallerContainer extends InstallerContainer
                 .addComponent(InstallerFrame.class)
                 .addComponent(Log.class)
                 .addComponent(GUIPackResources.class)
+                .addComponent(WebPackDownloader.class)
+                .addComponent(GUIWebConnector.class)
                 .addComponent(MultiVolumeUnpackerHelper.class)
                 .addComponent(SplashScreen.class)
                 .as(Characteristics.USE_NAMES).addComponent(LanguageDialog.class);
@@ -100,6 +104,7 @@ public class GUIInstallerContainer extends InstallerContainer
         InstallerFrame frame = pico.getComponent(InstallerFrame.class);
         IUnpacker unpacker = pico.getComponent(IUnpacker.class);
         frame.setUnpacker(unpacker);
+        frame.setPackDownloader(pico.getComponent(WebPackDownloader.class));
     }
 
     private JFrame initFrame()
@@ -46,6 +46,7 @@ import com.izforge.izpack.util.Librarian;
 import com.izforge.izpack.util.PlatformModelMatcher;
 import com.izforge.izpack.util.Platforms;
 import com.izforge.izpack.util.TargetFactory;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Installer container.
@@ -122,6 +123,7 @@ public abstract class InstallerContainer extends AbstractContainer
         addComponent(MergeableResolver.class);
         addComponent(Platforms.class);
         addComponent(PlatformModelMatcher.class);
+        addComponent(Metrics.class);
 
         pico.addComponent(VariableSubstitutor.class, VariableSubstitutorImpl.class,
                           new ComponentParameter(DefaultVariables.class));
@@ -139,6 +141,9 @@ public abstract class InstallerContainer extends AbstractContainer
         Class<IUnpacker> unpackerClass = getClass(className, IUnpacker.class);
         pico.addComponent(IUnpacker.class, unpackerClass);
 
+        // write the metrics report, if enabled, when the installer exits
+        pico.getComponent(Housekeeper.class).registerForCleanup(pico.getComponent(Metrics.class));
+
         CustomDataLoader customDataLoader = pico.getComponent(CustomDataLoader.class);
         try
         {
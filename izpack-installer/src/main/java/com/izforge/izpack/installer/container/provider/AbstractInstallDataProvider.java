@@ -7,6 +7,7 @@ import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Locales;
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.io.PackFormat;
 import com.izforge.izpack.util.*;
 import org.picocontainer.injectors.Provider;
 
@@ -95,6 +96,11 @@ public abstract class AbstractInstallDataProvider implements Provider
         InputStream in = resources.getInputStream("packs.info");
         ObjectInputStream objIn = new ObjectInputStream(in);
         int size = objIn.readInt();
+        if (size == PackFormat.VERSION_MARKER)
+        {
+            objIn.readInt(); // the pack format, read by the unpacker
+            size = objIn.readInt();
+        }
         List<Pack> availablePacks = new ArrayList<Pack>();
         List<Pack> allPacks = new ArrayList<Pack>();
 
@@ -19,6 +19,7 @@
 
 package com.izforge.izpack.installer.data;
 
+import com.izforge.izpack.core.io.PathList;
 import com.izforge.izpack.data.CustomData;
 import com.izforge.izpack.data.ExecutableFile;
 
@@ -36,14 +37,14 @@ public class UninstallData
 {
 
     /**
-     * The installed files list.
+     * The installed files list. This is held in a compact form, as it may contain a very large no. of paths.
      */
-    private List<String> installedFilesList;
+    private PathList installedFilesList;
 
     /**
      * The uninstallable files list.
      */
-    private List<String> uninstallableFilesList;
+    private PathList uninstallableFilesList;
 
     /**
      * The executables list.
@@ -90,8 +91,8 @@ public class UninstallData
      */
     public UninstallData()
     {
-        installedFilesList = new ArrayList<String>();
-        uninstallableFilesList = new ArrayList<String>();
+        installedFilesList = new PathList();
+        uninstallableFilesList = new PathList();
         executablesList = new ArrayList<ExecutableFile>();
         additionalData = new HashMap<String, Object>();
         unInstallScripts = new ArrayList<String>();
@@ -122,6 +123,8 @@ public class UninstallData
 
     /**
      * Returns the installed files list.
+     * <p/>
+     * The list is append-only, and paths are decoded on access, so it should be iterated rather than indexed.
      *
      * @return The installed files list.
      */
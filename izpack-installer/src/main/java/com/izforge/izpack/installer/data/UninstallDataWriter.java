@@ -10,6 +10,9 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +24,7 @@ import java.util.logging.Logger;
 import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.merge.Mergeable;
 import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.core.io.PathList;
 import com.izforge.izpack.data.CustomData;
 import com.izforge.izpack.data.ExecutableFile;
 import com.izforge.izpack.merge.resolve.PathResolver;
@@ -72,6 +76,13 @@ public class UninstallDataWriter
      */
     private static final String LOGFILE_PATH = "InstallerFrame.logfilePath";
 
+    /**
+     * Orders paths in reverse, as {@link File#compareTo} would on this platform. Paths are compared ignoring case
+     * where the file system does, so that duplicates differing only by case are removed.
+     */
+    private static final Comparator<String> REVERSE_PATH_ORDER = new File("a").compareTo(new File("A")) == 0
+            ? Collections.reverseOrder(String.CASE_INSENSITIVE_ORDER) : Collections.<String>reverseOrder();
+
     /**
      * Constructs an <tt>UninstallDataWriter</tt>.
      *
@@ -259,6 +270,10 @@ public class UninstallDataWriter
 
     /**
      * Writes the file log.
+     * <p/>
+     * The <em>install.log</em> in the uninstaller jar is a {@link PathList} containing the installation path,
+     * followed by the uninstallable files in leaf first order, so that the uninstaller can delete them without
+     * sorting them itself.
      *
      * @param extLogWriter the external log writer. May be <tt>null</tt>
      * @throws IOException for any I/O error
@@ -267,42 +282,37 @@ public class UninstallDataWriter
     {
         List<String> files = uninstallData.getUninstalableFilesList();
 
-        jar.putNextEntry(new JarEntry("install.log"));
-        BufferedWriter logWriter = new BufferedWriter(new OutputStreamWriter(jar));
-        logWriter.write(installData.getInstallPath());
-        logWriter.newLine();
-        Iterator<String> iter = files.iterator();
         if (extLogWriter != null)
         {
-            // Write intern (in uninstaller.jar) and extern log file.
+            // the external log lists the files in the order they were installed
+            Iterator<String> iter = files.iterator();
             while (iter.hasNext())
             {
-                String txt = iter.next();
-                logWriter.write(txt);
-                extLogWriter.write(txt);
+                extLogWriter.write(iter.next());
                 if (iter.hasNext())
                 {
-                    logWriter.newLine();
                     extLogWriter.newLine();
                 }
             }
-            logWriter.flush();
             extLogWriter.flush();
             extLogWriter.close();
         }
-        else
+
+        String[] sorted = files.toArray(new String[files.size()]);
+        Arrays.sort(sorted, REVERSE_PATH_ORDER);
+
+        PathList log = new PathList();
+        log.add(installData.getInstallPath());
+        for (int i = 0; i < sorted.length; ++i)
         {
-            while (iter.hasNext())
+            if (i == 0 || REVERSE_PATH_ORDER.compare(sorted[i], sorted[i - 1]) != 0)
             {
-                String txt = iter.next();
-                logWriter.write(txt);
-                if (iter.hasNext())
-                {
-                    logWriter.newLine();
-                }
+                log.add(sorted[i]);
             }
-            logWriter.flush();
         }
+
+        jar.putNextEntry(new JarEntry("install.log"));
+        log.write(jar);
         jar.closeEntry();
     }
 
@@ -35,6 +35,7 @@ import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.handler.Prompt;
 import com.izforge.izpack.core.handler.ProgressHandler;
 import com.izforge.izpack.event.SimpleInstallerListener;
+import com.izforge.izpack.util.metrics.Metrics;
 
 
 /**
@@ -66,6 +67,11 @@ public class InstallerListeners
      */
     private final Prompt prompt;
 
+    /**
+     * The metrics. Listener notifications are timed, per event.
+     */
+    private final Metrics metrics;
+
 
     /**
      * Constructs an {@code InstallerListeners}.
@@ -74,9 +80,22 @@ public class InstallerListeners
      * @param prompt      the prompt
      */
     public InstallerListeners(AutomatedInstallData installData, Prompt prompt)
+    {
+        this(installData, prompt, new Metrics(false, null));
+    }
+
+    /**
+     * Constructs an {@code InstallerListeners}.
+     *
+     * @param installData the installation data
+     * @param prompt      the prompt
+     * @param metrics     the metrics
+     */
+    public InstallerListeners(AutomatedInstallData installData, Prompt prompt, Metrics metrics)
     {
         this.installData = installData;
         this.prompt = prompt;
+        this.metrics = metrics;
     }
 
     /**
@@ -160,6 +179,7 @@ public class InstallerListeners
      */
     public void beforePacks(List<Pack> packs, ProgressListener listener)
     {
+        long start = metrics.start();
         for (InstallerListener l : listeners)
         {
             if (l instanceof SimpleInstallerListener)
@@ -168,6 +188,7 @@ public class InstallerListeners
             }
             l.beforePacks(packs);
         }
+        metrics.stop("listeners.beforePacks", start);
     }
 
     /**
@@ -180,6 +201,7 @@ public class InstallerListeners
      */
     public void beforePack(Pack pack, int i, ProgressListener listener)
     {
+        long start = metrics.start();
         for (InstallerListener l : listeners)
         {
             if (l instanceof SimpleInstallerListener)
@@ -188,6 +210,7 @@ public class InstallerListeners
             }
             l.beforePack(pack, i);
         }
+        metrics.stop("listeners.beforePack", start);
     }
 
     /**
@@ -210,10 +233,12 @@ public class InstallerListeners
      */
     public void beforeDir(File dir, PackFile packFile, Pack pack)
     {
+        long start = metrics.start();
         for (InstallerListener l : fileListeners)
         {
             l.beforeDir(dir, packFile, pack);
         }
+        metrics.stop("listeners.beforeDir", start);
     }
 
     /**
@@ -226,10 +251,12 @@ public class InstallerListeners
      */
     public void afterDir(File dir, PackFile packFile, Pack pack)
     {
+        long start = metrics.start();
         for (InstallerListener l : fileListeners)
         {
             l.afterDir(dir, packFile, pack);
         }
+        metrics.stop("listeners.afterDir", start);
     }
 
     /**
@@ -244,10 +271,12 @@ public class InstallerListeners
      */
     public void beforeFile(File file, PackFile packFile, Pack pack)
     {
+        long start = metrics.start();
         for (InstallerListener l : fileListeners)
         {
             l.beforeFile(file, packFile, pack);
         }
+        metrics.stop("listeners.beforeFile", start);
     }
 
     /**
@@ -262,10 +291,12 @@ public class InstallerListeners
      */
     public void afterFile(File file, PackFile packFile, Pack pack)
     {
+        long start = metrics.start();
         for (InstallerListener l : fileListeners)
         {
             l.afterFile(file, packFile, pack);
         }
+        metrics.stop("listeners.afterFile", start);
     }
 
     /**
@@ -278,6 +309,7 @@ public class InstallerListeners
      */
     public void afterPack(Pack pack, int i, ProgressListener listener)
     {
+        long start = metrics.start();
         for (InstallerListener l : listeners)
         {
             if (l instanceof SimpleInstallerListener)
@@ -286,6 +318,7 @@ public class InstallerListeners
             }
             l.afterPack(pack, i);
         }
+        metrics.stop("listeners.afterPack", start);
     }
 
     /**
@@ -297,6 +330,7 @@ public class InstallerListeners
      */
     public void afterPacks(List<Pack> packs, ProgressListener listener)
     {
+        long start = metrics.start();
         for (InstallerListener l : listeners)
         {
             if (l instanceof SimpleInstallerListener)
@@ -305,6 +339,7 @@ public class InstallerListeners
             }
             l.afterPacks(packs, listener);
         }
+        metrics.stop("listeners.afterPacks", start);
     }
 
 }
@@ -0,0 +1,283 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.event;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.izforge.izpack.api.event.ProgressListener;
+
+
+/**
+ * A {@link ProgressListener} that limits the rate at which {@link #progress(int, String)} notifications are delivered
+ * to another listener.
+ * <p/>
+ * The unpacker notifies progress for every file it installs, which for GUI listeners means a runnable on the event
+ * dispatch thread per file. This listener keeps only the latest sub-step and message, and publishes it at most once
+ * per interval. If no further notification arrives, the latest state is published by a timer once the interval
+ * elapses, so a file that takes a long time to install is still displayed.
+ * <p/>
+ * All other notifications are delivered immediately, after first publishing any pending progress, so listeners see
+ * notifications in the order they were made.
+ */
+public class ProgressCoalescer implements ProgressListener
+{
+
+    /**
+     * The default publication interval, in milliseconds. This corresponds to ~30 updates per second.
+     */
+    public static final long DEFAULT_INTERVAL = 33;
+
+    /**
+     * The listener to delegate to.
+     */
+    private final ProgressListener listener;
+
+    /**
+     * The publication interval, in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * Determines if there is progress waiting to be published.
+     */
+    private boolean pending;
+
+    /**
+     * The latest sub-step.
+     */
+    private int subStep;
+
+    /**
+     * The latest message.
+     */
+    private String message;
+
+    /**
+     * The time progress was last published, in nanoseconds.
+     */
+    private long published;
+
+    /**
+     * The timer used to publish deferred progress. Lazily created.
+     */
+    private ScheduledExecutorService timer;
+
+    /**
+     * The scheduled publication of deferred progress, or {@code null} if none is scheduled.
+     */
+    private ScheduledFuture<?> scheduled;
+
+
+    /**
+     * Constructs a {@code ProgressCoalescer} that publishes progress at the {@link #DEFAULT_INTERVAL}.
+     *
+     * @param listener the listener to delegate to
+     */
+    public ProgressCoalescer(ProgressListener listener)
+    {
+        this(listener, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructs a {@code ProgressCoalescer}.
+     *
+     * @param listener the listener to delegate to
+     * @param interval the publication interval, in milliseconds
+     */
+    public ProgressCoalescer(ProgressListener listener, long interval)
+    {
+        this.listener = listener;
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.published = System.nanoTime() - this.interval;
+    }
+
+    /**
+     * Returns the listener being delegated to.
+     *
+     * @return the listener
+     */
+    public ProgressListener getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * Invoked when an action starts.
+     *
+     * @param name  the name of the action
+     * @param steps the number of steps the action consists of
+     */
+    @Override
+    public synchronized void startAction(String name, int steps)
+    {
+        flush();
+        listener.startAction(name, steps);
+    }
+
+    /**
+     * Invoked when an action finishes.
+     * <p/>
+     * This publishes any pending progress, and stops the timer.
+     */
+    @Override
+    public synchronized void stopAction()
+    {
+        flush();
+        listener.stopAction();
+        if (timer != null)
+        {
+            timer.shutdownNow();
+            timer = null;
+            scheduled = null;
+        }
+    }
+
+    /**
+     * Invoked when an action step starts.
+     *
+     * @param stepName the name of the step
+     * @param step     the step number
+     * @param subSteps the number of sub-steps the step consists of
+     */
+    @Override
+    public synchronized void nextStep(String stepName, int step, int subSteps)
+    {
+        flush();
+        listener.nextStep(stepName, step, subSteps);
+    }
+
+    /**
+     * Sets the number of sub-steps.
+     *
+     * @param subSteps the number of sub-steps
+     */
+    @Override
+    public synchronized void setSubStepNo(int subSteps)
+    {
+        flush();
+        listener.setSubStepNo(subSteps);
+    }
+
+    /**
+     * Invoked to notify progress.
+     * <p/>
+     * As this increments the current step, it is never coalesced.
+     *
+     * @param message a message describing the step
+     */
+    @Override
+    public synchronized void progress(String message)
+    {
+        flush();
+        listener.progress(message);
+    }
+
+    /**
+     * Invoked to notify progress.
+     * <p/>
+     * The notification is published immediately if the interval has elapsed since the last publication. If not,
+     * it replaces any pending progress, and is published when the interval elapses.
+     *
+     * @param subStep the sub-step which will be performed next
+     * @param message an additional message describing the sub-step
+     */
+    @Override
+    public synchronized void progress(int subStep, String message)
+    {
+        this.subStep = subStep;
+        this.message = message;
+        pending = true;
+        long elapsed = System.nanoTime() - published;
+        if (elapsed >= interval)
+        {
+            flush();
+        }
+        else if (scheduled == null)
+        {
+            schedule(interval - elapsed);
+        }
+    }
+
+    /**
+     * Invoked when an action restarts.
+     *
+     * @param name           the name of the action
+     * @param overallMessage a message describing the overall progress
+     * @param tip            a tip describing the current progress
+     * @param steps          the number of steps the action consists of
+     */
+    @Override
+    public synchronized void restartAction(String name, String overallMessage, String tip, int steps)
+    {
+        flush();
+        listener.restartAction(name, overallMessage, tip, steps);
+    }
+
+    /**
+     * Publishes any pending progress.
+     */
+    public synchronized void flush()
+    {
+        if (pending)
+        {
+            pending = false;
+            published = System.nanoTime();
+            listener.progress(subStep, message);
+        }
+    }
+
+    /**
+     * Schedules publication of pending progress.
+     *
+     * @param delay the delay, in nanoseconds
+     */
+    private void schedule(long delay)
+    {
+        if (timer == null)
+        {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack progress");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        scheduled = timer.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (ProgressCoalescer.this)
+                {
+                    scheduled = null;
+                    flush();
+                }
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+}
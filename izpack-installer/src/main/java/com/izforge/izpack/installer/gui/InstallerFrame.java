@@ -84,6 +84,7 @@ import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.data.UninstallDataWriter;
 import com.izforge.izpack.installer.debugger.Debugger;
 import com.izforge.izpack.installer.unpacker.IUnpacker;
+import com.izforge.izpack.installer.web.WebPackDownloader;
 import com.izforge.izpack.util.Debug;
 import com.izforge.izpack.util.Housekeeper;
 
@@ -214,6 +215,11 @@ public class InstallerFrame extends JFrame implements InstallerBase, InstallerVi
      */
     private IUnpacker unpacker;
 
+    /**
+     * The downloader for web-based packs. May be {@code null}.
+     */
+    private WebPackDownloader downloader;
+
     /**
      * The house keeper.
      */
@@ -280,6 +286,18 @@ public class InstallerFrame extends JFrame implements InstallerBase, InstallerVi
         this.unpacker = unpacker;
     }
 
+    /**
+     * Sets the downloader for web-based packs.
+     * <p/>
+     * Once the packs panel is confirmed, the selected packs are downloaded in the background.
+     *
+     * @param downloader the downloader. May be {@code null}
+     */
+    public void setPackDownloader(WebPackDownloader downloader)
+    {
+        this.downloader = downloader;
+    }
+
     @Override
     public void sizeFrame()
     {
@@ -625,6 +643,7 @@ public class InstallerFrame extends JFrame implements InstallerBase, InstallerVi
             }
             callGUIListener(GUIListener.PANEL_SWITCHED);
             log.addDebugMessage("InstallerFrame.switchPanel: switched", null, Log.PANEL_TRACE, null);
+            prefetchPacks(oldPanel);
         }
         catch (Exception e)
         {
@@ -633,6 +652,23 @@ public class InstallerFrame extends JFrame implements InstallerBase, InstallerVi
         }
     }
 
+    /**
+     * Starts downloading the selected packs of a web-based installer, when navigating forward from a packs panel.
+     *
+     * @param oldPanel the panel switched from. May be {@code null}
+     */
+    private void prefetchPacks(IzPanelView oldPanel)
+    {
+        if (downloader != null && oldPanel != null && !panels.isBack())
+        {
+            String className = oldPanel.getPanel().getClassName();
+            if (className != null && className.endsWith("PacksPanel"))
+            {
+                downloader.prefetch(installdata.getSelectedPacks());
+            }
+        }
+    }
+
     /**
      * Centers a window on screen.
      *
@@ -42,6 +42,7 @@ import com.izforge.izpack.api.handler.Prompt;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.io.FileSpanningInputStream;
+import com.izforge.izpack.core.io.PackInputStream;
 import com.izforge.izpack.core.io.VolumeLocator;
 import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.event.InstallerListeners;
@@ -54,6 +55,7 @@ import com.izforge.izpack.installer.unpacker.UnpackerBase;
 import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.PlatformModelMatcher;
 import com.izforge.izpack.util.file.FileUtils;
+import com.izforge.izpack.util.metrics.Metrics;
 import com.izforge.izpack.util.os.FileQueue;
 
 
@@ -100,14 +102,15 @@ public class MultiVolumeUnpacker extends UnpackerBase
      * @param prompt              the prompt
      * @param locator             the multi-volume locator
      * @param matcher             the platform-model matcher
+     * @param metrics             the metrics
      */
     public MultiVolumeUnpacker(InstallData installData, PackResources resources, RulesEngine rules,
                                VariableSubstitutor variableSubstitutor, UninstallData uninstallData,
                                FileQueueFactory queue, Housekeeper housekeeper, InstallerListeners listeners,
-                               Prompt prompt, VolumeLocator locator, PlatformModelMatcher matcher)
+                               Prompt prompt, VolumeLocator locator, PlatformModelMatcher matcher, Metrics metrics)
     {
         super(installData, resources, rules, variableSubstitutor, uninstallData, queue, housekeeper, listeners,
-              prompt, matcher);
+              prompt, matcher, metrics);
         this.locator = locator;
     }
 
@@ -196,7 +199,7 @@ public class MultiVolumeUnpacker extends UnpackerBase
      * @throws IOException if the file cannot be skipped
      */
     @Override
-    protected void skip(PackFile file, Pack pack, ObjectInputStream packInputStream) throws IOException
+    protected void skip(PackFile file, Pack pack, PackInputStream packInputStream) throws IOException
     {
         // this operation is a no-op for MultiVolumeUnpacker as the file is not in the pack stream
     }
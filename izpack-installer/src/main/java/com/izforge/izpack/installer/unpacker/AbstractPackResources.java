@@ -22,14 +22,21 @@
 package com.izforge.izpack.installer.unpacker;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.SequenceInputStream;
 import java.lang.reflect.Constructor;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
 
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceInterruptedException;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.io.PackFormat;
+import com.izforge.izpack.util.file.FileUtils;
 
 
 /**
@@ -49,6 +56,16 @@ public abstract class AbstractPackResources implements PackResources
      */
     private final InstallData installData;
 
+    /**
+     * The pack index. Lazily read.
+     */
+    private PackIndex index;
+
+    /**
+     * The pack stream format, or {@code 0} if it hasn't been read.
+     */
+    private int format;
+
     /**
      * Constructs an {@code AbstractPackResources}.
      *
@@ -63,6 +80,8 @@ public abstract class AbstractPackResources implements PackResources
 
     /**
      * Returns the stream to a resource.
+     * <p/>
+     * If the pack is indexed, its blocks are joined, so the stream covers the entire pack.
      *
      * @param name the resource name
      * @return a stream to the resource
@@ -78,21 +97,83 @@ public abstract class AbstractPackResources implements PackResources
 
         if (webDirURL == null)
         {
-            result = getLocalPackStream(name);
+            result = getBlockStream(name, 0);
         }
         else
         {
-            result = getWebPackStream(name, webDirURL);
+            result = decode(getWebPackStream(name, webDirURL));
         }
-        String className = installData.getInfo().getPackDecoderClassName();
-        if (className != null)
+        return result;
+    }
+
+    /**
+     * Returns the stream to a pack, positioned at the specified byte offset.
+     * <p/>
+     * If the pack is indexed, only the block containing the offset is decoded.
+     *
+     * @param name   the pack name
+     * @param offset the byte offset in the pack stream
+     * @return a stream to the pack, positioned at the offset
+     * @throws ResourceNotFoundException    if the resource cannot be found
+     * @throws ResourceInterruptedException if resource retrieval is interrupted
+     * @throws ResourceException            for any other resource error
+     */
+    @Override
+    public InputStream getPackStream(String name, long offset)
+    {
+        InputStream result;
+        long block = getPackIndex().getBlock(name, offset);
+        if (block == 0)
         {
-            result = getDecodingInputStream(result, className);
+            result = getPackStream(name);
+        }
+        else
+        {
+            result = getBlockStream(name, block);
+        }
+        try
+        {
+            skip(result, offset - block);
+        }
+        catch (IOException exception)
+        {
+            FileUtils.close(result);
+            throw new ResourceException("Failed to seek to offset " + offset + " of pack " + name, exception);
         }
-
         return result;
     }
 
+    /**
+     * Returns the format of the pack streams, as recorded in <em>packs.info</em>.
+     * <p/>
+     * See compiler.Packager#writePacks for the counterpart.
+     *
+     * @return the pack stream format. One of the {@link PackFormat} versions
+     * @throws ResourceException if the format cannot be determined
+     */
+    @Override
+    public synchronized int getPackFormat()
+    {
+        if (format == 0)
+        {
+            ObjectInputStream in = null;
+            try
+            {
+                in = new ObjectInputStream(resources.getInputStream("packs.info"));
+                format = (in.readInt() == PackFormat.VERSION_MARKER) ? in.readInt() : PackFormat.SERIALIZED;
+            }
+            catch (IOException exception)
+            {
+                throw new ResourceException("Failed to read pack format", exception);
+            }
+            finally
+            {
+                FileUtils.close(in);
+            }
+        }
+        return format;
+    }
+
     /**
      * Returns the stream to a resource.
      *
@@ -108,6 +189,132 @@ public abstract class AbstractPackResources implements PackResources
         return resources.getInputStream(name);
     }
 
+    /**
+     * Returns the pack index, reading it on first access.
+     * <p/>
+     * Installers without an index, and web-based installers, have an empty index.
+     *
+     * @return the pack index
+     * @throws ResourceException if the index cannot be read
+     */
+    protected synchronized PackIndex getPackIndex()
+    {
+        if (index == null)
+        {
+            if (installData.getInfo().getWebDirURL() == null)
+            {
+                InputStream in = null;
+                try
+                {
+                    in = resources.getInputStream("packs.index");
+                    index = new PackIndex(in);
+                }
+                catch (ResourceNotFoundException exception)
+                {
+                    index = new PackIndex();
+                }
+                catch (IOException exception)
+                {
+                    throw new ResourceException("Failed to read pack index", exception);
+                }
+                finally
+                {
+                    FileUtils.close(in);
+                }
+            }
+            else
+            {
+                index = new PackIndex();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the stream to a local pack, starting at the specified block.
+     * <p/>
+     * The block and the blocks following it are each decoded, and joined, so that the stream extends to the end of
+     * the pack. Blocks are only opened when the preceding block has been read.
+     * <p/>
+     * See compiler.Packager#startBlock for the counterpart.
+     *
+     * @param name  the pack name
+     * @param block the byte offset at which the block starts
+     * @return a stream to the pack, starting at the block
+     * @throws ResourceNotFoundException if a block cannot be found
+     * @throws ResourceException         for any other resource error
+     */
+    private InputStream getBlockStream(final String name, long block)
+    {
+        final long[] blocks = getPackIndex().getBlocks(name, block);
+        if (blocks.length == 1)
+        {
+            return decode(getBlockResource(name, block));
+        }
+        final BlockEnumeration enumeration = new BlockEnumeration(name, blocks);
+        return new SequenceInputStream(enumeration)
+        {
+            @Override
+            public void close() throws IOException
+            {
+                // don't open the remaining blocks just to close them
+                enumeration.close();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Returns the undecoded stream to a block of a local pack.
+     *
+     * @param name  the pack name
+     * @param block the byte offset at which the block starts
+     * @return a stream to the block
+     * @throws ResourceNotFoundException if the block cannot be found
+     */
+    private InputStream getBlockResource(String name, long block)
+    {
+        return (block == 0) ? getLocalPackStream(name) : resources.getInputStream(
+                PackIndex.getBlockResource(name, block));
+    }
+
+    /**
+     * Decodes a pack stream, if a pack decoder is configured.
+     *
+     * @param in the stream to decode
+     * @return the decoded stream
+     * @throws ResourceException if the decoder cannot be created
+     */
+    private InputStream decode(InputStream in)
+    {
+        String className = installData.getInfo().getPackDecoderClassName();
+        return (className != null) ? getDecodingInputStream(in, className) : in;
+    }
+
+    /**
+     * Skips bytes in a stream.
+     *
+     * @param in    the stream
+     * @param bytes the no. of bytes to skip
+     * @throws IOException for any I/O error, or if the end of the stream is reached
+     */
+    private void skip(InputStream in, long bytes) throws IOException
+    {
+        while (bytes > 0)
+        {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0)
+            {
+                if (in.read() == -1)
+                {
+                    throw new IOException("Unexpected end of stream, with " + bytes + " bytes left to skip");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
     /**
      * Returns a stream that decodes the supplied stream.
      *
@@ -175,4 +382,77 @@ public abstract class AbstractPackResources implements PackResources
         return installData;
     }
 
+    /**
+     * Enumerates the decoded blocks of a pack, opening each on demand.
+     */
+    private class BlockEnumeration implements Enumeration<InputStream>
+    {
+
+        /**
+         * The pack name.
+         */
+        private final String name;
+
+        /**
+         * The byte offsets at which the blocks start.
+         */
+        private final long[] blocks;
+
+        /**
+         * The index of the next block.
+         */
+        private int next;
+
+        /**
+         * Determines if the stream has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Constructs a {@code BlockEnumeration}.
+         *
+         * @param name   the pack name
+         * @param blocks the byte offsets at which the blocks start
+         */
+        public BlockEnumeration(String name, long[] blocks)
+        {
+            this.name = name;
+            this.blocks = blocks;
+        }
+
+        /**
+         * Determines if there are more blocks.
+         *
+         * @return {@code true} if there are more blocks
+         */
+        @Override
+        public boolean hasMoreElements()
+        {
+            return !closed && next < blocks.length;
+        }
+
+        /**
+         * Opens the next block.
+         *
+         * @return a stream to the decoded block
+         * @throws ResourceNotFoundException if the block cannot be found
+         */
+        @Override
+        public InputStream nextElement()
+        {
+            if (!hasMoreElements())
+            {
+                throw new NoSuchElementException();
+            }
+            return decode(getBlockResource(name, blocks[next++]));
+        }
+
+        /**
+         * Indicates that the stream has been closed, so no more blocks should be opened.
+         */
+        public void close()
+        {
+            closed = true;
+        }
+    }
 }
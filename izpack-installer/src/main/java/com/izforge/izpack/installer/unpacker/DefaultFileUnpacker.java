@@ -23,7 +23,7 @@ package com.izforge.izpack.installer.unpacker;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 
 import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.exception.InstallerException;
@@ -59,7 +59,7 @@ public class DefaultFileUnpacker extends FileUnpacker
      * @throws InstallerException for any installer exception
      */
     @Override
-    public void unpack(PackFile file, ObjectInputStream packInputStream, File target)
+    public void unpack(PackFile file, InputStream packInputStream, File target)
             throws IOException, InstallerException
     {
         copy(file, packInputStream, target);
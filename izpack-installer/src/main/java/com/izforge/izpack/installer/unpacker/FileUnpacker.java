@@ -22,12 +22,14 @@
 package com.izforge.izpack.installer.unpacker;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
 import com.izforge.izpack.api.data.Blockable;
@@ -73,6 +75,32 @@ public abstract class FileUnpacker
      */
     private boolean queued;
 
+    /**
+     * The minimum copy buffer size.
+     */
+    static final int MIN_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The maximum copy buffer size.
+     */
+    static final int MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The no. of bytes to copy between checks for cancellation.
+     */
+    private static final long CANCEL_CHECK_BYTES = 1024 * 1024;
+
+    /**
+     * The maximum no. of bytes to transfer between files in a single operation.
+     */
+    private static final long TRANSFER_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * The copy buffer of each unpacking thread. This is softly referenced, so that large buffers may be reclaimed
+     * once unpacking completes.
+     */
+    private static final ThreadLocal<SoftReference<byte[]>> buffers = new ThreadLocal<SoftReference<byte[]>>();
+
     /**
      * The logger.
      */
@@ -100,7 +128,7 @@ public abstract class FileUnpacker
      * @throws IOException        for any I/O error
      * @throws InstallerException for any installer exception
      */
-    public abstract void unpack(PackFile file, ObjectInputStream packInputStream, File target)
+    public abstract void unpack(PackFile file, InputStream packInputStream, File target)
             throws IOException, InstallerException;
 
     /**
@@ -117,6 +145,9 @@ public abstract class FileUnpacker
      * Copies an input stream to a target, setting its timestamp to that of the pack file.
      * <p/>
      * If the target is a blockable file, then a temporary file will be created, and the file queued.
+     * <p/>
+     * Files are transferred directly if the stream is a file, otherwise they are copied using a buffer sized to the
+     * file, up to {@link #MAX_BUFFER_SIZE}. Buffers are reused by each thread.
      *
      * @param file   the pack file
      * @param in     the pack file stream
@@ -129,16 +160,24 @@ public abstract class FileUnpacker
         OutputStream out = getTarget(file, target);
         try
         {
-            byte[] buffer = new byte[5120];
-            long bytesCopied = 0;
-            while (bytesCopied < file.length())
+            if (in instanceof FileInputStream && out instanceof FileOutputStream)
+            {
+                transfer(file, ((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+            }
+            else
             {
-                if (cancellable.isCancelled())
+                byte[] buffer = getBuffer(file.length());
+                long bytesCopied = 0;
+                long nextCheck = 0;
+                while (bytesCopied < file.length())
                 {
-                    // operation cancelled
-                    throw new InterruptedIOException("Copy operation cancelled");
+                    if (bytesCopied >= nextCheck)
+                    {
+                        checkCancelled();
+                        nextCheck = bytesCopied + CANCEL_CHECK_BYTES;
+                    }
+                    bytesCopied = copy(file, buffer, in, out, bytesCopied);
                 }
-                bytesCopied = copy(file, buffer, in, out, bytesCopied);
             }
         }
         finally
@@ -148,6 +187,44 @@ public abstract class FileUnpacker
         postCopy(file);
     }
 
+    /**
+     * Transfers a file between channels, without copying it through the heap.
+     *
+     * @param file the pack file
+     * @param in   the channel to read from
+     * @param out  the channel to write to
+     * @throws InterruptedIOException if the copy operation is cancelled
+     * @throws IOException            for any I/O error
+     */
+    private void transfer(PackFile file, FileChannel in, FileChannel out) throws IOException
+    {
+        long position = 0;
+        while (position < file.length())
+        {
+            checkCancelled();
+            long transferred = out.transferFrom(in, position, Math.min(file.length() - position, TRANSFER_BYTES));
+            if (transferred <= 0)
+            {
+                throw new IOException("Unexpected end of stream (installer corrupted?)");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Throws an exception if unpacking has been cancelled.
+     *
+     * @throws InterruptedIOException if the copy operation is cancelled
+     */
+    private void checkCancelled() throws InterruptedIOException
+    {
+        if (cancellable.isCancelled())
+        {
+            // operation cancelled
+            throw new InterruptedIOException("Copy operation cancelled");
+        }
+    }
+
     /**
      * Invoked after copying is complete to set the last modified timestamp, and queue blockable files.
      *
@@ -192,16 +269,52 @@ public abstract class FileUnpacker
 
     /**
      * Reads up to <tt>maxBytes</tt> bytes to the specified buffer.
+     * <p/>
+     * This reads until <tt>maxBytes</tt> have been read or the end of the stream is reached, so that the buffer
+     * is written in as few operations as possible. Decompressing streams typically return much less than requested.
      *
      * @param buffer   the buffer
      * @param in       the input stream
      * @param maxBytes the maximum no. of bytes to read
-     * @return the no. of bytes read
+     * @return the no. of bytes read, or <tt>-1</tt> if the end of the stream was reached before any were read
      * @throws IOException for any I/O error
      */
     protected int read(byte[] buffer, InputStream in, int maxBytes) throws IOException
     {
-        return in.read(buffer, 0, maxBytes);
+        int count = 0;
+        while (count < maxBytes)
+        {
+            int read = in.read(buffer, count, maxBytes - count);
+            if (read == -1)
+            {
+                break;
+            }
+            count += read;
+        }
+        return (count == 0 && maxBytes > 0) ? -1 : count;
+    }
+
+    /**
+     * Returns a buffer to copy a file with.
+     * <p/>
+     * The buffer of the current thread is reused if it is large enough, otherwise it is replaced with one sized to
+     * the file, within {@link #MIN_BUFFER_SIZE} and {@link #MAX_BUFFER_SIZE}.
+     *
+     * @param length the file length
+     * @return the buffer
+     */
+    static byte[] getBuffer(long length)
+    {
+        int size = (int) Math.min(Math.max(length, MIN_BUFFER_SIZE), MAX_BUFFER_SIZE);
+        SoftReference<byte[]> reference = buffers.get();
+        byte[] buffer = (reference != null) ? reference.get() : null;
+        if (buffer == null || buffer.length < size)
+        {
+            // round up to a power of two, so buffers are replaced at most a few times
+            buffer = new byte[Math.min(Integer.highestOneBit(size - 1) << 1, MAX_BUFFER_SIZE)];
+            buffers.set(new SoftReference<byte[]>(buffer));
+        }
+        return buffer;
     }
 
     /**
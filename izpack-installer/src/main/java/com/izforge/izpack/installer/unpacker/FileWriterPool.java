@@ -0,0 +1,301 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.izforge.izpack.api.exception.IzPackException;
+
+
+/**
+ * Writes unpacked files on a bounded pool of threads, while the pack stream is read by the installation thread.
+ * <p/>
+ * The installation thread {@link #reserve reserves} memory for the content of a file before reading it, so the
+ * memory used by files waiting to be written is bounded. Completion of files is reported in the order they were
+ * submitted, on the installation thread, so that installer listeners are notified in pack order.
+ * <p/>
+ * This class is not thread safe; all methods must be invoked by the installation thread.
+ */
+class FileWriterPool
+{
+
+    /**
+     * The worker threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The no. of bytes that may be reserved by files waiting to be written.
+     */
+    private final Semaphore buffers;
+
+    /**
+     * The maximum no. of bytes that may be reserved.
+     */
+    private final int maxBytes;
+
+    /**
+     * The submitted writes, in submission order.
+     */
+    private final LinkedList<Write> pending = new LinkedList<Write>();
+
+    /**
+     * The targets of the submitted writes.
+     */
+    private final Set<File> targets = new HashSet<File>();
+
+
+    /**
+     * Constructs a {@code FileWriterPool}.
+     *
+     * @param threads  the no. of worker threads
+     * @param maxBytes the maximum no. of bytes that may be reserved by files waiting to be written
+     */
+    public FileWriterPool(int threads, int maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        buffers = new Semaphore(maxBytes);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack file writer " + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the maximum no. of bytes that may be reserved.
+     *
+     * @return the maximum no. of bytes
+     */
+    public int getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Determines if a write to a target is pending.
+     *
+     * @param target the target file
+     * @return {@code true} if a write to the target has been submitted, but its completion not yet reported
+     */
+    public boolean isPending(File target)
+    {
+        return targets.contains(target);
+    }
+
+    /**
+     * Reserves memory for the content of a file, waiting for submitted writes to complete if required.
+     * <p/>
+     * The reservation is released when the write subsequently {@link #submit submitted} for it completes.
+     *
+     * @param bytes the no. of bytes to reserve. Must not exceed {@link #getMaxBytes()}
+     * @throws IOException for any I/O error reported by a completed write, or if interrupted
+     */
+    public void reserve(int bytes) throws IOException
+    {
+        while (!buffers.tryAcquire(bytes))
+        {
+            if (pending.isEmpty())
+            {
+                throw new IllegalStateException("Cannot reserve " + bytes + " bytes");
+            }
+            completeFirst();
+        }
+    }
+
+    /**
+     * Submits a write.
+     *
+     * @param target     the target file
+     * @param bytes      the no. of bytes {@link #reserve reserved} for the write
+     * @param write      writes the file
+     * @param completion invoked on the installation thread once the write and all preceding writes have completed
+     * @throws IOException for any I/O error reported by a completed write
+     */
+    public void submit(File target, final int bytes, final Callable<Void> write, Runnable completion)
+            throws IOException
+    {
+        Future<Void> future = executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                try
+                {
+                    return write.call();
+                }
+                finally
+                {
+                    buffers.release(bytes);
+                }
+            }
+        });
+        pending.add(new Write(target, future, completion));
+        targets.add(target);
+        complete(false);
+    }
+
+    /**
+     * Waits for all submitted writes to complete, and reports their completion.
+     *
+     * @throws IOException for any I/O error reported by a write
+     */
+    public void await() throws IOException
+    {
+        complete(true);
+    }
+
+    /**
+     * Stops the worker threads. Writes not yet started are discarded, and their completion is not reported.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        try
+        {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        pending.clear();
+        targets.clear();
+    }
+
+    /**
+     * Reports the completion of writes, in submission order.
+     *
+     * @param wait if {@code true}, wait for all writes to complete, otherwise stop at the first incomplete write
+     * @throws IOException for any I/O error reported by a write
+     */
+    private void complete(boolean wait) throws IOException
+    {
+        while (!pending.isEmpty() && (wait || pending.getFirst().future.isDone()))
+        {
+            completeFirst();
+        }
+    }
+
+    /**
+     * Waits for the oldest write to complete, and reports its completion.
+     *
+     * @throws IOException for any I/O error reported by the write
+     */
+    private void completeFirst() throws IOException
+    {
+        Write write = pending.removeFirst();
+        targets.remove(write.target);
+        get(write.future);
+        write.completion.run();
+    }
+
+    /**
+     * Waits for a write to complete.
+     *
+     * @param future the write future
+     * @throws IOException for any I/O error reported by the write, or if interrupted
+     */
+    private void get(Future<Void> future) throws IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing files");
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof IzPackException)
+            {
+                throw (IzPackException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to write file", cause);
+        }
+    }
+
+    /**
+     * A submitted write.
+     */
+    private static class Write
+    {
+
+        /**
+         * The target file.
+         */
+        private final File target;
+
+        /**
+         * The write future.
+         */
+        private final Future<Void> future;
+
+        /**
+         * Invoked when the write completes.
+         */
+        private final Runnable completion;
+
+        /**
+         * Constructs a {@code Write}.
+         *
+         * @param target     the target file
+         * @param future     the write future
+         * @param completion invoked when the write completes
+         */
+        public Write(File target, Future<Void> future, Runnable completion)
+        {
+            this.target = target;
+            this.future = future;
+            this.completion = completion;
+        }
+    }
+}
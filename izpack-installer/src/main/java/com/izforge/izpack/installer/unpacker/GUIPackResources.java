@@ -1,6 +1,7 @@
 package com.izforge.izpack.installer.unpacker;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
@@ -11,8 +12,7 @@ import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceInterruptedException;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Resources;
-import com.izforge.izpack.installer.web.WebRepositoryAccessor;
-import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.installer.web.WebPackDownloader;
 
 
 /**
@@ -24,23 +24,28 @@ public class GUIPackResources extends AbstractPackResources
 {
 
     /**
-     * Temporary directory.
+     * The downloader for web-based packs.
      */
-    private static final String tempSubPath = "/IzpackWebTemp";
+    private final WebPackDownloader downloader;
 
     /**
      * Constructs a {@code GUIPackResources}.
      *
      * @param resources   the resources
      * @param installData the installation data
+     * @param downloader  the downloader for web-based packs
      */
-    public GUIPackResources(Resources resources, InstallData installData)
+    public GUIPackResources(Resources resources, InstallData installData, WebPackDownloader downloader)
     {
         super(resources, installData);
+        this.downloader = downloader;
     }
 
     /**
      * Returns the stream to a web-based pack resource.
+     * <p/>
+     * All selected packs are submitted for download, so that those not yet installed are downloaded while this one
+     * is being installed.
      *
      * @param name      the resource name
      * @param webDirURL the web URL to load the resource from
@@ -54,19 +59,11 @@ public class GUIPackResources extends AbstractPackResources
 
         // TODO: Look first in same directory as primary jar
         // This may include prompting for changing of media
-        // TODO: download and cache them all before starting copy process
-
-        // See compiler.Packager#getJarOutputStream for the counterpart
-        InstallData installData = getInstallData();
-        String baseName = installData.getInfo().getInstallerBase();
-        String packURL = webDirURL + "/" + baseName + ".pack-" + name + ".jar";
-        String tempFolder = IoHelper.translatePath(
-                installData.getInfo().getUninstallerPath() + GUIPackResources.tempSubPath,
-                installData.getVariables());
-        String tempFile;
+        downloader.prefetch(getInstallData().getSelectedPacks());
+        File file;
         try
         {
-            tempFile = WebRepositoryAccessor.getCachedUrl(packURL, tempFolder);
+            file = downloader.getPack(name);
         }
         catch (InterruptedIOException exception)
         {
@@ -78,7 +75,7 @@ public class GUIPackResources extends AbstractPackResources
         }
         try
         {
-            URL url = new URL("jar:" + tempFile + "!/packs/pack-" + name);
+            URL url = new URL("jar:" + file.toURI().toURL() + "!/packs/pack-" + name);
             result = url.openStream();
         }
         catch (IOException exception)
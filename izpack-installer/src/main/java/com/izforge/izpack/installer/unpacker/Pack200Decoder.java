@@ -0,0 +1,353 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Pack200;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.api.exception.IzPackException;
+import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Decodes the <em>packs/pack200-N</em> resources to temporary jars on background threads.
+ * <p/>
+ * Pack200 entries are numbered in the order that the installer reads them, so when entry N is requested, the entries
+ * following it are decoded ahead of time, while the unpacker writes other files. Entries that are decoded but never
+ * requested, e.g. because their pack file was skipped, are discarded on {@link #shutdown}.
+ * <p/>
+ * Compilers running on a JVM without Pack200 support store entries as jars re-compressed at maximum deflate instead.
+ * These are recognised by their zip signature and copied as is, so they can be installed on any JVM.
+ */
+class Pack200Decoder
+{
+
+    /**
+     * The signature that starts a zip local file header.
+     */
+    private static final int ZIP_SIGNATURE = 0x504B0304;
+
+    /**
+     * The pack resources.
+     */
+    private final PackResources resources;
+
+    /**
+     * The no. of decoder threads.
+     */
+    private final int threads;
+
+    /**
+     * The no. of entries to decode ahead of the one being requested.
+     */
+    private final int lookAhead;
+
+    /**
+     * The decoder threads. Lazily created.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The decoded entries not yet requested, keyed on entry identifier.
+     */
+    private final Map<Integer, Future<File>> decoded = new HashMap<Integer, Future<File>>();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(Pack200Decoder.class.getName());
+
+
+    /**
+     * Constructs a {@code Pack200Decoder}.
+     *
+     * @param resources the pack resources
+     */
+    public Pack200Decoder(PackResources resources)
+    {
+        this(resources, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * Constructs a {@code Pack200Decoder}.
+     *
+     * @param resources the pack resources
+     * @param threads   the no. of decoder threads
+     */
+    public Pack200Decoder(PackResources resources, int threads)
+    {
+        this.resources = resources;
+        this.threads = threads;
+        this.lookAhead = threads * 2;
+    }
+
+    /**
+     * Returns a stream to a decoded Pack200 entry, waiting for it to be decoded if required.
+     * <p/>
+     * The decoded jar is deleted when the stream is closed.
+     *
+     * @param key the Pack200 entry identifier
+     * @return a stream to the decoded jar
+     * @throws InterruptedIOException if interrupted while waiting for the entry to be decoded
+     * @throws IOException            if the entry cannot be decoded
+     */
+    public InputStream getInputStream(int key) throws IOException
+    {
+        Future<File> future;
+        synchronized (this)
+        {
+            future = decoded.remove(key);
+            if (future == null)
+            {
+                future = submit(key);
+            }
+            for (int i = key + 1; i <= key + lookAhead; ++i)
+            {
+                if (!decoded.containsKey(i))
+                {
+                    decoded.put(i, submit(i));
+                }
+            }
+        }
+        final File file = get(key, future);
+        return new FileInputStream(file)
+        {
+            @Override
+            public void close() throws IOException
+            {
+                super.close();
+                FileUtils.delete(file);
+            }
+        };
+    }
+
+    /**
+     * Stops the decoder threads, and deletes any decoded jar that wasn't requested.
+     */
+    public synchronized void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            try
+            {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        for (Future<File> future : decoded.values())
+        {
+            if (future.isDone())
+            {
+                try
+                {
+                    FileUtils.delete(future.get());
+                }
+                catch (Exception ignore)
+                {
+                    // the entry doesn't exist, or failed to decode
+                }
+            }
+        }
+        decoded.clear();
+    }
+
+    /**
+     * Submits an entry for decoding.
+     *
+     * @param key the Pack200 entry identifier
+     * @return the decoded jar
+     */
+    private Future<File> submit(final int key)
+    {
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack Pack200 decoder " + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor.submit(new Callable<File>()
+        {
+            @Override
+            public File call() throws Exception
+            {
+                return decode(key);
+            }
+        });
+    }
+
+    /**
+     * Waits for an entry to be decoded.
+     *
+     * @param key    the Pack200 entry identifier
+     * @param future the decoded jar
+     * @return the decoded jar
+     * @throws InterruptedIOException if interrupted while waiting
+     * @throws IOException            if the entry cannot be decoded
+     */
+    private File get(int key, Future<File> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding Pack200 entry " + key);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IzPackException("Failed to decode Pack200 entry " + key, cause);
+        }
+    }
+
+    /**
+     * Decodes an entry to a temporary jar.
+     *
+     * @param key the Pack200 entry identifier
+     * @return the decoded jar
+     * @throws IOException for any I/O error
+     */
+    private File decode(int key) throws IOException
+    {
+        // See compiler.Pack200Writer for the counterpart
+        InputStream in = new BufferedInputStream(resources.getInputStream("packs/pack200-" + key));
+        File file = null;
+        OutputStream out = null;
+        boolean success = false;
+        try
+        {
+            file = FileUtils.createTempFile("pack200-" + key + "-", ".jar");
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            if (isZip(in))
+            {
+                IoHelper.copyStream(in, out);
+            }
+            else
+            {
+                JarOutputStream jarOut = new JarOutputStream(out);
+                out = jarOut;
+                unpack(in, jarOut);
+                jarOut.finish();
+            }
+            out.close();
+            success = true;
+            logger.fine("Decoded Pack200 entry " + key);
+        }
+        finally
+        {
+            FileUtils.close(in);
+            FileUtils.close(out);
+            if (!success && file != null)
+            {
+                FileUtils.delete(file);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Decodes a Pack200 stream.
+     *
+     * @param in  the stream to decode
+     * @param out the jar to write to
+     * @throws IOException for any I/O error, or if the JVM doesn't support Pack200
+     */
+    private void unpack(InputStream in, JarOutputStream out) throws IOException
+    {
+        Pack200.Unpacker unpacker;
+        try
+        {
+            unpacker = Pack200.newUnpacker();
+        }
+        catch (LinkageError error)
+        {
+            throw new IOException("Pack200 is not supported by this Java runtime", error);
+        }
+        unpacker.unpack(in, out);
+    }
+
+    /**
+     * Determines if a stream holds a zip file, rather than a Pack200 archive.
+     *
+     * @param in the stream. Must support mark/reset
+     * @return {@code true} if the stream starts with a zip signature
+     * @throws IOException for any I/O error
+     */
+    private boolean isZip(InputStream in) throws IOException
+    {
+        in.mark(4);
+        int signature = 0;
+        for (int i = 0; i < 4; ++i)
+        {
+            int b = in.read();
+            if (b == -1)
+            {
+                break;
+            }
+            signature = (signature << 8) | b;
+        }
+        in.reset();
+        return signature == ZIP_SIGNATURE;
+    }
+}
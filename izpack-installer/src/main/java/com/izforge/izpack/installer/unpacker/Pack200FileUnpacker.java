@@ -21,51 +21,45 @@
 
 package com.izforge.izpack.installer.unpacker;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Pack200;
 
 import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.file.FileUtils;
 import com.izforge.izpack.util.os.FileQueue;
 
 
 /**
  * A file unpacker for pack200 files.
+ * <p/>
+ * The Pack200 entries are decoded by a {@link Pack200Decoder}, which decodes upcoming entries in the background.
  *
  * @author Tim Anderson
  */
 class Pack200FileUnpacker extends FileUnpacker
 {
     /**
-     * The resources.
+     * The Pack200 decoder.
      */
-    private final PackResources resources;
-
-    /**
-     * The unpacker.
-     */
-    private final Pack200.Unpacker unpacker;
+    private final Pack200Decoder decoder;
 
     /**
      * Constructs a <tt>Pack200FileUnpacker</tt>.
      *
      * @param cancellable determines if unpacking should be cancelled
-     * @param resources   the pack resources
-     * @param unpacker    the unpacker
+     * @param decoder     the Pack200 decoder
      * @param queue       the file queue. May be {@code null}
      */
-    public Pack200FileUnpacker(Cancellable cancellable, PackResources resources, Pack200.Unpacker unpacker,
-                               FileQueue queue)
+    public Pack200FileUnpacker(Cancellable cancellable, Pack200Decoder decoder, FileQueue queue)
     {
         super(cancellable, queue);
-        this.resources = resources;
-        this.unpacker = unpacker;
+        this.decoder = decoder;
     }
 
     /**
@@ -78,30 +72,40 @@ class Pack200FileUnpacker extends FileUnpacker
      * @throws InstallerException for any installer exception
      */
     @Override
-    public void unpack(PackFile file, ObjectInputStream packInputStream, File target)
+    public void unpack(PackFile file, InputStream packInputStream, File target)
             throws IOException, InstallerException
     {
-        int key = packInputStream.readInt();
+        int key = getPack200Key(packInputStream);
         InputStream in = null;
         OutputStream out = null;
-        JarOutputStream jarOut = null;
 
         try
         {
-            in = resources.getInputStream("packs/pack200-" + key);
+            in = decoder.getInputStream(key);
             out = getTarget(file, target);
-            jarOut = new JarOutputStream(out);
-            unpacker.unpack(in, jarOut);
-            jarOut.close();
+            IoHelper.copyStream(in, out);
         }
         finally
         {
             FileUtils.close(in);
             FileUtils.close(out);
-            FileUtils.close(jarOut);
         }
 
         postCopy(file);
     }
 
+    /**
+     * Reads the key of the Pack200 resource holding the file from the pack stream.
+     *
+     * @param packInputStream the pack input stream
+     * @return the Pack200 resource key
+     * @throws IOException for any I/O error
+     */
+    private int getPack200Key(InputStream packInputStream) throws IOException
+    {
+        DataInput input = (packInputStream instanceof DataInput) ? (DataInput) packInputStream
+                : new DataInputStream(packInputStream);
+        return input.readInt();
+    }
+
 }
@@ -0,0 +1,137 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The pack index, read from the <em>packs.index</em> resource.
+ * <p/>
+ * The compiler splits a pack into blocks just before the content of files referred to by back references. Each block
+ * is stored in its own installer jar entry, so can be decoded without decoding the blocks that precede it. The index
+ * records the byte offset in the pack stream at which each block starts.
+ * <p/>
+ * See compiler.Packager#writePackIndex for the counterpart.
+ */
+public class PackIndex
+{
+
+    /**
+     * The block offsets, keyed on pack name. The first block of a pack, starting at offset 0, is not included.
+     */
+    private final Map<String, long[]> blocks = new HashMap<String, long[]>();
+
+
+    /**
+     * Constructs an empty {@code PackIndex}.
+     */
+    public PackIndex()
+    {
+    }
+
+    /**
+     * Constructs a {@code PackIndex} from a stream.
+     *
+     * @param in the stream to read
+     * @throws IOException for any I/O error
+     */
+    public PackIndex(InputStream in) throws IOException
+    {
+        ObjectInputStream objIn = new ObjectInputStream(in);
+        int packs = objIn.readInt();
+        for (int i = 0; i < packs; ++i)
+        {
+            String name = objIn.readUTF();
+            long[] offsets = new long[objIn.readInt()];
+            for (int j = 0; j < offsets.length; ++j)
+            {
+                offsets[j] = objIn.readLong();
+            }
+            blocks.put(name, offsets);
+        }
+    }
+
+    /**
+     * Returns the start of the block containing a byte offset in a pack stream.
+     *
+     * @param name   the pack name
+     * @param offset the byte offset in the pack stream
+     * @return the byte offset at which the containing block starts, or {@code 0} if the offset is in the first block
+     */
+    public long getBlock(String name, long offset)
+    {
+        long result = 0;
+        long[] offsets = blocks.get(name);
+        if (offsets != null)
+        {
+            int index = Arrays.binarySearch(offsets, offset);
+            if (index < 0)
+            {
+                index = -index - 2; // the block preceding the insertion point
+            }
+            if (index >= 0)
+            {
+                result = offsets[index];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the start of the block containing a byte offset in a pack stream, followed by the starts of the blocks
+     * after it.
+     *
+     * @param name   the pack name
+     * @param offset the byte offset in the pack stream
+     * @return the byte offsets at which the blocks start, in order
+     */
+    public long[] getBlocks(String name, long offset)
+    {
+        long block = getBlock(name, offset);
+        long[] offsets = blocks.get(name);
+        if (offsets == null)
+        {
+            return new long[]{block};
+        }
+        int start = (block == 0) ? 0 : Arrays.binarySearch(offsets, block) + 1;
+        long[] result = new long[offsets.length - start + 1];
+        result[0] = block;
+        System.arraycopy(offsets, start, result, 1, offsets.length - start);
+        return result;
+    }
+
+    /**
+     * Returns the name of the resource containing a block.
+     *
+     * @param name  the pack name
+     * @param block the byte offset at which the block starts
+     * @return the resource name
+     */
+    public static String getBlockResource(String name, long block)
+    {
+        return (block == 0) ? "packs/pack-" + name : "packs/blocks/pack-" + name + "-" + block;
+    }
+}
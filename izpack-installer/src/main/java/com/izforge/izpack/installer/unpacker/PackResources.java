@@ -47,6 +47,28 @@ public interface PackResources
      */
     InputStream getPackStream(String name);
 
+    /**
+     * Returns the stream to a pack, positioned at the specified byte offset.
+     * <p/>
+     * If the pack is indexed, only the block containing the offset needs to be decoded.
+     *
+     * @param name   the pack name
+     * @param offset the byte offset in the pack stream
+     * @return a stream to the pack, positioned at the offset
+     * @throws ResourceNotFoundException    if the resource cannot be found
+     * @throws ResourceInterruptedException if resource retrieval is interrupted
+     * @throws ResourceException            for any other resource error
+     */
+    InputStream getPackStream(String name, long offset);
+
+    /**
+     * Returns the format of the pack streams, as recorded in <em>packs.info</em>.
+     *
+     * @return the pack stream format. One of the {@link com.izforge.izpack.core.io.PackFormat} versions
+     * @throws ResourceException if the format cannot be determined
+     */
+    int getPackFormat();
+
     /**
      * Returns the stream to a resource.
      *
@@ -21,8 +21,6 @@
 
 package com.izforge.izpack.installer.unpacker;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -32,6 +30,7 @@ import java.util.logging.Logger;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.data.ParsableFile;
 import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * A {@link ParsableFile} parser.
@@ -53,6 +52,11 @@ public class ScriptParser
      */
     private final PlatformModelMatcher matcher;
 
+    /**
+     * The metrics.
+     */
+    private final Metrics metrics;
+
     /**
      * Constructs a new parser. The parsable files specified must have pretranslated paths
      * (variables expanded and file separator characters converted if necessary).
@@ -61,9 +65,23 @@ public class ScriptParser
      * @param matcher  the platform-model matcher
      */
     public ScriptParser(VariableSubstitutor replacer, PlatformModelMatcher matcher)
+    {
+        this(replacer, matcher, new Metrics(false, null));
+    }
+
+    /**
+     * Constructs a new parser. The parsable files specified must have pretranslated paths
+     * (variables expanded and file separator characters converted if necessary).
+     *
+     * @param replacer the variable replacer to use
+     * @param matcher  the platform-model matcher
+     * @param metrics  the metrics to record the time taken to parse each file against
+     */
+    public ScriptParser(VariableSubstitutor replacer, PlatformModelMatcher matcher, Metrics metrics)
     {
         this.replacer = replacer;
         this.matcher = matcher;
+        this.metrics = metrics;
     }
 
     /**
@@ -80,6 +98,8 @@ public class ScriptParser
             return;
         }
 
+        long start = metrics.start();
+
         // Create a temporary file for the parsed data
         // (Use the same directory so that renaming works later)
         File file = new File(parsable.getPath());
@@ -98,11 +118,9 @@ public class ScriptParser
         }
 
         // Parses the file
-        // (Use buffering because substitutor processes byte at a time)
-        FileInputStream inFile = new FileInputStream(file);
-        BufferedInputStream in = new BufferedInputStream(inFile, 5120);
-        FileOutputStream outFile = new FileOutputStream(parsedFile);
-        BufferedOutputStream out = new BufferedOutputStream(outFile, 5120);
+        // (No buffering needed, as the substitutor reads and writes blocks of characters)
+        FileInputStream in = new FileInputStream(file);
+        FileOutputStream out = new FileOutputStream(parsedFile);
         replacer.substitute(in, out, parsable.getType(), parsable.getEncoding());
         in.close();
         out.close();
@@ -116,5 +134,6 @@ public class ScriptParser
         {
             throw new IOException("Could not rename file " + parsedFile + " to " + file);
         }
+        metrics.stop("parsable", start, file.length());
     }
 }
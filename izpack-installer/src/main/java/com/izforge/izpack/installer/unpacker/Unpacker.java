@@ -29,6 +29,7 @@ import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.event.InstallerListeners;
 import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Unpacker class.
@@ -52,13 +53,15 @@ public class Unpacker extends UnpackerBase
      * @param housekeeper         the housekeeper
      * @param listeners           the listeners
      * @param matcher             the platform-model matcher
+     * @param metrics             the metrics
      */
     public Unpacker(InstallData installData, PackResources resources, RulesEngine rules,
                     VariableSubstitutor variableSubstitutor, UninstallData uninstallData, FileQueueFactory factory,
-                    Housekeeper housekeeper, InstallerListeners listeners, Prompt prompt, PlatformModelMatcher matcher)
+                    Housekeeper housekeeper, InstallerListeners listeners, Prompt prompt, PlatformModelMatcher matcher,
+                    Metrics metrics)
     {
         super(installData, resources, rules, variableSubstitutor, uninstallData, factory, housekeeper, listeners,
-              prompt, matcher);
+              prompt, matcher, metrics);
     }
 
 }
@@ -33,6 +33,10 @@ import com.izforge.izpack.api.resource.Messages;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.handler.ProgressHandler;
+import com.izforge.izpack.core.io.PackFormat;
+import com.izforge.izpack.core.io.PackInputStream;
+import com.izforge.izpack.core.io.ReadAheadInputStream;
+import com.izforge.izpack.core.io.SerializedPackInputStream;
 import com.izforge.izpack.core.handler.PromptUIHandler;
 import com.izforge.izpack.data.ExecutableFile;
 import com.izforge.izpack.data.ParsableFile;
@@ -40,8 +44,10 @@ import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.installer.bootstrap.Installer;
 import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.installer.event.ProgressCoalescer;
 import com.izforge.izpack.installer.util.PackHelper;
 import com.izforge.izpack.util.FileExecutor;
+import com.izforge.izpack.util.FileUtil;
 import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.PlatformModelMatcher;
@@ -49,13 +55,14 @@ import com.izforge.izpack.util.file.DirectoryScanner;
 import com.izforge.izpack.util.file.FileUtils;
 import com.izforge.izpack.util.file.GlobPatternMapper;
 import com.izforge.izpack.util.file.types.FileSet;
+import com.izforge.izpack.util.metrics.Metrics;
 import com.izforge.izpack.util.os.FileQueue;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
-import java.util.jar.Pack200;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -123,9 +130,9 @@ public abstract class UnpackerBase implements IUnpacker
     private File absoluteInstallSource;
 
     /**
-     * The Pack200 unpacker.
+     * The Pack200 decoder. Lazily created.
      */
-    private Pack200.Unpacker unpacker;
+    private Pack200Decoder pack200Decoder;
 
     /**
      * The prompt.
@@ -137,6 +144,11 @@ public abstract class UnpackerBase implements IUnpacker
      */
     private final PlatformModelMatcher matcher;
 
+    /**
+     * The metrics.
+     */
+    private final Metrics metrics;
+
     /**
      * The result of the operation.
      */
@@ -165,6 +177,26 @@ public abstract class UnpackerBase implements IUnpacker
      */
     private boolean disableInterrupt = false;
 
+    /**
+     * Writes files concurrently, if more than one unpack thread is configured. Only accessed by the unpacking thread.
+     */
+    private FileWriterPool writers;
+
+    /**
+     * The pack streams being read ahead, keyed on pack name. Only accessed by the unpacking thread.
+     */
+    private final Map<String, InputStream> readAhead = new HashMap<String, InputStream>();
+
+    /**
+     * The no. of files skipped because they are identical to those already installed.
+     */
+    private int unchangedFiles;
+
+    /**
+     * The no. of bytes that didn't need to be written, because files are identical to those already installed.
+     */
+    private long unchangedBytes;
+
     /**
      * Translation cache for packs
      */
@@ -175,6 +207,39 @@ public abstract class UnpackerBase implements IUnpacker
      */
     private static final Logger logger = Logger.getLogger(UnpackerBase.class.getName());
 
+    /**
+     * The header of a serialization stream, preceding the content of a {@link PackFormat#SERIALIZED} pack stream.
+     */
+    private static final byte[] STREAM_HEADER = {(byte) (ObjectStreamConstants.STREAM_MAGIC >> 8),
+            (byte) ObjectStreamConstants.STREAM_MAGIC, (byte) (ObjectStreamConstants.STREAM_VERSION >> 8),
+            (byte) ObjectStreamConstants.STREAM_VERSION};
+
+    /**
+     * The maximum size of a file that is read into memory, in order to be written concurrently.
+     */
+    private static final int MAX_BUFFERED_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * The maximum no. of bytes read into memory, waiting to be written.
+     */
+    private static final int MAX_BUFFERED_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * The no. of bytes reserved when writing a back referenced file concurrently. The file content is read from its
+     * own stream by the writing thread, so this only needs to account for stream buffers.
+     */
+    private static final int BACK_REFERENCE_BYTES = 64 * 1024;
+
+    /**
+     * The size of the chunks that pack streams are read ahead in.
+     */
+    private static final int READ_AHEAD_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The maximum no. of chunks that a pack stream is read ahead.
+     */
+    private static final int READ_AHEAD_CHUNKS = 16;
+
     /**
      * Constructs an <tt>UnpackerBase</tt>.
      *
@@ -188,11 +253,12 @@ public abstract class UnpackerBase implements IUnpacker
      * @param listeners           the listeners
      * @param prompt              the prompt
      * @param matcher             the platform-model matcher
+     * @param metrics             the metrics
      */
     public UnpackerBase(InstallData installData, PackResources resources, RulesEngine rules,
                         VariableSubstitutor variableSubstitutor, UninstallData uninstallData, FileQueueFactory factory,
                         Housekeeper housekeeper, InstallerListeners listeners, Prompt prompt,
-                        PlatformModelMatcher matcher)
+                        PlatformModelMatcher matcher, Metrics metrics)
     {
         this.installData = installData;
         this.resources = resources;
@@ -204,6 +270,7 @@ public abstract class UnpackerBase implements IUnpacker
         this.listeners = listeners;
         this.prompt = prompt;
         this.matcher = matcher;
+        this.metrics = metrics;
         cancellable = new Cancellable()
         {
             @Override
@@ -216,13 +283,16 @@ public abstract class UnpackerBase implements IUnpacker
 
     /**
      * Sets the progress listener.
+     * <p/>
+     * The listener is wrapped in a {@link ProgressCoalescer}, so that per-file progress is delivered at a bounded
+     * rate, regardless of how many files are installed.
      *
      * @param listener the progress listener
      */
     @Override
     public void setProgressListener(ProgressListener listener)
     {
-        this.listener = listener;
+        this.listener = new ProgressCoalescer(listener);
     }
 
     /**
@@ -247,9 +317,11 @@ public abstract class UnpackerBase implements IUnpacker
             FileQueue queue = queueFactory.isSupported() ? queueFactory.create() : null;
 
             List<Pack> packs = installData.getSelectedPacks();
+            long start = metrics.start();
             preUnpack(packs);
             unpack(packs, queue, parsables, executables, updateChecks);
             postUnpack(packs, queue, updateChecks);
+            metrics.stop("install", start, getSize(packs));
         }
         catch (Exception exception)
         {
@@ -375,6 +447,15 @@ public abstract class UnpackerBase implements IUnpacker
 
     /**
      * Unpacks the selected packs.
+     * <p/>
+     * If more than one unpack thread is configured:
+     * <ul>
+     * <li>pack streams are decoded on a separate thread, and the stream of the next pack to unpack is decoded while
+     * the current pack is being unpacked</li>
+     * <li>files are written by a pool of threads, unless any {@link InstallerListener} is a
+     * {@link InstallerListener#isFileListener() file listener}. These expect {@link InstallerListener#afterFile} to
+     * follow {@link InstallerListener#beforeFile} for each file, so files are then written on the unpacking thread</li>
+     * </ul>
      *
      * @param packs        the packs to unpack
      * @param queue        the file queue, or {@code null} if queuing is not supported
@@ -388,30 +469,123 @@ public abstract class UnpackerBase implements IUnpacker
                           List<ExecutableFile> executables, List<UpdateCheck> updateChecks)
     {
         int count = packs.size();
-        for (int i = 0; i < count; i++)
+        int threads = installData.getInfo().getUnpackThreads();
+        if (threads > 1)
         {
-            Pack pack = packs.get(i);
-            if (shouldUnpack(pack))
+            logger.fine("Unpacking using " + threads + " threads");
+            writers = new FileWriterPool(threads, MAX_BUFFERED_BYTES);
+        }
+        try
+        {
+            for (int i = 0; i < count; i++)
             {
-                listeners.beforePack(pack, i, listener);
-                unpack(pack, i, queue, parsables, executables, updateChecks);
-                checkInterrupt();
-
-                logger.fine("Found " + parsables.size() + " parsable files");
-                parseFiles(parsables);
-                checkInterrupt();
-
-                logger.fine("Found " + parsables.size() + " executable files");
-                executeFiles(executables);
-                checkInterrupt();
+                Pack pack = packs.get(i);
+                if (shouldUnpack(pack))
+                {
+                    if (writers != null)
+                    {
+                        readAhead(packs, i + 1);
+                    }
+                    long packStart = metrics.start();
+                    listeners.beforePack(pack, i, listener);
+
+                    long start = metrics.start();
+                    unpack(pack, i, queue, parsables, executables, updateChecks);
+                    metrics.stop("phase.unpack", start, pack.getSize());
+                    checkInterrupt();
+
+                    logger.fine("Found " + parsables.size() + " parsable files");
+                    start = metrics.start();
+                    parseFiles(parsables);
+                    metrics.stop("phase.parsables", start);
+                    checkInterrupt();
+
+                    logger.fine("Found " + parsables.size() + " executable files");
+                    start = metrics.start();
+                    executeFiles(executables);
+                    metrics.stop("phase.executables", start);
+                    checkInterrupt();
+
+                    listeners.afterPack(pack, i, listener);
+                    metrics.stop("pack." + pack.getName(), packStart, pack.getSize());
+                }
+            }
+        }
+        finally
+        {
+            if (writers != null)
+            {
+                writers.shutdown();
+                writers = null;
+            }
+            for (InputStream stream : readAhead.values())
+            {
+                FileUtils.close(stream);
+            }
+            readAhead.clear();
+        }
+    }
 
-                // update checks should be done _after_ uninstaller was put, so we don't delete it. TODO
-                performUpdateChecks(updateChecks);
-                checkInterrupt();
+    /**
+     * Starts decoding the stream of the next pack to unpack, if any.
+     * <p/>
+     * Web-based packs are not read ahead, as opening them requires them to be downloaded.
+     *
+     * @param packs the packs
+     * @param from  the index of the first pack to consider
+     */
+    private void readAhead(List<Pack> packs, int from)
+    {
+        if (installData.getInfo().getWebDirURL() == null)
+        {
+            for (int i = from; i < packs.size(); ++i)
+            {
+                Pack pack = packs.get(i);
+                if (shouldUnpack(pack))
+                {
+                    String name = pack.getName();
+                    if (!readAhead.containsKey(name))
+                    {
+                        readAhead.put(name, createReadAheadStream(resources.getPackStream(name), name));
+                    }
+                    break;
+                }
+            }
+        }
+    }
 
-                listeners.afterPack(pack, i, listener);
+    /**
+     * Returns the stream to a pack.
+     * <p/>
+     * If concurrent unpacking is enabled, the stream is decoded on a separate thread.
+     *
+     * @param pack the pack
+     * @return the pack stream
+     */
+    private InputStream getPackStream(Pack pack)
+    {
+        InputStream result = readAhead.remove(pack.getName());
+        if (result == null)
+        {
+            result = resources.getPackStream(pack.getName());
+            if (writers != null)
+            {
+                result = createReadAheadStream(result, pack.getName());
             }
         }
+        return result;
+    }
+
+    /**
+     * Creates a stream that decodes a pack stream on a separate thread.
+     *
+     * @param in   the pack stream
+     * @param name the pack name
+     * @return a new stream
+     */
+    private InputStream createReadAheadStream(InputStream in, String name)
+    {
+        return new ReadAheadInputStream(in, READ_AHEAD_CHUNK_SIZE, READ_AHEAD_CHUNKS, "IzPack pack reader: " + name);
     }
 
     /**
@@ -429,13 +603,13 @@ public abstract class UnpackerBase implements IUnpacker
                           List<ExecutableFile> executables, List<UpdateCheck> updateChecks)
     {
         InputStream in = null;
-        ObjectInputStream packInputStream = null;
+        PackInputStream packInputStream = null;
         try
         {
-            in = resources.getPackStream(pack.getName());
-            packInputStream = new ObjectInputStream(in);
+            in = getPackStream(pack);
+            packInputStream = createPackInputStream(in);
 
-            int fileCount = packInputStream.readInt();
+            int fileCount = packInputStream.readCount();
 
             String stepName = getStepName(pack);
             listener.nextStep(stepName, packNo + 1, fileCount);
@@ -443,7 +617,7 @@ public abstract class UnpackerBase implements IUnpacker
             for (int i = 0; i < fileCount; ++i)
             {
                 // read the header
-                PackFile file = (PackFile) packInputStream.readObject();
+                PackFile file = packInputStream.readPackFile();
                 if (shouldUnpack(file))
                 {
                     // unpack the file
@@ -458,6 +632,10 @@ public abstract class UnpackerBase implements IUnpacker
             readParsableFiles(packInputStream, parsables);
             readExecutableFiles(packInputStream, executables);
             readUpdateChecks(packInputStream, updateChecks);
+            if (writers != null)
+            {
+                writers.await();
+            }
         }
         catch (IzPackException exception)
         {
@@ -474,6 +652,28 @@ public abstract class UnpackerBase implements IUnpacker
         }
     }
 
+    /**
+     * Creates a stream to read a pack, according to the pack format.
+     *
+     * @param in the pack stream
+     * @return a new stream to read the pack
+     * @throws IOException        for any I/O error
+     * @throws InstallerException if the pack format is not supported
+     */
+    private PackInputStream createPackInputStream(InputStream in) throws IOException
+    {
+        int format = resources.getPackFormat();
+        switch (format)
+        {
+            case PackFormat.SERIALIZED:
+                return new SerializedPackInputStream(new ObjectInputStream(in));
+            case PackFormat.BINARY:
+                return new PackInputStream(new BufferedInputStream(in));
+            default:
+                throw new InstallerException("Unsupported pack format: " + format);
+        }
+    }
+
     /**
      * Determines if a file should be unpacked.
      *
@@ -505,7 +705,7 @@ public abstract class UnpackerBase implements IUnpacker
      * @throws IOException     for any I/O error
      * @throws IzPackException for any other error
      */
-    protected void unpack(PackFile file, ObjectInputStream packInputStream, int fileNo, Pack pack, FileQueue queue)
+    protected void unpack(PackFile file, PackInputStream packInputStream, int fileNo, Pack pack, FileQueue queue)
             throws IOException
     {
         if (logger.isLoggable(Level.FINE))
@@ -523,6 +723,12 @@ public abstract class UnpackerBase implements IUnpacker
             dir = target.getParentFile();
         }
 
+        if (writers != null && writers.isPending(target))
+        {
+            // the same target appears more than once. Wait for the preceding write to complete
+            writers.await();
+        }
+
         createDirectory(dir, file, pack);
 
         // Add path to the log
@@ -537,25 +743,81 @@ public abstract class UnpackerBase implements IUnpacker
 
         listener.progress(fileNo, path);
 
+        if (isUnchanged(file, target))
+        {
+            // the installed file is identical, so there is no need to decompress or write it
+            skipContent(file, pack, packInputStream);
+        }
         // if this file exists and should not be overwritten, check what to do
-        if (target.exists() && (file.override() != OverrideType.OVERRIDE_TRUE) && !isOverwriteFile(file, target))
+        else if (target.exists() && (file.override() != OverrideType.OVERRIDE_TRUE)
+                && !isOverwriteFile(file, target))
+        {
+            skipContent(file, pack, packInputStream);
+        }
+        else
+        {
+            handleOverrideRename(file, target);
+            extract(file, target, packInputStream, pack, queue);
+        }
+    }
+
+    /**
+     * Determines if an installed file is identical to a pack file, when {@link Info#isDeltaUpgrade()} is set.
+     * <p/>
+     * The installed file is only read if its length matches that of the pack file.
+     *
+     * @param file   the pack file
+     * @param target the installed file
+     * @return {@code true} if the installed file has the same content as the pack file
+     * @throws IOException if the installed file cannot be read
+     */
+    private boolean isUnchanged(PackFile file, File target) throws IOException
+    {
+        boolean result = false;
+        if (installData.getInfo().isDeltaUpgrade() && file.getDigest() != null
+                && file.override() != OverrideType.OVERRIDE_FALSE && target.isFile()
+                && target.length() == file.length())
+        {
+            long start = metrics.start();
+            result = file.getDigest().equals(FileUtil.getFileDigest(target));
+            if (result)
+            {
+                ++unchangedFiles;
+                unchangedBytes += file.length();
+                metrics.stop("upgrade.unchanged", start, file.length());
+            }
+            else
+            {
+                metrics.stop("upgrade.changed", start, file.length());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Skips the content of a pack file that isn't being extracted.
+     * <p/>
+     * Pack200 jars are stored separately, so only their identifier is skipped. Other files are skipped via
+     * {@link #skip(PackFile, Pack, PackInputStream)}, so that unpackers that don't store file content in the pack
+     * stream can override it.
+     *
+     * @param file            the pack file
+     * @param pack            the pack that the pack file comes from
+     * @param packInputStream the pack file input stream
+     * @throws IOException for any I/O error
+     */
+    private void skipContent(PackFile file, Pack pack, PackInputStream packInputStream) throws IOException
+    {
+        if (file.isPack200Jar())
         {
             if (!file.isBackReference() && !pack.isLoose())
             {
-                if (file.isPack200Jar())
-                {
-                    skip(packInputStream, Integer.SIZE / 8);
-                }
-                else
-                {
-                    skip(packInputStream, file.length());
-                }
+                skip(packInputStream, Integer.SIZE / 8);
             }
         }
         else
         {
-            handleOverrideRename(file, target);
-            extract(file, target, packInputStream, pack, queue);
+            skip(file, pack, packInputStream);
         }
     }
 
@@ -571,27 +833,32 @@ public abstract class UnpackerBase implements IUnpacker
      * @throws ResourceInterruptedException if installation is cancelled
      * @throws IzPackException              for any IzPack error
      */
-    protected void extract(PackFile file, File target, ObjectInputStream packInputStream, Pack pack, FileQueue queue)
+    protected void extract(PackFile file, File target, PackInputStream packInputStream, Pack pack, FileQueue queue)
             throws IOException
     {
-        ObjectInputStream packStream = packInputStream;
-        InputStream in = null;
-        try
+        FileUnpacker unpacker = createFileUnpacker(file, pack, queue, cancellable);
+        if (writers != null)
         {
-            FileUnpacker unpacker;
+            if (isConcurrent(file, pack, queue, unpacker))
+            {
+                extractConcurrently(file, target, packInputStream, pack, unpacker);
+                return;
+            }
+            // preserve the order of listener notifications
+            writers.await();
+        }
 
+        InputStream packStream = packInputStream;
+        try
+        {
             if (!pack.isLoose() && file.isBackReference())
             {
-                in = resources.getPackStream(file.previousPackId);
-                packStream = new ObjectInputStream(in);
-                // must wrap for blockdata use by ObjectStream (otherwise strange result)
-                // skip on underlying stream (for some reason not possible on ObjectStream)
-                skip(in, file.offsetInPreviousPack - 4);
-                // but the stream header is now already read (== 4 bytes)
+                packStream = getBackReferenceStream(file);
             }
 
-            unpacker = createFileUnpacker(file, pack, queue, cancellable);
+            long start = metrics.start();
             unpacker.unpack(file, packStream, target);
+            metrics.stop("phase.extract", start, file.length());
             checkInterrupt();
 
             if (!unpacker.isQueued())
@@ -601,7 +868,6 @@ public abstract class UnpackerBase implements IUnpacker
         }
         finally
         {
-            FileUtils.close(in);
             if (packStream != packInputStream)
             {
                 FileUtils.close(packStream);
@@ -609,6 +875,139 @@ public abstract class UnpackerBase implements IUnpacker
         }
     }
 
+    /**
+     * Determines if a file can be written by the {@link FileWriterPool}.
+     * <p/>
+     * This is limited to files written by a {@link DefaultFileUnpacker}, that aren't queued, and only if there are no
+     * file listeners. Files in the pack stream must be small enough to be read into memory. Back referenced files are
+     * read from their own stream, so can be of any size, but are only supported for local packs.
+     *
+     * @param file     the pack file
+     * @param pack     the pack that the pack file comes from
+     * @param queue    the file queue, or {@code null} if queuing is not supported
+     * @param unpacker the unpacker for the file
+     * @return {@code true} if the file can be written concurrently
+     */
+    private boolean isConcurrent(PackFile file, Pack pack, FileQueue queue, FileUnpacker unpacker)
+    {
+        boolean result = false;
+        if (unpacker instanceof DefaultFileUnpacker && !pack.isLoose() && !listeners.isFileListener()
+                && (queue == null || file.blockable() == Blockable.BLOCKABLE_NONE))
+        {
+            if (file.isBackReference())
+            {
+                result = installData.getInfo().getWebDirURL() == null;
+            }
+            else
+            {
+                result = file.length() <= MAX_BUFFERED_FILE_SIZE;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Extracts a pack file using the {@link FileWriterPool}.
+     * <p/>
+     * The content of files in the pack stream is read into memory, and written by a pool thread. Back referenced files
+     * are read and written by a pool thread.
+     *
+     * @param file            the pack file
+     * @param target          the file to write to
+     * @param packInputStream the pack file input stream
+     * @param pack            the pack that the pack file comes from
+     * @param unpacker        the unpacker for the file
+     * @throws IOException                  for any I/O error
+     * @throws ResourceInterruptedException if installation is cancelled
+     */
+    private void extractConcurrently(final PackFile file, final File target, PackInputStream packInputStream,
+                                     final Pack pack, final FileUnpacker unpacker) throws IOException
+    {
+        Callable<Void> write;
+        int bytes;
+        if (file.isBackReference())
+        {
+            bytes = BACK_REFERENCE_BYTES;
+            writers.reserve(bytes);
+            write = new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    long start = metrics.start();
+                    InputStream packStream = getBackReferenceStream(file);
+                    try
+                    {
+                        unpacker.unpack(file, packStream, target);
+                    }
+                    finally
+                    {
+                        FileUtils.close(packStream);
+                    }
+                    metrics.stop("phase.extract", start, file.length());
+                    return null;
+                }
+            };
+        }
+        else
+        {
+            bytes = (int) file.length();
+            writers.reserve(bytes);
+            final byte[] content = new byte[bytes];
+            long start = metrics.start();
+            packInputStream.readFully(content);
+            metrics.stop("phase.read", start, bytes);
+            write = new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    long start = metrics.start();
+                    unpacker.copy(file, new ByteArrayInputStream(content), target);
+                    metrics.stop("phase.extract", start, content.length);
+                    return null;
+                }
+            };
+        }
+        writers.submit(target, bytes, write, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listeners.afterFile(target, file, pack);
+            }
+        });
+        checkInterrupt();
+    }
+
+    /**
+     * Returns a stream to the content of a back referenced file.
+     *
+     * @param file the back referenced file
+     * @return a stream positioned at the start of the file content
+     * @throws IOException for any I/O error
+     */
+    private InputStream getBackReferenceStream(PackFile file) throws IOException
+    {
+        InputStream in = resources.getPackStream(file.previousPackId, file.offsetInPreviousPack);
+        if (resources.getPackFormat() != PackFormat.SERIALIZED)
+        {
+            // file content is stored without framing
+            return in;
+        }
+        try
+        {
+            // seek on the underlying stream, as ObjectInputStream can't skip over block data headers.
+            // The stream header (4 bytes) is skipped with the rest, so supply it separately
+            return new ObjectInputStream(new SequenceInputStream(new ByteArrayInputStream(STREAM_HEADER), in));
+        }
+        catch (IOException exception)
+        {
+            FileUtils.close(in);
+            throw exception;
+        }
+    }
+
     /**
      * Skips a pack file.
      *
@@ -617,7 +1016,7 @@ public abstract class UnpackerBase implements IUnpacker
      * @param packInputStream the pack stream
      * @throws IOException if the file cannot be skipped
      */
-    protected void skip(PackFile file, Pack pack, ObjectInputStream packInputStream) throws IOException
+    protected void skip(PackFile file, Pack pack, PackInputStream packInputStream) throws IOException
     {
         if (logger.isLoggable(Level.FINE))
         {
@@ -651,7 +1050,7 @@ public abstract class UnpackerBase implements IUnpacker
         }
         else if (file.isPack200Jar())
         {
-            unpacker = new Pack200FileUnpacker(cancellable, resources, getPack200Unpacker(), queue);
+            unpacker = new Pack200FileUnpacker(cancellable, getPack200Decoder(), queue);
         }
         else
         {
@@ -678,26 +1077,72 @@ public abstract class UnpackerBase implements IUnpacker
         // commit the file queue if there are potentially blocked files
         if (queue != null && !queue.isEmpty())
         {
+            long start = metrics.start();
             queue.execute();
+            metrics.stop("phase.queue", start);
             installData.setRebootNecessary(queue.isRebootNecessary());
         }
         checkInterrupt();
 
+        // update checks are gathered from all packs and performed once, so that files installed by later packs
+        // aren't deleted. TODO - should be done _after_ uninstaller was put, so we don't delete it
+        long start = metrics.start();
+        performUpdateChecks(updateChecks);
+        metrics.stop("phase.updateChecks", start);
+        checkInterrupt();
+
         listeners.afterPacks(packs, listener);
         checkInterrupt();
 
+        if (unchangedFiles != 0)
+        {
+            logger.info("Skipped " + unchangedFiles + " unchanged file" + (unchangedFiles != 1 ? "s" : "")
+                                + ", avoiding " + unchangedBytes + " bytes");
+        }
+
         // write installation information
+        start = metrics.start();
         writeInstallationInformation();
+        metrics.stop("phase.installInformation", start);
 
         // unpacking complete
         listener.stopAction();
     }
 
+    /**
+     * Returns the total size of the packs that will be unpacked.
+     *
+     * @param packs the packs
+     * @return the total size of the packs, in bytes
+     */
+    private long getSize(List<Pack> packs)
+    {
+        long result = 0;
+        for (Pack pack : packs)
+        {
+            if (shouldUnpack(pack))
+            {
+                result += pack.getSize();
+            }
+        }
+        return result;
+    }
+
     /**
      * Invoked after unpacking has completed, in order to clean up.
      */
     protected void cleanup()
     {
+        Pack200Decoder decoder;
+        synchronized (this)
+        {
+            decoder = pack200Decoder;
+            pack200Decoder = null;
+        }
+        if (decoder != null)
+        {
+            decoder.shutdown();
+        }
         state = State.READY;
     }
 
@@ -761,6 +1206,27 @@ public abstract class UnpackerBase implements IUnpacker
         return prompt;
     }
 
+    /**
+     * Returns the no. of bytes that didn't need to be written, because files were identical to those already
+     * installed.
+     *
+     * @return the no. of bytes
+     */
+    public long getUnchangedBytes()
+    {
+        return unchangedBytes;
+    }
+
+    /**
+     * Returns the metrics.
+     *
+     * @return the metrics
+     */
+    protected Metrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * Determines if a pack should be unpacked.
      *
@@ -867,7 +1333,7 @@ public abstract class UnpackerBase implements IUnpacker
     {
         if (!files.isEmpty())
         {
-            ScriptParser parser = new ScriptParser(getVariableSubstitutor(), matcher);
+            ScriptParser parser = new ScriptParser(getVariableSubstitutor(), matcher, metrics);
             for (ParsableFile file : files)
             {
                 try
@@ -893,7 +1359,7 @@ public abstract class UnpackerBase implements IUnpacker
     {
         if (!executables.isEmpty())
         {
-            FileExecutor executor = new FileExecutor(executables);
+            FileExecutor executor = new FileExecutor(executables, metrics);
             PromptUIHandler handler = new ProgressHandler(listener, prompt);
             if (executor.executeFiles(ExecutableFile.POSTINSTALL, matcher, handler) != 0)
             {
@@ -942,6 +1408,10 @@ public abstract class UnpackerBase implements IUnpacker
 
     /**
      * Performs update checks.
+     * <p/>
+     * Only the directories that can hold files matching the include patterns are scanned, and these are listed
+     * concurrently. Matching files and directories that weren't installed are deleted, directories deepest first, so
+     * that a directory emptied by the cleanup can itself be removed.
      *
      * @param checks the update checks. May be {@code null}
      * @throws IzPackException for any error
@@ -960,6 +1430,7 @@ public abstract class UnpackerBase implements IUnpacker
             try
             {
                 fileset.setDir(absoluteInstallPath);
+                fileset.setThreads(Runtime.getRuntime().availableProcessors());
 
                 for (UpdateCheck check : checks)
                 {
@@ -984,7 +1455,7 @@ public abstract class UnpackerBase implements IUnpacker
                 String[] srcFiles = scanner.getIncludedFiles();
                 String[] srcDirs = scanner.getIncludedDirectories();
 
-                Set<File> installedFiles = new TreeSet<File>();
+                Set<File> installedFiles = new HashSet<File>();
 
                 for (String name : uninstallData.getInstalledFilesList())
                 {
@@ -1052,16 +1523,16 @@ public abstract class UnpackerBase implements IUnpacker
             {
                 if (!d.exists())
                 {
-                    break;
+                    continue;
                 }
 
                 // Don't try to delete non-empty directories, because they
                 // probably must have been implicitly created as parents
                 // of regular installation files
-                File[] files = d.listFiles();
+                String[] files = d.list();
                 if (files != null && files.length != 0)
                 {
-                    break;
+                    continue;
                 }
 
                 // Only empty directories will be deleted
@@ -1306,16 +1777,14 @@ public abstract class UnpackerBase implements IUnpacker
      *
      * @param stream    the stream to read from
      * @param parsables used to collect the read objects
-     * @throws IOException            for any I/O error
-     * @throws ClassNotFoundException if the class of a serialised object cannot be found
+     * @throws IOException for any I/O error
      */
-    protected void readParsableFiles(ObjectInputStream stream, List<ParsableFile> parsables)
-            throws IOException, ClassNotFoundException
+    protected void readParsableFiles(PackInputStream stream, List<ParsableFile> parsables) throws IOException
     {
-        int count = stream.readInt();
+        int count = stream.readCount();
         for (int i = 0; i < count; ++i)
         {
-            ParsableFile file = (ParsableFile) stream.readObject();
+            ParsableFile file = stream.readParsableFile();
             logger.fine("Unpacked parsable: " + file.toString());
             if (!file.hasCondition() || isConditionTrue(file.getCondition()))
             {
@@ -1331,17 +1800,15 @@ public abstract class UnpackerBase implements IUnpacker
      *
      * @param stream      the stream to read from
      * @param executables used to collect the read objects
-     * @throws IOException            for any I/O error
-     * @throws ClassNotFoundException if the class of a serialised object cannot be found
+     * @throws IOException for any I/O error
      */
-    protected void readExecutableFiles(ObjectInputStream stream, List<ExecutableFile> executables)
-            throws IOException, ClassNotFoundException
+    protected void readExecutableFiles(PackInputStream stream, List<ExecutableFile> executables) throws IOException
     {
         // Load information about executable files
-        int count = stream.readInt();
+        int count = stream.readCount();
         for (int i = 0; i < count; ++i)
         {
-            ExecutableFile file = (ExecutableFile) stream.readObject();
+            ExecutableFile file = stream.readExecutableFile();
             logger.fine("Unpacked executable: " + file.toString());
             if (!file.hasCondition() || isConditionTrue(file.getCondition()))
             {
@@ -1370,32 +1837,30 @@ public abstract class UnpackerBase implements IUnpacker
      *
      * @param stream       the stream to read from
      * @param updateChecks used to collect the read objects
-     * @throws IOException            for any I/O error
-     * @throws ClassNotFoundException if the class of a serialised object cannot be found
+     * @throws IOException for any I/O error
      */
-    protected void readUpdateChecks(ObjectInputStream stream, List<UpdateCheck> updateChecks)
-            throws IOException, ClassNotFoundException
+    protected void readUpdateChecks(PackInputStream stream, List<UpdateCheck> updateChecks) throws IOException
     {
-        int count = stream.readInt();
+        int count = stream.readCount();
         for (int i = 0; i < count; ++i)
         {
-            UpdateCheck check = (UpdateCheck) stream.readObject();
+            UpdateCheck check = stream.readUpdateCheck();
             updateChecks.add(check);
         }
     }
 
     /**
-     * Returns the pack200 unpacker, creating it if required.
+     * Returns the Pack200 decoder, creating it if required.
      *
-     * @return the pack200 unpacker
+     * @return the Pack200 decoder
      */
-    private Pack200.Unpacker getPack200Unpacker()
+    private synchronized Pack200Decoder getPack200Decoder()
     {
-        if (unpacker == null)
+        if (pack200Decoder == null)
         {
-            unpacker = Pack200.newUnpacker();
+            pack200Decoder = new Pack200Decoder(resources);
         }
-        return unpacker;
+        return pack200Decoder;
     }
 
 
@@ -0,0 +1,50 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+
+
+/**
+ * A {@link WebConnector} that connects directly, using the system proxy settings, without prompting.
+ */
+public class DefaultWebConnector implements WebConnector
+{
+
+    /**
+     * Opens a connection to a URL.
+     *
+     * @param url     the URL to connect to
+     * @param timeout the connect and read timeout, in milliseconds
+     * @return the connection. Its input stream has been opened
+     * @throws IOException if the connection fails
+     */
+    @Override
+    public URLConnection connect(URL url, int timeout) throws IOException
+    {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.getInputStream();
+        return connection;
+    }
+}
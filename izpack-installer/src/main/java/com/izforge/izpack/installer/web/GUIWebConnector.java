@@ -0,0 +1,69 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+
+
+/**
+ * A {@link WebConnector} for the GUI-based installer.
+ * <p/>
+ * Connections are opened via a {@link WebAccessor}, which prompts for a proxy if a connection is refused, and for a
+ * password if the server requires authentication.
+ */
+public class GUIWebConnector implements WebConnector
+{
+
+    /**
+     * The web accessor. Lazily created, as it installs the default authenticator.
+     */
+    private WebAccessor accessor;
+
+
+    /**
+     * Opens a connection to a URL.
+     *
+     * @param url     the URL to connect to
+     * @param timeout the connect and read timeout, in milliseconds
+     * @return the connection. Its input stream has been opened
+     * @throws IOException if the connection fails, or the user cancels the proxy prompt
+     */
+    @Override
+    public URLConnection connect(URL url, int timeout) throws IOException
+    {
+        return getAccessor().openConnection(url, timeout);
+    }
+
+    /**
+     * Returns the web accessor, creating it if required.
+     *
+     * @return the web accessor
+     */
+    private synchronized WebAccessor getAccessor()
+    {
+        if (accessor == null)
+        {
+            accessor = new WebAccessor(null);
+        }
+        return accessor;
+    }
+}
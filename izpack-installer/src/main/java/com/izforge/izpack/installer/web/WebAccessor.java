@@ -23,7 +23,9 @@ package com.izforge.izpack.installer.web;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.*;
 import java.util.Locale;
 
@@ -40,9 +42,11 @@ public class WebAccessor
 
     private Thread openerThread = null;
 
-    private InputStream iStream = null;
+    private volatile URLConnection connection = null;
 
-    private Exception exception = null;
+    private volatile InputStream iStream = null;
+
+    private volatile Exception exception = null;
 
     private Object soloCancelOption = null;
 
@@ -50,7 +54,7 @@ public class WebAccessor
 
     private JDialog dialog = null;
 
-    private boolean tryProxy = false;
+    private volatile boolean tryProxy = false;
 
     private JPanel passwordPanel = null;
 
@@ -111,10 +115,9 @@ public class WebAccessor
     public InputStream openInputStream(URL url)
     {
         setUrl(url.toExternalForm());
-        OPEN_URL:
         while (true)
         {
-            startOpening(url); // this starts a thread
+            startOpening(url, true, 0); // this starts a thread
 
             Thread.yield();
 
@@ -149,53 +152,9 @@ public class WebAccessor
 
             // else (exception != null)
             // show proxy dialog until valid values or cancel
-            JPanel panel = getProxyPanel();
-            errorLabel.setText("Unable to connect: " + exception.getMessage());
-            while (true)
+            if (!promptForProxy())
             {
-                int result = JOptionPane.showConfirmDialog(parent, panel, "Proxy Configuration",
-                        JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
-                if (result != JOptionPane.OK_OPTION) // canceled
-                {
-                    break OPEN_URL;
-                }
-
-                String host = null;
-                String port = null;
-
-                try
-                {
-                    InetAddress addr = InetAddress.getByName(hostField.getText());
-                    host = addr.getHostName();
-                }
-                catch (Exception x)
-                {
-                    errorLabel.setText("Unable to resolve Host");
-                    Toolkit.getDefaultToolkit().beep();
-                }
-
-                try
-                {
-                    if (host != null)
-                    {
-                        port = Integer.valueOf(portField.getText()).toString();
-                    }
-                }
-                catch (NumberFormatException x)
-                {
-                    errorLabel.setText("Invalid Port");
-                    Toolkit.getDefaultToolkit().beep();
-                }
-
-                if (host != null && port != null)
-                {
-                    // System.err.println ("Setting http proxy: "+ host
-                    // +":"+ port);
-                    System.getProperties().put("proxySet", "true");
-                    System.getProperties().put("proxyHost", host);
-                    System.getProperties().put("proxyPort", port);
-                    break;
-                }
+                break;
             }
         }
 
@@ -207,19 +166,123 @@ public class WebAccessor
         return iStream;
     }
 
-    private void startOpening(final URL url)
+    /**
+     * Opens a connection to the specified URL, prompting for a proxy if the connection is refused, and for a
+     * password if the server requires authentication.
+     * <p/>
+     * Unlike {@link #openInputStream(URL)}, this waits for the connection to complete or fail, and doesn't display
+     * download progress. Calls are serialized, so that concurrent callers are prompted one at a time.
+     *
+     * @param url     the URL to connect to
+     * @param timeout the connect and read timeout, in milliseconds. A timeout of zero is interpreted as infinite
+     * @return the connection. Its input stream has been opened
+     * @throws InterruptedIOException if the calling thread is interrupted
+     * @throws IOException            if the connection fails, or the proxy prompt is cancelled
+     */
+    public synchronized URLConnection openConnection(URL url, int timeout) throws IOException
+    {
+        setUrl(url.toExternalForm());
+        while (true)
+        {
+            startOpening(url, false, timeout);
+            try
+            {
+                openerThread.join();
+            }
+            catch (InterruptedException x)
+            {
+                openerThread.interrupt();
+                throw new InterruptedIOException("Interrupted while connecting to " + url);
+            }
+            if (iStream != null)
+            {
+                return connection;
+            }
+            if (!tryProxy || !promptForProxy())
+            {
+                break;
+            }
+        }
+        IOException result = new IOException("Unable to connect to " + url + ": " + exception.getMessage());
+        result.initCause(exception);
+        throw result;
+    }
+
+    /**
+     * Shows the proxy dialog until valid values are entered, or it is cancelled.
+     * <p/>
+     * Only to be called after a connection has been refused.
+     *
+     * @return {@code true} if a proxy has been set, {@code false} if the dialog was cancelled
+     */
+    private boolean promptForProxy()
+    {
+        JPanel panel = getProxyPanel();
+        errorLabel.setText("Unable to connect: " + exception.getMessage());
+        while (true)
+        {
+            int result = JOptionPane.showConfirmDialog(parent, panel, "Proxy Configuration",
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+            if (result != JOptionPane.OK_OPTION) // canceled
+            {
+                return false;
+            }
+
+            String host = null;
+            String port = null;
+
+            try
+            {
+                InetAddress addr = InetAddress.getByName(hostField.getText());
+                host = addr.getHostName();
+            }
+            catch (Exception x)
+            {
+                errorLabel.setText("Unable to resolve Host");
+                Toolkit.getDefaultToolkit().beep();
+            }
+
+            try
+            {
+                if (host != null)
+                {
+                    port = Integer.valueOf(portField.getText()).toString();
+                }
+            }
+            catch (NumberFormatException x)
+            {
+                errorLabel.setText("Invalid Port");
+                Toolkit.getDefaultToolkit().beep();
+            }
+
+            if (host != null && port != null)
+            {
+                // System.err.println ("Setting http proxy: "+ host
+                // +":"+ port);
+                System.getProperties().put("proxySet", "true");
+                System.getProperties().put("proxyHost", host);
+                System.getProperties().put("proxyPort", port);
+                return true;
+            }
+        }
+    }
+
+    private void startOpening(final URL url, final boolean logged, final int timeout)
     {
         final WebAccessor webAccessor = this;
+        connection = null;
+        iStream = null;
+        exception = null;
+        tryProxy = false;
         openerThread = new Thread()
         {
             public void run()
             {
-                iStream = null;
                 try
                 {
-                    tryProxy = false;
-
                     URLConnection connection = url.openConnection();
+                    connection.setConnectTimeout(timeout);
+                    connection.setReadTimeout(timeout);
 
                     if (connection instanceof HttpURLConnection)
                     {
@@ -229,7 +292,8 @@ public class WebAccessor
 
                     //InputStream iii = echoSocket.getInputStream();
                     InputStream inputStream = connection.getInputStream();
-                    iStream = new LoggedInputStream(inputStream, webAccessor); // just to make
+                    webAccessor.connection = connection;
+                    iStream = logged ? new LoggedInputStream(inputStream, webAccessor) : inputStream;
 
                 }
                 catch (ConnectException x)
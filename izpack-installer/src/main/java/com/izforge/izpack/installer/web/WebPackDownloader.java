@@ -0,0 +1,502 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.exception.IzPackException;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Downloads the pack jars of a web-based installer, and caches them locally.
+ * <p/>
+ * Packs are downloaded concurrently by a bounded pool of threads, as soon as they are {@link #prefetch prefetched},
+ * so that downloading overlaps with the installation of packs that have already arrived.
+ * <p/>
+ * Each pack jar is downloaded to a uniquely named temporary file, and only moved into the cache once its length
+ * matches that reported by the server, and the CRC of every entry has been verified. Cached jars are verified again
+ * before being reused, so an installation that is retried after a failure only downloads the packs it doesn't already
+ * have.
+ * <p/>
+ * As a new release may be published to the same web directory URL, a cached jar is only reused if its pack entry has
+ * the size and CRC that the compiler recorded in the pack. Packs without these are always downloaded.
+ * <p/>
+ * The cache is located in the system temporary directory, in a sub-directory specific to the web directory URL.
+ */
+public class WebPackDownloader
+{
+
+    /**
+     * The default no. of concurrent downloads.
+     */
+    public static final int MAX_DOWNLOADS = 4;
+
+    /**
+     * The name of the cache directory, within the system temporary directory.
+     */
+    private static final String CACHE_DIR = "IzpackWebTemp";
+
+    /**
+     * The suffix of partially downloaded files.
+     */
+    private static final String PART_SUFFIX = ".part";
+
+    /**
+     * The download buffer size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The connect and read timeout, in milliseconds.
+     */
+    private static final int TIMEOUT = 60 * 1000;
+
+    /**
+     * The installation data.
+     */
+    private final InstallData installData;
+
+    /**
+     * The connector used to open connections to the web directory.
+     */
+    private final WebConnector connector;
+
+    /**
+     * The cache directory, or {@code null} to derive it from the web directory URL.
+     */
+    private final File cacheDir;
+
+    /**
+     * The no. of concurrent downloads.
+     */
+    private final int threads;
+
+    /**
+     * The download threads. Lazily created.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The submitted downloads, keyed on pack name.
+     */
+    private final Map<String, Future<File>> downloads = new HashMap<String, Future<File>>();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(WebPackDownloader.class.getName());
+
+
+    /**
+     * Constructs a {@code WebPackDownloader}.
+     *
+     * @param installData the installation data
+     * @param connector   the connector used to open connections to the web directory
+     */
+    public WebPackDownloader(InstallData installData, WebConnector connector)
+    {
+        this(installData, connector, null, MAX_DOWNLOADS);
+    }
+
+    /**
+     * Constructs a {@code WebPackDownloader}.
+     *
+     * @param installData the installation data
+     * @param connector   the connector used to open connections to the web directory
+     * @param cacheDir    the cache directory, or {@code null} to derive it from the web directory URL
+     * @param threads     the no. of concurrent downloads
+     */
+    public WebPackDownloader(InstallData installData, WebConnector connector, File cacheDir, int threads)
+    {
+        this.installData = installData;
+        this.connector = connector;
+        this.cacheDir = cacheDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Starts downloading packs in the background.
+     * <p/>
+     * Packs that have already been submitted for download are ignored. This does nothing if the installer is not
+     * web-based.
+     *
+     * @param packs the packs to download
+     */
+    public synchronized void prefetch(List<Pack> packs)
+    {
+        if (installData.getInfo().getWebDirURL() != null)
+        {
+            for (Pack pack : packs)
+            {
+                if (!downloads.containsKey(pack.getName()))
+                {
+                    submit(pack.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached jar of a pack, waiting for it to be downloaded if required.
+     * <p/>
+     * If a previous download of the pack failed, it is retried.
+     *
+     * @param name the pack name
+     * @return the pack jar
+     * @throws InterruptedIOException if the download is interrupted
+     * @throws IOException            if the pack cannot be downloaded
+     */
+    public File getPack(String name) throws IOException
+    {
+        Future<File> future;
+        synchronized (this)
+        {
+            future = downloads.get(name);
+            if (future == null)
+            {
+                future = submit(name);
+            }
+        }
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            throw new InterruptedIOException("Interrupted while downloading pack " + name);
+        }
+        catch (ExecutionException exception)
+        {
+            synchronized (this)
+            {
+                if (downloads.get(name) == future)
+                {
+                    downloads.remove(name);
+                }
+            }
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IzPackException("Failed to download pack " + name, cause);
+        }
+    }
+
+    /**
+     * Returns the URL of a pack jar.
+     * <p/>
+     * See compiler.Packager#getJarOutputStream for the counterpart.
+     *
+     * @param name the pack name
+     * @return the URL of the pack jar
+     */
+    public String getPackURL(String name)
+    {
+        return installData.getInfo().getWebDirURL() + "/" + getFileName(name);
+    }
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return the cache directory
+     */
+    public File getCacheDir()
+    {
+        if (cacheDir != null)
+        {
+            return cacheDir;
+        }
+        String url = installData.getInfo().getWebDirURL();
+        String key = Integer.toHexString(url.hashCode()) + "-" + Integer.toHexString(url.length());
+        return new File(new File(System.getProperty("java.io.tmpdir"), CACHE_DIR), key);
+    }
+
+    /**
+     * Submits a pack for download.
+     *
+     * @param name the pack name
+     * @return the download
+     */
+    private Future<File> submit(final String name)
+    {
+        if (executor == null)
+        {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "IzPack pack downloader " + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        Future<File> result = executor.submit(new Callable<File>()
+        {
+            @Override
+            public File call() throws Exception
+            {
+                return download(name);
+            }
+        });
+        downloads.put(name, result);
+        return result;
+    }
+
+    /**
+     * Downloads a pack jar to the cache, unless a valid copy is already cached.
+     *
+     * @param name the pack name
+     * @return the cached pack jar
+     * @throws IOException if the pack cannot be downloaded
+     */
+    private File download(String name) throws IOException
+    {
+        File dir = getCacheDir();
+        File file = new File(dir, getFileName(name));
+        Pack pack = getPackInfo(name);
+        if (file.exists())
+        {
+            if (pack != null && pack.getEntryCrc() != -1 && isValid(file, name, pack))
+            {
+                logger.fine("Using cached pack " + name + ": " + file);
+                return file;
+            }
+            logger.info("Discarding invalid or outdated cached pack " + name + ": " + file);
+            FileUtils.delete(file);
+        }
+        if (!dir.mkdirs() && !dir.isDirectory())
+        {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+
+        URL url = new URL(getPackURL(name));
+        File part = File.createTempFile(file.getName() + "-", PART_SUFFIX, dir);
+        boolean success = false;
+        try
+        {
+            long length = download(url, part);
+            if (length >= 0 && part.length() != length)
+            {
+                throw new IOException("Downloaded " + part.length() + " of " + length + " bytes from " + url);
+            }
+            if (!isValid(part, name, pack))
+            {
+                throw new IOException("Download of " + url + " is corrupt, or does not match this installer");
+            }
+            if (!part.renameTo(file))
+            {
+                // another installer may have cached the pack concurrently
+                if (isValid(file, name, pack))
+                {
+                    FileUtils.delete(part);
+                }
+                else if (!file.delete() || !part.renameTo(file))
+                {
+                    throw new IOException("Failed to rename " + part + " to " + file);
+                }
+            }
+            success = true;
+        }
+        finally
+        {
+            if (!success)
+            {
+                FileUtils.delete(part);
+            }
+        }
+        logger.fine("Downloaded pack " + name + ": " + file);
+        return file;
+    }
+
+    /**
+     * Downloads a URL to a file.
+     *
+     * @param url  the URL
+     * @param file the file to write to
+     * @return the content length reported by the server, or {@code -1} if it is unknown
+     * @throws InterruptedIOException if the download is interrupted
+     * @throws IOException            for any other I/O error
+     */
+    private long download(URL url, File file) throws IOException
+    {
+        URLConnection connection = connector.connect(url, TIMEOUT);
+        if (connection instanceof HttpURLConnection)
+        {
+            HttpURLConnection http = (HttpURLConnection) connection;
+            if (http.getResponseCode() != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("Failed to download " + url + ": " + http.getResponseCode() + " "
+                                              + http.getResponseMessage());
+            }
+        }
+        long length = connection.getContentLength();
+        InputStream in = null;
+        OutputStream out = null;
+        try
+        {
+            in = connection.getInputStream();
+            out = new FileOutputStream(file);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                if (Thread.currentThread().isInterrupted())
+                {
+                    throw new InterruptedIOException("Download of " + url + " interrupted");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            FileUtils.close(in);
+            FileUtils.close(out);
+        }
+        return length;
+    }
+
+    /**
+     * Determines if a pack jar is complete and uncorrupted, and belongs to this installer.
+     * <p/>
+     * The jar must have an intact central directory containing the pack, and every entry is read so that its CRC is
+     * verified. If the size and CRC of the pack entry have been recorded in the pack, the entry must match them.
+     *
+     * @param file the pack jar
+     * @param name the pack name
+     * @param pack the pack meta-data. May be {@code null}
+     * @return {@code true} if the jar is valid and contains the pack
+     */
+    private boolean isValid(File file, String name, Pack pack)
+    {
+        boolean result = false;
+        ZipFile zip = null;
+        ZipInputStream in = null;
+        try
+        {
+            zip = new ZipFile(file);
+            ZipEntry entry = zip.getEntry("packs/pack-" + name);
+            if (entry != null && matches(entry, pack))
+            {
+                in = new ZipInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int entries = 0;
+                while (in.getNextEntry() != null)
+                {
+                    while (in.read(buffer) != -1)
+                    {
+                        // read to the end of the entry, to verify its CRC
+                    }
+                    ++entries;
+                }
+                result = entries == zip.size();
+            }
+        }
+        catch (IOException exception)
+        {
+            logger.fine("Invalid pack jar " + file + ": " + exception.getMessage());
+        }
+        finally
+        {
+            FileUtils.close(in);
+            FileUtils.close(zip);
+        }
+        return result;
+    }
+
+    /**
+     * Determines if a pack jar entry matches the size and CRC recorded in the pack.
+     *
+     * @param entry the pack jar entry
+     * @param pack  the pack meta-data. May be {@code null}
+     * @return {@code true} if the entry matches, or nothing was recorded
+     */
+    private boolean matches(ZipEntry entry, Pack pack)
+    {
+        if (pack == null || pack.getEntryCrc() == -1)
+        {
+            return true;
+        }
+        return entry.getCrc() == pack.getEntryCrc() && entry.getSize() == pack.getEntrySize();
+    }
+
+    /**
+     * Returns the meta-data of a pack.
+     *
+     * @param name the pack name
+     * @return the pack, or {@code null} if it is not found
+     */
+    private Pack getPackInfo(String name)
+    {
+        List<Pack> packs = installData.getAllPacks();
+        if (packs != null)
+        {
+            for (Pack pack : packs)
+            {
+                if (pack.getName().equals(name))
+                {
+                    return pack;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the file name of a pack jar.
+     *
+     * @param name the pack name
+     * @return the file name
+     */
+    private String getFileName(String name)
+    {
+        return installData.getInfo().getInstallerBase() + ".pack-" + name + ".jar";
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.event;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.izforge.izpack.api.event.ProgressListener;
+
+
+/**
+ * Tests the {@link ProgressCoalescer}.
+ */
+public class ProgressCoalescerTest
+{
+
+    /**
+     * Verifies that only the first and latest progress notifications are published within an interval, and that
+     * pending progress is published before other notifications.
+     */
+    @Test
+    public void testCoalesce()
+    {
+        ProgressListener listener = mock(ProgressListener.class);
+        ProgressCoalescer coalescer = new ProgressCoalescer(listener, 60000);
+
+        coalescer.startAction("Unpacking", 1);
+        coalescer.nextStep("Base", 1, 1000);
+        for (int i = 0; i < 1000; ++i)
+        {
+            coalescer.progress(i, "file" + i);
+        }
+        coalescer.stopAction();
+
+        InOrder order = inOrder(listener);
+        order.verify(listener).startAction("Unpacking", 1);
+        order.verify(listener).nextStep("Base", 1, 1000);
+        order.verify(listener).progress(0, "file0");
+        order.verify(listener).progress(999, "file999");
+        order.verify(listener).stopAction();
+        verifyNoMoreInteractions(listener);
+    }
+
+    /**
+     * Verifies that deferred progress is published by the timer if no further notification arrives.
+     */
+    @Test
+    public void testDeferred()
+    {
+        ProgressListener listener = mock(ProgressListener.class);
+        ProgressCoalescer coalescer = new ProgressCoalescer(listener, 50);
+
+        coalescer.progress(0, "file0");
+        coalescer.progress(1, "file1");
+        coalescer.progress(2, "file2");
+        verify(listener).progress(0, "file0");
+        verify(listener, timeout(5000)).progress(2, "file2");
+        verify(listener, never()).progress(1, "file1");
+
+        coalescer.stopAction();
+        verify(listener).stopAction();
+        verifyNoMoreInteractions(listener);
+    }
+}
@@ -21,14 +21,26 @@
 
 package com.izforge.izpack.installer.unpacker;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.PackFile;
 
 import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.os.FileQueue;
@@ -71,4 +83,78 @@ public class DefaultFileUnpackerTest extends AbstractFileUnpackerTest
         return new DefaultFileUnpacker(getCancellable(), queue);
     }
 
+    /**
+     * Verifies that a file larger than the maximum buffer size can be unpacked from a stream that returns less than
+     * requested on each read.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testUnpackLargeFile() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File source = new File(baseDir, "source.bin");
+        byte[] content = new byte[FileUnpacker.MAX_BUFFER_SIZE + 12345];
+        new Random(1).nextBytes(content);
+        FileUtils.writeByteArrayToFile(source, content);
+        File target = new File(baseDir, "target.bin");
+
+        PackFile file = createPackFile(baseDir, source, target, Blockable.BLOCKABLE_NONE);
+        InputStream stream = new FilterInputStream(new ByteArrayInputStream(content))
+        {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        createUnpacker(baseDir, null).unpack(file, stream, target);
+        assertArrayEquals(content, FileUtils.readFileToByteArray(target));
+
+        // files read from the file system are transferred directly
+        File copy = new File(baseDir, "copy.bin");
+        createUnpacker(baseDir, null).unpack(file, new FileInputStream(source), copy);
+        assertArrayEquals(content, FileUtils.readFileToByteArray(copy));
+    }
+
+    /**
+     * Verifies that copy buffers are sized to the file, within limits.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testGetBuffer() throws Exception
+    {
+        // buffers are per-thread, so use a new thread to start without one
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    assertEquals(FileUnpacker.MIN_BUFFER_SIZE, FileUnpacker.getBuffer(1).length);
+                    assertEquals(2 * 1024 * 1024, FileUnpacker.getBuffer(1024 * 1024 + 1).length);
+                    assertEquals(FileUnpacker.MAX_BUFFER_SIZE, FileUnpacker.getBuffer(Long.MAX_VALUE).length);
+
+                    // buffers are reused by the thread
+                    byte[] buffer = FileUnpacker.getBuffer(10);
+                    assertEquals(FileUnpacker.MAX_BUFFER_SIZE, buffer.length);
+                    assertTrue(buffer == FileUnpacker.getBuffer(1024));
+                }
+                catch (Throwable exception)
+                {
+                    failure[0] = exception;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        if (failure[0] != null)
+        {
+            throw new AssertionError(failure[0]);
+        }
+    }
+
 }
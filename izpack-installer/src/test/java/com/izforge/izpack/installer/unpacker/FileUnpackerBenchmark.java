@@ -0,0 +1,268 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * Compares the throughput of {@link DefaultFileUnpacker} with the previous implementation, which copied each file
+ * through a new 5 KB buffer and checked for cancellation on every chunk.
+ * <p/>
+ * Files of 1 KB, 1 MB and 1 GB are unpacked from a stream that returns at most 1 KB per read, as the block data of
+ * an {@code ObjectInputStream} pack stream does.
+ * <p/>
+ * This is not run as part of the build. Run it via its {@link #main} method, optionally passing the size of the
+ * large file in MB, and the directory to unpack to.
+ */
+public class FileUnpackerBenchmark
+{
+
+    /**
+     * The no. of warm-up iterations.
+     */
+    private static final int WARMUP = 1;
+
+    /**
+     * The no. of measured iterations.
+     */
+    private static final int ITERATIONS = 3;
+
+    /**
+     * The maximum no. of bytes returned by each read of the pack stream.
+     */
+    private static final int READ_SIZE = 1024;
+
+    /**
+     * Never cancels.
+     */
+    private static final Cancellable NOT_CANCELLED = new Cancellable()
+    {
+        @Override
+        public boolean isCancelled()
+        {
+            return false;
+        }
+    };
+
+
+    /**
+     * Main line.
+     *
+     * @param args [large file size in MB] [directory]
+     * @throws Exception for any error
+     */
+    public static void main(String[] args) throws Exception
+    {
+        long large = ((args.length > 0) ? Long.parseLong(args[0]) : 1024) * 1024 * 1024;
+        File dir = (args.length > 1) ? new File(args[1]) : new File(System.getProperty("java.io.tmpdir"));
+        dir = new File(dir, "unpacker-benchmark");
+        if (!dir.mkdirs() && !dir.isDirectory())
+        {
+            throw new IOException("Failed to create " + dir);
+        }
+        try
+        {
+            run(dir, 1024, 10000);
+            run(dir, 1024 * 1024, 100);
+            run(dir, large, 1);
+        }
+        finally
+        {
+            FileUtils.deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Benchmarks the unpacking of files of the specified size.
+     *
+     * @param dir    the directory to unpack to
+     * @param length the file length
+     * @param count  the no. of files to unpack per iteration
+     * @throws Exception for any error
+     */
+    private static void run(File dir, long length, int count) throws Exception
+    {
+        // the unpackers only use the source for its length
+        File source = new File(dir, "source");
+        RandomAccessFile file = new RandomAccessFile(source, "rw");
+        file.setLength(length);
+        file.close();
+        PackFile packFile = new PackFile(dir, source, "target", null, OverrideType.OVERRIDE_TRUE, null,
+                                         Blockable.BLOCKABLE_NONE);
+        byte[] content = new byte[64 * 1024];
+        new Random(length).nextBytes(content);
+
+        for (int i = 0; i < WARMUP; ++i)
+        {
+            unpack(new DefaultFileUnpacker(NOT_CANCELLED, null), packFile, content, dir, count);
+            unpack(new PreviousFileUnpacker(), packFile, content, dir, count);
+        }
+        long currentTime = 0;
+        long previousTime = 0;
+        for (int i = 0; i < ITERATIONS; ++i)
+        {
+            currentTime += unpack(new DefaultFileUnpacker(NOT_CANCELLED, null), packFile, content, dir, count);
+            previousTime += unpack(new PreviousFileUnpacker(), packFile, content, dir, count);
+        }
+        double megabytes = length * count / (1024.0 * 1024.0);
+        System.out.printf("%d x %d bytes%n", count, length);
+        System.out.printf("  Previous: %.1f MB/s%n", megabytes * ITERATIONS / (previousTime / 1E9));
+        System.out.printf("  Current:  %.1f MB/s%n", megabytes * ITERATIONS / (currentTime / 1E9));
+        System.out.printf("  Speedup:  %.2fx%n", (double) previousTime / currentTime);
+    }
+
+    /**
+     * Unpacks a file several times.
+     *
+     * @param unpacker the unpacker
+     * @param file     the pack file
+     * @param content  the content to repeat in the pack stream
+     * @param dir      the directory to unpack to
+     * @param count    the no. of times to unpack the file
+     * @return the elapsed time, in nanoseconds
+     * @throws Exception for any error
+     */
+    private static long unpack(FileUnpacker unpacker, PackFile file, byte[] content, File dir, int count)
+            throws Exception
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; ++i)
+        {
+            File target = new File(dir, "target" + (i % 100));
+            unpacker.unpack(file, new PackStream(content, file.length()), target);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * A pack stream that repeats content, returning at most {@link #READ_SIZE} bytes per read.
+     */
+    private static class PackStream extends InputStream
+    {
+
+        /**
+         * The content to repeat.
+         */
+        private final byte[] content;
+
+        /**
+         * The no. of bytes remaining.
+         */
+        private long remaining;
+
+        /**
+         * The position in the content.
+         */
+        private int position;
+
+        /**
+         * Constructs a {@code PackStream}.
+         *
+         * @param content the content to repeat
+         * @param length  the stream length
+         */
+        public PackStream(byte[] content, long length)
+        {
+            this.content = content;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining == 0)
+            {
+                return -1;
+            }
+            int count = (int) Math.min(Math.min(len, READ_SIZE), Math.min(remaining, content.length - position));
+            System.arraycopy(content, position, b, off, count);
+            position = (position + count) % content.length;
+            remaining -= count;
+            return count;
+        }
+    }
+
+    /**
+     * The previous unpacking implementation.
+     */
+    private static class PreviousFileUnpacker extends FileUnpacker
+    {
+
+        /**
+         * Constructs a {@code PreviousFileUnpacker}.
+         */
+        public PreviousFileUnpacker()
+        {
+            super(NOT_CANCELLED, null);
+        }
+
+        @Override
+        public void unpack(PackFile file, InputStream packInputStream, File target)
+                throws IOException, InstallerException
+        {
+            OutputStream out = getTarget(file, target);
+            try
+            {
+                byte[] buffer = new byte[5120];
+                long bytesCopied = 0;
+                while (bytesCopied < file.length())
+                {
+                    if (NOT_CANCELLED.isCancelled())
+                    {
+                        throw new InterruptedIOException("Copy operation cancelled");
+                    }
+                    int maxBytes = (int) Math.min(file.length() - bytesCopied, buffer.length);
+                    int read = packInputStream.read(buffer, 0, maxBytes);
+                    if (read == -1)
+                    {
+                        throw new IOException("Unexpected end of stream (installer corrupted?)");
+                    }
+                    out.write(buffer, 0, read);
+                    bytesCopied += read;
+                }
+            }
+            finally
+            {
+                FileUtils.close(out);
+            }
+            postCopy(file);
+        }
+    }
+}
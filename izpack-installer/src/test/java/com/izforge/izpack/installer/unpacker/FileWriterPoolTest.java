@@ -0,0 +1,209 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link FileWriterPool} class.
+ */
+public class FileWriterPoolTest
+{
+
+    /**
+     * The pool.
+     */
+    private final FileWriterPool pool = new FileWriterPool(4, 100);
+
+    /**
+     * Shuts down the pool.
+     */
+    @After
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Verifies that completion is reported in submission order, even if writes complete out of order.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCompletionOrder() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Integer> completed = new ArrayList<Integer>();
+        for (int i = 0; i < 10; ++i)
+        {
+            final int index = i;
+            File target = new File("file" + i);
+            pool.reserve(10);
+            pool.submit(target, 10, new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    if (index == 0)
+                    {
+                        latch.await();
+                    }
+                    return null;
+                }
+            }, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    completed.add(index);
+                }
+            });
+            if (i == 0)
+            {
+                assertTrue(pool.isPending(target));
+            }
+        }
+        assertTrue(completed.isEmpty());
+        latch.countDown();
+        pool.await();
+        assertEquals(10, completed.size());
+        for (int i = 0; i < completed.size(); ++i)
+        {
+            assertEquals(i, completed.get(i).intValue());
+        }
+        assertFalse(pool.isPending(new File("file0")));
+    }
+
+    /**
+     * Verifies that reserving more memory than is available waits for the oldest write to complete.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testReserve() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> completed = new ArrayList<String>();
+        pool.reserve(60);
+        pool.submit(new File("a"), 60, new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                latch.await();
+                return null;
+            }
+        }, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                completed.add("a");
+            }
+        });
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException ignore)
+                {
+                    // do nothing
+                }
+                latch.countDown();
+            }
+        }.start();
+
+        // the first write holds its reservation until it completes
+        pool.reserve(60);
+        assertEquals(1, completed.size());
+        pool.submit(new File("b"), 60, new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                return null;
+            }
+        }, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                completed.add("b");
+            }
+        });
+        pool.await();
+        assertEquals(2, completed.size());
+    }
+
+    /**
+     * Verifies that an exception thrown by a write is rethrown to the installation thread.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testException() throws Exception
+    {
+        pool.reserve(10);
+        try
+        {
+            // the failure may be reported by submit(), if the write completes first
+            pool.submit(new File("a"), 10, new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    throw new IOException("failed");
+                }
+            }, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    fail("Completion should not be reported");
+                }
+            });
+            pool.await();
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            assertEquals("failed", expected.getMessage());
+        }
+    }
+}
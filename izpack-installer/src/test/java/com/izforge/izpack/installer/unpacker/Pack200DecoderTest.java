@@ -0,0 +1,173 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Pack200;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.izforge.izpack.api.exception.ResourceNotFoundException;
+
+
+/**
+ * Tests the {@link Pack200Decoder}.
+ */
+public class Pack200DecoderTest
+{
+
+    /**
+     * Verifies that Pack200 and re-compressed entries are decoded, and that following entries are decoded ahead of
+     * being requested.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDecode() throws Exception
+    {
+        final byte[] jar0 = createJar(0);
+        final byte[] jar1 = createJar(1);
+        final byte[] packed0 = pack(jar0);
+
+        // the resources are read on the decoder's threads, so count reads rather than verifying the mock, as Mockito
+        // verification isn't safe while the mock is being invoked concurrently
+        final AtomicInteger reads0 = new AtomicInteger();
+        final AtomicInteger reads1 = new AtomicInteger();
+        final CountDownLatch read1 = new CountDownLatch(1);
+        PackResources resources = mock(PackResources.class);
+        when(resources.getInputStream("packs/pack200-0")).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(InvocationOnMock invocation)
+            {
+                reads0.incrementAndGet();
+                return new ByteArrayInputStream(packed0);
+            }
+        });
+        when(resources.getInputStream("packs/pack200-1")).thenAnswer(new Answer<InputStream>()
+        {
+            @Override
+            public InputStream answer(InvocationOnMock invocation)
+            {
+                reads1.incrementAndGet();
+                read1.countDown();
+                return new ByteArrayInputStream(jar1);
+            }
+        });
+        when(resources.getInputStream("packs/pack200-2")).thenThrow(new ResourceNotFoundException("pack200-2"));
+
+        Pack200Decoder decoder = new Pack200Decoder(resources, 1);
+        checkEntry(decoder.getInputStream(0), 0);
+
+        // entry 1 is decoded ahead of being requested
+        assertTrue(read1.await(5, TimeUnit.SECONDS));
+
+        InputStream in = decoder.getInputStream(1);
+        assertArrayEquals(jar1, IOUtils.toByteArray(in));
+        in.close();
+
+        decoder.shutdown();
+        assertEquals(1, reads0.get());
+        assertEquals(1, reads1.get());
+    }
+
+    /**
+     * Verifies a decoded jar holds the expected entry.
+     *
+     * @param in    the decoded jar
+     * @param index the jar index
+     * @throws IOException for any I/O error
+     */
+    private void checkEntry(InputStream in, int index) throws IOException
+    {
+        JarInputStream jar = new JarInputStream(in);
+        try
+        {
+            ZipEntry entry = jar.getNextEntry();
+            assertEquals("data" + index + ".txt", entry.getName());
+            assertArrayEquals(getContent(index), IOUtils.toByteArray(jar));
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Packs a jar using Pack200.
+     *
+     * @param jar the jar
+     * @return the packed jar
+     * @throws IOException for any I/O error
+     */
+    private byte[] pack(byte[] jar) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Pack200.newPacker().pack(new JarInputStream(new ByteArrayInputStream(jar)), bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Creates a jar with a single entry.
+     *
+     * @param index the jar index
+     * @return the jar
+     * @throws IOException for any I/O error
+     */
+    private byte[] createJar(int index) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JarOutputStream jar = new JarOutputStream(bytes);
+        jar.putNextEntry(new ZipEntry("data" + index + ".txt"));
+        jar.write(getContent(index));
+        jar.closeEntry();
+        jar.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the content of a jar entry.
+     *
+     * @param index the jar index
+     * @return the content
+     */
+    private byte[] getContent(int index)
+    {
+        return ("content of jar " + index).getBytes();
+    }
+}
@@ -96,7 +96,7 @@ public class Pack200FileUnpackerTest extends AbstractFileUnpackerTest
             }
         }
         when(resources.getInputStream("packs/pack200-1")).thenReturn(new ByteArrayInputStream(bytes.toByteArray()));
-        return new Pack200FileUnpacker(getCancellable(), resources, Pack200.newUnpacker(), queue);
+        return new Pack200FileUnpacker(getCancellable(), new Pack200Decoder(resources), queue);
     }
 
     /**
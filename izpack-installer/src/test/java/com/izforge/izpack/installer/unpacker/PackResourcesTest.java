@@ -0,0 +1,236 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.exception.ResourceNotFoundException;
+import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.io.PackFormat;
+
+
+/**
+ * Tests the {@link AbstractPackResources} class.
+ */
+public class PackResourcesTest
+{
+
+    /**
+     * The pack stream.
+     */
+    private final byte[] pack = new byte[200];
+
+    /**
+     * The resources.
+     */
+    private Resources resources;
+
+    /**
+     * The pack resources.
+     */
+    private PackResources packResources;
+
+
+    /**
+     * Sets up the test case.
+     */
+    @Before
+    public void setUp()
+    {
+        for (int i = 0; i < pack.length; ++i)
+        {
+            pack[i] = (byte) i;
+        }
+        resources = Mockito.mock(Resources.class);
+        InstallData installData = Mockito.mock(InstallData.class);
+        when(installData.getInfo()).thenReturn(new Info());
+        packResources = new AbstractPackResources(resources, installData)
+        {
+            @Override
+            protected InputStream getWebPackStream(String name, String webDirURL)
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Verifies that an indexed pack is read from the block containing the requested offset.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testIndexedPack() throws IOException
+    {
+        when(resources.getInputStream("packs.index")).thenReturn(createIndex("pack", 100));
+        when(resources.getInputStream("packs/pack-pack")).thenReturn(getBytes(0, 100));
+        when(resources.getInputStream("packs/blocks/pack-pack-100")).thenReturn(getBytes(100, 200));
+
+        checkRead(packResources.getPackStream("pack", 150), 150);
+        verify(resources, never()).getInputStream("packs/pack-pack");
+
+        checkRead(packResources.getPackStream("pack", 50), 50);
+    }
+
+    /**
+     * Verifies that the blocks of an indexed pack are joined when the pack is read sequentially, and when it is read
+     * from an offset in an earlier block.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testJoinedBlocks() throws IOException
+    {
+        when(resources.getInputStream("packs.index")).thenReturn(createIndex("pack", 80, 150));
+        when(resources.getInputStream("packs/pack-pack")).thenReturn(getBytes(0, 80), getBytes(0, 80));
+        when(resources.getInputStream("packs/blocks/pack-pack-80")).thenReturn(getBytes(80, 150),
+                                                                                getBytes(80, 150));
+        when(resources.getInputStream("packs/blocks/pack-pack-150")).thenReturn(getBytes(150, 200),
+                                                                                 getBytes(150, 200));
+
+        assertArrayEquals(pack, IOUtils.toByteArray(packResources.getPackStream("pack")));
+        assertArrayEquals(Arrays.copyOfRange(pack, 100, 200),
+                          IOUtils.toByteArray(packResources.getPackStream("pack", 100)));
+
+        // closing the stream doesn't open the remaining blocks
+        setUp();
+        when(resources.getInputStream("packs.index")).thenReturn(createIndex("pack", 80, 150));
+        when(resources.getInputStream("packs/pack-pack")).thenReturn(getBytes(0, 80));
+        packResources.getPackStream("pack").close();
+        verify(resources, never()).getInputStream("packs/blocks/pack-pack-80");
+    }
+
+    /**
+     * Verifies that packs are read from the start if there is no index.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testUnindexedPack() throws IOException
+    {
+        when(resources.getInputStream("packs.index")).thenThrow(new ResourceNotFoundException("packs.index"));
+        when(resources.getInputStream("packs/pack-pack")).thenReturn(getBytes(0, 200));
+
+        checkRead(packResources.getPackStream("pack", 150), 150);
+    }
+
+    /**
+     * Verifies that the pack format is read from <em>packs.info</em>, and that installers that don't record it use
+     * the serialized format.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testPackFormat() throws IOException
+    {
+        when(resources.getInputStream("packs.info")).thenReturn(createPacksInfo(PackFormat.VERSION_MARKER,
+                                                                                PackFormat.BINARY, 0));
+        assertEquals(PackFormat.BINARY, packResources.getPackFormat());
+
+        setUp();
+        when(resources.getInputStream("packs.info")).thenReturn(createPacksInfo(0));
+        assertEquals(PackFormat.SERIALIZED, packResources.getPackFormat());
+    }
+
+    /**
+     * Verifies a stream is positioned at the expected offset of the pack.
+     *
+     * @param stream the stream
+     * @param offset the expected offset
+     * @throws IOException for any I/O error
+     */
+    private void checkRead(InputStream stream, int offset) throws IOException
+    {
+        assertEquals(pack[offset], (byte) stream.read());
+        stream.close();
+    }
+
+    /**
+     * Returns a stream to a range of the pack.
+     *
+     * @param from the start of the range, inclusive
+     * @param to   the end of the range, exclusive
+     * @return a stream to the range
+     */
+    private InputStream getBytes(int from, int to)
+    {
+        return new ByteArrayInputStream(Arrays.copyOfRange(pack, from, to));
+    }
+
+    /**
+     * Creates a <em>packs.info</em> stream.
+     *
+     * @param values the integers to write
+     * @return a stream to the pack information
+     * @throws IOException for any I/O error
+     */
+    private InputStream createPacksInfo(int... values) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int value : values)
+        {
+            out.writeInt(value);
+        }
+        out.close();
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    /**
+     * Creates a pack index for a single pack.
+     *
+     * @param name   the pack name
+     * @param blocks the block offsets
+     * @return a stream to the index
+     * @throws IOException for any I/O error
+     */
+    private InputStream createIndex(String name, long... blocks) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeInt(1);
+        out.writeUTF(name);
+        out.writeInt(blocks.length);
+        for (long block : blocks)
+        {
+            out.writeLong(block);
+        }
+        out.close();
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.installer.data.InstallData;
+import com.izforge.izpack.util.Platforms;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+/**
+ * Tests the {@link WebPackDownloader}, against a local HTTP server.
+ */
+public class WebPackDownloaderTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The HTTP server.
+     */
+    private HttpServer server;
+
+    /**
+     * The content served, keyed on path.
+     */
+    private final Map<String, byte[]> content = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * The no. of requests, keyed on path.
+     */
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * The installation data.
+     */
+    private InstallData installData;
+
+    /**
+     * The cache directory.
+     */
+    private File cacheDir;
+
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+                AtomicInteger count = requests.get(path);
+                if (count == null)
+                {
+                    count = new AtomicInteger();
+                    requests.put(path, count);
+                }
+                count.incrementAndGet();
+                byte[] data = content.get(path);
+                if (data == null)
+                {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+                else
+                {
+                    exchange.sendResponseHeaders(200, data.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(data);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+
+        installData = new InstallData(new DefaultVariables(), Platforms.LINUX);
+        Info info = new Info();
+        info.setInstallerBase("install");
+        info.setWebDirURL("http://127.0.0.1:" + server.getAddress().getPort() + "/packs");
+        installData.setInfo(info);
+        installData.setAllPacks(new ArrayList<Pack>());
+        cacheDir = temporaryFolder.newFolder("cache");
+    }
+
+    /**
+     * Cleans up after the test case.
+     */
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    /**
+     * Verifies that prefetched packs are downloaded concurrently, and downloaded only once.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDownload() throws IOException
+    {
+        List<Pack> packs = new ArrayList<Pack>();
+        for (int i = 0; i < 5; ++i)
+        {
+            packs.add(createPack("pack" + i, 100000 * i));
+        }
+        WebPackDownloader downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 3);
+        downloader.prefetch(packs);
+        downloader.prefetch(packs);
+
+        for (int i = packs.size() - 1; i >= 0; --i)
+        {
+            String name = packs.get(i).getName();
+            checkPack(downloader.getPack(name), name, 100000 * i);
+            assertEquals(1, getRequests(name));
+        }
+    }
+
+    /**
+     * Verifies that cached packs are reused by a subsequent installation, unless they are corrupt.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCache() throws IOException
+    {
+        createPack("base", 10000);
+        createPack("docs", 10000);
+        WebPackDownloader downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        File base = downloader.getPack("base");
+        File docs = downloader.getPack("docs");
+
+        // corrupt the docs pack
+        byte[] data = FileUtils.readFileToByteArray(docs);
+        data[data.length / 2] ^= 0xFF;
+        FileUtils.writeByteArrayToFile(docs, data);
+
+        downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        assertEquals(base, downloader.getPack("base"));
+        assertEquals(docs, downloader.getPack("docs"));
+        assertEquals(1, getRequests("base"));
+        assertEquals(2, getRequests("docs"));
+        checkPack(docs, "docs", 10000);
+    }
+
+    /**
+     * Verifies that a cached pack is downloaded again if it doesn't belong to the installer, i.e. a new release has
+     * been published to the same web directory.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testNewRelease() throws IOException
+    {
+        createPack("base", 10000);
+        WebPackDownloader downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        File base = downloader.getPack("base");
+        checkPack(base, "base", 10000);
+
+        createPack("base", 20000);
+        downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        assertEquals(base, downloader.getPack("base"));
+        assertEquals(2, getRequests("base"));
+        checkPack(base, "base", 20000);
+        assertEquals(1, cacheDir.list().length);
+    }
+
+    /**
+     * Verifies that a download that doesn't match the size and CRC recorded in the pack is rejected, and that packs
+     * without them are never reused from the cache.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testUnidentifiedPack() throws IOException
+    {
+        Pack pack = createPack("base", 10000);
+        pack.setEntryCrc(pack.getEntryCrc() ^ 1);
+        WebPackDownloader downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        try
+        {
+            downloader.getPack("base");
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+        assertEquals(0, cacheDir.list().length);
+
+        pack.setEntryCrc(-1);
+        pack.setEntrySize(-1);
+        checkPack(downloader.getPack("base"), "base", 10000);
+        downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        checkPack(downloader.getPack("base"), "base", 10000);
+        assertEquals(3, getRequests("base"));
+    }
+
+    /**
+     * Verifies that a failed download is reported, not cached, and retried on the next request.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testRetry() throws IOException
+    {
+        WebPackDownloader downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        try
+        {
+            downloader.getPack("base");
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+
+        // serve a truncated jar
+        createPack("base", 10000);
+        String path = getPath("base");
+        byte[] data = content.get(path);
+        content.put(path, Arrays.copyOf(data, data.length - 100));
+        try
+        {
+            downloader.getPack("base");
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+        assertEquals(0, cacheDir.list().length);
+
+        content.put(path, data);
+        checkPack(downloader.getPack("base"), "base", 10000);
+        assertEquals(3, getRequests("base"));
+    }
+
+    /**
+     * Verifies that nothing is downloaded if the installer isn't web-based.
+     */
+    @Test
+    public void testNotWebBased()
+    {
+        installData.getInfo().setWebDirURL(null);
+        WebPackDownloader downloader = new WebPackDownloader(installData, new DefaultWebConnector(), cacheDir, 2);
+        downloader.prefetch(Arrays.asList(createPack("base", 10)));
+        assertTrue(requests.isEmpty());
+        assertFalse(new File(cacheDir, "install.pack-base.jar").exists());
+    }
+
+    /**
+     * Creates a pack, and serves its jar.
+     * <p/>
+     * The pack replaces any existing pack with the same name in the installation data, and records the size and CRC
+     * of its jar entry, as the compiler does.
+     *
+     * @param name the pack name
+     * @param size the size of the pack content
+     * @return the pack
+     */
+    private Pack createPack(String name, int size)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipEntry entry = new ZipEntry("packs/pack-" + name);
+        try
+        {
+            JarOutputStream out = new JarOutputStream(bytes);
+            out.putNextEntry(entry);
+            out.write(getContent(name, size));
+            out.closeEntry();
+            out.close();
+        }
+        catch (IOException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+        content.put(getPath(name), bytes.toByteArray());
+        Pack result = new Pack(name, null, null, null, null, true, true, false, null, true, size);
+        result.setEntrySize(entry.getSize());
+        result.setEntryCrc(entry.getCrc());
+        List<Pack> packs = installData.getAllPacks();
+        for (Pack pack : new ArrayList<Pack>(packs))
+        {
+            if (pack.getName().equals(name))
+            {
+                packs.remove(pack);
+            }
+        }
+        packs.add(result);
+        return result;
+    }
+
+    /**
+     * Verifies a downloaded pack jar has the expected content.
+     *
+     * @param file the pack jar
+     * @param name the pack name
+     * @param size the expected size of the pack content
+     * @throws IOException for any I/O error
+     */
+    private void checkPack(File file, String name, int size) throws IOException
+    {
+        assertEquals(cacheDir, file.getParentFile());
+        JarFile jar = new JarFile(file);
+        try
+        {
+            InputStream in = jar.getInputStream(jar.getEntry("packs/pack-" + name));
+            assertArrayEquals(getContent(name, size), IOUtils.toByteArray(in));
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+
+    /**
+     * Returns the no. of requests for a pack jar.
+     *
+     * @param name the pack name
+     * @return the no. of requests
+     */
+    private int getRequests(String name)
+    {
+        AtomicInteger count = requests.get(getPath(name));
+        return (count != null) ? count.get() : 0;
+    }
+
+    /**
+     * Returns the server path of a pack jar.
+     *
+     * @param name the pack name
+     * @return the path
+     */
+    private String getPath(String name)
+    {
+        return "/packs/install.pack-" + name + ".jar";
+    }
+
+    /**
+     * Returns the content of a pack.
+     *
+     * @param name the pack name
+     * @param size the content size
+     * @return the content
+     */
+    private byte[] getContent(String name, int size)
+    {
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; ++i)
+        {
+            result[i] = (byte) (name.hashCode() + i * 31);
+        }
+        return result;
+    }
+}
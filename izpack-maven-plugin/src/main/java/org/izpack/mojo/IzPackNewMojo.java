@@ -49,7 +49,7 @@ public class IzPackNewMojo extends AbstractMojo
     private MavenProjectHelper projectHelper;
 
     /**
-     * Format compression. Choices are bzip2, default
+     * Format compression. Choices are bzip2, lz4, xz, raw, default
      *
      * @parameter default-value="default"
      */
@@ -98,6 +98,14 @@ public class IzPackNewMojo extends AbstractMojo
      */
     private int comprLevel;
 
+    /**
+     * Directory used to cache packs between builds, so that unchanged packs aren't compressed again.
+     * Packs are not cached by default
+     *
+     * @parameter
+     */
+    private File cacheDir;
+
     /**
      * Whether to automatically include project.url from Maven into
      * IzPack info header
@@ -281,8 +289,10 @@ public class IzPackNewMojo extends AbstractMojo
                 info.setAppURL(project.getUrl());
             }
         }
-        return new CompilerData(comprFormat, kind, installFile, null, baseDir, jarFile.getPath(),
-                                mkdirs, comprLevel, info);
+        CompilerData compilerData = new CompilerData(comprFormat, kind, installFile, null, baseDir,
+                                                     jarFile.getPath(), mkdirs, comprLevel, info);
+        compilerData.setCacheDir(cacheDir);
+        return compilerData;
     }
 
 }
@@ -217,13 +217,16 @@ public class InstallPanel extends IzPanel implements ProgressListener
 
     /**
      * Normal progress indicator.
+     * <p/>
+     * The unpacker coalesces these notifications, so the current step is derived from the progression value rather
+     * than counted.
      *
      * @param val The progression value.
      * @param msg The progression message.
      */
     public void progress(final int val, final String msg)
     {
-        currentStep++;
+        currentStep = val + 1;
         SwingUtilities.invokeLater(new Runnable()
         {
             public void run()
@@ -24,6 +24,7 @@ package com.izforge.izpack.installer.multiunpacker;
 import static com.izforge.izpack.test.util.TestHelper.assertFileEquals;
 import static com.izforge.izpack.test.util.TestHelper.assertFileNotExists;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -33,6 +34,7 @@ import java.io.ObjectInputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -63,6 +65,7 @@ import com.izforge.izpack.core.io.VolumeLocator;
 import com.izforge.izpack.core.resource.ResourceManager;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
 import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.data.UpdateCheck;
 import com.izforge.izpack.installer.data.InstallData;
 import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.event.InstallerListeners;
@@ -76,6 +79,7 @@ import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.Librarian;
 import com.izforge.izpack.util.PlatformModelMatcher;
 import com.izforge.izpack.util.Platforms;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Tests the {@link MultiVolumeUnpacker}.
@@ -169,6 +173,127 @@ public class MultiVolumeUnpackerTest
         assertFileNotExists(installDir, file6.getName());
     }
 
+    /**
+     * Verifies that when {@link Info#isDeltaUpgrade()} is set, files that are identical to those already installed are
+     * not rewritten, while changed and missing files are.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDeltaUpgrade() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File packageDir = new File(baseDir, "package");
+        File installerJar = new File(packageDir, "installer.jar");
+        File installDir = new File(baseDir, "install");
+        assertTrue(packageDir.mkdir());
+
+        File file1 = createFile(baseDir, "file1.dat", 1024);
+        File file2 = createFile(baseDir, "file2.dat", 2048);
+        File file3 = createFile(baseDir, "file3.dat", 4096);
+        PackInfo base = new PackInfo("base", "base", "The base package", false, false, null, true, 0);
+        for (File file : new File[]{file1, file2, file3})
+        {
+            base.addFile(baseDir, file, "$INSTALL_PATH/" + file.getName(), null, OverrideType.OVERRIDE_TRUE, null,
+                         Blockable.BLOCKABLE_NONE, null, null);
+        }
+
+        MultiVolumePackager packager = createPackager(baseDir, installerJar);
+        packager.getInfo().setDeltaUpgrade(true);
+        packager.addPack(base);
+        packager.createInstaller();
+        Resources resources = createResources(installerJar);
+
+        // initial installation
+        MultiVolumeUnpacker unpacker = createDeltaUnpacker(packageDir, installDir, resources);
+        unpacker.unpack();
+        assertEquals(0, unpacker.getUnchangedBytes());
+
+        // leave file1 alone, change the content but not the length of file2, and remove file3
+        File installed1 = new File(installDir, file1.getName());
+        File installed2 = new File(installDir, file2.getName());
+        File installed3 = new File(installDir, file3.getName());
+        long lastModified = 1000000000000L;
+        assertTrue(installed1.setLastModified(lastModified));
+        TestHelper.createFile(installed2, 2048);
+        assertTrue(installed3.delete());
+
+        // upgrade. Only file1 should be skipped
+        unpacker = createDeltaUnpacker(packageDir, installDir, resources);
+        unpacker.unpack();
+        assertEquals(file1.length(), unpacker.getUnchangedBytes());
+        assertEquals(lastModified, installed1.lastModified());
+        checkInstalled(installDir, file1);
+        checkInstalled(installDir, file2);
+        checkInstalled(installDir, file3);
+    }
+
+    /**
+     * Verifies that update checks from all packs are performed once, after every pack has been installed, removing
+     * files and directories that match the include patterns but weren't installed.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testUpdateChecks() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File packageDir = new File(baseDir, "package");
+        File installerJar = new File(packageDir, "installer.jar");
+        File installDir = new File(baseDir, "install");
+        assertTrue(packageDir.mkdir());
+
+        File file1 = createFile(baseDir, "file1.dat", 1024);
+        File file2 = createFile(baseDir, "file2.dat", 2048);
+        PackInfo base = new PackInfo("base", "base", "The base package", false, false, null, true, 0);
+        base.addFile(baseDir, file1, "$INSTALL_PATH/old/z/" + file1.getName(), null, OverrideType.OVERRIDE_TRUE,
+                     null, Blockable.BLOCKABLE_NONE, null, null);
+        base.addUpdateCheck(new UpdateCheck(new ArrayList<String>(Arrays.asList("**/*.dat", "old/**")), null));
+        PackInfo pack2 = createPack("pack2", baseDir, file2);
+
+        MultiVolumePackager packager = createPackager(baseDir, installerJar);
+        packager.addPack(base);
+        packager.addPack(pack2);
+        packager.createInstaller();
+        Resources resources = createResources(installerJar);
+
+        // files and directories left by a previous installation
+        File oldDir = new File(installDir, "old/a/b");
+        assertTrue(oldDir.mkdirs());
+        File stale = createFile(installDir, "stale.dat", 10);
+        File keep = createFile(installDir, "keep.txt", 10);
+        File oldFile = createFile(new File(installDir, "old"), "x.txt", 10);
+
+        AutomatedInstallData installData = createInstallData(packageDir, installDir, resources);
+        setSelectedPacks(installData, "base", "pack2");
+        createUnpacker(resources, installData).unpack();
+
+        assertFileEquals(file1, new File(installDir, "old/z/" + file1.getName()));
+        checkInstalled(installDir, file2);
+        assertTrue(keep.exists());
+        assertFalse(stale.exists());
+        assertFalse(oldFile.exists());
+        assertFalse(new File(installDir, "old/a").exists());
+    }
+
+    /**
+     * Creates an unpacker that installs all packs, skipping files that are already installed.
+     *
+     * @param packageDir the directory containing the installer volumes
+     * @param installDir the installation directory
+     * @param resources  the installer resources
+     * @return a new unpacker
+     * @throws Exception for any error
+     */
+    private MultiVolumeUnpacker createDeltaUnpacker(File packageDir, File installDir, Resources resources)
+            throws Exception
+    {
+        AutomatedInstallData installData = createInstallData(packageDir, installDir, resources);
+        installData.getInfo().setDeltaUpgrade(true);
+        setSelectedPacks(installData, "base");
+        return createUnpacker(resources, installData);
+    }
+
     /**
      * Helper to set the selected packs.
      *
@@ -263,7 +388,7 @@ public class MultiVolumeUnpackerTest
         PlatformModelMatcher matcher = new PlatformModelMatcher(new Platforms(), Platforms.WINDOWS);
         MultiVolumeUnpacker unpacker = new MultiVolumeUnpacker(installData, packResources, rules, replacer,
                                                                uninstallData, queue, housekeeper,
-                                                               listeners, prompt, locator, matcher);
+                                                               listeners, prompt, locator, matcher, new Metrics());
         unpacker.setProgressListener(Mockito.mock(ProgressListener.class));
         return unpacker;
     }
@@ -324,7 +449,8 @@ public class MultiVolumeUnpackerTest
         PackCompressor compressor = new DefaultPackCompressor();
         CompilerData data = new CompilerData(null, baseDir.getPath(), installerJar.getPath(), true);
         MultiVolumePackager packager = new MultiVolumePackager(properties, packagerListener, jar, mergeManager,
-                                                               resolver, mergeableResolver, compressor, data);
+                                                               resolver, mergeableResolver, compressor, data,
+                                                               new Metrics());
         packager.setInfo(new Info());
         return packager;
     }
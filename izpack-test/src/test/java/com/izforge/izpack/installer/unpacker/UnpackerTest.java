@@ -0,0 +1,357 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import static com.izforge.izpack.test.util.TestHelper.assertFileEquals;
+import static com.izforge.izpack.test.util.TestHelper.assertFileNotExists;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.event.AbstractInstallerListener;
+import com.izforge.izpack.api.event.InstallerListener;
+import com.izforge.izpack.api.event.ProgressListener;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.compiler.compressor.DefaultPackCompressor;
+import com.izforge.izpack.compiler.data.CompilerData;
+import com.izforge.izpack.compiler.listener.PackagerListener;
+import com.izforge.izpack.compiler.merge.CompilerPathResolver;
+import com.izforge.izpack.compiler.packager.impl.Packager;
+import com.izforge.izpack.compiler.stream.JarOutputStream;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.io.PackFormat;
+import com.izforge.izpack.core.resource.ResourceManager;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.data.PackInfo;
+import com.izforge.izpack.installer.data.InstallData;
+import com.izforge.izpack.installer.data.UninstallData;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.merge.MergeManager;
+import com.izforge.izpack.merge.resolve.MergeableResolver;
+import com.izforge.izpack.test.util.TestHelper;
+import com.izforge.izpack.util.Housekeeper;
+import com.izforge.izpack.util.Librarian;
+import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.Platforms;
+import com.izforge.izpack.util.metrics.Metrics;
+
+
+/**
+ * Tests the {@link Unpacker}, with installers written by the {@link Packager}.
+ */
+public class UnpackerTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that packs split into blocks are installed in full when read sequentially, and that back references
+     * into a later block are installed when the referenced pack isn't.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testBlockedPack() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("base");
+        File installerJar = new File(temporaryFolder.getRoot(), "installer.jar");
+
+        // file2 is stored more than a block into pack1, and referenced by pack2
+        File file1 = TestHelper.createFile(new File(baseDir, "file1.dat"), 100000);
+        File file2 = TestHelper.createFile(new File(baseDir, "file2.dat"), 100000);
+        File file3 = TestHelper.createFile(new File(baseDir, "file3.dat"), 1000);
+        PackInfo pack1 = createPack("pack1");
+        addFile(pack1, file1, file1.getName());
+        addFile(pack1, file2, file2.getName());
+        addFile(pack1, file3, file3.getName());
+        PackInfo pack2 = createPack("pack2");
+        addFile(pack2, file2, "copy/" + file2.getName());
+
+        Packager packager = createPackager(baseDir, installerJar);
+        packager.addPack(pack1);
+        packager.addPack(pack2);
+        packager.createInstaller();
+
+        // verify pack1 has been split
+        JarFile jar = new JarFile(installerJar);
+        assertNotNull(jar.getEntry("resources/packs.index"));
+        jar.close();
+
+        Resources resources = createResources(installerJar);
+
+        // install all packs. pack1 is read sequentially, across its blocks
+        File installDir = new File(temporaryFolder.getRoot(), "all");
+        AutomatedInstallData installData = createInstallData(installDir, resources, "pack1", "pack2");
+        createUnpacker(resources, installData).unpack();
+        assertFileEquals(file1, new File(installDir, file1.getName()));
+        assertFileEquals(file2, new File(installDir, file2.getName()));
+        assertFileEquals(file3, new File(installDir, file3.getName()));
+        assertFileEquals(file2, new File(installDir, "copy/" + file2.getName()));
+
+        // install pack2 only. Its file is read from the block of pack1 that holds it
+        installDir = new File(temporaryFolder.getRoot(), "pack2");
+        installData = createInstallData(installDir, resources, "pack2");
+        createUnpacker(resources, installData).unpack();
+        assertFileEquals(file2, new File(installDir, "copy/" + file2.getName()));
+        assertFileNotExists(installDir, file1.getName());
+    }
+
+    /**
+     * Verifies that file listeners see each file's {@code beforeFile} immediately followed by its {@code afterFile},
+     * even when the installer is configured to write files concurrently.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testFileListenerWithUnpackThreads() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("base");
+        File installerJar = new File(temporaryFolder.getRoot(), "installer.jar");
+
+        PackInfo pack1 = createPack("pack1");
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 10; ++i)
+        {
+            File file = TestHelper.createFile(new File(baseDir, "file" + i + ".dat"), 20000);
+            addFile(pack1, file, file.getName());
+            files.add(file);
+        }
+
+        Packager packager = createPackager(baseDir, installerJar);
+        packager.addPack(pack1);
+        packager.createInstaller();
+
+        Resources resources = createResources(installerJar);
+        File installDir = new File(temporaryFolder.getRoot(), "install");
+        AutomatedInstallData installData = createInstallData(installDir, resources, "pack1");
+        installData.getInfo().setUnpackThreads(4);
+
+        final List<String> events = new ArrayList<String>();
+        InstallerListener listener = new AbstractInstallerListener()
+        {
+            @Override
+            public boolean isFileListener()
+            {
+                return true;
+            }
+
+            @Override
+            public void beforeFile(File file, PackFile packFile, Pack pack)
+            {
+                events.add("before " + file.getName());
+            }
+
+            @Override
+            public void afterFile(File file, PackFile packFile, Pack pack)
+            {
+                assertTrue(file.exists());
+                events.add("after " + file.getName());
+            }
+        };
+        createUnpacker(resources, installData, listener).unpack();
+
+        assertEquals(files.size() * 2, events.size());
+        for (int i = 0; i < files.size(); ++i)
+        {
+            File file = files.get(i);
+            assertEquals("before " + file.getName(), events.get(i * 2));
+            assertEquals("after " + file.getName(), events.get(i * 2 + 1));
+            assertFileEquals(file, new File(installDir, file.getName()));
+        }
+    }
+
+    /**
+     * Creates a new pack.
+     *
+     * @param name the pack name
+     * @return a new pack
+     */
+    private PackInfo createPack(String name)
+    {
+        return new PackInfo(name, name, "The " + name + " package", false, false, null, true, 0);
+    }
+
+    /**
+     * Adds a file to a pack.
+     *
+     * @param pack   the pack
+     * @param file   the file to add
+     * @param target the target path, relative to the installation directory
+     * @throws IOException for any I/O error
+     */
+    private void addFile(PackInfo pack, File file, String target) throws IOException
+    {
+        pack.addFile(file.getParentFile(), file, "$INSTALL_PATH/" + target, null, OverrideType.OVERRIDE_TRUE, null,
+                     Blockable.BLOCKABLE_NONE, null, null);
+    }
+
+    /**
+     * Creates a {@link Packager} that uses the standard compression.
+     *
+     * @param baseDir      the base directory
+     * @param installerJar the jar to create
+     * @return a new packager
+     * @throws IOException for any I/O error
+     */
+    private Packager createPackager(File baseDir, File installerJar) throws IOException
+    {
+        Properties properties = new Properties();
+        PackagerListener listener = Mockito.mock(PackagerListener.class);
+        JarOutputStream jar = new JarOutputStream(installerJar);
+        MergeManager mergeManager = Mockito.mock(MergeManager.class);
+        CompilerPathResolver pathResolver = Mockito.mock(CompilerPathResolver.class);
+        MergeableResolver mergeableResolver = Mockito.mock(MergeableResolver.class);
+        CompilerData data = new CompilerData(null, baseDir.getPath(), installerJar.getPath(), true);
+        Packager packager = new Packager(properties, listener, jar, new DefaultPackCompressor(), jar, mergeManager,
+                                         pathResolver, mergeableResolver, data, new Metrics());
+        packager.setInfo(new Info());
+        return packager;
+    }
+
+    /**
+     * Creates a new {@link Resources} that reads resources from the supplied jar.
+     *
+     * @param installerJar the installer jar
+     * @return a new resource manager
+     * @throws IOException for any I/O error
+     */
+    private Resources createResources(File installerJar) throws IOException
+    {
+        URLClassLoader loader = new URLClassLoader(new URL[]{installerJar.toURI().toURL()},
+                                                   getClass().getClassLoader());
+        return new ResourceManager(loader);
+    }
+
+    /**
+     * Creates the installation data.
+     *
+     * @param installDir the installation directory
+     * @param resources  the resources
+     * @param names      the names of the packs to install
+     * @return the installation data
+     * @throws Exception for any error
+     */
+    private AutomatedInstallData createInstallData(File installDir, Resources resources, String... names)
+            throws Exception
+    {
+        AutomatedInstallData installData = new InstallData(new DefaultVariables(), Platforms.LINUX);
+        installData.setInstallPath(installDir.getPath());
+        installData.setInfo(new Info());
+        List<Pack> packs = getPacks(resources);
+        installData.setAvailablePacks(packs);
+        for (String name : names)
+        {
+            for (Pack pack : packs)
+            {
+                if (pack.getName().equals(name))
+                {
+                    installData.getSelectedPacks().add(pack);
+                }
+            }
+        }
+        assertEquals(names.length, installData.getSelectedPacks().size());
+        return installData;
+    }
+
+    /**
+     * Reads the pack meta-data.
+     *
+     * @param resources the resources
+     * @return the pack meta-data
+     * @throws Exception for any error
+     */
+    private List<Pack> getPacks(Resources resources) throws Exception
+    {
+        InputStream in = resources.getInputStream("packs.info");
+        ObjectInputStream objIn = new ObjectInputStream(in);
+        assertEquals(PackFormat.VERSION_MARKER, objIn.readInt());
+        objIn.readInt();
+        int size = objIn.readInt();
+        List<Pack> packs = new ArrayList<Pack>();
+        for (int i = 0; i < size; i++)
+        {
+            packs.add((Pack) objIn.readObject());
+        }
+        objIn.close();
+        return packs;
+    }
+
+    /**
+     * Creates a new unpacker.
+     *
+     * @param resources   the resources
+     * @param installData the installation data
+     * @param listeners   the installer listeners to register
+     * @return a new unpacker
+     */
+    private Unpacker createUnpacker(Resources resources, AutomatedInstallData installData,
+                                    InstallerListener... listeners)
+    {
+        VariableSubstitutor replacer = new VariableSubstitutorImpl(installData.getVariables());
+        Housekeeper housekeeper = Mockito.mock(Housekeeper.class);
+        RulesEngine rules = Mockito.mock(RulesEngine.class);
+        UninstallData uninstallData = new UninstallData();
+        Librarian librarian = Mockito.mock(Librarian.class);
+        PackResources packResources = new ConsolePackResources(resources, installData);
+        FileQueueFactory queue = new FileQueueFactory(Platforms.WINDOWS, librarian);
+        Prompt prompt = Mockito.mock(Prompt.class);
+        InstallerListeners installerListeners = new InstallerListeners(installData, prompt);
+        for (InstallerListener listener : listeners)
+        {
+            installerListeners.add(listener);
+        }
+        installerListeners.initialise();
+        PlatformModelMatcher matcher = new PlatformModelMatcher(new Platforms(), Platforms.WINDOWS);
+        Unpacker unpacker = new Unpacker(installData, packResources, rules, replacer, uninstallData, queue,
+                                         housekeeper, installerListeners, prompt, matcher, new Metrics());
+        unpacker.setProgressListener(Mockito.mock(ProgressListener.class));
+        return unpacker;
+    }
+}
@@ -24,6 +24,8 @@ package com.izforge.izpack.util;
 import java.io.*;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -36,6 +38,11 @@ import java.util.List;
 public class FileUtil
 {
 
+    /**
+     * The algorithm used to digest file content.
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
     public static File convertUrlToFile(URL url)
     {
         return new File(convertUrlToFilePath(url));
@@ -275,4 +282,81 @@ public class FileUtil
         return null;
     }
 
+    /**
+     * Returns the {@link #DIGEST_ALGORITHM} digest of a file's content.
+     *
+     * @param file the file
+     * @return the digest of the file content, as a lower case hexadecimal string
+     * @throws IOException if the file cannot be read
+     */
+    public static String getFileDigest(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return getDigest(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the {@link #DIGEST_ALGORITHM} digest of a stream's content.
+     * <p/>
+     * The stream is read until its end, but not closed.
+     *
+     * @param in the stream
+     * @return the digest of the stream content, as a lower case hexadecimal string
+     * @throws IOException if the stream cannot be read
+     */
+    public static String getDigest(InputStream in) throws IOException
+    {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = in.read(buffer)) != -1)
+        {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a new {@link #DIGEST_ALGORITHM} message digest.
+     *
+     * @return a new message digest
+     */
+    public static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Converts bytes to a lower case hexadecimal string.
+     *
+     * @param bytes the bytes to convert
+     * @return the hexadecimal string
+     */
+    public static String toHex(byte[] bytes)
+    {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            result[i * 2] = digits[(bytes[i] >> 4) & 0x0F];
+            result[i * 2 + 1] = digits[bytes[i] & 0x0F];
+        }
+        return new String(result);
+    }
+
 }
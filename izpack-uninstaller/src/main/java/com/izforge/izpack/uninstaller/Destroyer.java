@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,6 +47,11 @@ import com.izforge.izpack.uninstaller.resource.RootScripts;
 public class Destroyer implements Runnable
 {
 
+    /**
+     * The no. of threads to delete files with.
+     */
+    private static final int DELETE_THREADS = 4;
+
     /**
      * The log of installed files.
      */
@@ -195,19 +201,43 @@ public class Destroyer implements Runnable
             listener.startAction("destroy", size);
         }
 
-        for (int i = 0; i < size; i++)
+        failed.clear();
+        if (listeners.isFileListener())
         {
-            File file = files.get(i);
-            listeners.beforeDelete(file, listener);
+            // listeners must be notified before and after each file is deleted, so delete them one at a time
+            int i = 0;
+            for (File file : files)
+            {
+                listeners.beforeDelete(file, listener);
 
-            delete(file);
+                if (!FileDeleter.delete(file))
+                {
+                    failed.add(file);
+                }
 
-            listeners.afterDelete(file, listener);
-            if (listener != null)
-            {
-                listener.progress(i, file.getAbsolutePath());
+                listeners.afterDelete(file, listener);
+                if (listener != null)
+                {
+                    listener.progress(i, file.getAbsolutePath());
+                }
+                ++i;
             }
         }
+        else
+        {
+            FileDeleter deleter = new FileDeleter(DELETE_THREADS);
+            failed.addAll(deleter.delete(files, new FileDeleter.Progress()
+            {
+                @Override
+                public void deleted(int count, File last)
+                {
+                    if (listener != null)
+                    {
+                        listener.progress(count - 1, last.getAbsolutePath());
+                    }
+                }
+            }));
+        }
 
         listeners.afterDeletion(files, listener);
 
@@ -216,14 +246,15 @@ public class Destroyer implements Runnable
         // We make a complementary cleanup
         if (listener != null)
         {
-            listener.progress(log.getInstalled().size(), "[ cleanups ]");
+            listener.progress(size, "[ cleanups ]");
         }
 
         File installPath = new File(log.getInstallPath());
         cleanup(installPath);
 
-        // verify that the files no longer exist. Check this here, as the root scripts may have performed cleanup.
-        checkDeletion(files, installPath);
+        // verify that the files that couldn't be deleted still exist. Check this here, as the root scripts may have
+        // performed cleanup.
+        checkDeletion(installPath);
 
         if (listener != null)
         {
@@ -232,22 +263,20 @@ public class Destroyer implements Runnable
     }
 
     /**
-     * Verifies that the installed files have been deleted.
+     * Verifies that the installed files that couldn't be deleted have not since been removed.
      *
-     * @param files       the files to check
      * @param installPath the installation path
      */
-    private void checkDeletion(List<File> files, File installPath)
+    private void checkDeletion(File installPath)
     {
-        failed.clear();
-        for (File f : files)
+        for (Iterator<File> iterator = failed.iterator(); iterator.hasNext(); )
         {
-            if (f.exists())
+            if (!iterator.next().exists())
             {
-                failed.add(f);
+                iterator.remove();
             }
         }
-        if (installPath.exists())
+        if (installPath.exists() && !failed.contains(installPath))
         {
             failed.add(installPath);
         }
@@ -270,24 +299,11 @@ public class Destroyer implements Runnable
                     cleanup(child);
                 }
             }
-            delete(file);
+            FileDeleter.delete(file);
         }
         else if (forceDelete)
         {
-            delete(file);
-        }
-    }
-
-    /**
-     * Deletes a file.
-     *
-     * @param file the file to delete
-     */
-    private void delete(File file)
-    {
-        if (file.exists() && !file.delete())
-        {
-            logger.info("Failed to delete: " + file);
+            FileDeleter.delete(file);
         }
     }
 
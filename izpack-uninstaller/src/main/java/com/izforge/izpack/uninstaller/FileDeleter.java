@@ -0,0 +1,238 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.uninstaller;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.api.exception.IzPackException;
+
+
+/**
+ * Deletes files and directories on several threads.
+ * <p/>
+ * Files are deleted deepest first, so that directories are emptied before they themselves are deleted. The files at
+ * each depth are grouped by their parent directory, and the groups are deleted concurrently.
+ */
+public class FileDeleter
+{
+
+    /**
+     * Receives notification of deletion progress.
+     */
+    public interface Progress
+    {
+
+        /**
+         * Invoked after a group of files has been processed.
+         *
+         * @param count the total no. of files processed so far
+         * @param last  the last file processed
+         */
+        void deleted(int count, File last);
+    }
+
+    /**
+     * The no. of threads to delete files with.
+     */
+    private final int threads;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(FileDeleter.class.getName());
+
+
+    /**
+     * Constructs a {@code FileDeleter}.
+     *
+     * @param threads the no. of threads to delete files with
+     */
+    public FileDeleter(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Deletes a file.
+     *
+     * @param file the file to delete
+     * @return {@code true} if the file was deleted or didn't exist, {@code false} if it couldn't be deleted
+     */
+    public static boolean delete(File file)
+    {
+        // try the deletion first, as the file normally exists
+        if (!file.delete() && file.exists())
+        {
+            logger.info("Failed to delete: " + file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Deletes files.
+     * <p/>
+     * Directories are only deleted if they are empty once the files within them have been deleted.
+     *
+     * @param files    the files to delete
+     * @param progress the progress listener, notified on the calling thread. May be {@code null}
+     * @return the files that couldn't be deleted
+     * @throws IzPackException if interrupted, or deletion fails unexpectedly
+     */
+    public List<File> delete(List<File> files, Progress progress)
+    {
+        List<File> failed = new ArrayList<File>();
+        if (files.isEmpty())
+        {
+            return failed;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "IzPack file deleter " + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            int count = 0;
+            for (Map<File, List<File>> level : getLevels(files).values())
+            {
+                List<Future<List<File>>> results = new ArrayList<Future<List<File>>>();
+                List<List<File>> groups = new ArrayList<List<File>>(level.values());
+                for (final List<File> group : groups)
+                {
+                    results.add(executor.submit(new Callable<List<File>>()
+                    {
+                        @Override
+                        public List<File> call()
+                        {
+                            List<File> result = new ArrayList<File>();
+                            for (File file : group)
+                            {
+                                if (!delete(file))
+                                {
+                                    result.add(file);
+                                }
+                            }
+                            return result;
+                        }
+                    }));
+                }
+                // wait for the level to be deleted before deleting the directories containing it
+                for (int i = 0; i < results.size(); ++i)
+                {
+                    failed.addAll(results.get(i).get());
+                    List<File> group = groups.get(i);
+                    count += group.size();
+                    if (progress != null)
+                    {
+                        progress.deleted(count, group.get(group.size() - 1));
+                    }
+                }
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new IzPackException("Interrupted while deleting files", exception);
+        }
+        catch (ExecutionException exception)
+        {
+            throw new IzPackException("Failed to delete files", exception.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return failed;
+    }
+
+    /**
+     * Groups files by depth, deepest first, and then by their parent directory.
+     *
+     * @param files the files
+     * @return the files, grouped by depth and parent directory
+     */
+    private SortedMap<Integer, Map<File, List<File>>> getLevels(List<File> files)
+    {
+        SortedMap<Integer, Map<File, List<File>>> result
+                = new TreeMap<Integer, Map<File, List<File>>>(Collections.reverseOrder());
+        for (File file : files)
+        {
+            File absolute = file.getAbsoluteFile();
+            Integer depth = getDepth(absolute.getPath());
+            Map<File, List<File>> level = result.get(depth);
+            if (level == null)
+            {
+                level = new LinkedHashMap<File, List<File>>();
+                result.put(depth, level);
+            }
+            File parent = absolute.getParentFile();
+            List<File> group = level.get(parent);
+            if (group == null)
+            {
+                group = new ArrayList<File>();
+                level.put(parent, group);
+            }
+            group.add(file);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the depth of a path.
+     *
+     * @param path the absolute path
+     * @return the no. of separators in the path
+     */
+    private static int getDepth(String path)
+    {
+        int depth = 0;
+        for (int i = 0; i < path.length(); ++i)
+        {
+            if (path.charAt(i) == File.separatorChar)
+            {
+                ++depth;
+            }
+        }
+        return depth;
+    }
+}
@@ -81,6 +81,17 @@ public class UninstallerListeners
         }
     }
 
+    /**
+     * Determines if any of the listeners should be notified of file and directory events.
+     *
+     * @return {@code true} if {@link #beforeDelete(File, ProgressListener)} and
+     *         {@link #afterDelete(File, ProgressListener)} need to be invoked
+     */
+    public boolean isFileListener()
+    {
+        return fileListener;
+    }
+
     /**
      * Initialises the listeners.
      *
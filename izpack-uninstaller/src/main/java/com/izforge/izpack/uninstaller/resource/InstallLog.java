@@ -21,18 +21,22 @@
 
 package com.izforge.izpack.uninstaller.resource;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
 
 import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.io.PathList;
 import com.izforge.izpack.util.file.FileUtils;
 
 
@@ -40,6 +44,9 @@ import com.izforge.izpack.util.file.FileUtils;
  * The installation log.
  * <p/>
  * This holds the installation path and the list of installed files.
+ * <p/>
+ * The log is held in the compact form written by the installer, and files are created as they are accessed.
+ * Logs written as plain text, with the installation path on the first line, are also supported.
  *
  * @author Tim Anderson
  */
@@ -57,9 +64,9 @@ public class InstallLog
     private final String installPath;
 
     /**
-     * The installed files.
+     * The installation path, followed by the installed files in leaf first order.
      */
-    private final List<File> files;
+    private final PathList paths;
 
 
     /**
@@ -71,15 +78,11 @@ public class InstallLog
     public InstallLog(Resources resources)
     {
         InputStream in = null;
-        InputStreamReader inReader = null;
         try
         {
             in = resources.getInputStream(INSTALL_LOG);
-            inReader = new InputStreamReader(in);
-            BufferedReader reader = new BufferedReader(inReader);
-
-            installPath = getInstallPath(reader);
-            files = getFiles(reader);
+            paths = read(in);
+            installPath = paths.get(0);
         }
         catch (IOException exception)
         {
@@ -87,7 +90,6 @@ public class InstallLog
         }
         finally
         {
-            FileUtils.close(inReader);
             FileUtils.close(in);
         }
     }
@@ -104,12 +106,58 @@ public class InstallLog
 
     /**
      * Returns the installed files, in leaf order.
+     * <p/>
+     * The files are created on access, so the list should be iterated rather than indexed where possible.
      *
      * @return the installed files
      */
     public List<File> getInstalled()
     {
-        return files;
+        return new AbstractList<File>()
+        {
+            @Override
+            public File get(int index)
+            {
+                if (index < 0 || index >= size())
+                {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                return new File(paths.get(index + 1));
+            }
+
+            @Override
+            public int size()
+            {
+                return paths.size() - 1;
+            }
+
+            @Override
+            public Iterator<File> iterator()
+            {
+                final Iterator<String> iterator = paths.iterator();
+                iterator.next(); // skip the installation path
+                return new Iterator<File>()
+                {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public File next()
+                    {
+                        return new File(iterator.next());
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
     }
 
     /**
@@ -120,15 +168,11 @@ public class InstallLog
      */
     public static String getInstallPath(Resources resources)
     {
-        String installPath = null;
-        BufferedReader reader = null;
         InputStream in = null;
-
         try
         {
             in = resources.getInputStream(INSTALL_LOG);
-            reader = new BufferedReader(new InputStreamReader(in));
-            installPath = getInstallPath(reader);
+            return read(in).get(0);
         }
         catch (IOException exception)
         {
@@ -136,10 +180,45 @@ public class InstallLog
         }
         finally
         {
-            FileUtils.close(reader);
             FileUtils.close(in);
         }
-        return installPath;
+    }
+
+    /**
+     * Reads the <em>install.log</em>.
+     *
+     * @param in the stream to read from
+     * @return the installation path, followed by the installed files in leaf first order
+     * @throws IOException if the install path is invalid, or an I/O error occurs
+     */
+    private static PathList read(InputStream in) throws IOException
+    {
+        BufferedInputStream stream = new BufferedInputStream(in);
+        stream.mark(1);
+        int first = stream.read();
+        stream.reset();
+
+        PathList result;
+        if (first == 0)
+        {
+            // the magic number of a path list starts with a zero byte, which a text log can't contain
+            result = PathList.read(stream);
+        }
+        else
+        {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            result = new PathList();
+            result.add(getInstallPath(reader));
+            for (File file : getFiles(reader))
+            {
+                result.add(file.getPath());
+            }
+        }
+        if (result.isEmpty() || result.get(0).trim().isEmpty())
+        {
+            throw new IOException("Cannot determine installation path");
+        }
+        return result;
     }
 
     /**
@@ -166,7 +245,7 @@ public class InstallLog
      * @return the installed files
      * @throws IOException for any I/O error
      */
-    private List<File> getFiles(BufferedReader reader) throws IOException
+    private static Set<File> getFiles(BufferedReader reader) throws IOException
     {
         TreeSet<File> files = new TreeSet<File>(Collections.reverseOrder());
         String read = reader.readLine();
@@ -175,10 +254,7 @@ public class InstallLog
             files.add(new File(read));
             read = reader.readLine();
         }
-
-        // We return it
-        return new ArrayList<File>(files);
+        return files;
     }
 
-
 }
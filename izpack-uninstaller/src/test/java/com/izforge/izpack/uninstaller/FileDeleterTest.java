@@ -0,0 +1,122 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.uninstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the {@link FileDeleter}.
+ */
+public class FileDeleterTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that files are deleted before the directories containing them, and that progress is reported for
+     * every file.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDelete() throws IOException
+    {
+        File root = temporaryFolder.newFolder("myapp");
+        List<File> files = new ArrayList<File>();
+        files.add(root);
+        for (int i = 0; i < 5; ++i)
+        {
+            File dir = new File(root, "dir" + i);
+            files.add(dir);
+            for (int j = 0; j < 3; ++j)
+            {
+                File subdir = new File(dir, "sub" + j);
+                files.add(subdir);
+                for (int k = 0; k < 10; ++k)
+                {
+                    File file = new File(subdir, "file" + k);
+                    FileUtils.writeStringToFile(file, file.getPath());
+                    files.add(file);
+                }
+            }
+        }
+        Collections.shuffle(files);
+
+        final int[] progress = {0};
+        FileDeleter deleter = new FileDeleter(4);
+        List<File> failed = deleter.delete(files, new FileDeleter.Progress()
+        {
+            @Override
+            public void deleted(int count, File last)
+            {
+                assertTrue(count > progress[0]);
+                progress[0] = count;
+            }
+        });
+        assertTrue(failed.isEmpty());
+        assertEquals(files.size(), progress[0]);
+        assertFalse(root.exists());
+    }
+
+    /**
+     * Verifies that files that cannot be deleted are reported, and that files that don't exist are not.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testFailed() throws IOException
+    {
+        File root = temporaryFolder.newFolder("myapp");
+        File dir = new File(root, "dir");
+        File file = new File(dir, "file");
+        File unlogged = new File(dir, "unlogged");
+        File missing = new File(root, "missing");
+        FileUtils.writeStringToFile(file, "file");
+        FileUtils.writeStringToFile(unlogged, "unlogged");
+
+        FileDeleter deleter = new FileDeleter(2);
+        List<File> failed = deleter.delete(Arrays.asList(root, dir, file, missing), null);
+
+        // the directories aren't empty, so can't be deleted
+        assertEquals(Arrays.asList(dir, root), failed);
+        assertFalse(file.exists());
+        assertTrue(unlogged.exists());
+    }
+}
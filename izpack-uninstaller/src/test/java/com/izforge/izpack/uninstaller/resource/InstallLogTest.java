@@ -25,6 +25,8 @@ package com.izforge.izpack.uninstaller.resource;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
@@ -36,6 +38,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.io.PathList;
 
 /**
  * Tests the {@link InstallLog} class.
@@ -104,4 +107,41 @@ public class InstallLogTest
         assertEquals(new File("myapp/dir1"), installed.get(3));
     }
 
+    /**
+     * Verifies that logs in the compact form written by the installer can be read.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCompactLog() throws IOException
+    {
+        PathList paths = new PathList();
+        paths.add("myapp");
+        paths.add("myapp/dir2/file1");
+        paths.add("myapp/dir2/dir3/file2");
+        paths.add("myapp/dir2/dir3");
+        paths.add("myapp/dir1");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        paths.write(out);
+        byte[] bytes = out.toByteArray();
+        when(resources.getInputStream("install.log")).thenReturn(new ByteArrayInputStream(bytes),
+                                                                 new ByteArrayInputStream(bytes));
+
+        assertEquals("myapp", InstallLog.getInstallPath(resources));
+
+        InstallLog log = new InstallLog(resources);
+        assertEquals("myapp", log.getInstallPath());
+        List<File> installed = log.getInstalled();
+        assertEquals(4, installed.size());
+        assertEquals(new File("myapp/dir2/file1"), installed.get(0));
+        assertEquals(new File("myapp/dir1"), installed.get(3));
+
+        int i = 0;
+        for (File file : installed)
+        {
+            assertEquals(new File(paths.get(++i)), file);
+        }
+        assertEquals(4, i);
+    }
+
 }
@@ -82,4 +82,14 @@ public class UpdateCheck implements Serializable
         this.caseSensitive = ((casesensitive != null) && "yes".equalsIgnoreCase(casesensitive));
     }
 
+    /**
+     * Determines if the include and exclude patterns are case sensitive.
+     *
+     * @return {@code true} if the patterns are case sensitive
+     */
+    public boolean isCaseSensitive()
+    {
+        return caseSensitive;
+    }
+
 }
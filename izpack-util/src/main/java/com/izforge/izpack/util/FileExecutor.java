@@ -37,6 +37,7 @@ import java.util.logging.Logger;
 
 import com.izforge.izpack.api.handler.AbstractUIHandler;
 import com.izforge.izpack.data.ExecutableFile;
+import com.izforge.izpack.util.metrics.Metrics;
 
 /**
  * Executes a bunch of files. This class is intended to do a system dependent installation
@@ -53,6 +54,11 @@ public class FileExecutor
 
     private static final String JAR_FILE_SUFFIX = ".jar";
 
+    /**
+     * The maximum no. of files to pass to a single chmod command.
+     */
+    private static final int CHMOD_BATCH_SIZE = 100;
+
     private boolean stopThread(Thread t, MonitorInputStream monitorInputStream)
     {
         monitorInputStream.stop();
@@ -91,8 +97,21 @@ public class FileExecutor
      * @param files the executable files to process
      */
     public FileExecutor(Collection<ExecutableFile> files)
+    {
+        this(files, new Metrics(false, null));
+    }
+
+    /**
+     * Constructs a new executor. The executable files specified must have pretranslated paths
+     * (variables expanded and file separator characters converted if necessary).
+     *
+     * @param files   the executable files to process
+     * @param metrics the metrics to record the time taken by each executable against
+     */
+    public FileExecutor(Collection<ExecutableFile> files, Metrics metrics)
     {
         this.files = files;
+        this.metrics = metrics;
     }
 
     /**
@@ -100,7 +119,7 @@ public class FileExecutor
      */
     public FileExecutor()
     {
-        this.files = null;
+        this(null);
     }
 
     /**
@@ -311,6 +330,14 @@ public class FileExecutor
         String permissions = "a+x";
         boolean isUnix = matcher.getCurrentPlatform().isA(UNIX);
 
+        if (currentStage != ExecutableFile.UNINSTALL && isUnix)
+        {
+            // fix executable permission for unix systems
+            long start = metrics.start();
+            exitStatus = makeExecutable(matcher, permissions, output, handler);
+            metrics.stop("executable.chmod", start);
+        }
+
         // loop through all executables
         Iterator<ExecutableFile> efileIterator = this.files.iterator();
         while (exitStatus == 0 && efileIterator.hasNext())
@@ -328,20 +355,6 @@ public class FileExecutor
                 continue;
             }
 
-            if (ExecutableFile.BIN == efile.type && currentStage != ExecutableFile.UNINSTALL && isUnix)
-            {
-                // fix executable permission for unix systems
-                logger.fine("Making file executable (setting executable flag)");
-                String[] params = {"/bin/chmod", permissions, file.toString()};
-                exitStatus = executeCommand(params, output);
-                if (exitStatus != 0)
-                {
-                    handler.emitWarning("file execution error", "Error executing \n" + params[0]
-                            + " " + params[1] + " " + params[2]);
-                    continue;
-                }
-            }
-
             // execute command in POSTINSTALL stage
             if ((exitStatus == 0)
                     && ((currentStage == ExecutableFile.POSTINSTALL && efile.executionStage == ExecutableFile.POSTINSTALL) || (currentStage == ExecutableFile.UNINSTALL && efile.executionStage == ExecutableFile.UNINSTALL)))
@@ -384,7 +397,9 @@ public class FileExecutor
                     params[i] = paramList.get(i);
                 }
 
+                long start = metrics.start();
                 exitStatus = executeCommand(params, output);
+                metrics.stop("executable", start);
 
                 // bring a dialog depending on return code and failure handling
                 if (exitStatus != 0)
@@ -437,6 +452,56 @@ public class FileExecutor
         return exitStatus;
     }
 
+    /**
+     * Sets the permissions of the BIN executables for the current platform.
+     * <p/>
+     * Permissions are changed in-process where possible. Any remaining files are changed by executing
+     * <em>chmod</em> on batches of files, rather than once per file.
+     *
+     * @param matcher     the platform-model matcher
+     * @param permissions the permissions to set
+     * @param output      the output of the last chmod command
+     * @param handler     the handler to notify on errors
+     * @return 0 on success, else the exit status of the failed chmod command
+     */
+    private int makeExecutable(PlatformModelMatcher matcher, String permissions, String[] output,
+                               AbstractUIHandler handler)
+    {
+        List<String> remaining = new ArrayList<String>();
+        for (ExecutableFile efile : files)
+        {
+            if (ExecutableFile.BIN == efile.type && matcher.matchesCurrentPlatform(efile.osList))
+            {
+                File file = new File(efile.path);
+                logger.fine("Making file executable (setting executable flag): " + file);
+                if (!IoHelper.setPermissions(file, permissions))
+                {
+                    remaining.add(file.toString());
+                }
+            }
+        }
+
+        int exitStatus = 0;
+        for (int i = 0; i < remaining.size() && exitStatus == 0; i += CHMOD_BATCH_SIZE)
+        {
+            List<String> params = new ArrayList<String>();
+            params.add("/bin/chmod");
+            params.add(permissions);
+            params.addAll(remaining.subList(i, Math.min(i + CHMOD_BATCH_SIZE, remaining.size())));
+            exitStatus = executeCommand(params.toArray(new String[params.size()]), output);
+            if (exitStatus != 0)
+            {
+                StringBuilder command = new StringBuilder();
+                for (String param : params)
+                {
+                    command.append(command.length() == 0 ? "" : " ").append(param);
+                }
+                handler.emitWarning("file execution error", "Error executing \n" + command);
+            }
+        }
+        return exitStatus;
+    }
+
     /**
      * Transform classpath as specified in targetFile attribute into
      * OS specific classpath. This method also resolves directories
@@ -502,4 +567,9 @@ public class FileExecutor
      * The files to execute.
      */
     private Collection<ExecutableFile> files;
+
+    /**
+     * The metrics.
+     */
+    private final Metrics metrics;
 }
@@ -68,6 +68,11 @@ public class IoHelper
      */
     private static final String MASKED_SLASH_PLACEHOLDER = "~&_&~";
 
+    /**
+     * The buffer size used to copy streams.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private static Properties envVars = null;
 
     /**
@@ -191,7 +196,7 @@ public class IoHelper
     {
         if (vs == null)
         {
-            byte[] buffer = new byte[5120];
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
             long bytesCopied = 0;
             int bytesInBuffer;
             while ((bytesInBuffer = in.read(buffer)) != -1)
@@ -312,6 +317,9 @@ public class IoHelper
     /**
      * Changes the permissions of the given file to the given POSIX permissions. This method will be
      * raised an exception, if the OS is not UNIX.
+     * <p/>
+     * The permissions are changed in-process if possible (see {@link #setPermissions}), else by
+     * executing <em>chmod</em>.
      *
      * @param path        the absolute path of the file for which the permissions should be changed
      * @param permissions POSIX permissions to be set
@@ -322,6 +330,10 @@ public class IoHelper
         // Perform UNIX
         if (OsVersion.IS_UNIX)
         {
+            if (setPermissions(new File(path), permissions))
+            {
+                return;
+            }
             String[] params = {"chmod", permissions, path};
             String[] output = new String[2];
             FileExecutor fe = new FileExecutor();
@@ -333,6 +345,88 @@ public class IoHelper
         }
     }
 
+    /**
+     * Changes the permissions of a file without executing <em>chmod</em>.
+     * <p/>
+     * As the permissions of a file can only be changed for its owner, or for everybody, this
+     * supports:
+     * <ul>
+     * <li>symbolic modes that add or remove permissions for the owner (<em>u</em>), or for
+     * everybody (<em>a</em> or <em>ugo</em>), e.g. <em>a+x</em>, <em>u-w</em></li>
+     * <li>octal modes where the group and others have the same permissions, e.g. <em>755</em>,
+     * <em>0644</em></li>
+     * </ul>
+     *
+     * @param file        the file
+     * @param permissions the POSIX permissions to set
+     * @return {@code true} if the permissions were changed, {@code false} if the permissions
+     *         aren't supported, or couldn't be changed
+     */
+    public static boolean setPermissions(File file, String permissions)
+    {
+        if (permissions.matches("0?[0-7]{3}"))
+        {
+            int mode = Integer.parseInt(permissions, 8);
+            int owner = (mode >> 6) & 7;
+            int group = (mode >> 3) & 7;
+            int others = mode & 7;
+            if (group != others)
+            {
+                return false;
+            }
+            // r, w, x bits
+            boolean result = true;
+            for (int bit = 4; bit > 0 && result; bit >>= 1)
+            {
+                result = setPermission(file, bit, (others & bit) != 0, false);
+                if (result && ((owner & bit) != 0) != ((others & bit) != 0))
+                {
+                    result = setPermission(file, bit, (owner & bit) != 0, true);
+                }
+            }
+            return result;
+        }
+        else if (permissions.matches("(u|a|ugo)[+-][rwx]+"))
+        {
+            // NOTE: modes without a user class e.g. "+x" are excluded, as chmod applies the umask to them
+            int op = Math.max(permissions.indexOf('+'), permissions.indexOf('-'));
+            boolean ownerOnly = (op == 1 && permissions.charAt(0) == 'u');
+            boolean enable = permissions.charAt(op) == '+';
+            boolean result = true;
+            for (int i = op + 1; i < permissions.length() && result; ++i)
+            {
+                int bit = "xwr".indexOf(permissions.charAt(i));
+                result = setPermission(file, 1 << bit, enable, ownerOnly);
+            }
+            return result;
+        }
+        return false;
+    }
+
+    /**
+     * Sets or clears a permission of a file.
+     *
+     * @param file      the file
+     * @param bit       the permission bit. One of {@code 4} (read), {@code 2} (write) or {@code 1}
+     *                  (execute)
+     * @param enable    if {@code true} sets the permission, otherwise clears it
+     * @param ownerOnly if {@code true}, only change the permission for the owner, otherwise change
+     *                  it for everybody
+     * @return {@code true} if the permission was changed
+     */
+    private static boolean setPermission(File file, int bit, boolean enable, boolean ownerOnly)
+    {
+        switch (bit)
+        {
+            case 4:
+                return file.setReadable(enable, ownerOnly);
+            case 2:
+                return file.setWritable(enable, ownerOnly);
+            default:
+                return file.setExecutable(enable, ownerOnly);
+        }
+    }
+
     /**
      * Returns the free (disk) space for the given path. If it is not ascertainable -1 returns.
      *
@@ -342,6 +436,17 @@ public class IoHelper
     public static long getFreeSpace(String path)
     {
         long retval = -1;
+        File file = new File(path);
+        if (file.exists())
+        {
+            // the space available to this user, as reported by df. Zero if it cannot be determined
+            retval = file.getUsableSpace();
+            if (retval > 0)
+            {
+                return retval;
+            }
+            retval = -1;
+        }
         if (OsVersion.IS_WINDOWS)
         {
             String command = "cmd.exe";
@@ -882,7 +987,7 @@ public class IoHelper
      */
     public static long copyStream(InputStream in, OutputStream out) throws IOException
     {
-        byte[] buffer = new byte[5120];
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
         long bytesCopied = 0;
         int bytesInBuffer;
         while ((bytesInBuffer = in.read(buffer)) != -1)
@@ -28,6 +28,12 @@ import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.util.file.types.Resource;
@@ -116,6 +122,11 @@ import com.izforge.izpack.util.file.types.selectors.SelectorUtils;
  * </pre>
  * This will scan a directory called test for .class files, but excludes all
  * files in all proper subdirectories of a directory called "modules"
+ * <p/>
+ * If more than one thread is {@link #setThreads configured}, directories are listed, and their entries
+ * stat'ed, on a pool of threads ahead of the scan. The scan itself still visits directories in the same order,
+ * so the results are identical to those of a single threaded scan. This helps when file system latency, rather
+ * than CPU, dominates the scan, as on network file systems.
  */
 public class DirectoryScanner
         implements FileScanner, /*SelectorScanner, */ResourceFactory
@@ -364,6 +375,34 @@ public class DirectoryScanner
      */
     private Exception illegal = null;
 
+    /**
+     * The no. of threads used to list directories.
+     */
+    private int threads = 1;
+
+    /**
+     * The threads listing directories ahead of the scan, or <code>null</code>
+     * if directories are listed by the scan.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The directory listings requested ahead of the scan.
+     */
+    private Map<File, Future<Listing>> listings = new HashMap<File, Future<Listing>>();
+
+    /**
+     * The names in {@link #filesIncluded}, {@link #filesExcluded} and
+     * {@link #filesDeselected}.
+     */
+    private Set<String> filesAccounted = new HashSet<String>();
+
+    /**
+     * The names in {@link #dirsIncluded}, {@link #dirsExcluded} and
+     * {@link #dirsDeselected}.
+     */
+    private Set<String> dirsAccounted = new HashSet<String>();
+
     /**
      * Sole constructor.
      */
@@ -623,6 +662,27 @@ public class DirectoryScanner
         this.followSymlinks = followSymlinks;
     }
 
+    /**
+     * Get the number of threads used to list directories.
+     *
+     * @return the number of threads.
+     */
+    public synchronized int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads used to list directories. If greater than
+     * one, directories are listed ahead of the scan. Defaults to one.
+     *
+     * @param threads the number of threads.
+     */
+    public synchronized void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     /**
      * Set the list of include patterns to use. All '/' and '\' characters
      * are replaced by <code>File.separatorChar</code>, so the separator used
@@ -831,12 +891,21 @@ public class DirectoryScanner
                     {
                         dirsExcluded.addElement("");
                     }
+                    dirsAccounted.add("");
                 }
                 else
                 {
                     dirsNotIncluded.addElement("");
                 }
-                checkIncludePatterns();
+                startListing();
+                try
+                {
+                    checkIncludePatterns();
+                }
+                finally
+                {
+                    stopListing();
+                }
                 clearCaches();
                 includes = nullIncludes ? null : includes;
                 excludes = nullExcludes ? null : excludes;
@@ -986,6 +1055,8 @@ public class DirectoryScanner
         dirsNotIncluded = new Vector<String>();
         dirsExcluded = new Vector<String>();
         dirsDeselected = new Vector<String>();
+        filesAccounted.clear();
+        dirsAccounted.clear();
         everythingIncluded = (basedir != null);
         scannedDirs.clear();
     }
@@ -1039,22 +1110,30 @@ public class DirectoryScanner
                 String[] notIncl = new String[dirsNotIncluded.size()];
                 dirsNotIncluded.copyInto(notIncl);
 
-                for (String anExcl : excl)
+                startListing();
+                try
                 {
-                    if (!couldHoldIncluded(anExcl))
+                    for (String anExcl : excl)
                     {
-                        scandir(new File(basedir, anExcl),
-                                anExcl + File.separator, false);
+                        if (!couldHoldIncluded(anExcl))
+                        {
+                            scandir(new File(basedir, anExcl),
+                                    anExcl + File.separator, false);
+                        }
                     }
-                }
-                for (String aNotIncl : notIncl)
-                {
-                    if (!couldHoldIncluded(aNotIncl))
+                    for (String aNotIncl : notIncl)
                     {
-                        scandir(new File(basedir, aNotIncl),
-                                aNotIncl + File.separator, false);
+                        if (!couldHoldIncluded(aNotIncl))
+                        {
+                            scandir(new File(basedir, aNotIncl),
+                                    aNotIncl + File.separator, false);
+                        }
                     }
                 }
+                finally
+                {
+                    stopListing();
+                }
                 clearCaches();
                 includes = nullIncludes ? null : includes;
                 excludes = nullExcludes ? null : excludes;
@@ -1109,7 +1188,8 @@ public class DirectoryScanner
         {
             return;
         }
-        String[] newfiles = dir.list();
+        Listing listing = getListing(dir);
+        String[] newfiles = listing.names;
 
         if (newfiles == null)
         {
@@ -1123,42 +1203,46 @@ public class DirectoryScanner
             throw new Exception("IO error scanning directory "
                     + dir.getAbsolutePath());
         }
-        if (!followSymlinks)
+        if (executor != null)
         {
-            Vector<String> noLinks = new Vector<String>();
-            for (String newfile : newfiles)
+            // list the directories the scan will descend into, while it
+            // processes the preceding ones
+            for (int i = 0; i < newfiles.length; ++i)
             {
-                try
+                if (listing.directories[i] && !listing.symlinks[i]
+                        && (!fast || couldHoldIncluded(vpath + newfiles[i])))
                 {
-                    if (FILE_UTILS.isSymbolicLink(dir, newfile))
-                    {
-                        String name = vpath + newfile;
-                        File file = new File(dir, newfile);
-                        (file.isDirectory()
-                                ? dirsExcluded : filesExcluded).addElement(name);
-                    }
-                    else
-                    {
-                        noLinks.addElement(newfile);
-                    }
+                    File subdir = new File(dir, newfiles[i]);
+                    listings.put(subdir, executor.submit(new Lister(subdir)));
+                }
+            }
+        }
+        for (int i = 0; i < newfiles.length; ++i)
+        {
+            if (listing.symlinks[i])
+            {
+                String name = vpath + newfiles[i];
+                if (listing.directories[i])
+                {
+                    dirsExcluded.addElement(name);
+                    dirsAccounted.add(name);
                 }
-                catch (IOException ioe)
+                else
                 {
-                    String msg = "IOException caught while checking "
-                            + "for links, couldn't get canonical path!";
-                    // will be caught and redirected to Ant's logging system
-                    System.err.println(msg);
-                    noLinks.addElement(newfile);
+                    filesExcluded.addElement(name);
+                    filesAccounted.add(name);
                 }
             }
-            newfiles = new String[noLinks.size()];
-            noLinks.copyInto(newfiles);
         }
-        for (String newfile : newfiles)
+        for (int i = 0; i < newfiles.length; ++i)
         {
-            String name = vpath + newfile;
-            File file = new File(dir, newfile);
-            if (file.isDirectory())
+            if (listing.symlinks[i])
+            {
+                continue;
+            }
+            String name = vpath + newfiles[i];
+            File file = new File(dir, newfiles[i]);
+            if (listing.directories[i])
             {
                 if (isIncluded(name))
                 {
@@ -1178,7 +1262,7 @@ public class DirectoryScanner
                     scandir(file, name + File.separator, fast);
                 }
             }
-            else if (file.isFile())
+            else if (listing.files[i])
             {
                 if (isIncluded(name))
                 {
@@ -1193,6 +1277,158 @@ public class DirectoryScanner
         }
     }
 
+    /**
+     * Starts the threads listing directories ahead of the scan, if more
+     * than one thread is configured.
+     */
+    private void startListing()
+    {
+        if (threads > 1)
+        {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "DirectoryScanner");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops the threads listing directories, discarding any listing not
+     * used by the scan.
+     */
+    private void stopListing()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+        listings.clear();
+    }
+
+    /**
+     * Returns the listing of a directory, waiting for it if it has been
+     * requested ahead of the scan.
+     *
+     * @param dir the directory.
+     * @return the directory listing.
+     */
+    private Listing getListing(File dir) throws Exception
+    {
+        Future<Listing> future = listings.remove(dir);
+        if (future == null)
+        {
+            return new Lister(dir).call();
+        }
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof Exception)
+            {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * The entries of a directory.
+     */
+    private static class Listing
+    {
+        /**
+         * The entry names, or <code>null</code> if the directory couldn't
+         * be listed.
+         */
+        private String[] names;
+
+        /**
+         * Determines which entries are directories.
+         */
+        private boolean[] directories;
+
+        /**
+         * Determines which entries are normal files.
+         */
+        private boolean[] files;
+
+        /**
+         * Determines which entries are symbolic links that must not be
+         * followed.
+         */
+        private boolean[] symlinks;
+    }
+
+    /**
+     * Lists a directory, determining the type of each entry.
+     */
+    private class Lister implements Callable<Listing>
+    {
+        /**
+         * The directory to list.
+         */
+        private final File dir;
+
+        /**
+         * Constructs a <code>Lister</code>.
+         *
+         * @param dir the directory to list.
+         */
+        public Lister(File dir)
+        {
+            this.dir = dir;
+        }
+
+        /**
+         * Lists the directory.
+         *
+         * @return the directory listing.
+         */
+        public Listing call()
+        {
+            Listing listing = new Listing();
+            String[] names = dir.list();
+            if (names == null)
+            {
+                return listing;
+            }
+            listing.names = names;
+            listing.directories = new boolean[names.length];
+            listing.files = new boolean[names.length];
+            listing.symlinks = new boolean[names.length];
+            for (int i = 0; i < names.length; ++i)
+            {
+                File file = new File(dir, names[i]);
+                if (!followSymlinks)
+                {
+                    try
+                    {
+                        listing.symlinks[i] = FILE_UTILS.isSymbolicLink(dir, names[i]);
+                    }
+                    catch (IOException ioe)
+                    {
+                        String msg = "IOException caught while checking "
+                                + "for links, couldn't get canonical path!";
+                        // will be caught and redirected to Ant's logging system
+                        System.err.println(msg);
+                    }
+                }
+                listing.directories[i] = file.isDirectory();
+                listing.files[i] = !listing.directories[i] && file.isFile();
+            }
+            return listing;
+        }
+    }
+
     /**
      * Process included file.
      *
@@ -1201,9 +1437,7 @@ public class DirectoryScanner
      */
     private void accountForIncludedFile(String name, File file) throws Exception
     {
-        if (filesIncluded.contains(name)
-                || filesExcluded.contains(name)
-                || filesDeselected.contains(name))
+        if (!filesAccounted.add(name))
         {
             return;
         }
@@ -1235,9 +1469,7 @@ public class DirectoryScanner
     private void accountForIncludedDir(String name, File file, boolean fast)
             throws Exception
     {
-        if (dirsIncluded.contains(name)
-                || dirsExcluded.contains(name)
-                || dirsDeselected.contains(name))
+        if (!dirsAccounted.add(name))
         {
             return;
         }
@@ -45,6 +45,7 @@ public class FileSet extends DataType
     private boolean useDefaultExcludes = true;
     private boolean isCaseSensitive = true;
     private boolean followSymlinks = true;
+    private int threads = 1;
 
     /**
      * Construct a new <code>FileSet</code>.
@@ -187,6 +188,26 @@ public class FileSet extends DataType
         return followSymlinks;
     }
 
+    /**
+     * Sets the number of threads used to list directories when scanning.
+     *
+     * @param threads the number of threads. Defaults to one.
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the number of threads used to list directories when scanning.
+     *
+     * @return the number of threads.
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
     /**
      * Returns the directory scanner needed to access the files to process.
      *
@@ -210,6 +231,7 @@ public class FileSet extends DataType
         DirectoryScanner ds = new DirectoryScanner();
         setupDirectoryScanner(ds);
         ds.setFollowSymlinks(followSymlinks);
+        ds.setThreads(threads);
         ds.scan();
         return ds;
     }
@@ -0,0 +1,182 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.metrics;
+
+
+/**
+ * A named measurement collected by {@link Metrics}.
+ * <p/>
+ * A metric counts the events recorded against it, and for timed events, accumulates their time and the no. of bytes
+ * they processed.
+ */
+public class Metric
+{
+
+    /**
+     * The metric name.
+     */
+    private final String name;
+
+    /**
+     * The no. of events.
+     */
+    private long count;
+
+    /**
+     * The total time of timed events, in nanoseconds.
+     */
+    private long time;
+
+    /**
+     * The longest timed event, in nanoseconds.
+     */
+    private long maxTime;
+
+    /**
+     * The total no. of bytes processed.
+     */
+    private long bytes;
+
+
+    /**
+     * Constructs a {@code Metric}.
+     *
+     * @param name the metric name
+     */
+    public Metric(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Constructs a {@code Metric} from another.
+     *
+     * @param other the metric to copy
+     */
+    public Metric(Metric other)
+    {
+        synchronized (other)
+        {
+            this.name = other.name;
+            this.count = other.count;
+            this.time = other.time;
+            this.maxTime = other.maxTime;
+            this.bytes = other.bytes;
+        }
+    }
+
+    /**
+     * Returns the metric name.
+     *
+     * @return the metric name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the no. of events.
+     *
+     * @return the no. of events
+     */
+    public synchronized long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the total time of timed events.
+     *
+     * @return the time, in nanoseconds
+     */
+    public synchronized long getTime()
+    {
+        return time;
+    }
+
+    /**
+     * Returns the longest timed event.
+     *
+     * @return the time, in nanoseconds
+     */
+    public synchronized long getMaxTime()
+    {
+        return maxTime;
+    }
+
+    /**
+     * Returns the total no. of bytes processed.
+     *
+     * @return the no. of bytes
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the rate that bytes were processed at.
+     *
+     * @return the no. of bytes per second, or {@code 0} if no time or bytes have been recorded
+     */
+    public synchronized double getByteRate()
+    {
+        return (time > 0) ? bytes / (time / 1E9) : 0;
+    }
+
+    /**
+     * Records events without timing them.
+     *
+     * @param count the no. of events
+     */
+    synchronized void increment(long count)
+    {
+        this.count += count;
+    }
+
+    /**
+     * Records a timed event.
+     *
+     * @param time  the event time, in nanoseconds
+     * @param bytes the no. of bytes processed
+     */
+    synchronized void record(long time, long bytes)
+    {
+        ++count;
+        this.time += time;
+        this.bytes += bytes;
+        if (time > maxTime)
+        {
+            maxTime = time;
+        }
+    }
+
+    /**
+     * Returns a string representation of the metric.
+     *
+     * @return a string representation of the metric
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return name + ": count=" + count + ", time=" + (time / 1000000) + "ms, bytes=" + bytes;
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.izforge.izpack.util.CleanupClient;
+import com.izforge.izpack.util.file.FileUtils;
+
+
+/**
+ * A registry of counters, timers and byte rates, used to determine where the time goes when building or installing.
+ * <p/>
+ * Metrics are named by dotted paths, e.g. {@code phase.parsables} or {@code pack.Base}. Timed events are recorded
+ * using:
+ * <pre>
+ * long start = metrics.start();
+ * ...
+ * metrics.stop("phase.parsables", start, bytes);
+ * </pre>
+ * Metrics are only collected if enabled. This is the case when the {@link #REPORT_PROPERTY} system property names
+ * a report file. When disabled, recording is a no-op.
+ * <p/>
+ * The collected metrics are exported as JSON by {@link #write}. This is done automatically on {@link #cleanUp},
+ * so the report is written when the installer shuts down.
+ * <p/>
+ * This class is thread safe.
+ */
+public class Metrics implements CleanupClient
+{
+
+    /**
+     * The system property naming the JSON report file. Metrics are collected if this is set.
+     */
+    public static final String REPORT_PROPERTY = "izpack.metrics";
+
+    /**
+     * Determines if metrics are collected.
+     */
+    private final boolean enabled;
+
+    /**
+     * The report file. May be {@code null}.
+     */
+    private final File report;
+
+    /**
+     * The metrics, keyed on name.
+     */
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+    /**
+     * The time the registry was created, in nanoseconds.
+     */
+    private final long created = System.nanoTime();
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+
+    /**
+     * Constructs a {@code Metrics}, enabled if the {@link #REPORT_PROPERTY} system property is set.
+     */
+    public Metrics()
+    {
+        this(System.getProperty(REPORT_PROPERTY) != null, getReportFile());
+    }
+
+    /**
+     * Constructs a {@code Metrics}.
+     *
+     * @param enabled if {@code true}, collect metrics
+     * @param report  the file to write the report to on {@link #cleanUp}. May be {@code null}
+     */
+    public Metrics(boolean enabled, File report)
+    {
+        this.enabled = enabled;
+        this.report = report;
+    }
+
+    /**
+     * Determines if metrics are being collected.
+     *
+     * @return {@code true} if metrics are being collected
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Starts timing an event.
+     *
+     * @return the start time to pass to {@link #stop}, or {@code 0} if metrics are disabled
+     */
+    public long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing an event.
+     *
+     * @param name  the metric name
+     * @param start the time returned by {@link #start}
+     */
+    public void stop(String name, long start)
+    {
+        stop(name, start, 0);
+    }
+
+    /**
+     * Stops timing an event that processed bytes.
+     *
+     * @param name  the metric name
+     * @param start the time returned by {@link #start}
+     * @param bytes the no. of bytes processed
+     */
+    public void stop(String name, long start, long bytes)
+    {
+        if (enabled)
+        {
+            getMetric(name).record(System.nanoTime() - start, bytes);
+        }
+    }
+
+    /**
+     * Increments a counter.
+     *
+     * @param name the metric name
+     */
+    public void increment(String name)
+    {
+        increment(name, 1);
+    }
+
+    /**
+     * Increments a counter.
+     *
+     * @param name  the metric name
+     * @param count the amount to increment by
+     */
+    public void increment(String name, long count)
+    {
+        if (enabled)
+        {
+            getMetric(name).increment(count);
+        }
+    }
+
+    /**
+     * Returns a snapshot of a metric.
+     *
+     * @param name the metric name
+     * @return the metric, or {@code null} if nothing has been recorded against it
+     */
+    public Metric get(String name)
+    {
+        Metric metric = metrics.get(name);
+        return (metric != null) ? new Metric(metric) : null;
+    }
+
+    /**
+     * Returns a snapshot of all metrics.
+     *
+     * @return the metrics, ordered on name
+     */
+    public List<Metric> getMetrics()
+    {
+        List<Metric> result = new ArrayList<Metric>();
+        for (String name : new TreeSet<String>(metrics.keySet()))
+        {
+            result.add(new Metric(metrics.get(name)));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the metrics as JSON.
+     * <p/>
+     * Times are in milliseconds, and byte rates in bytes per second.
+     *
+     * @param writer the writer to write to. This is not closed
+     * @throws IOException for any I/O error
+     */
+    public void write(Writer writer) throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"elapsed\": ").append(format(System.nanoTime() - created)).append(",\n");
+        json.append("  \"metrics\": {");
+        boolean first = true;
+        for (Metric metric : getMetrics())
+        {
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append("    ");
+            quote(json, metric.getName());
+            json.append(": {\"count\": ").append(metric.getCount());
+            if (metric.getTime() != 0 || metric.getBytes() != 0)
+            {
+                json.append(", \"time\": ").append(format(metric.getTime()));
+                json.append(", \"maxTime\": ").append(format(metric.getMaxTime()));
+                json.append(", \"bytes\": ").append(metric.getBytes());
+                json.append(", \"bytesPerSecond\": ").append(Math.round(metric.getByteRate()));
+            }
+            json.append("}");
+        }
+        json.append(first ? "}\n}\n" : "\n  }\n}\n");
+        writer.write(json.toString());
+        writer.flush();
+    }
+
+    /**
+     * Writes the metrics as JSON to a file.
+     *
+     * @param file the file to write to
+     * @throws IOException for any I/O error
+     */
+    public void write(File file) throws IOException
+    {
+        Writer writer = null;
+        try
+        {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            write(writer);
+        }
+        finally
+        {
+            FileUtils.close(writer);
+        }
+    }
+
+    /**
+     * Writes the report, if metrics are enabled and a report file was specified.
+     */
+    public void writeReport()
+    {
+        if (enabled && report != null)
+        {
+            try
+            {
+                write(report);
+                logger.info("Wrote metrics to " + report.getAbsolutePath());
+            }
+            catch (IOException exception)
+            {
+                logger.log(Level.WARNING, "Failed to write metrics to " + report.getAbsolutePath(), exception);
+            }
+        }
+    }
+
+    /**
+     * Writes the report, on shutdown.
+     */
+    @Override
+    public void cleanUp()
+    {
+        writeReport();
+    }
+
+    /**
+     * Returns the named metric, creating it if it doesn't exist.
+     *
+     * @param name the metric name
+     * @return the metric
+     */
+    private Metric getMetric(String name)
+    {
+        Metric result = metrics.get(name);
+        if (result == null)
+        {
+            result = new Metric(name);
+            Metric existing = metrics.putIfAbsent(name, result);
+            if (existing != null)
+            {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Formats a time in nanoseconds as milliseconds.
+     *
+     * @param nanos the time, in nanoseconds
+     * @return the formatted time
+     */
+    private static String format(long nanos)
+    {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1E6);
+    }
+
+    /**
+     * Appends a JSON string.
+     *
+     * @param json  the JSON to append to
+     * @param value the string value
+     */
+    private static void quote(StringBuilder json, String value)
+    {
+        json.append('"');
+        for (int i = 0; i < value.length(); ++i)
+        {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\')
+            {
+                json.append('\\').append(ch);
+            }
+            else if (ch < 0x20)
+            {
+                json.append(String.format("\\u%04x", (int) ch));
+            }
+            else
+            {
+                json.append(ch);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Returns the report file named by the {@link #REPORT_PROPERTY} system property.
+     *
+     * @return the report file, or {@code null} if the property isn't set
+     */
+    private static File getReportFile()
+    {
+        String path = System.getProperty(REPORT_PROPERTY);
+        return (path != null && path.trim().length() != 0) ? new File(path) : null;
+    }
+}
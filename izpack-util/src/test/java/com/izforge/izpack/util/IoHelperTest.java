@@ -0,0 +1,149 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests {@link IoHelper}.
+ */
+public class IoHelperTest
+{
+
+    /**
+     * The file to change permissions of.
+     */
+    private File file;
+
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        file = File.createTempFile("iohelper", ".sh");
+    }
+
+    /**
+     * Cleans up after the test case.
+     */
+    @After
+    public void tearDown()
+    {
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Tests {@link IoHelper#setPermissions(File, String)} for octal modes.
+     */
+    @Test
+    public void testSetOctalPermissions()
+    {
+        assumeTrue(OsVersion.IS_UNIX);
+
+        assertTrue(IoHelper.setPermissions(file, "755"));
+        assertEquals("-rwxr-xr-x", getMode(file));
+        assertTrue(IoHelper.setPermissions(file, "0600"));
+        assertEquals("-rw-------", getMode(file));
+        assertTrue(IoHelper.setPermissions(file, "444"));
+        assertEquals("-r--r--r--", getMode(file));
+
+        // the group and others can't be given different permissions
+        assertFalse(IoHelper.setPermissions(file, "750"));
+        assertEquals("-r--r--r--", getMode(file));
+    }
+
+    /**
+     * Tests {@link IoHelper#setPermissions(File, String)} for symbolic modes.
+     */
+    @Test
+    public void testSetSymbolicPermissions()
+    {
+        assumeTrue(OsVersion.IS_UNIX);
+
+        assertTrue(IoHelper.setPermissions(file, "644"));
+        assertTrue(IoHelper.setPermissions(file, "a+x"));
+        assertEquals("-rwxr-xr-x", getMode(file));
+        assertTrue(IoHelper.setPermissions(file, "ugo-x"));
+        assertEquals("-rw-r--r--", getMode(file));
+        assertTrue(IoHelper.setPermissions(file, "u+x"));
+        assertEquals("-rwxr--r--", getMode(file));
+        assertTrue(IoHelper.setPermissions(file, "u-wx"));
+        assertEquals("-r--r--r--", getMode(file));
+
+        // unsupported modes
+        assertFalse(IoHelper.setPermissions(file, "+x"));
+        assertFalse(IoHelper.setPermissions(file, "g+x"));
+        assertFalse(IoHelper.setPermissions(file, "a=rx"));
+        assertEquals("-r--r--r--", getMode(file));
+    }
+
+    /**
+     * Verifies that {@link IoHelper#chmod(File, String)} falls back to executing chmod for modes that can't be set
+     * in-process.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testChmod() throws IOException
+    {
+        assumeTrue(OsVersion.IS_UNIX);
+
+        IoHelper.chmod(file, "750");
+        assertEquals("-rwxr-x---", getMode(file));
+        IoHelper.chmod(file, "a+r");
+        assertEquals("-rwxr-xr--", getMode(file));
+    }
+
+    /**
+     * Tests {@link IoHelper#getFreeSpace(String)}.
+     */
+    @Test
+    public void testGetFreeSpace()
+    {
+        assertTrue(IoHelper.getFreeSpace(file.getParent()) > 0);
+    }
+
+    /**
+     * Returns the mode of a file, as displayed by <em>ls -l</em>.
+     *
+     * @param file the file
+     * @return the mode
+     */
+    private String getMode(File file)
+    {
+        String output = FileExecutor.getExecOutput(new String[]{"ls", "-l", file.getPath()});
+        return output.substring(0, 10);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link DirectoryScanner}.
+ */
+public class DirectoryScannerTest
+{
+
+    /**
+     * The directory to scan.
+     */
+    private File basedir;
+
+
+    /**
+     * Creates a directory tree to scan.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        basedir = File.createTempFile("scan", "");
+        assertTrue(basedir.delete());
+        for (String dir : new String[]{"src", "lib", "modules"})
+        {
+            for (int i = 0; i < 4; ++i)
+            {
+                for (int j = 0; j < 5; ++j)
+                {
+                    File file = new File(basedir, dir + "/sub" + i + "/deeper" + j % 2 + "/file" + j
+                            + (j % 2 == 0 ? ".java" : ".class"));
+                    FileUtils.writeStringToFile(file, file.getName());
+                }
+            }
+        }
+        FileUtils.writeStringToFile(new File(basedir, "README"), "readme");
+    }
+
+    /**
+     * Removes the scanned directory tree.
+     *
+     * @throws IOException for any I/O error
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(basedir);
+    }
+
+    /**
+     * Verifies that scans listing directories on several threads produce the same results as single threaded scans,
+     * for both fast scans, and the slow scans needed to determine the files that aren't included.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testThreads() throws Exception
+    {
+        String[][] includes = {null, {"**/*.java"}, {"src/**"}, {"src/sub1/deeper0/file0.java", "README"}};
+        String[][] excludes = {null, {"**/deeper1/**"}, {"modules/**"}};
+        for (String[] include : includes)
+        {
+            for (String[] exclude : excludes)
+            {
+                DirectoryScanner serial = scan(1, include, exclude);
+                DirectoryScanner concurrent = scan(4, include, exclude);
+                assertArrayEquals(serial.getIncludedFiles(), concurrent.getIncludedFiles());
+                assertArrayEquals(serial.getIncludedDirectories(), concurrent.getIncludedDirectories());
+                assertArrayEquals(serial.getExcludedFiles(), concurrent.getExcludedFiles());
+                assertArrayEquals(serial.getNotIncludedFiles(), concurrent.getNotIncludedFiles());
+                assertArrayEquals(serial.getNotIncludedDirectories(), concurrent.getNotIncludedDirectories());
+                assertEquals(serial.getScannedDirs(), concurrent.getScannedDirs());
+            }
+        }
+    }
+
+    /**
+     * Verifies that include and exclude patterns are applied.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testPatterns() throws Exception
+    {
+        DirectoryScanner scanner = scan(4, new String[]{"**/*.java"}, new String[]{"**/deeper1/**", "modules/**"});
+        assertEquals(24, scanner.getIncludedFilesCount()); // 3 .java files in each src and lib subdirectory
+        for (String file : scanner.getIncludedFiles())
+        {
+            assertTrue(file, file.endsWith(".java") && !file.startsWith("modules"));
+        }
+        assertEquals(12, scanner.getExcludedFiles().length);
+    }
+
+    /**
+     * Scans the directory tree.
+     *
+     * @param threads  the no. of threads to list directories with
+     * @param includes the include patterns. May be {@code null}
+     * @param excludes the exclude patterns. May be {@code null}
+     * @return the scanner
+     * @throws Exception for any error
+     */
+    private DirectoryScanner scan(int threads, String[] includes, String[] excludes) throws Exception
+    {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(basedir);
+        scanner.setIncludes(includes);
+        scanner.setExcludes(excludes);
+        scanner.setThreads(threads);
+        scanner.scan();
+        return scanner;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * IzPack - Copyright 2001-2013 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests {@link Metrics}.
+ */
+public class MetricsTest
+{
+
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+
+    /**
+     * Verifies that timers and counters are accumulated.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testRecord() throws InterruptedException
+    {
+        Metrics metrics = new Metrics(true, null);
+        assertTrue(metrics.isEnabled());
+
+        long start = metrics.start();
+        Thread.sleep(10);
+        metrics.stop("phase.extract", start, 1000);
+        start = metrics.start();
+        metrics.stop("phase.extract", start, 500);
+        metrics.increment("files");
+        metrics.increment("files", 2);
+
+        Metric extract = metrics.get("phase.extract");
+        assertEquals(2, extract.getCount());
+        assertEquals(1500, extract.getBytes());
+        assertTrue(extract.getTime() >= 10000000);
+        assertTrue(extract.getMaxTime() >= 10000000);
+        assertTrue(extract.getMaxTime() <= extract.getTime());
+        assertTrue(extract.getByteRate() > 0);
+
+        Metric files = metrics.get("files");
+        assertEquals(3, files.getCount());
+        assertEquals(0, files.getTime());
+        assertEquals(0, files.getByteRate(), 0);
+
+        List<Metric> list = metrics.getMetrics();
+        assertEquals(2, list.size());
+        assertEquals("files", list.get(0).getName());
+        assertEquals("phase.extract", list.get(1).getName());
+    }
+
+    /**
+     * Verifies that nothing is recorded or written when metrics are disabled.
+     */
+    @Test
+    public void testDisabled()
+    {
+        File report = new File(temporaryFolder.getRoot(), "metrics.json");
+        Metrics metrics = new Metrics(false, report);
+        assertFalse(metrics.isEnabled());
+        assertEquals(0, metrics.start());
+        metrics.stop("phase.extract", metrics.start(), 10);
+        metrics.increment("files");
+        assertNull(metrics.get("phase.extract"));
+        assertTrue(metrics.getMetrics().isEmpty());
+
+        metrics.cleanUp();
+        assertFalse(report.exists());
+    }
+
+    /**
+     * Verifies that the JSON report is written on clean up.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testReport() throws IOException
+    {
+        File report = new File(temporaryFolder.getRoot(), "metrics.json");
+        Metrics metrics = new Metrics(true, report);
+        metrics.stop("pack.\"Base\"", metrics.start(), 2048);
+        metrics.increment("files", 5);
+        metrics.cleanUp();
+
+        String json = FileUtils.readFileToString(report, "UTF-8");
+        assertTrue(json.startsWith("{\n  \"elapsed\": "));
+        assertTrue(json.contains("\"files\": {\"count\": 5}"));
+        assertTrue(json.contains("\"pack.\\\"Base\\\"\": {\"count\": 1, \"time\": "));
+        assertTrue(json.contains("\"bytes\": 2048, \"bytesPerSecond\": "));
+        assertTrue(json.indexOf("\"files\"") < json.indexOf("\"pack."));
+
+        StringWriter empty = new StringWriter();
+        new Metrics(true, null).write(empty);
+        assertTrue(empty.toString().endsWith("\"metrics\": {}\n}\n"));
+    }
+}